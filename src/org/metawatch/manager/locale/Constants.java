@@ -33,9 +33,10 @@ public final class Constants
     public static final String LOG_TAG = "Locale-MWM"; //$NON-NLS-1$
 
     /**
-     * Flag to enable logcat messages.
+     * Flag to enable logcat messages. Only debug builds write to logcat; see
+     * {@link org.metawatch.manager.locale.log.PluginLog} for the events recorded in all builds.
      */
-    public static final boolean IS_LOGGABLE = true;
+    public static final boolean IS_LOGGABLE = BuildConfig.DEBUG;
 
     /**
      * Flag to enable runtime checking of method parameters
@@ -11,17 +11,41 @@ package org.metawatch.manager.locale;
 
 import android.annotation.TargetApi;
 import android.app.Application;
+import android.content.Context;
 import android.content.pm.ApplicationInfo;
 import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 
 /**
  * Implements an application object for the plug-in.
  * <p>
- * This application is non-essential for the plug-in's operation; it simply enables debugging options globally for the app.
+ * This application is non-essential for the plug-in's operation; it simply enables debugging options globally for the app. It
+ * is created before every fire in a new background process, so it must not do anything slow.
  */
 public final class PluginApplication extends Application
 {
+    /**
+     * {@link SystemClock#elapsedRealtime()} when this class was loaded, which is the earliest the code of the app runs in a new
+     * process.
+     */
+    private static final long sStartedAt = SystemClock.elapsedRealtime();
+
+    /**
+     * @return {@link SystemClock#elapsedRealtime()} when the app started in this process.
+     */
+    public static long getStartedAt()
+    {
+        return sStartedAt;
+    }
+
+    /**
+     * Whether the UI debugging options were enabled in this process.
+     */
+    private static boolean sIsUiDebuggingEnabled = false;
+
     @Override
     public void onCreate()
     {
@@ -29,27 +53,52 @@ public final class PluginApplication extends Application
 
         if ((getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0)
         {
-            if (Constants.IS_LOGGABLE)
+            /*
+             * This runs before every fire in a new background process, so the debug setup is posted rather than done here. The
+             * component that started the process is normally already queued, so it runs first.
+             */
+            new Handler(Looper.getMainLooper()).post(new Runnable()
             {
-                Log.v(Constants.LOG_TAG, "Application is debuggable.  Enabling additional debug logging"); //$NON-NLS-1$
-            }
+                public void run()
+                {
+                    if (Constants.IS_LOGGABLE)
+                    {
+                        Log.v(Constants.LOG_TAG, "Application is debuggable.  Enabling additional debug logging"); //$NON-NLS-1$
+                    }
 
-            if (Build.VERSION.SDK_INT >= 9)
-            {
-                enableApiLevel9Debugging();
-            }
+                    if (Build.VERSION.SDK_INT >= 9)
+                    {
+                        enableApiLevel9Debugging();
+                    }
+                }
+            });
+        }
+    }
 
-            if (Build.VERSION.SDK_INT >= 11)
-            {
-                enableApiLevel11Debugging();
-            }
+    /**
+     * Enables the debugging options of the UI classes. These are only loaded by the UI process, so this is called by the
+     * activities instead of {@link #onCreate()}, which also runs in the background process.
+     *
+     * @param context to check whether the app is debuggable. Cannot be null.
+     */
+    public static void enableUiDebugging(final Context context)
+    {
+        if (sIsUiDebuggingEnabled || (context.getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) == 0)
+        {
+            return;
+        }
+        sIsUiDebuggingEnabled = true;
 
-            /*
-             * If using the Fragment compatibility library, enable debug logging here
-             */
-            // android.support.v4.app.FragmentManager.enableDebugLogging(true);
-            // android.support.v4.app.LoaderManager.enableDebugLogging(true);
+        if (Build.VERSION.SDK_INT >= 11)
+        {
+            enableApiLevel11Debugging();
         }
+
+        /*
+         * If using the Fragment compatibility library, enable debug logging here
+         */
+        // android.support.v4.app.FragmentManager.enableDebugLogging(true);
+        // android.support.v4.app.LoaderManager.enableDebugLogging(true);
     }
 
     @TargetApi(9)
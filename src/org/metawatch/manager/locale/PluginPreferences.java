@@ -0,0 +1,269 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.metawatch.manager.locale;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+/**
+ * Global settings of the plug-in, edited in {@link org.metawatch.manager.locale.ui.SettingsActivity} and read by the
+ * {@link org.metawatch.manager.locale.receiver.FireReceiver} process.
+ * <p>
+ * The keys and default values must match {@code res/xml/preferences.xml}.
+ */
+public final class PluginPreferences
+{
+    /**
+     * Private constructor prevents instantiation
+     *
+     * @throws UnsupportedOperationException because this class cannot be instantiated.
+     */
+    private PluginPreferences()
+    {
+        throw new UnsupportedOperationException("This class is non-instantiable"); //$NON-NLS-1$
+    }
+
+    /**
+     * Type: {@code int}
+     * <p>
+     * Number of notifications that can be sent back to back before rate limiting starts.
+     */
+    public static final String KEY_NOTIFICATION_BURST = "notification_burst"; //$NON-NLS-1$
+
+    /**
+     * Default of {@link #KEY_NOTIFICATION_BURST}.
+     */
+    public static final int DEFAULT_NOTIFICATION_BURST = 3;
+
+    /**
+     * Type: {@code int}
+     * <p>
+     * Seconds after which one more notification may be sent once the burst is used up.
+     */
+    public static final String KEY_NOTIFICATION_INTERVAL = "notification_interval"; //$NON-NLS-1$
+
+    /**
+     * Default of {@link #KEY_NOTIFICATION_INTERVAL}.
+     */
+    public static final int DEFAULT_NOTIFICATION_INTERVAL = 5;
+
+    /**
+     * Type: {@code int}
+     * <p>
+     * Seconds during which a notification with the same title and text as a previous one is dropped.
+     */
+    public static final String KEY_NOTIFICATION_COLLAPSE_WINDOW = "notification_collapse_window"; //$NON-NLS-1$
+
+    /**
+     * Default of {@link #KEY_NOTIFICATION_COLLAPSE_WINDOW}.
+     */
+    public static final int DEFAULT_NOTIFICATION_COLLAPSE_WINDOW = 30;
+
+    /**
+     * Type: {@code int}
+     * <p>
+     * Seconds during which notifications are collected and sent as a single digest. 0 sends each notification on its own.
+     */
+    public static final String KEY_NOTIFICATION_DIGEST_WINDOW = "notification_digest_window"; //$NON-NLS-1$
+
+    /**
+     * Default of {@link #KEY_NOTIFICATION_DIGEST_WINDOW}.
+     */
+    public static final int DEFAULT_NOTIFICATION_DIGEST_WINDOW = 0;
+
+    /**
+     * Type: {@code int}
+     * <p>
+     * Maximum number of characters of the title and of the text of a digest.
+     */
+    public static final String KEY_NOTIFICATION_DIGEST_LENGTH = "notification_digest_length"; //$NON-NLS-1$
+
+    /**
+     * Default of {@link #KEY_NOTIFICATION_DIGEST_LENGTH}.
+     */
+    public static final int DEFAULT_NOTIFICATION_DIGEST_LENGTH = 240;
+
+    /**
+     * Type: {@code int}
+     * <p>
+     * Milliseconds during which vibration requests are merged into one buzz.
+     */
+    public static final String KEY_VIBRATION_COALESCE_WINDOW = "vibration_coalesce_window"; //$NON-NLS-1$
+
+    /**
+     * Default of {@link #KEY_VIBRATION_COALESCE_WINDOW}.
+     */
+    public static final int DEFAULT_VIBRATION_COALESCE_WINDOW = 1000;
+
+    /**
+     * Type: {@code int}
+     * <p>
+     * Seconds during which a buzz that is not stronger than the previous one is suppressed.
+     */
+    public static final String KEY_VIBRATION_REPEAT_WINDOW = "vibration_repeat_window"; //$NON-NLS-1$
+
+    /**
+     * Default of {@link #KEY_VIBRATION_REPEAT_WINDOW}.
+     */
+    public static final int DEFAULT_VIBRATION_REPEAT_WINDOW = 10;
+
+    /**
+     * Type: {@code boolean}
+     * <p>
+     * Whether the words of a label that does not fit its widget are abbreviated before the label is cut.
+     */
+    public static final String KEY_LABEL_ABBREVIATE = "label_abbreviate"; //$NON-NLS-1$
+
+    /**
+     * Default of {@link #KEY_LABEL_ABBREVIATE}.
+     */
+    public static final boolean DEFAULT_LABEL_ABBREVIATE = true;
+
+    /**
+     * Type: {@code int}
+     * <p>
+     * How imported images are converted to black and white, one of the {@code MODE_} constants of
+     * {@link org.metawatch.manager.locale.render.Dither}.
+     */
+    public static final String KEY_ICON_DITHER = "icon_dither"; //$NON-NLS-1$
+
+    /**
+     * Default of {@link #KEY_ICON_DITHER}, error diffusion, which keeps the most detail of photos.
+     */
+    public static final int DEFAULT_ICON_DITHER = 2;
+
+    /**
+     * Type: {@code int}
+     * <p>
+     * Number of widgets whose previews are sent together when the manager asks for all of them.
+     */
+    public static final String KEY_PREVIEW_BATCH = "preview_batch"; //$NON-NLS-1$
+
+    /**
+     * Default of {@link #KEY_PREVIEW_BATCH}.
+     */
+    public static final int DEFAULT_PREVIEW_BATCH = 8;
+
+    /**
+     * Type: {@code int}
+     * <p>
+     * Milliseconds between two batches of previews.
+     */
+    public static final String KEY_PREVIEW_PACE = "preview_pace"; //$NON-NLS-1$
+
+    /**
+     * Default of {@link #KEY_PREVIEW_PACE}.
+     */
+    public static final int DEFAULT_PREVIEW_PACE = 100;
+
+    /**
+     * Type: {@code int}
+     * <p>
+     * Seconds during which a setting fired again with the same content is skipped, unless the setting allows repeats. 0 applies
+     * every fire.
+     */
+    public static final String KEY_REPEAT_WINDOW = "repeat_window"; //$NON-NLS-1$
+
+    /**
+     * Default of {@link #KEY_REPEAT_WINDOW}.
+     */
+    public static final int DEFAULT_REPEAT_WINDOW = 10;
+
+    /**
+     * Type: {@code boolean}
+     * <p>
+     * Whether fires are handled by {@link org.metawatch.manager.locale.receiver.WorkerService}, which keeps the background process
+     * alive between fires.
+     */
+    public static final String KEY_WARM_SERVICE = "warm_service"; //$NON-NLS-1$
+
+    /**
+     * Default of {@link #KEY_WARM_SERVICE}.
+     */
+    public static final boolean DEFAULT_WARM_SERVICE = false;
+
+    /**
+     * Type: {@code int}
+     * <p>
+     * Seconds without a fire after which the warm service stops.
+     */
+    public static final String KEY_WARM_SERVICE_IDLE_TIMEOUT = "warm_service_idle_timeout"; //$NON-NLS-1$
+
+    /**
+     * Default of {@link #KEY_WARM_SERVICE_IDLE_TIMEOUT}.
+     */
+    public static final int DEFAULT_WARM_SERVICE_IDLE_TIMEOUT = 300;
+
+    /**
+     * Type: {@code boolean}
+     * <p>
+     * Whether the broadcasts to the manager ask for an acknowledgment, and are sent again when it does not come, see
+     * {@link org.metawatch.manager.locale.broadcast.DeliveryTracker}.
+     */
+    public static final String KEY_DELIVERY_ACK = "delivery_ack"; //$NON-NLS-1$
+
+    /**
+     * Default of {@link #KEY_DELIVERY_ACK}.
+     */
+    public static final boolean DEFAULT_DELIVERY_ACK = false;
+
+    /**
+     * Type: {@code boolean}
+     * <p>
+     * Whether the intents received are recorded to a trace that can be replayed, see
+     * {@link org.metawatch.manager.locale.log.IntentTrace}.
+     */
+    public static final String KEY_TRACE_RECORDING = "trace_recording"; //$NON-NLS-1$
+
+    /**
+     * Default of {@link #KEY_TRACE_RECORDING}.
+     */
+    public static final boolean DEFAULT_TRACE_RECORDING = false;
+
+    /**
+     * The settings are written by the UI process and read by the background process, so the file must be re-read when it
+     * changes. This is {@code Context.MODE_MULTI_PROCESS}, which is the default behavior before API 11.
+     */
+    private static final int MODE_MULTI_PROCESS = 4;
+
+    /**
+     * @param context to open the settings. Cannot be null.
+     * @return the settings of the plug-in, the same file as the default preferences used by the settings screen.
+     */
+    public static SharedPreferences get(final Context context)
+    {
+        return context.getSharedPreferences(context.getPackageName() + "_preferences", MODE_MULTI_PROCESS); //$NON-NLS-1$
+    }
+
+    /**
+     * Reads a number. The settings screen stores numbers as text, so both representations are accepted.
+     *
+     * @param preferences settings to read. Cannot be null.
+     * @param key name of the setting.
+     * @param defaultValue value returned when the setting is missing or malformed.
+     * @return the value of the setting.
+     */
+    public static int getInt(final SharedPreferences preferences, final String key, final int defaultValue)
+    {
+        try
+        {
+            final String value = preferences.getString(key, null);
+            return null == value ? defaultValue : Integer.parseInt(value.trim());
+        }
+        catch (final ClassCastException e)
+        {
+            return preferences.getInt(key, defaultValue);
+        }
+        catch (final NumberFormatException e)
+        {
+            return defaultValue;
+        }
+    }
+}
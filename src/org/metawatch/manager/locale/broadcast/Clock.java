@@ -0,0 +1,34 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.metawatch.manager.locale.broadcast;
+
+import android.os.SystemClock;
+
+/**
+ * Time source shared by the outgoing broadcast paths, so that their windows are measured against the same clock.
+ */
+public interface Clock
+{
+    /**
+     * Milliseconds since boot, including deep sleep. Not affected by changes of the wall clock.
+     */
+    Clock ELAPSED_REALTIME = new Clock()
+    {
+        public long now()
+        {
+            return SystemClock.elapsedRealtime();
+        }
+    };
+
+    /**
+     * @return the current time in milliseconds.
+     */
+    long now();
+}
@@ -0,0 +1,448 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.metawatch.manager.locale.broadcast;
+
+import java.io.PrintWriter;
+import java.security.SecureRandom;
+import java.util.HashMap;
+import java.util.Iterator;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Handler;
+import android.os.Looper;
+
+import org.metawatch.manager.locale.PluginPreferences;
+import org.metawatch.manager.locale.log.LatencyStats;
+import org.metawatch.manager.locale.log.PluginLog;
+
+/**
+ * Sends the broadcasts to the MetaWatch manager and, if enabled, tracks their acknowledgments.
+ * <p>
+ * When {@link PluginPreferences#KEY_DELIVERY_ACK} is set, each broadcast carries a sequence number in {@link #EXTRA_SEQUENCE},
+ * the action the manager replies with in {@link #EXTRA_ACK_ACTION} and a token in {@link #EXTRA_ACK_TOKEN}. A manager that
+ * supports the protocol broadcasts {@link #ACTION_ACK} with the same sequence number and token once it handled the intent, and
+ * acknowledges a sequence number it already handled again without handling the intent twice. Older managers ignore the extras.
+ * <p>
+ * Any app can broadcast {@link #ACTION_ACK}. The token is a random number drawn once per process, so an acknowledgment is only
+ * accepted from an app that received the broadcasts, such as the manager.
+ * <p>
+ * A broadcast that is not acknowledged is sent again with the same sequence number, after a delay doubled each time, up to
+ * {@link #MAX_ATTEMPTS} times. Retries only start once the manager acknowledged a broadcast in this process, so that an older
+ * manager does not receive everything several times. A widget frame sent again replaces the pending one of the same widget,
+ * which is never retried. The round trip of each acknowledged broadcast is recorded from its first attempt.
+ * <p>
+ * Retries are sent from the main thread of the process. They are lost if the process is killed.
+ */
+public final class DeliveryTracker
+{
+    /**
+     * Action broadcast by the manager to acknowledge an intent, with {@link #EXTRA_SEQUENCE}.
+     */
+    public static final String ACTION_ACK = "org.metawatch.manager.locale.action.ACK"; //$NON-NLS-1$
+
+    /**
+     * Type: {@code long}
+     * <p>
+     * Sequence number of an outgoing intent, and of its acknowledgment.
+     */
+    public static final String EXTRA_SEQUENCE = "ack_sequence"; //$NON-NLS-1$
+
+    /**
+     * Type: {@code String}
+     * <p>
+     * Action of the acknowledgment the manager should broadcast.
+     */
+    public static final String EXTRA_ACK_ACTION = "ack_action"; //$NON-NLS-1$
+
+    /**
+     * Type: {@code long}
+     * <p>
+     * Token of an outgoing intent, which its acknowledgment must carry back.
+     */
+    public static final String EXTRA_ACK_TOKEN = "ack_token"; //$NON-NLS-1$
+
+    /**
+     * Number of times a broadcast is sent before it is given up.
+     */
+    static final int MAX_ATTEMPTS = 4;
+
+    /**
+     * Delay before the first retry. It is doubled for each retry.
+     */
+    static final long FIRST_RETRY_DELAY_MILLIS = 1000;
+
+    /**
+     * Maximum number of broadcasts waiting for an acknowledgment. The oldest is given up when a new one does not fit.
+     */
+    static final int MAX_PENDING = 64;
+
+    private static DeliveryTracker sInstance = null;
+
+    private final Context mContext;
+
+    private final Clock mClock;
+
+    private final Handler mHandler;
+
+    /**
+     * Broadcasts waiting for an acknowledgment, by sequence number.
+     */
+    private final HashMap<Long, Delivery> mPending = new HashMap<Long, Delivery>();
+
+    private final long mAckToken = new SecureRandom().nextLong();
+
+    private final LatencyStats mRoundTrips = new LatencyStats("delivery round trip", 100); //$NON-NLS-1$
+
+    /**
+     * Time of the last broadcast sent by each thread, or 0, so that a fire can measure its latency up to its broadcasts.
+     */
+    private final ThreadLocal<long[]> mLastSentAt = new ThreadLocal<long[]>()
+    {
+        @Override
+        protected long[] initialValue()
+        {
+            return new long[1];
+        }
+    };
+
+    private final Runnable mRetry = new Runnable()
+    {
+        public void run()
+        {
+            retry();
+        }
+    };
+
+    /**
+     * Next sequence number. It starts from the wall clock, so that numbers are not reused when the process restarts.
+     */
+    private long mNextSequence = System.currentTimeMillis();
+
+    /**
+     * Whether the manager acknowledged a broadcast in this process.
+     */
+    private boolean mHasAcks = false;
+
+    private long mTrackedCount = 0;
+    private long mAckedCount = 0;
+    private long mRetryCount = 0;
+    private long mLostCount = 0;
+    private long mSupersededCount = 0;
+    private long mUnknownAckCount = 0;
+    private long mRejectedAckCount = 0;
+
+    /**
+     * @param context to send the broadcasts. Cannot be null.
+     * @return the tracker of this process.
+     */
+    public static synchronized DeliveryTracker getInstance(final Context context)
+    {
+        if (null == sInstance)
+        {
+            sInstance = new DeliveryTracker(context.getApplicationContext() != null ? context.getApplicationContext() : context);
+        }
+        return sInstance;
+    }
+
+    private DeliveryTracker(final Context context)
+    {
+        this(context, Clock.ELAPSED_REALTIME, new Handler(Looper.getMainLooper()));
+    }
+
+    /**
+     * @param context to send the retries. Cannot be null.
+     * @param clock time source of the retries. Cannot be null.
+     * @param handler to post the retries. Cannot be null.
+     */
+    DeliveryTracker(final Context context, final Clock clock, final Handler handler)
+    {
+        mContext = context;
+        mClock = clock;
+        mHandler = handler;
+    }
+
+    /**
+     * @return whether broadcasts are tracked, in which case {@link #send} keeps them until they are acknowledged.
+     */
+    public boolean isEnabled()
+    {
+        return PluginPreferences.get(mContext).getBoolean(PluginPreferences.KEY_DELIVERY_ACK, PluginPreferences.DEFAULT_DELIVERY_ACK);
+    }
+
+    /**
+     * Sends a broadcast to the manager, tracking it if acknowledgments are enabled. A tracked intent is kept to be sent again, so
+     * neither it nor the arrays in its extras may be changed afterwards.
+     *
+     * @param intent the broadcast. Cannot be null.
+     * @param key identifies what the broadcast updates, e.g. a widget frame, so that a newer broadcast replaces a pending one. May
+     *            be null if each broadcast is distinct.
+     */
+    public void send(final Intent intent, final String key)
+    {
+        if (isEnabled())
+        {
+            track(intent, key);
+        }
+        mContext.sendBroadcast(intent);
+        mLastSentAt.get()[0] = mClock.now();
+    }
+
+    /**
+     * Forgets the time of the last broadcast sent by the calling thread.
+     */
+    public void resetLastSentAt()
+    {
+        mLastSentAt.get()[0] = 0;
+    }
+
+    /**
+     * @return the time, in {@link android.os.SystemClock#elapsedRealtime()} milliseconds, at which {@link #send} last returned on
+     *         the calling thread since {@link #resetLastSentAt()}, or 0 if it was not called. Retries are not included.
+     */
+    public long getLastSentAt()
+    {
+        return mLastSentAt.get()[0];
+    }
+
+    /**
+     * @param key the key of a broadcast.
+     * @return true if a broadcast with this key is waiting for an acknowledgment, in which case the manager may not have it.
+     */
+    public synchronized boolean isPending(final String key)
+    {
+        for (final Delivery delivery : mPending.values())
+        {
+            if (key.equals(delivery.key))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Tracks a broadcast about to be sent, adding the extras of the protocol to it.
+     *
+     * @param intent the broadcast. Cannot be null.
+     * @param key see {@link #send}.
+     * @return the sequence number of the broadcast.
+     */
+    synchronized long track(final Intent intent, final String key)
+    {
+        final long now = mClock.now();
+
+        if (null != key || mPending.size() >= MAX_PENDING)
+        {
+            Delivery oldest = null;
+            for (final Iterator<Delivery> i = mPending.values().iterator(); i.hasNext();)
+            {
+                final Delivery delivery = i.next();
+                if (null != key && key.equals(delivery.key))
+                {
+                    i.remove();
+                    mSupersededCount++;
+                }
+                else if (null == oldest || delivery.sequence < oldest.sequence)
+                {
+                    oldest = delivery;
+                }
+            }
+            if (mPending.size() >= MAX_PENDING && null != oldest)
+            {
+                mPending.remove(Long.valueOf(oldest.sequence));
+                mLostCount++;
+            }
+        }
+
+        final Delivery delivery = new Delivery(mNextSequence++, intent, key, now);
+        intent.putExtra(EXTRA_SEQUENCE, delivery.sequence);
+        intent.putExtra(EXTRA_ACK_ACTION, ACTION_ACK);
+        intent.putExtra(EXTRA_ACK_TOKEN, mAckToken);
+        mPending.put(Long.valueOf(delivery.sequence), delivery);
+        mTrackedCount++;
+
+        if (mHasAcks)
+        {
+            schedule(now);
+        }
+        return delivery.sequence;
+    }
+
+    /**
+     * @return the number of broadcasts waiting for an acknowledgment.
+     */
+    synchronized int getPendingCount()
+    {
+        return mPending.size();
+    }
+
+    /**
+     * @return the token the acknowledgments must carry.
+     */
+    long getAckToken()
+    {
+        return mAckToken;
+    }
+
+    /**
+     * Handles an acknowledgment, unless it lacks the token of this process.
+     *
+     * @param ack the {@link #ACTION_ACK} broadcast. Cannot be null.
+     */
+    public void acknowledge(final Intent ack)
+    {
+        final long sequence = ack.getLongExtra(EXTRA_SEQUENCE, -1);
+        if (-1 == sequence)
+        {
+            return;
+        }
+
+        if (!ack.hasExtra(EXTRA_ACK_TOKEN) || mAckToken != ack.getLongExtra(EXTRA_ACK_TOKEN, 0))
+        {
+            synchronized (this)
+            {
+                mRejectedAckCount++;
+            }
+            PluginLog.w("acknowledgment of %s without the token of this process ignored", String.valueOf(sequence)); //$NON-NLS-1$
+            return;
+        }
+
+        acknowledge(sequence);
+    }
+
+    /**
+     * Handles an acknowledgment from the manager.
+     *
+     * @param sequence the sequence number of the acknowledged broadcast.
+     */
+    synchronized void acknowledge(final long sequence)
+    {
+        final long now = mClock.now();
+        final Delivery delivery = mPending.remove(Long.valueOf(sequence));
+        if (null == delivery)
+        {
+            /*
+             * Acknowledged after it was given up or replaced, or acknowledged twice because it was sent again
+             */
+            mUnknownAckCount++;
+            return;
+        }
+
+        mAckedCount++;
+        mRoundTrips.add(now - delivery.firstSentAt);
+
+        if (!mHasAcks)
+        {
+            mHasAcks = true;
+            schedule(now);
+        }
+    }
+
+    /**
+     * Sends again the broadcasts that are due, and gives up the ones sent too many times.
+     */
+    synchronized void retry()
+    {
+        final long now = mClock.now();
+        for (final Iterator<Delivery> i = mPending.values().iterator(); i.hasNext();)
+        {
+            final Delivery delivery = i.next();
+            if (delivery.nextAttemptAt > now)
+            {
+                continue;
+            }
+
+            /*
+             * A broadcast that missed its retry by more than the backoff, e.g. sent before the manager was known to acknowledge, is
+             * stale
+             */
+            if (delivery.attempts >= MAX_ATTEMPTS || now - delivery.nextAttemptAt > getRetryDelay(delivery.attempts))
+            {
+                i.remove();
+                mLostCount++;
+                PluginLog.w("broadcast %s not acknowledged", delivery.intent.getAction()); //$NON-NLS-1$
+                continue;
+            }
+
+            if (PluginLog.D)
+            {
+                PluginLog.d("sending %s again, attempt %d", delivery.intent.getAction(), delivery.attempts + 1); //$NON-NLS-1$
+            }
+            delivery.attempts++;
+            delivery.nextAttemptAt = now + getRetryDelay(delivery.attempts);
+            mRetryCount++;
+            mContext.sendBroadcast(delivery.intent);
+        }
+        schedule(now);
+    }
+
+    /**
+     * Posts {@link #mRetry} for the earliest pending broadcast.
+     */
+    private void schedule(final long now)
+    {
+        mHandler.removeCallbacks(mRetry);
+
+        long next = Long.MAX_VALUE;
+        for (final Delivery delivery : mPending.values())
+        {
+            next = Math.min(next, delivery.nextAttemptAt);
+        }
+        if (Long.MAX_VALUE != next)
+        {
+            mHandler.postDelayed(mRetry, Math.max(0, next - now));
+        }
+    }
+
+    /**
+     * @param attempts number of times a broadcast was sent.
+     * @return the delay before sending it again.
+     */
+    static long getRetryDelay(final int attempts)
+    {
+        return FIRST_RETRY_DELAY_MILLIS << Math.max(0, attempts - 1);
+    }
+
+    /**
+     * Writes the delivery statistics and the round trip percentiles.
+     *
+     * @param writer destination. Cannot be null.
+     */
+    public synchronized void dump(final PrintWriter writer)
+    {
+        writer.println("delivery: tracked=" + mTrackedCount + " acked=" + mAckedCount + " pending=" + mPending.size() //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+                + " retried=" + mRetryCount + " lost=" + mLostCount + " superseded=" + mSupersededCount //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+                + " unknownAcks=" + mUnknownAckCount + " rejectedAcks=" + mRejectedAckCount + " managerAcks=" + mHasAcks); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        mRoundTrips.dump(writer);
+    }
+
+    /**
+     * A broadcast waiting for its acknowledgment.
+     */
+    private static final class Delivery
+    {
+        final long sequence;
+        final Intent intent;
+        final String key;
+        final long firstSentAt;
+        int attempts = 1;
+        long nextAttemptAt;
+
+        Delivery(final long sequence, final Intent intent, final String key, final long sentAt)
+        {
+            this.sequence = sequence;
+            this.intent = intent;
+            this.key = key;
+            this.firstSentAt = sentAt;
+            this.nextAttemptAt = sentAt + getRetryDelay(1);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.metawatch.manager.locale.broadcast;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+
+import org.metawatch.manager.locale.log.PluginLog;
+
+/**
+ * What the installed MetaWatch manager supports beyond the basic broadcasts, as advertised in its
+ * {@code REFRESH_WIDGET_REQUEST}.
+ * <p>
+ * The manager sends a refresh request when it starts, so the last request tells what the running manager supports. It is kept in
+ * a file of the background process, so that it survives the process, and is only written when it changes. Until a manager
+ * advertises a capability, it is not used.
+ */
+public final class ManagerCapabilities
+{
+    /**
+     * Extra of {@code REFRESH_WIDGET_REQUEST}: {@code boolean}, true if the manager applies {@code WIDGET_UPDATE} broadcasts
+     * carrying a part of a frame, with the {@code x}, {@code y}, {@code rect_width} and {@code rect_height} extras.
+     */
+    public static final String EXTRA_PARTIAL_UPDATES = "org.metawatch.manager.partial_updates"; //$NON-NLS-1$
+
+    private static final String FILE_NAME = "manager_capabilities"; //$NON-NLS-1$
+
+    private static final String KEY_PARTIAL_UPDATES = "partial_updates"; //$NON-NLS-1$
+
+    private static ManagerCapabilities sInstance = null;
+
+    private final SharedPreferences mPreferences;
+
+    private boolean mIsPartialUpdateSupported;
+
+    /**
+     * @param context to open the file. Cannot be null.
+     * @return the capabilities known to this process.
+     */
+    public static synchronized ManagerCapabilities getInstance(final Context context)
+    {
+        if (null == sInstance)
+        {
+            sInstance = new ManagerCapabilities(context.getSharedPreferences(FILE_NAME, Context.MODE_PRIVATE));
+        }
+        return sInstance;
+    }
+
+    private ManagerCapabilities(final SharedPreferences preferences)
+    {
+        mPreferences = preferences;
+        mIsPartialUpdateSupported = preferences.getBoolean(KEY_PARTIAL_UPDATES, false);
+    }
+
+    /**
+     * Reads the capabilities advertised by a refresh request. A capability missing from the request is not supported, e.g. after
+     * the manager was downgraded.
+     *
+     * @param request the {@code REFRESH_WIDGET_REQUEST}. Cannot be null.
+     */
+    public synchronized void update(final Intent request)
+    {
+        final boolean isPartialUpdateSupported = request.getBooleanExtra(EXTRA_PARTIAL_UPDATES, false);
+        if (isPartialUpdateSupported != mIsPartialUpdateSupported)
+        {
+            if (PluginLog.D)
+            {
+                PluginLog.d("manager partial updates: %s", String.valueOf(isPartialUpdateSupported)); //$NON-NLS-1$
+            }
+            mIsPartialUpdateSupported = isPartialUpdateSupported;
+            mPreferences.edit().putBoolean(KEY_PARTIAL_UPDATES, isPartialUpdateSupported).commit();
+        }
+    }
+
+    /**
+     * @return true if the manager applies partial frames.
+     */
+    public synchronized boolean isPartialUpdateSupported()
+    {
+        return mIsPartialUpdateSupported;
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.metawatch.manager.locale.broadcast;
+
+import java.util.List;
+
+import org.metawatch.manager.locale.render.TextLayout;
+
+/**
+ * Merges the notifications collected by the {@link NotificationQueue} during a digest window into a single notification.
+ * <p>
+ * The title of the digest lists the distinct titles, the text has one bulleted line per notification. Both are cut to the
+ * maximum length, ending with an ellipsis. The digest vibrates if any of its notifications does, with the strongest pattern, and
+ * keeps the highest priority and the arrival of the first notification.
+ */
+final class NotificationDigest
+{
+    /**
+     * Bullet and ellipsis are ASCII, as the font of the watch has no other glyphs.
+     */
+    private static final char BULLET = '-';
+
+    private static final String ELLIPSIS = TextLayout.ELLIPSIS;
+
+    private static final String TITLE_SEPARATOR = ", "; //$NON-NLS-1$
+
+    private static final String TEXT_SEPARATOR = ": "; //$NON-NLS-1$
+
+    /**
+     * Private constructor prevents instantiation
+     *
+     * @throws UnsupportedOperationException because this class cannot be instantiated.
+     */
+    private NotificationDigest()
+    {
+        throw new UnsupportedOperationException("This class is non-instantiable"); //$NON-NLS-1$
+    }
+
+    /**
+     * @param notifications the notifications, in order of arrival. Cannot be empty.
+     * @param maxLength maximum length of the title and of the text, at least 1.
+     * @return the digest of the notifications.
+     */
+    static QueuedNotification merge(final List<QueuedNotification> notifications, final int maxLength)
+    {
+        final QueuedNotification first = notifications.get(0);
+
+        /*
+         * The title and the text are built one after the other in the same buffer
+         */
+        final StringBuilder buffer = new StringBuilder(maxLength + 1);
+        int priority = first.priority;
+        for (int i = 0; i < notifications.size(); i++)
+        {
+            final QueuedNotification notification = notifications.get(i);
+            priority = Math.max(priority, notification.priority);
+            if (buffer.length() <= maxLength && !isTitleBefore(notifications, i))
+            {
+                if (buffer.length() > 0)
+                {
+                    buffer.append(TITLE_SEPARATOR);
+                }
+                buffer.append(notification.title);
+            }
+        }
+        final String title = cut(buffer, maxLength).toString();
+
+        buffer.setLength(0);
+        for (final QueuedNotification notification : notifications)
+        {
+            if (buffer.length() > 0)
+            {
+                buffer.append('\n');
+            }
+            buffer.append(BULLET).append(' ');
+            if (null != notification.title && notification.title.length() > 0)
+            {
+                buffer.append(notification.title).append(TEXT_SEPARATOR);
+            }
+            if (null != notification.text)
+            {
+                buffer.append(notification.text);
+            }
+
+            if (buffer.length() > maxLength)
+            {
+                break;
+            }
+        }
+        final String text = cut(buffer, maxLength).toString();
+
+        final QueuedNotification digest = new QueuedNotification(title, text, priority, first.sequence, first.queuedAt);
+        for (final QueuedNotification notification : notifications)
+        {
+            if (notification.hasVibration)
+            {
+                digest.hasVibration = true;
+                digest.vibrateOn = Math.max(digest.vibrateOn, notification.vibrateOn);
+                digest.vibrateOff = Math.max(digest.vibrateOff, notification.vibrateOff);
+                digest.vibrateCycles = Math.max(digest.vibrateCycles, notification.vibrateCycles);
+            }
+        }
+        return digest;
+    }
+
+    /**
+     * @return true if the title of the notification at {@code index} is empty or is the title of an earlier one.
+     */
+    private static boolean isTitleBefore(final List<QueuedNotification> notifications, final int index)
+    {
+        final String title = notifications.get(index).title;
+        if (null == title || 0 == title.length())
+        {
+            return true;
+        }
+        for (int i = 0; i < index; i++)
+        {
+            if (title.equals(notifications.get(i).title))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Cuts the buffer to {@code maxLength} characters, ending with an ellipsis if anything was cut. The ellipsis is itself cut
+     * if it is longer than {@code maxLength}.
+     */
+    private static StringBuilder cut(final StringBuilder buffer, final int maxLength)
+    {
+        if (buffer.length() > maxLength)
+        {
+            buffer.setLength(Math.max(0, maxLength - ELLIPSIS.length()));
+            buffer.append(ELLIPSIS);
+            buffer.setLength(maxLength);
+        }
+        return buffer;
+    }
+}
@@ -0,0 +1,459 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.metawatch.manager.locale.broadcast;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+
+import org.metawatch.manager.locale.PluginPreferences;
+import org.metawatch.manager.locale.log.PluginLog;
+
+/**
+ * Queue of outgoing {@code org.metawatch.manager.NOTIFICATION} broadcasts.
+ * <p>
+ * Several Locale situations can fire at the same time. Instead of flooding the Bluetooth link and the vibration motor of the
+ * watch, notifications are sent highest priority first, at the rate allowed by a {@link TokenBucket}. A notification with the
+ * same title and text as one accepted within the collapse window is dropped, unless its setting allows repeats. The rate and the
+ * window are read from {@link PluginPreferences}. The vibration of a notification is checked with the {@link VibrationArbiter}
+ * right before it is sent.
+ * <p>
+ * When the digest window is set, the notifications arriving within the window from the first one are held back and queued as a
+ * single {@link NotificationDigest}, so that the watch shows, buzzes and receives them once.
+ * <p>
+ * Delayed notifications are sent from the main thread of the process. They are lost if the process is killed before the queue
+ * drains.
+ */
+public final class NotificationQueue
+{
+    /**
+     * Priority of notifications that can wait.
+     */
+    public static final int PRIORITY_LOW = 0;
+
+    /**
+     * Priority of ordinary notifications.
+     */
+    public static final int PRIORITY_NORMAL = 1;
+
+    /**
+     * Priority of notifications the user asked to be alerted about, e.g. with vibration.
+     */
+    public static final int PRIORITY_HIGH = 2;
+
+    /**
+     * Maximum number of waiting notifications. When the queue is full, the lowest priority notification is dropped.
+     */
+    private static final int MAX_DEPTH = 32;
+
+    /**
+     * Highest priority first, then first in, first out.
+     */
+    private static final Comparator<QueuedNotification> ORDER = new Comparator<QueuedNotification>()
+    {
+        public int compare(final QueuedNotification lhs, final QueuedNotification rhs)
+        {
+            if (lhs.priority != rhs.priority)
+            {
+                return lhs.priority > rhs.priority ? -1 : 1;
+            }
+            return lhs.sequence < rhs.sequence ? -1 : (lhs.sequence == rhs.sequence ? 0 : 1);
+        }
+    };
+
+    private static NotificationQueue sInstance = null;
+
+    private final Context mContext;
+
+    private final VibrationArbiter mArbiter;
+
+    private final DeliveryTracker mTracker;
+
+    private final Clock mClock;
+
+    private final Handler mHandler;
+
+    private final PriorityQueue<QueuedNotification> mQueue = new PriorityQueue<QueuedNotification>(MAX_DEPTH, ORDER);
+
+    /**
+     * Time each title and text pair was last accepted, used to collapse duplicates.
+     */
+    private final HashMap<String, Long> mRecent = new HashMap<String, Long>();
+
+    /**
+     * Notifications of the current digest window, in order of arrival.
+     */
+    private final ArrayList<QueuedNotification> mDigest = new ArrayList<QueuedNotification>();
+
+    private final Runnable mDrain = new Runnable()
+    {
+        public void run()
+        {
+            drain();
+        }
+    };
+
+    private final Runnable mFlushDigest = new Runnable()
+    {
+        public void run()
+        {
+            flushDigest();
+        }
+    };
+
+    private TokenBucket mBucket = null;
+
+    private long mCollapseWindowMillis;
+
+    private long mDigestWindowMillis;
+
+    private int mDigestMaxLength;
+
+    private long mSequence = 0;
+
+    private int mMaxDepth = 0;
+    private long mSentCount = 0;
+    private long mDuplicateCount = 0;
+    private long mOverflowCount = 0;
+    private long mDigestCount = 0;
+    private long mDigestedCount = 0;
+    private long mTotalDelayMillis = 0;
+    private long mMaxDelayMillis = 0;
+
+    /**
+     * @param context to send the broadcasts. Cannot be null.
+     * @return the queue of this process.
+     */
+    public static synchronized NotificationQueue getInstance(final Context context)
+    {
+        if (null == sInstance)
+        {
+            sInstance = new NotificationQueue(context.getApplicationContext() != null ? context.getApplicationContext() : context);
+        }
+        return sInstance;
+    }
+
+    private NotificationQueue(final Context context)
+    {
+        mContext = context;
+        mArbiter = VibrationArbiter.getInstance(context);
+        mTracker = DeliveryTracker.getInstance(context);
+        mClock = mArbiter.getClock();
+        mHandler = new Handler(Looper.getMainLooper());
+    }
+
+    /**
+     * Queues a notification and sends it as soon as the rate limit allows.
+     *
+     * @param title title of the notification.
+     * @param text text of the notification.
+     * @param priority one of {@link #PRIORITY_LOW}, {@link #PRIORITY_NORMAL} or {@link #PRIORITY_HIGH}.
+     * @param hasVibration whether the vibration pattern is sent.
+     * @param vibrateOn vibration on time in milliseconds.
+     * @param vibrateOff vibration off time in milliseconds.
+     * @param vibrateCycles number of vibration cycles.
+     * @param canCollapse false if the notification is sent even when it duplicates one accepted within the collapse window.
+     * @return false if the notification was dropped as a duplicate or because the queue is full. A notification held for a digest
+     *         is only checked against a full queue when the digest is queued.
+     */
+    public synchronized boolean enqueue(final String title, final String text, final int priority, final boolean hasVibration, final int vibrateOn, final int vibrateOff, final int vibrateCycles, final boolean canCollapse)
+    {
+        final long now = mClock.now();
+        configure(PluginPreferences.get(mContext), now);
+
+        if (canCollapse && isDuplicate(title, text, now))
+        {
+            mDuplicateCount++;
+            if (PluginLog.D)
+            {
+                PluginLog.d("notification dropped as duplicate: %s", title); //$NON-NLS-1$
+            }
+            return false;
+        }
+
+        final QueuedNotification notification = new QueuedNotification(title, text, priority, mSequence++, now);
+        notification.canCollapse = canCollapse;
+        notification.hasVibration = hasVibration;
+        notification.vibrateOn = vibrateOn;
+        notification.vibrateOff = vibrateOff;
+        notification.vibrateCycles = vibrateCycles;
+
+        if (mDigestWindowMillis > 0)
+        {
+            mDigest.add(notification);
+            if (1 == mDigest.size())
+            {
+                mHandler.postDelayed(mFlushDigest, mDigestWindowMillis);
+            }
+            else if (mDigest.size() >= MAX_DEPTH)
+            {
+                flushDigest();
+            }
+            return true;
+        }
+
+        if (!add(notification))
+        {
+            return false;
+        }
+        remember(notification, now);
+        return true;
+    }
+
+    /**
+     * Queues the notifications of the digest window, merged into one if there are several.
+     */
+    synchronized void flushDigest()
+    {
+        mHandler.removeCallbacks(mFlushDigest);
+        if (mDigest.isEmpty())
+        {
+            return;
+        }
+
+        final QueuedNotification notification;
+        if (1 == mDigest.size())
+        {
+            notification = mDigest.get(0);
+        }
+        else
+        {
+            mDigestCount++;
+            mDigestedCount += mDigest.size();
+            if (PluginLog.D)
+            {
+                PluginLog.d("merging %d notifications into a digest", mDigest.size()); //$NON-NLS-1$
+            }
+            notification = NotificationDigest.merge(mDigest, mDigestMaxLength);
+        }
+
+        if (add(notification))
+        {
+            final long now = mClock.now();
+            for (final QueuedNotification held : mDigest)
+            {
+                remember(held, now);
+            }
+        }
+        mDigest.clear();
+    }
+
+    /**
+     * Adds a notification to the queue and sends what the rate limit allows.
+     *
+     * @return false if the queue is full of notifications of higher priority.
+     */
+    private boolean add(final QueuedNotification notification)
+    {
+        if (mQueue.size() >= MAX_DEPTH && !dropLowest(notification))
+        {
+            return false;
+        }
+
+        mQueue.add(notification);
+        mMaxDepth = Math.max(mMaxDepth, mQueue.size());
+
+        drain();
+        return true;
+    }
+
+    /**
+     * Merges a vibration request into a waiting notification that will vibrate anyway.
+     *
+     * @param on vibration on time in milliseconds.
+     * @param off vibration off time in milliseconds.
+     * @param cycles number of vibration cycles.
+     * @return true if the request was merged, false if no waiting notification vibrates.
+     */
+    synchronized boolean mergeVibration(final int on, final int off, final int cycles)
+    {
+        return mergeVibration(mQueue, on, off, cycles) || mergeVibration(mDigest, on, off, cycles);
+    }
+
+    private static boolean mergeVibration(final Iterable<QueuedNotification> notifications, final int on, final int off, final int cycles)
+    {
+        for (final QueuedNotification notification : notifications)
+        {
+            if (notification.hasVibration)
+            {
+                notification.vibrateOn = Math.max(notification.vibrateOn, on);
+                notification.vibrateOff = Math.max(notification.vibrateOff, off);
+                notification.vibrateCycles = Math.max(notification.vibrateCycles, cycles);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return number of notifications waiting to be sent.
+     */
+    public synchronized int getDepth()
+    {
+        return mQueue.size();
+    }
+
+    /**
+     * Writes the statistics of the queue.
+     *
+     * @param writer destination. Cannot be null.
+     */
+    public synchronized void dump(final PrintWriter writer)
+    {
+        writer.println("notification queue: depth=" + mQueue.size() + " maxDepth=" + mMaxDepth + " sent=" + mSentCount //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+                + " droppedDuplicate=" + mDuplicateCount + " droppedOverflow=" + mOverflowCount //$NON-NLS-1$ //$NON-NLS-2$
+                + " digests=" + mDigestCount + " digested=" + mDigestedCount + " holding=" + mDigest.size() //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+                + " avgDelayMs=" + (0 == mSentCount ? 0 : mTotalDelayMillis / mSentCount) + " maxDelayMs=" + mMaxDelayMillis); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    /**
+     * Sends as many notifications as the rate limit allows, and schedules the next attempt if any are left.
+     */
+    synchronized void drain()
+    {
+        mHandler.removeCallbacks(mDrain);
+
+        final long now = mClock.now();
+        while (!mQueue.isEmpty())
+        {
+            if (!mBucket.tryAcquire(now))
+            {
+                mHandler.postDelayed(mDrain, mBucket.millisUntilNextToken(now));
+                return;
+            }
+            send(mQueue.poll(), now);
+        }
+    }
+
+    private void send(final QueuedNotification notification, final long now)
+    {
+        final long delay = now - notification.queuedAt;
+        mSentCount++;
+        mTotalDelayMillis += delay;
+        mMaxDelayMillis = Math.max(mMaxDelayMillis, delay);
+
+        if (notification.hasVibration && !mArbiter.claimForNotification(notification))
+        {
+            notification.hasVibration = false;
+        }
+
+        if (PluginLog.D)
+        {
+            PluginLog.d("sending notification %s after %d ms", notification.title, delay); //$NON-NLS-1$
+        }
+
+        mTracker.send(notification.toIntent(), null);
+    }
+
+    private void configure(final SharedPreferences preferences, final long now)
+    {
+        final int burst = Math.max(1, PluginPreferences.getInt(preferences, PluginPreferences.KEY_NOTIFICATION_BURST, PluginPreferences.DEFAULT_NOTIFICATION_BURST));
+        final long interval = 1000L * Math.max(1, PluginPreferences.getInt(preferences, PluginPreferences.KEY_NOTIFICATION_INTERVAL, PluginPreferences.DEFAULT_NOTIFICATION_INTERVAL));
+        mCollapseWindowMillis = 1000L * Math.max(0, PluginPreferences.getInt(preferences, PluginPreferences.KEY_NOTIFICATION_COLLAPSE_WINDOW, PluginPreferences.DEFAULT_NOTIFICATION_COLLAPSE_WINDOW));
+        mDigestWindowMillis = 1000L * Math.max(0, PluginPreferences.getInt(preferences, PluginPreferences.KEY_NOTIFICATION_DIGEST_WINDOW, PluginPreferences.DEFAULT_NOTIFICATION_DIGEST_WINDOW));
+        mDigestMaxLength = Math.max(1, PluginPreferences.getInt(preferences, PluginPreferences.KEY_NOTIFICATION_DIGEST_LENGTH, PluginPreferences.DEFAULT_NOTIFICATION_DIGEST_LENGTH));
+
+        if (null == mBucket)
+        {
+            mBucket = new TokenBucket(burst, interval, now);
+        }
+        else if (mBucket.getCapacity() != burst || mBucket.getIntervalMillis() != interval)
+        {
+            mBucket = mBucket.resize(burst, interval, now);
+        }
+    }
+
+    /**
+     * Checks whether the same title and text were accepted within the collapse window, or are held for the current digest.
+     */
+    private boolean isDuplicate(final String title, final String text, final long now)
+    {
+        final Iterator<Map.Entry<String, Long>> iterator = mRecent.entrySet().iterator();
+        while (iterator.hasNext())
+        {
+            if (now - iterator.next().getValue().longValue() >= mCollapseWindowMillis)
+            {
+                iterator.remove();
+            }
+        }
+
+        final String key = getKey(title, text);
+        if (mRecent.containsKey(key))
+        {
+            return true;
+        }
+
+        for (final QueuedNotification held : mDigest)
+        {
+            if (held.canCollapse && key.equals(getKey(held.title, held.text)))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Records the title and text of a notification that was queued, so that duplicates within the collapse window are dropped.
+     */
+    private void remember(final QueuedNotification notification, final long now)
+    {
+        if (notification.canCollapse)
+        {
+            mRecent.put(getKey(notification.title, notification.text), Long.valueOf(now));
+        }
+    }
+
+    private static String getKey(final String title, final String text)
+    {
+        return title + '\u0000' + text;
+    }
+
+    /**
+     * Makes room for {@code incoming} by dropping the lowest priority, most recent notification, unless {@code incoming} itself
+     * is the lowest.
+     *
+     * @return true if there is room for {@code incoming}.
+     */
+    private boolean dropLowest(final QueuedNotification incoming)
+    {
+        QueuedNotification lowest = incoming;
+        for (final QueuedNotification notification : mQueue)
+        {
+            if (ORDER.compare(notification, lowest) > 0)
+            {
+                lowest = notification;
+            }
+        }
+
+        mOverflowCount++;
+        if (PluginLog.D)
+        {
+            PluginLog.d("notification queue full, dropped %s", lowest.title); //$NON-NLS-1$
+        }
+
+        if (lowest == incoming)
+        {
+            return false;
+        }
+
+        mQueue.remove(lowest);
+        return true;
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.metawatch.manager.locale.broadcast;
+
+import android.content.Intent;
+
+/**
+ * A notification waiting in the {@link NotificationQueue}.
+ */
+final class QueuedNotification
+{
+    final String title;
+    final String text;
+    final int priority;
+
+    /**
+     * Order of arrival, used to keep notifications of the same priority first in, first out.
+     */
+    final long sequence;
+
+    /**
+     * Time the notification was queued, in milliseconds.
+     */
+    final long queuedAt;
+
+    /**
+     * Whether the notification is dropped when it duplicates one accepted within the collapse window.
+     */
+    boolean canCollapse;
+
+    /**
+     * Whether the vibration extras are sent.
+     */
+    boolean hasVibration;
+    int vibrateOn;
+    int vibrateOff;
+    int vibrateCycles;
+
+    QueuedNotification(final String title, final String text, final int priority, final long sequence, final long queuedAt)
+    {
+        this.title = title;
+        this.text = text;
+        this.priority = priority;
+        this.sequence = sequence;
+        this.queuedAt = queuedAt;
+    }
+
+    /**
+     * @return the {@code org.metawatch.manager.NOTIFICATION} broadcast for this notification.
+     */
+    Intent toIntent()
+    {
+        final Intent broadcast = new Intent("org.metawatch.manager.NOTIFICATION"); //$NON-NLS-1$
+        broadcast.putExtra("title", title); //$NON-NLS-1$
+        broadcast.putExtra("text", text); //$NON-NLS-1$
+
+        if (hasVibration)
+        {
+            broadcast.putExtra("vibrate_on", vibrateOn); //$NON-NLS-1$
+            broadcast.putExtra("vibrate_off", vibrateOff); //$NON-NLS-1$
+            broadcast.putExtra("vibrate_cycles", vibrateCycles); //$NON-NLS-1$
+        }
+
+        return broadcast;
+    }
+}
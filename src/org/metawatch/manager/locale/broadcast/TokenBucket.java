@@ -0,0 +1,144 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.metawatch.manager.locale.broadcast;
+
+/**
+ * Token bucket rate limiter: up to {@code capacity} events may happen back to back, after which one event is allowed per
+ * {@code interval}.
+ * <p>
+ * The caller passes the current time to every method, which keeps this class independent of the clock. This class is not
+ * thread safe.
+ */
+public final class TokenBucket
+{
+    private final int mCapacity;
+
+    private final long mIntervalMillis;
+
+    private int mTokens;
+
+    /**
+     * Time at which the last token was added.
+     */
+    private long mLastRefill;
+
+    /**
+     * Creates a full bucket.
+     *
+     * @param capacity maximum number of tokens. Must be greater than 0.
+     * @param intervalMillis time to add one token. Must be greater than 0.
+     * @param now current time in milliseconds.
+     * @throws IllegalArgumentException if {@code capacity} or {@code intervalMillis} is less than 1.
+     */
+    public TokenBucket(final int capacity, final long intervalMillis, final long now)
+    {
+        if (capacity < 1)
+        {
+            throw new IllegalArgumentException("capacity must be greater than 0"); //$NON-NLS-1$
+        }
+        if (intervalMillis < 1)
+        {
+            throw new IllegalArgumentException("intervalMillis must be greater than 0"); //$NON-NLS-1$
+        }
+
+        mCapacity = capacity;
+        mIntervalMillis = intervalMillis;
+        mTokens = capacity;
+        mLastRefill = now;
+    }
+
+    /**
+     * @return the maximum number of tokens.
+     */
+    public int getCapacity()
+    {
+        return mCapacity;
+    }
+
+    /**
+     * @return the time to add one token, in milliseconds.
+     */
+    public long getIntervalMillis()
+    {
+        return mIntervalMillis;
+    }
+
+    /**
+     * Creates a bucket with another capacity or interval that keeps the tokens of this one, up to the new capacity, so that
+     * changing the settings does not allow a new burst.
+     *
+     * @param capacity maximum number of tokens. Must be greater than 0.
+     * @param intervalMillis time to add one token. Must be greater than 0.
+     * @param now current time in milliseconds.
+     * @return the new bucket.
+     * @throws IllegalArgumentException if {@code capacity} or {@code intervalMillis} is less than 1.
+     */
+    public TokenBucket resize(final int capacity, final long intervalMillis, final long now)
+    {
+        refill(now);
+
+        final TokenBucket bucket = new TokenBucket(capacity, intervalMillis, now);
+        if (mTokens < capacity)
+        {
+            bucket.mTokens = mTokens;
+            bucket.mLastRefill = mLastRefill;
+        }
+        return bucket;
+    }
+
+    /**
+     * Takes a token if one is available.
+     *
+     * @param now current time in milliseconds.
+     * @return true if the event may happen now.
+     */
+    public boolean tryAcquire(final long now)
+    {
+        refill(now);
+
+        if (mTokens > 0)
+        {
+            mTokens--;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param now current time in milliseconds.
+     * @return milliseconds until a token is available, 0 if one is available now.
+     */
+    public long millisUntilNextToken(final long now)
+    {
+        refill(now);
+
+        if (mTokens > 0)
+        {
+            return 0;
+        }
+        return Math.max(0, mLastRefill + mIntervalMillis - now);
+    }
+
+    private void refill(final long now)
+    {
+        if (mTokens >= mCapacity)
+        {
+            mLastRefill = now;
+            return;
+        }
+
+        final long added = (now - mLastRefill) / mIntervalMillis;
+        if (added > 0)
+        {
+            mTokens = (int) Math.min(mCapacity, mTokens + added);
+            mLastRefill = mTokens >= mCapacity ? now : mLastRefill + added * mIntervalMillis;
+        }
+    }
+}
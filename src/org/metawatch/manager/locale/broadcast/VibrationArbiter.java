@@ -0,0 +1,245 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.metawatch.manager.locale.broadcast;
+
+import java.io.PrintWriter;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+
+import org.metawatch.manager.locale.PluginPreferences;
+import org.metawatch.manager.locale.log.PluginLog;
+
+/**
+ * Decides when the watch vibrates, for both the {@code org.metawatch.manager.VIBRATE} broadcasts of widgets and the vibration
+ * carried by notifications.
+ * <p>
+ * Standalone requests arriving within the coalesce window are merged into one pattern, using the longest on and off times and the
+ * most cycles. If a notification with vibration is sent or waiting in the {@link NotificationQueue} at that time, the request is
+ * merged into the notification instead. A buzz that is not stronger than one made within the repeat window is suppressed. Both
+ * paths use the same {@link Clock}, so one event yields at most one buzz.
+ */
+public final class VibrationArbiter
+{
+    private static VibrationArbiter sInstance = null;
+
+    private final Context mContext;
+
+    private final Clock mClock;
+
+    private final Handler mHandler;
+
+    private final Runnable mFlush = new Runnable()
+    {
+        public void run()
+        {
+            flush();
+        }
+    };
+
+    /**
+     * Whether a standalone request is waiting for the end of the coalesce window.
+     */
+    private boolean mIsPending = false;
+    private int mPendingOn;
+    private int mPendingOff;
+    private int mPendingCycles;
+
+    /**
+     * Time and pattern of the last buzz, from either path.
+     */
+    private long mLastBuzzAt = Long.MIN_VALUE;
+    private int mLastOn;
+    private int mLastOff;
+    private int mLastCycles;
+
+    private long mRequestCount = 0;
+    private long mBuzzCount = 0;
+    private long mMergedCount = 0;
+    private long mSuppressedCount = 0;
+
+    /**
+     * @param context to send the broadcasts. Cannot be null.
+     * @return the arbiter of this process.
+     */
+    public static synchronized VibrationArbiter getInstance(final Context context)
+    {
+        if (null == sInstance)
+        {
+            sInstance = new VibrationArbiter(context.getApplicationContext() != null ? context.getApplicationContext() : context);
+        }
+        return sInstance;
+    }
+
+    private VibrationArbiter(final Context context)
+    {
+        this(context, Clock.ELAPSED_REALTIME, new Handler(Looper.getMainLooper()));
+    }
+
+    /**
+     * @param context to read the settings and send the broadcasts. Cannot be null.
+     * @param clock time source of the repeat window. Cannot be null.
+     * @param handler to post the end of the coalesce window. Cannot be null.
+     */
+    VibrationArbiter(final Context context, final Clock clock, final Handler handler)
+    {
+        mContext = context;
+        mClock = clock;
+        mHandler = handler;
+    }
+
+    /**
+     * @return the clock the notification path must share with this arbiter.
+     */
+    Clock getClock()
+    {
+        return mClock;
+    }
+
+    /**
+     * Requests a standalone buzz, e.g. for a widget update.
+     *
+     * @param on vibration on time in milliseconds.
+     * @param off vibration off time in milliseconds.
+     * @param cycles number of vibration cycles.
+     */
+    public void request(final int on, final int off, final int cycles)
+    {
+        /*
+         * Checked before taking this object's lock: the queue calls into the arbiter while holding its own lock
+         */
+        if (NotificationQueue.getInstance(mContext).mergeVibration(on, off, cycles))
+        {
+            synchronized (this)
+            {
+                mRequestCount++;
+                mMergedCount++;
+            }
+            return;
+        }
+
+        synchronized (this)
+        {
+            mRequestCount++;
+
+            if (mIsPending)
+            {
+                mMergedCount++;
+                mPendingOn = Math.max(mPendingOn, on);
+                mPendingOff = Math.max(mPendingOff, off);
+                mPendingCycles = Math.max(mPendingCycles, cycles);
+                return;
+            }
+
+            mIsPending = true;
+            mPendingOn = on;
+            mPendingOff = off;
+            mPendingCycles = cycles;
+
+            final SharedPreferences preferences = PluginPreferences.get(mContext);
+            final int window = Math.max(0, PluginPreferences.getInt(preferences, PluginPreferences.KEY_VIBRATION_COALESCE_WINDOW, PluginPreferences.DEFAULT_VIBRATION_COALESCE_WINDOW));
+            if (0 == window)
+            {
+                flush();
+            }
+            else
+            {
+                mHandler.postDelayed(mFlush, window);
+            }
+        }
+    }
+
+    /**
+     * Called by the {@link NotificationQueue} right before it sends a notification with vibration. A waiting standalone request
+     * is merged into the notification, so that only the notification buzzes.
+     *
+     * @param notification the notification about to be sent. Its vibration pattern may be changed.
+     * @return false if the notification must be sent without vibration because it would repeat a recent buzz.
+     */
+    synchronized boolean claimForNotification(final QueuedNotification notification)
+    {
+        mRequestCount++;
+
+        if (mIsPending)
+        {
+            mMergedCount++;
+            mIsPending = false;
+            mHandler.removeCallbacks(mFlush);
+            notification.vibrateOn = Math.max(notification.vibrateOn, mPendingOn);
+            notification.vibrateOff = Math.max(notification.vibrateOff, mPendingOff);
+            notification.vibrateCycles = Math.max(notification.vibrateCycles, mPendingCycles);
+        }
+
+        return buzz(notification.vibrateOn, notification.vibrateOff, notification.vibrateCycles);
+    }
+
+    /**
+     * Writes the statistics of the arbiter.
+     *
+     * @param writer destination. Cannot be null.
+     */
+    public synchronized void dump(final PrintWriter writer)
+    {
+        writer.println("vibration: requests=" + mRequestCount + " buzzes=" + mBuzzCount + " merged=" + mMergedCount + " suppressed=" + mSuppressedCount); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+    }
+
+    /**
+     * Sends the merged standalone request at the end of the coalesce window.
+     */
+    synchronized void flush()
+    {
+        if (!mIsPending)
+        {
+            return;
+        }
+        mIsPending = false;
+        mHandler.removeCallbacks(mFlush);
+
+        if (buzz(mPendingOn, mPendingOff, mPendingCycles))
+        {
+            final Intent broadcast = new Intent("org.metawatch.manager.VIBRATE"); //$NON-NLS-1$
+            broadcast.putExtra("vibrate_on", mPendingOn); //$NON-NLS-1$
+            broadcast.putExtra("vibrate_off", mPendingOff); //$NON-NLS-1$
+            broadcast.putExtra("vibrate_cycles", mPendingCycles); //$NON-NLS-1$
+            mContext.sendBroadcast(broadcast);
+        }
+    }
+
+    /**
+     * Records a buzz, unless it repeats a buzz at least as strong made within the repeat window.
+     *
+     * @return true if the buzz may happen.
+     */
+    private boolean buzz(final int on, final int off, final int cycles)
+    {
+        final long now = mClock.now();
+        final long repeatWindow = 1000L * Math.max(0, PluginPreferences.getInt(PluginPreferences.get(mContext), PluginPreferences.KEY_VIBRATION_REPEAT_WINDOW, PluginPreferences.DEFAULT_VIBRATION_REPEAT_WINDOW));
+
+        if (now - mLastBuzzAt < repeatWindow && on <= mLastOn && off <= mLastOff && cycles <= mLastCycles)
+        {
+            mSuppressedCount++;
+            if (PluginLog.D)
+            {
+                PluginLog.d("vibration suppressed, last buzz %d ms ago", now - mLastBuzzAt); //$NON-NLS-1$
+            }
+            return false;
+        }
+
+        mBuzzCount++;
+        mLastBuzzAt = now;
+        mLastOn = on;
+        mLastOff = off;
+        mLastCycles = cycles;
+        return true;
+    }
+}
@@ -100,6 +100,53 @@ public final class PluginBundleManager
     public static final String BUNDLE_EXTRA_INT_VIBRATE_CYCLES = "org.metawatch.manager.locale.extra.INT_VIBRATE_CYCLES"; //$NON-NLS-1$
  
     
+    /**
+     * Type: {@code String[]}
+     * <p>
+     * Optional compiled {@link org.metawatch.manager.locale.template.Template} of {@link #BUNDLE_EXTRA_STRING_TITLE}. Absent if the
+     * title has no variables.
+     */
+    public static final String BUNDLE_EXTRA_STRING_ARRAY_TITLE_TEMPLATE = "org.metawatch.manager.locale.extra.STRING_ARRAY_TITLE_TEMPLATE"; //$NON-NLS-1$
+
+    /**
+     * Type: {@code String[]}
+     * <p>
+     * Optional compiled {@link org.metawatch.manager.locale.template.Template} of {@link #BUNDLE_EXTRA_STRING_MESSAGE}. Absent if
+     * the message has no variables.
+     */
+    public static final String BUNDLE_EXTRA_STRING_ARRAY_MESSAGE_TEMPLATE = "org.metawatch.manager.locale.extra.STRING_ARRAY_MESSAGE_TEMPLATE"; //$NON-NLS-1$
+
+    /**
+     * Type: {@code String[]}
+     * <p>
+     * Optional compiled {@link org.metawatch.manager.locale.template.Template} of {@link #BUNDLE_EXTRA_STRING_WIDGET_LABEL}. Absent
+     * if the label has no variables.
+     */
+    public static final String BUNDLE_EXTRA_STRING_ARRAY_WIDGET_LABEL_TEMPLATE = "org.metawatch.manager.locale.extra.STRING_ARRAY_WIDGET_LABEL_TEMPLATE"; //$NON-NLS-1$
+
+    /**
+     * Type: {@code int}
+     * <p>
+     * Optional number of minutes between scheduled re-renders of a widget whose label has variables. Absent if the widget only
+     * changes when the setting fires.
+     */
+    public static final String BUNDLE_EXTRA_INT_WIDGET_UPDATE_MINUTES = "org.metawatch.manager.locale.extra.INT_WIDGET_UPDATE_MINUTES"; //$NON-NLS-1$
+
+    /**
+     * Type: {@code boolean}
+     * <p>
+     * Optional, true if the setting is applied each time it fires, even when it fires again with the same content within the
+     * repeat window. Absent if repeats are skipped.
+     */
+    public static final String BUNDLE_EXTRA_BOOLEAN_ALLOW_REPEAT = "org.metawatch.manager.locale.extra.BOOLEAN_ALLOW_REPEAT"; //$NON-NLS-1$
+
+    /**
+     * Type: {@code String}
+     * <p>
+     * Optional space separated list of the keys whose {@code %variables} Tasker replaces before firing the setting.
+     */
+    public static final String BUNDLE_EXTRA_STRING_TASKER_VARIABLE_REPLACE_KEYS = "net.dinglisch.android.tasker.extras.VARIABLE_REPLACE_KEYS"; //$NON-NLS-1$
+
     /**
      * Type: {@code int}
      * <p>
@@ -112,6 +159,18 @@ public final class PluginBundleManager
      */
     public static final String BUNDLE_EXTRA_INT_VERSION_CODE = "com.yourcompany.yourcondition.extra.INT_VERSION_CODE"; //$NON-NLS-1$
 
+    /**
+     * Number of extras every Bundle contains.
+     */
+    private static final int REQUIRED_EXTRA_COUNT = 11;
+
+    /**
+     * Extras that were added after the first version of the Bundle, and that a Bundle may omit.
+     */
+    private static final String[] OPTIONAL_EXTRAS = new String[] { BUNDLE_EXTRA_STRING_ARRAY_TITLE_TEMPLATE, BUNDLE_EXTRA_STRING_ARRAY_MESSAGE_TEMPLATE,
+            BUNDLE_EXTRA_STRING_ARRAY_WIDGET_LABEL_TEMPLATE, BUNDLE_EXTRA_STRING_TASKER_VARIABLE_REPLACE_KEYS, BUNDLE_EXTRA_INT_WIDGET_UPDATE_MINUTES,
+            BUNDLE_EXTRA_BOOLEAN_ALLOW_REPEAT };
+
     /**
      * Method to verify the content of the bundle are correct.
      * <p>
@@ -192,11 +251,19 @@ public final class PluginBundleManager
          * error message is more useful. (E.g. the caller will see what extras are missing, rather than just a message that there
          * is the wrong number).
          */
-        if (11 != bundle.keySet().size())
+        int optionalCount = 0;
+        for (final String key : OPTIONAL_EXTRAS)
+        {
+            if (bundle.containsKey(key))
+            {
+                optionalCount++;
+            }
+        }
+        if (REQUIRED_EXTRA_COUNT + optionalCount != bundle.keySet().size())
         {
             if (Constants.IS_LOGGABLE)
             {
-                Log.e(Constants.LOG_TAG, String.format("bundle must contain 11 keys, but currently contains %d keys: %s", Integer.valueOf(bundle.keySet().size()), bundle.keySet() //$NON-NLS-1$
+                Log.e(Constants.LOG_TAG, String.format("bundle must contain %d keys, but currently contains %d keys: %s", Integer.valueOf(REQUIRED_EXTRA_COUNT + optionalCount), Integer.valueOf(bundle.keySet().size()), bundle.keySet() //$NON-NLS-1$
                                                                                                                                                                        .toString()));
             }
             return false;
@@ -0,0 +1,93 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.metawatch.manager.locale.cache;
+
+import org.metawatch.manager.locale.render.WidgetSize;
+
+/**
+ * State of a widget that was fired, kept by the {@link WidgetCache} so that it can be sent again as a preview or re-rendered
+ * on a schedule.
+ */
+public final class CachedWidget
+{
+    /**
+     * Id of the widget, as entered by the user.
+     */
+    public final String id;
+
+    /**
+     * Name of the icon.
+     */
+    public String icon;
+
+    /**
+     * Label as last rendered.
+     */
+    public String label;
+
+    /**
+     * Compiled template of the label, or null if the label is static.
+     */
+    public String[] template;
+
+    /**
+     * Wall clock time the setting last fired.
+     */
+    public long firedAt;
+
+    /**
+     * Minutes between scheduled re-renders, or 0 if the widget only changes when the setting fires.
+     */
+    public int updateMinutes;
+
+    /**
+     * Wall clock time of the next scheduled re-render.
+     */
+    public long dueAt;
+
+    /**
+     * Last frame sent for each size, packed by {@link org.metawatch.manager.locale.render.MonoFrame}, indexed by
+     * {@link WidgetSize#index}. An element is null if the frame is not known.
+     */
+    public final byte[][] frames = new byte[WidgetSize.ALL.length][];
+
+    /**
+     * @param id id of the widget. Cannot be null.
+     */
+    public CachedWidget(final String id)
+    {
+        this.id = id;
+    }
+
+    /**
+     * @return a copy of the widget, to be changed and stored with {@link WidgetCache#replace(CachedWidget, CachedWidget)}. The
+     *         frames are shared, as a stored frame is never changed.
+     */
+    public CachedWidget copy()
+    {
+        final CachedWidget copy = new CachedWidget(id);
+        copy.icon = icon;
+        copy.label = label;
+        copy.template = template;
+        copy.firedAt = firedAt;
+        copy.updateMinutes = updateMinutes;
+        copy.dueAt = dueAt;
+        System.arraycopy(frames, 0, copy.frames, 0, frames.length);
+        return copy;
+    }
+
+    /**
+     * @return true if the widget is re-rendered on a schedule.
+     */
+    public boolean isDynamic()
+    {
+        return updateMinutes > 0 && null != template;
+    }
+}
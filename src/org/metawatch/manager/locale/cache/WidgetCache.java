@@ -0,0 +1,296 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.metawatch.manager.locale.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import android.content.Context;
+
+import org.metawatch.manager.locale.log.PluginLog;
+import org.metawatch.manager.locale.render.WidgetSize;
+
+/**
+ * Widgets that were fired, one file per widget in the cache directory of the app.
+ * <p>
+ * The files are read once per process and then served from memory. Every change is written through. Files written by earlier
+ * versions ({@code icon|id|label}) are still read.
+ * <p>
+ * A stored widget is shared by the threads reading the cache, so it is never changed once stored: a change is made on a
+ * {@link CachedWidget#copy()} that replaces it.
+ */
+public final class WidgetCache
+{
+    /**
+     * First bytes of a cache file, "LMWC".
+     */
+    private static final int MAGIC = 0x4c4d5743;
+
+    private static final int VERSION = 1;
+
+    private static WidgetCache sInstance = null;
+
+    private final File mDirectory;
+
+    private final HashMap<String, CachedWidget> mWidgets = new HashMap<String, CachedWidget>();
+
+    /**
+     * @param context to find the cache directory. Cannot be null.
+     * @return the cache of this process.
+     */
+    public static synchronized WidgetCache getInstance(final Context context)
+    {
+        if (null == sInstance)
+        {
+            sInstance = new WidgetCache(context.getCacheDir());
+        }
+        return sInstance;
+    }
+
+    private WidgetCache(final File directory)
+    {
+        mDirectory = directory;
+
+        final File[] files = directory.listFiles();
+        if (null == files)
+        {
+            return;
+        }
+
+        for (final File file : files)
+        {
+            if (!file.isFile())
+            {
+                continue;
+            }
+
+            try
+            {
+                final CachedWidget widget = read(file);
+                if (null != widget)
+                {
+                    mWidgets.put(widget.id, widget);
+                }
+            }
+            catch (final IOException e)
+            {
+                PluginLog.w("unreadable cache file %s", file.getName()); //$NON-NLS-1$
+            }
+        }
+    }
+
+    /**
+     * @param id id of the widget.
+     * @return the widget, or null if it was never fired.
+     */
+    public synchronized CachedWidget get(final String id)
+    {
+        return mWidgets.get(id);
+    }
+
+    /**
+     * @return a snapshot of all the widgets.
+     */
+    public synchronized ArrayList<CachedWidget> getAll()
+    {
+        return new ArrayList<CachedWidget>(mWidgets.values());
+    }
+
+    /**
+     * Adds or replaces a widget and writes it to its file.
+     *
+     * @param widget the widget. Cannot be null.
+     */
+    public synchronized void put(final CachedWidget widget)
+    {
+        mWidgets.put(widget.id, widget);
+
+        try
+        {
+            write(widget, new File(mDirectory, widget.id));
+        }
+        catch (final IOException e)
+        {
+            PluginLog.w("could not write cache file %s", widget.id); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Replaces a widget, unless it was replaced since it was read, e.g. by a fire while it was being rendered.
+     *
+     * @param expected the widget as read from the cache. Cannot be null.
+     * @param widget the new widget, with the same id. Cannot be null.
+     * @return true if the widget was replaced and written to its file.
+     */
+    public synchronized boolean replace(final CachedWidget expected, final CachedWidget widget)
+    {
+        if (mWidgets.get(widget.id) != expected)
+        {
+            return false;
+        }
+        put(widget);
+        return true;
+    }
+
+    /**
+     * Forgets a widget and deletes its file.
+     *
+     * @param id id of the widget.
+     * @return true if the widget was cached.
+     */
+    public synchronized boolean remove(final String id)
+    {
+        final File file = new File(mDirectory, id);
+        if (file.exists() && !file.delete())
+        {
+            PluginLog.w("could not delete cache file %s", id); //$NON-NLS-1$
+        }
+        return null != mWidgets.remove(id);
+    }
+
+    private static void write(final CachedWidget widget, final File file) throws IOException
+    {
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try
+        {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(widget.id);
+            out.writeUTF(widget.icon);
+            out.writeUTF(widget.label);
+
+            if (null == widget.template)
+            {
+                out.writeInt(-1);
+            }
+            else
+            {
+                out.writeInt(widget.template.length);
+                for (final String element : widget.template)
+                {
+                    out.writeUTF(element);
+                }
+            }
+
+            out.writeLong(widget.firedAt);
+            out.writeInt(widget.updateMinutes);
+            out.writeLong(widget.dueAt);
+
+            out.writeInt(widget.frames.length);
+            for (final byte[] frame : widget.frames)
+            {
+                if (null == frame)
+                {
+                    out.writeInt(-1);
+                }
+                else
+                {
+                    out.writeInt(frame.length);
+                    out.write(frame);
+                }
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    private static CachedWidget read(final File file) throws IOException
+    {
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try
+        {
+            in.mark(4);
+            if (MAGIC != in.readInt())
+            {
+                in.reset();
+                return readLegacy(in);
+            }
+
+            if (VERSION != in.readInt())
+            {
+                return null;
+            }
+
+            final CachedWidget widget = new CachedWidget(in.readUTF());
+            widget.icon = in.readUTF();
+            widget.label = in.readUTF();
+
+            final int templateLength = in.readInt();
+            if (templateLength >= 0)
+            {
+                widget.template = new String[templateLength];
+                for (int i = 0; i < templateLength; i++)
+                {
+                    widget.template[i] = in.readUTF();
+                }
+            }
+
+            widget.firedAt = in.readLong();
+            widget.updateMinutes = in.readInt();
+            widget.dueAt = in.readLong();
+
+            final int frameCount = in.readInt();
+            for (int i = 0; i < frameCount; i++)
+            {
+                final int length = in.readInt();
+                if (length >= 0)
+                {
+                    final byte[] frame = new byte[length];
+                    in.readFully(frame);
+                    if (i < WidgetSize.ALL.length)
+                    {
+                        widget.frames[i] = frame;
+                    }
+                }
+            }
+
+            return widget;
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * Reads a file written by versions before the binary format: {@code icon|id|label}.
+     */
+    private static CachedWidget readLegacy(final DataInputStream in) throws IOException
+    {
+        final StringBuilder content = new StringBuilder();
+        final byte[] buffer = new byte[1024];
+        int length;
+        while ((length = in.read(buffer)) != -1)
+        {
+            content.append(new String(buffer, 0, length));
+        }
+
+        final String[] sections = content.toString().split("\\|", 3); //$NON-NLS-1$
+        if (3 != sections.length)
+        {
+            return null;
+        }
+
+        final CachedWidget widget = new CachedWidget(sections[1]);
+        widget.icon = sections[0];
+        widget.label = sections[2];
+        return widget;
+    }
+}
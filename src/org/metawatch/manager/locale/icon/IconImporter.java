@@ -0,0 +1,243 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.metawatch.manager.locale.icon;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Locale;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.net.Uri;
+import android.provider.OpenableColumns;
+
+import org.metawatch.manager.locale.PluginPreferences;
+import org.metawatch.manager.locale.R;
+import org.metawatch.manager.locale.render.Dither;
+import org.metawatch.manager.locale.render.WidgetSize;
+
+/**
+ * Converts an image chosen by the user into the icon formats of the watch and adds it to the {@link IconPack}.
+ * <p>
+ * The image is decoded, scaled and converted to black and white once, when it is imported, with the {@link Dither} mode chosen
+ * in the settings. The render path only ever reads the pack, which is the cache of the conversions.
+ */
+public final class IconImporter
+{
+    /**
+     * Private constructor prevents instantiation
+     *
+     * @throws UnsupportedOperationException because this class cannot be instantiated.
+     */
+    private IconImporter()
+    {
+        throw new UnsupportedOperationException("This class is non-instantiable"); //$NON-NLS-1$
+    }
+
+    /**
+     * The image is decoded at no less than this many times the largest icon, so that scaling down still averages pixels.
+     */
+    private static final int OVERSAMPLING = 2;
+
+    /**
+     * Imports an image. This decodes the image, so it must not be called on the UI thread.
+     *
+     * @param context to read the image and write the pack. Cannot be null.
+     * @param uri content or file URI of the image.
+     * @return the name of the new icon.
+     * @throws IOException if the image could not be read or the pack could not be written.
+     */
+    public static String importIcon(final Context context, final Uri uri) throws IOException
+    {
+        final Bitmap source = decode(context, uri);
+        if (null == source)
+        {
+            throw new IOException("not an image: " + uri); //$NON-NLS-1$
+        }
+
+        final int mode = PluginPreferences.getInt(PluginPreferences.get(context), PluginPreferences.KEY_ICON_DITHER, PluginPreferences.DEFAULT_ICON_DITHER);
+        final byte[][] masks = new byte[WidgetSize.ALL.length][];
+        try
+        {
+            for (final WidgetSize size : WidgetSize.ALL)
+            {
+                masks[size.index] = toMask(source, size, mode);
+            }
+        }
+        finally
+        {
+            source.recycle();
+        }
+
+        final HashSet<String> taken = new HashSet<String>(Arrays.asList(context.getResources().getStringArray(R.array.icons)));
+        taken.addAll(IconPack.getInstance(context).getNames());
+        final String name = getUniqueName(getFileName(context, uri), taken);
+
+        IconPack.add(new File(context.getFilesDir(), IconPack.FILE_NAME), name, masks);
+        return name;
+    }
+
+    /**
+     * @return the file name of the image: the display name given by the provider of a content URI, or the last path segment of a
+     *         file URI. Null if it is not known.
+     */
+    private static String getFileName(final Context context, final Uri uri)
+    {
+        if ("file".equals(uri.getScheme())) //$NON-NLS-1$
+        {
+            return uri.getLastPathSegment();
+        }
+
+        /*
+         * The path of a content URI is chosen by its provider, e.g. "images/media/1234", so it says nothing about the image
+         */
+        final Cursor cursor = context.getContentResolver().query(uri, new String[] { OpenableColumns.DISPLAY_NAME }, null, null, null);
+        if (null == cursor)
+        {
+            return null;
+        }
+        try
+        {
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        }
+        finally
+        {
+            cursor.close();
+        }
+    }
+
+    private static Bitmap decode(final Context context, final Uri uri) throws IOException
+    {
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        decode(context, uri, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0)
+        {
+            return null;
+        }
+
+        /*
+         * Photos are far larger than an icon, so only a subsample of the image is decoded
+         */
+        final int minimumWidth = WidgetSize.LARGE.iconWidth * OVERSAMPLING;
+        final int minimumHeight = WidgetSize.LARGE.iconHeight * OVERSAMPLING;
+        int sampleSize = 1;
+        while (options.outWidth / (sampleSize * 2) >= minimumWidth && options.outHeight / (sampleSize * 2) >= minimumHeight)
+        {
+            sampleSize *= 2;
+        }
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        return decode(context, uri, options);
+    }
+
+    private static Bitmap decode(final Context context, final Uri uri, final BitmapFactory.Options options) throws IOException
+    {
+        final InputStream in = context.getContentResolver().openInputStream(uri);
+        if (null == in)
+        {
+            throw new IOException("could not open " + uri); //$NON-NLS-1$
+        }
+        try
+        {
+            return BitmapFactory.decodeStream(in, null, options);
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * Scales the image to fit the icon of a size, centered on white, and packs it.
+     */
+    private static byte[] toMask(final Bitmap source, final WidgetSize size, final int mode)
+    {
+        final Bitmap icon = Bitmap.createBitmap(size.iconWidth, size.iconHeight, Bitmap.Config.RGB_565);
+        try
+        {
+            final float scale = Math.min(size.iconWidth / (float) source.getWidth(), size.iconHeight / (float) source.getHeight());
+            final int width = Math.max(1, Math.round(source.getWidth() * scale));
+            final int height = Math.max(1, Math.round(source.getHeight() * scale));
+            final int left = (size.iconWidth - width) / 2;
+            final int top = (size.iconHeight - height) / 2;
+
+            final Canvas canvas = new Canvas(icon);
+            canvas.drawColor(Color.WHITE);
+            canvas.drawBitmap(source, null, new Rect(left, top, left + width, top + height), new Paint(Paint.FILTER_BITMAP_FLAG));
+
+            final int[] pixels = new int[size.iconWidth * size.iconHeight];
+            icon.getPixels(pixels, 0, size.iconWidth, 0, 0, size.iconWidth, size.iconHeight);
+
+            final byte[] mask = new byte[IconPack.getMaskLength(size)];
+            Dither.pack(pixels, size.iconWidth, size.iconHeight, mode, mask);
+            return mask;
+        }
+        finally
+        {
+            icon.recycle();
+        }
+    }
+
+    /**
+     * Derives the name of an icon from the name of its image.
+     *
+     * @param fileName name of the image, e.g. "My Cat.png". May be null.
+     * @param taken names already in use.
+     * @return a lower case name made of letters, digits and underscores, that is not in {@code taken}.
+     */
+    public static String getUniqueName(final String fileName, final Collection<String> taken)
+    {
+        final StringBuilder base = new StringBuilder();
+        if (null != fileName)
+        {
+            final int dot = fileName.lastIndexOf('.');
+            final String stem = (dot > 0 ? fileName.substring(0, dot) : fileName).toLowerCase(Locale.US);
+            for (int i = 0; i < stem.length() && base.length() < IconPack.MAX_NAME_LENGTH - 3; i++)
+            {
+                final char c = stem.charAt(i);
+                if ((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9'))
+                {
+                    base.append(c);
+                }
+                else if (base.length() > 0 && '_' != base.charAt(base.length() - 1))
+                {
+                    base.append('_');
+                }
+            }
+            if (base.length() > 0 && '_' == base.charAt(base.length() - 1))
+            {
+                base.setLength(base.length() - 1);
+            }
+        }
+        if (0 == base.length())
+        {
+            base.append("icon"); //$NON-NLS-1$
+        }
+
+        String name = base.toString();
+        for (int i = 2; taken.contains(name); i++)
+        {
+            name = base.toString() + i;
+        }
+        return name;
+    }
+}
@@ -0,0 +1,391 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.metawatch.manager.locale.icon;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import android.content.Context;
+import android.graphics.Color;
+
+import org.metawatch.manager.locale.log.PluginLog;
+import org.metawatch.manager.locale.render.WidgetSize;
+
+/**
+ * The icons imported by the user, stored as 1 bit per pixel masks in a single indexed file.
+ * <p>
+ * The file is memory mapped, so opening it only parses the index and drawing an icon reads its mask straight from the page cache.
+ * The file is never modified in place: {@link #add(File, String, byte[][])} writes a new file and renames it over the old one,
+ * so a pack that is already mapped stays valid.
+ * <p>
+ * Layout, big endian:
+ *
+ * <pre>
+ * int magic, int version, int sizeCount, int iconCount
+ * iconCount times: byte nameLength, ASCII name, sizeCount times int maskOffset
+ * at each maskOffset: short width, short height, packed pixels
+ * </pre>
+ *
+ * Masks are packed as described in {@link org.metawatch.manager.locale.render.MonoFrame}, one per {@link WidgetSize}.
+ */
+public final class IconPack
+{
+    /**
+     * Name of the pack in the files directory of the app.
+     */
+    public static final String FILE_NAME = "icons.pack"; //$NON-NLS-1$
+
+    /**
+     * Longest name of an icon.
+     */
+    public static final int MAX_NAME_LENGTH = 24;
+
+    /**
+     * First bytes of the file, "LMWI".
+     */
+    private static final int MAGIC = 0x4c4d5749;
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER_LENGTH = 16;
+
+    private static IconPack sInstance = null;
+
+    /**
+     * Incremented each time this process writes the pack or sees that it changed.
+     */
+    private static int sGeneration = 0;
+
+    /**
+     * Modification time and length of the file when it was opened. Adding an icon always makes the file longer.
+     */
+    private final long mLastModified;
+
+    private final long mLength;
+
+    /**
+     * The mapped file, or null if there is no pack.
+     */
+    private final ByteBuffer mBuffer;
+
+    /**
+     * Names of the icons, in the order they were imported.
+     */
+    private final ArrayList<String> mNames = new ArrayList<String>();
+
+    /**
+     * Offset of the first mask offset in the index, keyed by icon name.
+     */
+    private final HashMap<String, Integer> mIndex = new HashMap<String, Integer>();
+
+    /**
+     * Gets the pack of this process. The pack is reopened when another process has imported an icon since it was opened.
+     *
+     * @param context to find the files directory. Cannot be null.
+     * @return the current icon pack.
+     */
+    public static synchronized IconPack getInstance(final Context context)
+    {
+        final File file = new File(context.getFilesDir(), FILE_NAME);
+        if (null == sInstance || sInstance.mLastModified != file.lastModified() || sInstance.mLength != file.length())
+        {
+            sInstance = new IconPack(file);
+            sGeneration++;
+        }
+        return sInstance;
+    }
+
+    /**
+     * @return a number that changes when this process writes the pack or {@link #getInstance(Context)} finds that it changed,
+     *         so that lookups of missing icons can be cached without checking the file each time.
+     */
+    public static synchronized int getGeneration()
+    {
+        return sGeneration;
+    }
+
+    /**
+     * Opens a pack. A missing or unreadable file is an empty pack.
+     *
+     * @param file the pack. Cannot be null.
+     */
+    public IconPack(final File file)
+    {
+        mLastModified = file.lastModified();
+        mLength = file.length();
+        mBuffer = file.exists() ? map(file) : null;
+
+        if (null != mBuffer && !readIndex(mBuffer))
+        {
+            PluginLog.w("invalid icon pack %s", file.getName()); //$NON-NLS-1$
+            mNames.clear();
+            mIndex.clear();
+        }
+    }
+
+    private static ByteBuffer map(final File file)
+    {
+        try
+        {
+            final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r"); //$NON-NLS-1$
+            try
+            {
+                /*
+                 * The mapping stays valid after the channel is closed
+                 */
+                final FileChannel channel = randomAccessFile.getChannel();
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            finally
+            {
+                randomAccessFile.close();
+            }
+        }
+        catch (final IOException e)
+        {
+            PluginLog.w("could not map icon pack %s", file.getName()); //$NON-NLS-1$
+            return null;
+        }
+    }
+
+    private boolean readIndex(final ByteBuffer buffer)
+    {
+        if (buffer.limit() < HEADER_LENGTH || MAGIC != buffer.getInt(0) || VERSION != buffer.getInt(4) || WidgetSize.ALL.length != buffer.getInt(8))
+        {
+            return false;
+        }
+
+        final int count = buffer.getInt(12);
+        int position = HEADER_LENGTH;
+        final char[] name = new char[MAX_NAME_LENGTH];
+        for (int i = 0; i < count; i++)
+        {
+            if (position >= buffer.limit())
+            {
+                return false;
+            }
+            final int nameLength = buffer.get(position) & 0xff;
+            if (nameLength > MAX_NAME_LENGTH || position + 1 + nameLength + 4 * WidgetSize.ALL.length > buffer.limit())
+            {
+                return false;
+            }
+            for (int j = 0; j < nameLength; j++)
+            {
+                name[j] = (char) (buffer.get(position + 1 + j) & 0xff);
+            }
+            position += 1 + nameLength;
+
+            final String key = new String(name, 0, nameLength);
+            mNames.add(key);
+            mIndex.put(key, Integer.valueOf(position));
+            position += 4 * WidgetSize.ALL.length;
+        }
+        return true;
+    }
+
+    /**
+     * @return the names of the icons, in the order they were imported.
+     */
+    public ArrayList<String> getNames()
+    {
+        return new ArrayList<String>(mNames);
+    }
+
+    /**
+     * @param name name of an icon.
+     * @return true if the pack has this icon.
+     */
+    public boolean contains(final String name)
+    {
+        return mIndex.containsKey(name);
+    }
+
+    /**
+     * Unpacks the mask of an icon into black and white pixels.
+     *
+     * @param name name of the icon.
+     * @param size format the icon is drawn in.
+     * @param out destination, {@code size.iconWidth * size.iconHeight} pixels.
+     * @return false if the pack has no such icon.
+     */
+    public boolean unpack(final String name, final WidgetSize size, final int[] out)
+    {
+        final int offset = getMaskOffset(name, size);
+        if (offset < 0)
+        {
+            return false;
+        }
+
+        final int bits = offset + 4;
+        for (int i = 0; i < out.length; i++)
+        {
+            out[i] = 0 != (mBuffer.get(bits + (i >> 3)) & 0x80 >>> (i & 7)) ? Color.BLACK : Color.WHITE;
+        }
+        return true;
+    }
+
+    /**
+     * @param name name of the icon.
+     * @param size format of the mask.
+     * @return a copy of the packed mask, or null if the pack has no such icon.
+     */
+    public byte[] getMask(final String name, final WidgetSize size)
+    {
+        final int offset = getMaskOffset(name, size);
+        if (offset < 0)
+        {
+            return null;
+        }
+
+        final byte[] mask = new byte[getMaskLength(size)];
+        for (int i = 0; i < mask.length; i++)
+        {
+            mask[i] = mBuffer.get(offset + 4 + i);
+        }
+        return mask;
+    }
+
+    /**
+     * @return offset of the mask header, or -1 if the icon is missing or the mask does not have the dimensions of {@code size}.
+     */
+    private int getMaskOffset(final String name, final WidgetSize size)
+    {
+        final Integer entry = mIndex.get(name);
+        if (null == entry)
+        {
+            return -1;
+        }
+
+        final int offset = mBuffer.getInt(entry.intValue() + 4 * size.index);
+        if (offset < 0 || offset + 4 + getMaskLength(size) > mBuffer.limit() || size.iconWidth != mBuffer.getShort(offset) || size.iconHeight != mBuffer.getShort(offset + 2))
+        {
+            return -1;
+        }
+        return offset;
+    }
+
+    /**
+     * @param size format of the mask.
+     * @return number of bytes of a packed icon of this size.
+     */
+    public static int getMaskLength(final WidgetSize size)
+    {
+        return (size.iconWidth * size.iconHeight + 7) / 8;
+    }
+
+    /**
+     * Adds an icon to a pack, creating the pack if needed.
+     *
+     * @param file the pack. Cannot be null.
+     * @param name name of the icon: ASCII, at most {@link #MAX_NAME_LENGTH} characters, not already in the pack.
+     * @param masks packed mask of the icon for each {@link WidgetSize}, indexed by {@link WidgetSize#index}.
+     * @throws IOException if the pack could not be written.
+     */
+    public static synchronized void add(final File file, final String name, final byte[][] masks) throws IOException
+    {
+        if (name.length() == 0 || name.length() > MAX_NAME_LENGTH)
+        {
+            throw new IllegalArgumentException("invalid icon name " + name); //$NON-NLS-1$
+        }
+
+        final IconPack current = new IconPack(file);
+        if (current.contains(name))
+        {
+            throw new IllegalArgumentException("duplicate icon name " + name); //$NON-NLS-1$
+        }
+
+        final ArrayList<String> names = current.getNames();
+        final ArrayList<byte[][]> allMasks = new ArrayList<byte[][]>(names.size() + 1);
+        for (final String existing : names)
+        {
+            final byte[][] existingMasks = new byte[WidgetSize.ALL.length][];
+            for (final WidgetSize size : WidgetSize.ALL)
+            {
+                existingMasks[size.index] = current.getMask(existing, size);
+            }
+            allMasks.add(existingMasks);
+        }
+        names.add(name);
+        allMasks.add(masks);
+
+        final File temporary = new File(file.getPath() + ".tmp"); //$NON-NLS-1$
+        write(temporary, names, allMasks);
+        if (!temporary.renameTo(file))
+        {
+            temporary.delete();
+            throw new IOException("could not replace " + file.getName()); //$NON-NLS-1$
+        }
+        sGeneration++;
+    }
+
+    private static void write(final File file, final ArrayList<String> names, final ArrayList<byte[][]> masks) throws IOException
+    {
+        int indexLength = 0;
+        for (final String name : names)
+        {
+            indexLength += 1 + name.length() + 4 * WidgetSize.ALL.length;
+        }
+
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try
+        {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(WidgetSize.ALL.length);
+            out.writeInt(names.size());
+
+            int offset = HEADER_LENGTH + indexLength;
+            for (int i = 0; i < names.size(); i++)
+            {
+                final String name = names.get(i);
+                out.writeByte(name.length());
+                out.writeBytes(name);
+                for (final WidgetSize size : WidgetSize.ALL)
+                {
+                    if (null == masks.get(i)[size.index])
+                    {
+                        out.writeInt(-1);
+                    }
+                    else
+                    {
+                        out.writeInt(offset);
+                        offset += 4 + getMaskLength(size);
+                    }
+                }
+            }
+
+            for (final byte[][] iconMasks : masks)
+            {
+                for (final WidgetSize size : WidgetSize.ALL)
+                {
+                    final byte[] mask = iconMasks[size.index];
+                    if (null != mask)
+                    {
+                        out.writeShort(size.iconWidth);
+                        out.writeShort(size.iconHeight);
+                        out.write(mask, 0, getMaskLength(size));
+                    }
+                }
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,628 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.metawatch.manager.locale.log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.List;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+
+/**
+ * Journal of the settings fired, kept in a fixed-size file of fixed-size records, so it never grows past
+ * {@link #CAPACITY} entries.
+ * <p>
+ * Recording an entry only copies it into a pre-allocated in-memory ring; the file is written by a background thread. If the
+ * thread falls behind, the oldest entries not written yet are dropped, so {@link #record} never waits for the disk. Queries
+ * read the file and may be slow: they must not be made on the fire path.
+ */
+public final class FireJournal
+{
+    public static final int TYPE_INVALID = 0;
+
+    public static final int TYPE_NOTIFICATION = 1;
+
+    public static final int TYPE_WIDGET = 2;
+
+    /**
+     * The frames or the notification were broadcast.
+     */
+    public static final int OUTCOME_SENT = 0;
+
+    /**
+     * The notification is waiting in the outgoing queue.
+     */
+    public static final int OUTCOME_QUEUED = 1;
+
+    /**
+     * The notification was dropped by the outgoing queue, as a duplicate or because the queue is full.
+     */
+    public static final int OUTCOME_DROPPED = 2;
+
+    /**
+     * The Bundle was rejected.
+     */
+    public static final int OUTCOME_REJECTED = 3;
+
+    /**
+     * The setting was fired again with the same content within the repeat window, and was skipped.
+     */
+    public static final int OUTCOME_REPEATED = 4;
+
+    /**
+     * Number of entries kept in the file.
+     */
+    public static final int CAPACITY = 1024;
+
+    private static final String FILE_NAME = "fire_journal"; //$NON-NLS-1$
+
+    /**
+     * First bytes of the file, "LMFJ".
+     */
+    private static final int MAGIC = 0x4c4d464a;
+
+    private static final int VERSION = 1;
+
+    /**
+     * Magic, version, capacity, index of the next record and total number of records.
+     */
+    private static final int HEADER_SIZE = 4 + 4 + 4 + 4 + 8;
+
+    /**
+     * Maximum length of the widget id in a record, in UTF-8 bytes. Longer ids are truncated.
+     */
+    private static final int MAX_ID_LENGTH = 36;
+
+    /**
+     * Time, type, outcome, the four durations, then the length and bytes of the widget id.
+     */
+    private static final int RECORD_SIZE = 8 + 1 + 1 + 4 * 4 + 2 + MAX_ID_LENGTH;
+
+    /**
+     * Number of entries waiting to be written.
+     */
+    private static final int PENDING_CAPACITY = 64;
+
+    private static final String[] TYPE_NAMES = new String[] { "invalid", "notification", "widget" }; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+
+    private static final String[] OUTCOME_NAMES = new String[] { "sent", "queued", "dropped", "rejected", "repeated" }; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+
+    private static FireJournal sInstance = null;
+
+    private final File mFile;
+
+    private final int mCapacity;
+
+    private final Handler mWriter;
+
+    /**
+     * Entries not written yet. Guarded by itself.
+     */
+    private final Entry[] mPending = new Entry[PENDING_CAPACITY];
+
+    private int mPendingStart = 0;
+
+    private int mPendingSize = 0;
+
+    /**
+     * Entries lost because the writer fell behind.
+     */
+    private long mLostCount = 0;
+
+    private boolean mIsFlushPosted = false;
+
+    /**
+     * Guards the file.
+     */
+    private final Object mFileLock = new Object();
+
+    /**
+     * Copy of the pending entries being written, only used with {@link #mFileLock}.
+     */
+    private final Entry[] mWriting = new Entry[PENDING_CAPACITY];
+
+    private final byte[] mRecord = new byte[RECORD_SIZE];
+
+    private final Runnable mFlush = new Runnable()
+    {
+        public void run()
+        {
+            flush();
+        }
+    };
+
+    /**
+     * @param context to find the files directory. Cannot be null.
+     * @return the journal of this process.
+     */
+    public static synchronized FireJournal getInstance(final Context context)
+    {
+        if (null == sInstance)
+        {
+            final HandlerThread thread = new HandlerThread("fire journal", Process.THREAD_PRIORITY_BACKGROUND); //$NON-NLS-1$
+            thread.start();
+            sInstance = new FireJournal(new File(context.getFilesDir(), FILE_NAME), CAPACITY, thread.getLooper());
+        }
+        return sInstance;
+    }
+
+    /**
+     * @param file the journal file.
+     * @param capacity number of entries kept in the file.
+     * @param writerLooper looper of the thread writing the file.
+     */
+    FireJournal(final File file, final int capacity, final Looper writerLooper)
+    {
+        mFile = file;
+        mCapacity = capacity;
+        mWriter = new Handler(writerLooper);
+        for (int i = 0; i < PENDING_CAPACITY; i++)
+        {
+            mPending[i] = new Entry();
+            mWriting[i] = new Entry();
+        }
+    }
+
+    /**
+     * Records a fire. Never blocks on the file.
+     *
+     * @param time wall clock time of the fire.
+     * @param type one of the {@code TYPE_} constants.
+     * @param widgetId id of the widget, or null.
+     * @param outcome one of the {@code OUTCOME_} constants.
+     * @param prepareMillis time taken to check the Bundle and evaluate the templates.
+     * @param deliverMillis time taken to render and broadcast the frames, or to queue the notification.
+     * @param storeMillis time taken to cache the widget, schedule its updates and request the vibration.
+     * @param totalMillis time from the reception of the intent to the end of the fire.
+     */
+    public void record(final long time, final int type, final String widgetId, final int outcome, final long prepareMillis, final long deliverMillis, final long storeMillis, final long totalMillis)
+    {
+        synchronized (mPending)
+        {
+            if (PENDING_CAPACITY == mPendingSize)
+            {
+                mPendingStart = (mPendingStart + 1) % PENDING_CAPACITY;
+                mPendingSize--;
+                mLostCount++;
+            }
+
+            final Entry entry = mPending[(mPendingStart + mPendingSize) % PENDING_CAPACITY];
+            entry.time = time;
+            entry.type = type;
+            entry.widgetId = widgetId;
+            entry.outcome = outcome;
+            entry.prepareMillis = (int) prepareMillis;
+            entry.deliverMillis = (int) deliverMillis;
+            entry.storeMillis = (int) storeMillis;
+            entry.totalMillis = (int) totalMillis;
+            mPendingSize++;
+
+            if (!mIsFlushPosted)
+            {
+                mIsFlushPosted = true;
+                mWriter.post(mFlush);
+            }
+        }
+    }
+
+    /**
+     * Reads the entries recorded in a time range, including the ones not written yet.
+     *
+     * @param from start of the range, inclusive, in wall clock time.
+     * @param to end of the range, exclusive, in wall clock time.
+     * @return copies of the entries, oldest first.
+     */
+    public List<Entry> query(final long from, final long to)
+    {
+        final ArrayList<Entry> entries = new ArrayList<Entry>();
+        synchronized (mFileLock)
+        {
+            flush();
+
+            RandomAccessFile file = null;
+            try
+            {
+                file = new RandomAccessFile(mFile, "r"); //$NON-NLS-1$
+                if (!isHeaderValid(file))
+                {
+                    return entries;
+                }
+                final int next = file.readInt();
+                final int size = (int) Math.min(file.readLong(), mCapacity);
+
+                for (int i = 0; i < size; i++)
+                {
+                    file.seek(getOffset((next - size + i + mCapacity) % mCapacity));
+                    file.readFully(mRecord);
+                    final Entry entry = decode(mRecord);
+                    if (entry.time >= from && entry.time < to)
+                    {
+                        entries.add(entry);
+                    }
+                }
+            }
+            catch (final IOException e)
+            {
+                PluginLog.w("could not read fire journal %s", e.getMessage()); //$NON-NLS-1$
+            }
+            finally
+            {
+                close(file);
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Writes the statistics of the last day and the last few entries.
+     *
+     * @param writer destination. Cannot be null.
+     */
+    public void dump(final PrintWriter writer)
+    {
+        final long now = System.currentTimeMillis();
+        final List<Entry> entries = query(now - 24 * 60 * 60 * 1000L, Long.MAX_VALUE);
+
+        synchronized (mPending)
+        {
+            writer.println("fire journal: " + entries.size() + " in the last day, " + mLostCount + " lost"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        }
+        new Stats(entries).dump(writer);
+
+        final StringBuilder line = new StringBuilder(96);
+        for (int i = Math.max(0, entries.size() - 10); i < entries.size(); i++)
+        {
+            line.setLength(0);
+            entries.get(i).appendTo(line);
+            writer.println(line);
+        }
+    }
+
+    /**
+     * Writes the pending entries to the file. Runs on the writer thread, or on the thread of a query.
+     */
+    void flush()
+    {
+        synchronized (mFileLock)
+        {
+            final int count;
+            synchronized (mPending)
+            {
+                mIsFlushPosted = false;
+                count = mPendingSize;
+                for (int i = 0; i < count; i++)
+                {
+                    mWriting[i].copyFrom(mPending[(mPendingStart + i) % PENDING_CAPACITY]);
+                    mPending[(mPendingStart + i) % PENDING_CAPACITY].widgetId = null;
+                }
+                mPendingStart = 0;
+                mPendingSize = 0;
+            }
+
+            if (0 == count)
+            {
+                return;
+            }
+
+            RandomAccessFile file = null;
+            try
+            {
+                file = new RandomAccessFile(mFile, "rw"); //$NON-NLS-1$
+                int next = 0;
+                long total = 0;
+                if (isHeaderValid(file))
+                {
+                    next = file.readInt();
+                    total = file.readLong();
+                }
+                else
+                {
+                    /*
+                     * A new file, or one written with another layout: start over
+                     */
+                    file.setLength(0);
+                }
+
+                for (int i = 0; i < count; i++)
+                {
+                    encode(mWriting[i], mRecord);
+                    file.seek(getOffset(next));
+                    file.write(mRecord);
+                    next = (next + 1) % mCapacity;
+                    total++;
+                }
+
+                file.seek(0);
+                file.writeInt(MAGIC);
+                file.writeInt(VERSION);
+                file.writeInt(mCapacity);
+                file.writeInt(next);
+                file.writeLong(total);
+            }
+            catch (final IOException e)
+            {
+                PluginLog.w("could not write fire journal %s", e.getMessage()); //$NON-NLS-1$
+            }
+            finally
+            {
+                close(file);
+            }
+        }
+    }
+
+    /**
+     * Reads the header up to the index of the next record, which is where the reader is left.
+     */
+    private boolean isHeaderValid(final RandomAccessFile file) throws IOException
+    {
+        if (file.length() < HEADER_SIZE)
+        {
+            return false;
+        }
+        file.seek(0);
+        return MAGIC == file.readInt() && VERSION == file.readInt() && mCapacity == file.readInt();
+    }
+
+    private static long getOffset(final int index)
+    {
+        return HEADER_SIZE + (long) index * RECORD_SIZE;
+    }
+
+    private static void close(final RandomAccessFile file)
+    {
+        if (null != file)
+        {
+            try
+            {
+                file.close();
+            }
+            catch (final IOException e)
+            {
+                // nothing more to do
+            }
+        }
+    }
+
+    private static void encode(final Entry entry, final byte[] record)
+    {
+        int offset = putLong(record, 0, entry.time);
+        record[offset++] = (byte) entry.type;
+        record[offset++] = (byte) entry.outcome;
+        offset = putInt(record, offset, entry.prepareMillis);
+        offset = putInt(record, offset, entry.deliverMillis);
+        offset = putInt(record, offset, entry.storeMillis);
+        offset = putInt(record, offset, entry.totalMillis);
+
+        final byte[] id = toUtf8(entry.widgetId);
+        int length = Math.min(id.length, MAX_ID_LENGTH);
+        if (length < id.length)
+        {
+            /*
+             * Cut before the continuation bytes of the last character
+             */
+            while (length > 0 && 0x80 == (id[length] & 0xc0))
+            {
+                length--;
+            }
+        }
+        record[offset++] = (byte) (length >> 8);
+        record[offset++] = (byte) length;
+        System.arraycopy(id, 0, record, offset, length);
+    }
+
+    private static Entry decode(final byte[] record)
+    {
+        final Entry entry = new Entry();
+        entry.time = getLong(record, 0);
+        int offset = 8;
+        entry.type = record[offset++];
+        entry.outcome = record[offset++];
+        entry.prepareMillis = getInt(record, offset);
+        entry.deliverMillis = getInt(record, offset + 4);
+        entry.storeMillis = getInt(record, offset + 8);
+        entry.totalMillis = getInt(record, offset + 12);
+        offset += 16;
+
+        final int length = Math.min(((record[offset] & 0xff) << 8) | (record[offset + 1] & 0xff), MAX_ID_LENGTH);
+        offset += 2;
+        try
+        {
+            entry.widgetId = 0 == length ? null : new String(record, offset, length, "UTF-8"); //$NON-NLS-1$
+        }
+        catch (final UnsupportedEncodingException e)
+        {
+            throw new AssertionError(e);
+        }
+        return entry;
+    }
+
+    private static byte[] toUtf8(final String text)
+    {
+        if (null == text)
+        {
+            return new byte[0];
+        }
+        try
+        {
+            return text.getBytes("UTF-8"); //$NON-NLS-1$
+        }
+        catch (final UnsupportedEncodingException e)
+        {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static int putLong(final byte[] buffer, final int offset, final long value)
+    {
+        putInt(buffer, offset, (int) (value >>> 32));
+        return putInt(buffer, offset + 4, (int) value);
+    }
+
+    private static int putInt(final byte[] buffer, final int offset, final int value)
+    {
+        buffer[offset] = (byte) (value >>> 24);
+        buffer[offset + 1] = (byte) (value >>> 16);
+        buffer[offset + 2] = (byte) (value >>> 8);
+        buffer[offset + 3] = (byte) value;
+        return offset + 4;
+    }
+
+    private static long getLong(final byte[] buffer, final int offset)
+    {
+        return ((long) getInt(buffer, offset) << 32) | (getInt(buffer, offset + 4) & 0xffffffffL);
+    }
+
+    private static int getInt(final byte[] buffer, final int offset)
+    {
+        return ((buffer[offset] & 0xff) << 24) | ((buffer[offset + 1] & 0xff) << 16) | ((buffer[offset + 2] & 0xff) << 8) | (buffer[offset + 3] & 0xff);
+    }
+
+    private static String getName(final String[] names, final int value)
+    {
+        return value >= 0 && value < names.length ? names[value] : "?"; //$NON-NLS-1$
+    }
+
+    /**
+     * One fire. Durations are in milliseconds.
+     */
+    public static final class Entry
+    {
+        public long time;
+        public int type;
+        public String widgetId;
+        public int outcome;
+        public int prepareMillis;
+        public int deliverMillis;
+        public int storeMillis;
+        public int totalMillis;
+
+        Entry()
+        {
+            // nothing to initialise
+        }
+
+        void copyFrom(final Entry other)
+        {
+            time = other.time;
+            type = other.type;
+            widgetId = other.widgetId;
+            outcome = other.outcome;
+            prepareMillis = other.prepareMillis;
+            deliverMillis = other.deliverMillis;
+            storeMillis = other.storeMillis;
+            totalMillis = other.totalMillis;
+        }
+
+        void appendTo(final StringBuilder line)
+        {
+            line.append(android.text.format.DateFormat.format("MM-dd kk:mm:ss", time)); //$NON-NLS-1$
+            line.append(' ').append(getName(TYPE_NAMES, type));
+            if (null != widgetId)
+            {
+                line.append(' ').append(widgetId);
+            }
+            line.append(' ').append(getName(OUTCOME_NAMES, outcome));
+            line.append(" prepare=").append(prepareMillis); //$NON-NLS-1$
+            line.append(" deliver=").append(deliverMillis); //$NON-NLS-1$
+            line.append(" store=").append(storeMillis); //$NON-NLS-1$
+            line.append(" total=").append(totalMillis).append(" ms"); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+    }
+
+    /**
+     * Aggregate statistics of entries.
+     */
+    public static final class Stats
+    {
+        /**
+         * Number of entries of each type, indexed by the {@code TYPE_} constants.
+         */
+        public final int[] types = new int[TYPE_NAMES.length];
+
+        /**
+         * Number of entries of each outcome, indexed by the {@code OUTCOME_} constants.
+         */
+        public final int[] outcomes = new int[OUTCOME_NAMES.length];
+
+        public final LatencyStats prepare;
+
+        public final LatencyStats deliver;
+
+        public final LatencyStats store;
+
+        public final LatencyStats total;
+
+        /**
+         * @param entries the entries. Cannot be null.
+         */
+        public Stats(final List<Entry> entries)
+        {
+            final int capacity = Math.max(1, entries.size());
+            prepare = new LatencyStats("fire prepare", capacity); //$NON-NLS-1$
+            deliver = new LatencyStats("fire deliver", capacity); //$NON-NLS-1$
+            store = new LatencyStats("fire store", capacity); //$NON-NLS-1$
+            total = new LatencyStats("fire total", capacity); //$NON-NLS-1$
+
+            for (final Entry entry : entries)
+            {
+                if (entry.type >= 0 && entry.type < types.length)
+                {
+                    types[entry.type]++;
+                }
+                if (entry.outcome >= 0 && entry.outcome < outcomes.length)
+                {
+                    outcomes[entry.outcome]++;
+                }
+
+                /*
+                 * Rejected fires stop early, so they would only lower the percentiles
+                 */
+                if (OUTCOME_REJECTED != entry.outcome)
+                {
+                    prepare.add(entry.prepareMillis);
+                    deliver.add(entry.deliverMillis);
+                    store.add(entry.storeMillis);
+                    total.add(entry.totalMillis);
+                }
+            }
+        }
+
+        /**
+         * Writes the counts on one line, then the percentiles of each phase.
+         *
+         * @param writer destination. Cannot be null.
+         */
+        public void dump(final PrintWriter writer)
+        {
+            final StringBuilder line = new StringBuilder(96);
+            for (int i = 0; i < types.length; i++)
+            {
+                line.append(TYPE_NAMES[i]).append('=').append(types[i]).append(' ');
+            }
+            for (int i = 0; i < outcomes.length; i++)
+            {
+                line.append(OUTCOME_NAMES[i]).append('=').append(outcomes[i]).append(' ');
+            }
+            writer.println(line.toString().trim());
+            prepare.dump(writer);
+            deliver.dump(writer);
+            store.dump(writer);
+            total.dump(writer);
+        }
+    }
+}
@@ -0,0 +1,562 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.metawatch.manager.locale.log;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+
+import org.metawatch.manager.locale.PluginPreferences;
+import org.metawatch.manager.locale.bundle.BundleScrubber;
+import org.metawatch.manager.locale.bundle.PluginBundleManager;
+
+/**
+ * Trace of the intents received from Locale and from the MetaWatch manager, with the time between them, so that real traffic
+ * can be replayed later to compare two builds.
+ * <p>
+ * The trace is only recorded when {@link PluginPreferences#KEY_TRACE_RECORDING} is set. Each entry keeps the kind of the intent,
+ * the delay since the previous entry and, for fires, the scrubbed plug-in Bundle: only strings, string arrays, numbers and
+ * booleans are kept, with the known keys stored as a single byte. The file is written by a background thread. When it reaches
+ * {@link #MAX_SIZE}, it becomes the old trace and a new one is started, so at most two traces are kept.
+ */
+public final class IntentTrace
+{
+    /**
+     * A Locale {@code ACTION_FIRE_SETTING}.
+     */
+    public static final int KIND_FIRE = 1;
+
+    /**
+     * A {@code REFRESH_WIDGET_REQUEST} of the MetaWatch manager.
+     */
+    public static final int KIND_REFRESH = 2;
+
+    /**
+     * Size in bytes after which the trace is rolled over.
+     */
+    public static final int MAX_SIZE = 1024 * 1024;
+
+    private static final String ACTION_REFRESH = "org.metawatch.manager.REFRESH_WIDGET_REQUEST"; //$NON-NLS-1$
+
+    private static final String EXTRA_GET_PREVIEWS = "org.metawatch.manager.get_previews"; //$NON-NLS-1$
+
+    private static final String FILE_NAME = "intent_trace"; //$NON-NLS-1$
+
+    private static final String OLD_FILE_NAME = "intent_trace.old"; //$NON-NLS-1$
+
+    /**
+     * First bytes of the file, "LMIT".
+     */
+    private static final int MAGIC = 0x4c4d4954;
+
+    private static final int VERSION = 1;
+
+    /**
+     * Magic, version, number of entries and wall clock time of the last entry.
+     */
+    private static final int HEADER_SIZE = 4 + 4 + 4 + 8;
+
+    /**
+     * Keys stored as their index. New keys must be appended, so that older traces can still be read.
+     */
+    private static final String[] KEYS = new String[] { PluginBundleManager.BUNDLE_EXTRA_STRING_TYPE,
+            PluginBundleManager.BUNDLE_EXTRA_STRING_MESSAGE, PluginBundleManager.BUNDLE_EXTRA_STRING_TITLE,
+            PluginBundleManager.BUNDLE_EXTRA_STRING_WIDGET_ID, PluginBundleManager.BUNDLE_EXTRA_STRING_WIDGET_LABEL,
+            PluginBundleManager.BUNDLE_EXTRA_STRING_WIDGET_ICON, PluginBundleManager.BUNDLE_EXTRA_BOOLEAN_VIBRATE,
+            PluginBundleManager.BUNDLE_EXTRA_INT_VIBRATE_ON, PluginBundleManager.BUNDLE_EXTRA_INT_VIBRATE_OFF,
+            PluginBundleManager.BUNDLE_EXTRA_INT_VIBRATE_CYCLES, PluginBundleManager.BUNDLE_EXTRA_STRING_ARRAY_TITLE_TEMPLATE,
+            PluginBundleManager.BUNDLE_EXTRA_STRING_ARRAY_MESSAGE_TEMPLATE,
+            PluginBundleManager.BUNDLE_EXTRA_STRING_ARRAY_WIDGET_LABEL_TEMPLATE,
+            PluginBundleManager.BUNDLE_EXTRA_INT_WIDGET_UPDATE_MINUTES,
+            PluginBundleManager.BUNDLE_EXTRA_STRING_TASKER_VARIABLE_REPLACE_KEYS,
+            PluginBundleManager.BUNDLE_EXTRA_INT_VERSION_CODE, PluginBundleManager.BUNDLE_EXTRA_BOOLEAN_ALLOW_REPEAT };
+
+    /**
+     * Index of a key that is not in {@link #KEYS}, followed by the key itself.
+     */
+    private static final int KEY_OTHER = 0xff;
+
+    private static final int TYPE_STRING = 0;
+
+    private static final int TYPE_STRING_ARRAY = 1;
+
+    private static final int TYPE_INT = 2;
+
+    private static final int TYPE_BOOLEAN = 3;
+
+    private static IntentTrace sInstance = null;
+
+    private final File mFile;
+
+    private final File mOldFile;
+
+    private final Handler mWriter;
+
+    /**
+     * Entries written and lost since the start of the process. Guarded by this.
+     */
+    private long mWrittenCount = 0;
+
+    private long mLostCount = 0;
+
+    /**
+     * @param context to read the settings. Cannot be null.
+     * @return true if the intents are recorded.
+     */
+    public static boolean isEnabled(final Context context)
+    {
+        return PluginPreferences.get(context).getBoolean(PluginPreferences.KEY_TRACE_RECORDING, PluginPreferences.DEFAULT_TRACE_RECORDING);
+    }
+
+    /**
+     * @param context to find the files directory. Cannot be null.
+     * @return the trace of this process. The writer thread is started on the first call.
+     */
+    public static synchronized IntentTrace getInstance(final Context context)
+    {
+        if (null == sInstance)
+        {
+            final HandlerThread thread = new HandlerThread("intent trace", Process.THREAD_PRIORITY_BACKGROUND); //$NON-NLS-1$
+            thread.start();
+            sInstance = new IntentTrace(new File(context.getFilesDir(), FILE_NAME), new File(context.getFilesDir(), OLD_FILE_NAME), thread.getLooper());
+        }
+        return sInstance;
+    }
+
+    /**
+     * @param file the current trace.
+     * @param oldFile where the current trace is moved when it is full.
+     * @param writerLooper looper of the thread writing the file.
+     */
+    IntentTrace(final File file, final File oldFile, final Looper writerLooper)
+    {
+        mFile = file;
+        mOldFile = oldFile;
+        mWriter = new Handler(writerLooper);
+    }
+
+    /**
+     * @return the current trace, which may not exist.
+     */
+    public File getFile()
+    {
+        return mFile;
+    }
+
+    /**
+     * @return the previous trace, which may not exist.
+     */
+    public File getOldFile()
+    {
+        return mOldFile;
+    }
+
+    /**
+     * Records an intent if it is one that can be replayed. Never blocks on the file.
+     *
+     * @param intent the intent received. Cannot be null.
+     * @param time wall clock time at which it was received.
+     */
+    public void record(final Intent intent, final long time)
+    {
+        final int kind;
+        Bundle bundle = null;
+        if (com.twofortyfouram.locale.Intent.ACTION_FIRE_SETTING.equals(intent.getAction()))
+        {
+            BundleScrubber.scrub(intent);
+            bundle = intent.getBundleExtra(com.twofortyfouram.locale.Intent.EXTRA_BUNDLE);
+            BundleScrubber.scrub(bundle);
+            kind = KIND_FIRE;
+        }
+        else if (ACTION_REFRESH.equals(intent.getAction()) && intent.hasExtra(EXTRA_GET_PREVIEWS))
+        {
+            kind = KIND_REFRESH;
+        }
+        else
+        {
+            return;
+        }
+
+        /*
+         * The receiver may go on with the Bundle, so the writer gets its own copy
+         */
+        final Bundle copy = null == bundle ? null : new Bundle(bundle);
+        mWriter.post(new Runnable()
+        {
+            public void run()
+            {
+                write(kind, copy, time);
+            }
+        });
+    }
+
+    /**
+     * Waits until the entries recorded so far are written.
+     *
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    void flush() throws InterruptedException
+    {
+        final boolean[] done = new boolean[1];
+        mWriter.post(new Runnable()
+        {
+            public void run()
+            {
+                synchronized (done)
+                {
+                    done[0] = true;
+                    done.notifyAll();
+                }
+            }
+        });
+        synchronized (done)
+        {
+            while (!done[0])
+            {
+                done.wait();
+            }
+        }
+    }
+
+    /**
+     * Appends an entry. Runs on the writer thread.
+     */
+    void write(final int kind, final Bundle bundle, final long time)
+    {
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream(256);
+        RandomAccessFile file = null;
+        try
+        {
+            if (mFile.length() >= MAX_SIZE)
+            {
+                mOldFile.delete();
+                if (!mFile.renameTo(mOldFile))
+                {
+                    mFile.delete();
+                }
+            }
+
+            file = new RandomAccessFile(mFile, "rw"); //$NON-NLS-1$
+            int count = 0;
+            long lastTime = time;
+            if (isHeaderValid(file))
+            {
+                count = file.readInt();
+                lastTime = file.readLong();
+            }
+            else
+            {
+                /*
+                 * A new file, or one written with another layout: start over
+                 */
+                file.setLength(0);
+            }
+
+            final DataOutputStream out = new DataOutputStream(buffer);
+            out.writeInt((int) Math.min(Integer.MAX_VALUE, Math.max(0, time - lastTime)));
+            out.writeByte(kind);
+            writeBundle(out, bundle);
+            out.flush();
+
+            file.seek(Math.max(HEADER_SIZE, file.length()));
+            file.write(buffer.toByteArray());
+            file.seek(0);
+            file.writeInt(MAGIC);
+            file.writeInt(VERSION);
+            file.writeInt(count + 1);
+            file.writeLong(time);
+            synchronized (this)
+            {
+                mWrittenCount++;
+            }
+        }
+        catch (final IOException e)
+        {
+            synchronized (this)
+            {
+                mLostCount++;
+            }
+            PluginLog.w("could not write intent trace %s", e.getMessage()); //$NON-NLS-1$
+        }
+        finally
+        {
+            if (null != file)
+            {
+                try
+                {
+                    file.close();
+                }
+                catch (final IOException e)
+                {
+                    // nothing more to do
+                }
+            }
+        }
+    }
+
+    private static boolean isHeaderValid(final RandomAccessFile file) throws IOException
+    {
+        if (file.length() < HEADER_SIZE)
+        {
+            return false;
+        }
+        file.seek(0);
+        return MAGIC == file.readInt() && VERSION == file.readInt();
+    }
+
+    /**
+     * Writes the number of extras, then the key, type and value of each. Extras of other types are left out.
+     */
+    private static void writeBundle(final DataOutputStream out, final Bundle bundle) throws IOException
+    {
+        if (null == bundle)
+        {
+            out.writeByte(0);
+            return;
+        }
+
+        final ArrayList<String> keys = new ArrayList<String>(bundle.keySet().size());
+        for (final String key : bundle.keySet())
+        {
+            final Object value = bundle.get(key);
+            if (value instanceof String || value instanceof String[] || value instanceof Integer || value instanceof Boolean)
+            {
+                keys.add(key);
+            }
+        }
+
+        out.writeByte(Math.min(keys.size(), 0xff));
+        for (int i = 0; i < keys.size() && i < 0xff; i++)
+        {
+            final String key = keys.get(i);
+            final int index = indexOf(key);
+            out.writeByte(index);
+            if (KEY_OTHER == index)
+            {
+                out.writeUTF(key);
+            }
+
+            final Object value = bundle.get(key);
+            if (value instanceof String)
+            {
+                out.writeByte(TYPE_STRING);
+                out.writeUTF((String) value);
+            }
+            else if (value instanceof String[])
+            {
+                final String[] array = (String[]) value;
+                out.writeByte(TYPE_STRING_ARRAY);
+                out.writeShort(array.length);
+                for (final String item : array)
+                {
+                    out.writeUTF(null == item ? "" : item); //$NON-NLS-1$
+                }
+            }
+            else if (value instanceof Integer)
+            {
+                out.writeByte(TYPE_INT);
+                out.writeInt(((Integer) value).intValue());
+            }
+            else
+            {
+                out.writeByte(TYPE_BOOLEAN);
+                out.writeBoolean(((Boolean) value).booleanValue());
+            }
+        }
+    }
+
+    private static int indexOf(final String key)
+    {
+        for (int i = 0; i < KEYS.length; i++)
+        {
+            if (KEYS[i].equals(key))
+            {
+                return i;
+            }
+        }
+        return KEY_OTHER;
+    }
+
+    /**
+     * Reads a trace.
+     *
+     * @param file the trace. Cannot be null.
+     * @return the entries, oldest first.
+     * @throws IOException if the file cannot be read or is not a trace.
+     */
+    public static List<Entry> read(final File file) throws IOException
+    {
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try
+        {
+            if (MAGIC != in.readInt() || VERSION != in.readInt())
+            {
+                throw new IOException(file + " is not an intent trace"); //$NON-NLS-1$
+            }
+            final int count = in.readInt();
+            in.readLong();
+
+            final ArrayList<Entry> entries = new ArrayList<Entry>(count);
+            for (int i = 0; i < count; i++)
+            {
+                final int delayMillis = in.readInt();
+                final int kind = in.readUnsignedByte();
+                entries.add(new Entry(delayMillis, kind, readBundle(in)));
+            }
+            return entries;
+        }
+        catch (final EOFException e)
+        {
+            throw new IOException(file + " is truncated"); //$NON-NLS-1$
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    private static Bundle readBundle(final DataInputStream in) throws IOException
+    {
+        final int size = in.readUnsignedByte();
+        if (0 == size)
+        {
+            return null;
+        }
+
+        final Bundle bundle = new Bundle();
+        for (int i = 0; i < size; i++)
+        {
+            final int index = in.readUnsignedByte();
+            final String key;
+            if (KEY_OTHER == index)
+            {
+                key = in.readUTF();
+            }
+            else if (index < KEYS.length)
+            {
+                key = KEYS[index];
+            }
+            else
+            {
+                throw new IOException("unknown key " + index); //$NON-NLS-1$
+            }
+
+            final int type = in.readUnsignedByte();
+            switch (type)
+            {
+                case TYPE_STRING:
+                    bundle.putString(key, in.readUTF());
+                    break;
+                case TYPE_STRING_ARRAY:
+                    final String[] array = new String[in.readUnsignedShort()];
+                    for (int j = 0; j < array.length; j++)
+                    {
+                        array[j] = in.readUTF();
+                    }
+                    bundle.putStringArray(key, array);
+                    break;
+                case TYPE_INT:
+                    bundle.putInt(key, in.readInt());
+                    break;
+                case TYPE_BOOLEAN:
+                    bundle.putBoolean(key, in.readBoolean());
+                    break;
+                default:
+                    throw new IOException("unknown type " + type); //$NON-NLS-1$
+            }
+        }
+        return bundle;
+    }
+
+    /**
+     * Writes the size of the traces and the entries written and lost by this process.
+     *
+     * @param writer destination. Cannot be null.
+     */
+    public void dump(final PrintWriter writer)
+    {
+        final long written;
+        final long lost;
+        synchronized (this)
+        {
+            written = mWrittenCount;
+            lost = mLostCount;
+        }
+        writer.println("intent trace: " + mFile.length() + " bytes, old trace: " + mOldFile.length() + " bytes, " + written //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+                + " written and " + lost + " lost by this process"); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    /**
+     * One intent of a trace.
+     */
+    public static final class Entry
+    {
+        /**
+         * Milliseconds since the previous entry, which may have been recorded by an earlier process.
+         */
+        public final int delayMillis;
+
+        /**
+         * One of the {@code KIND_} constants.
+         */
+        public final int kind;
+
+        /**
+         * The scrubbed plug-in Bundle of a fire, or null.
+         */
+        public final Bundle bundle;
+
+        /**
+         * @param delayMillis milliseconds since the previous entry.
+         * @param kind one of the {@code KIND_} constants.
+         * @param bundle the plug-in Bundle of a fire, or null.
+         */
+        public Entry(final int delayMillis, final int kind, final Bundle bundle)
+        {
+            this.delayMillis = delayMillis;
+            this.kind = kind;
+            this.bundle = bundle;
+        }
+
+        /**
+         * @return a new intent like the one recorded, without component.
+         */
+        public Intent toIntent()
+        {
+            if (KIND_REFRESH == kind)
+            {
+                final Intent intent = new Intent(ACTION_REFRESH);
+                intent.putExtra(EXTRA_GET_PREVIEWS, true);
+                return intent;
+            }
+
+            final Intent intent = new Intent(com.twofortyfouram.locale.Intent.ACTION_FIRE_SETTING);
+            intent.putExtra(com.twofortyfouram.locale.Intent.EXTRA_BUNDLE, null == bundle ? new Bundle() : new Bundle(bundle));
+            return intent;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.metawatch.manager.locale.log;
+
+import java.io.PrintWriter;
+import java.util.Arrays;
+
+/**
+ * Percentiles of the most recent latencies of an operation.
+ * <p>
+ * Samples are kept in a fixed-size ring, so recording one never allocates. Percentiles are computed over the samples in the ring
+ * when they are asked for.
+ */
+public final class LatencyStats
+{
+    private final String mName;
+
+    private final long[] mSamples;
+
+    /**
+     * Copy of the samples sorted to compute percentiles, allocated once.
+     */
+    private final long[] mSorted;
+
+    private int mNext = 0;
+
+    private long mCount = 0;
+
+    private long mMax = 0;
+
+    /**
+     * @param name name of the operation, used by {@link #dump(PrintWriter)}.
+     * @param capacity number of samples kept. Must be greater than 0.
+     * @throws IllegalArgumentException if {@code capacity} is less than 1.
+     */
+    public LatencyStats(final String name, final int capacity)
+    {
+        if (capacity < 1)
+        {
+            throw new IllegalArgumentException("capacity must be greater than 0"); //$NON-NLS-1$
+        }
+
+        mName = name;
+        mSamples = new long[capacity];
+        mSorted = new long[capacity];
+    }
+
+    /**
+     * Records a sample, overwriting the oldest one when the ring is full.
+     *
+     * @param millis latency of one operation.
+     */
+    public synchronized void add(final long millis)
+    {
+        mSamples[mNext] = millis;
+        mNext = (mNext + 1) % mSamples.length;
+        mCount++;
+        mMax = Math.max(mMax, millis);
+    }
+
+    /**
+     * @return total number of samples recorded, including the ones already overwritten.
+     */
+    public synchronized long getCount()
+    {
+        return mCount;
+    }
+
+    /**
+     * @param percent percentile, between 0 and 100.
+     * @return the latency below which {@code percent} percent of the samples in the ring are, or 0 if there is no sample.
+     */
+    public synchronized long getPercentile(final int percent)
+    {
+        final int size = (int) Math.min(mCount, mSamples.length);
+        if (0 == size)
+        {
+            return 0;
+        }
+
+        System.arraycopy(mSamples, 0, mSorted, 0, size);
+        Arrays.sort(mSorted, 0, size);
+        final int rank = (int) Math.ceil(percent / 100.0 * size) - 1;
+        return mSorted[Math.max(0, Math.min(size - 1, rank))];
+    }
+
+    /**
+     * Writes the sample count and the percentiles on one line.
+     *
+     * @param writer destination. Cannot be null.
+     */
+    public synchronized void dump(final PrintWriter writer)
+    {
+        writer.println(mName + ": n=" + mCount + " p50=" + getPercentile(50) + " p90=" + getPercentile(90) + " p99=" + getPercentile(99) //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+                + " max=" + mMax + " ms"); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+}
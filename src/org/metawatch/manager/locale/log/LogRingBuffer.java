@@ -0,0 +1,184 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.metawatch.manager.locale.log;
+
+import java.io.PrintWriter;
+
+/**
+ * Fixed-size, in-memory ring of the most recent log events.
+ * <p>
+ * All entries are allocated up front. Recording an event only stores references to the (usually constant) format and its
+ * arguments; the text of a line is built when the ring is dumped, never when an event is recorded.
+ */
+public final class LogRingBuffer
+{
+    private static final char[] LEVELS = new char[] { '?', '?', 'V', 'D', 'I', 'W', 'E', 'A' };
+
+    private final Entry[] mEntries;
+
+    /**
+     * Index of the slot the next event is written to.
+     */
+    private int mNext = 0;
+
+    /**
+     * Total number of events ever recorded.
+     */
+    private long mCount = 0;
+
+    /**
+     * @param capacity number of events kept. Must be greater than 0.
+     * @throws IllegalArgumentException if {@code capacity} is less than 1.
+     */
+    public LogRingBuffer(final int capacity)
+    {
+        if (capacity < 1)
+        {
+            throw new IllegalArgumentException("capacity must be greater than 0"); //$NON-NLS-1$
+        }
+
+        mEntries = new Entry[capacity];
+        for (int i = 0; i < capacity; i++)
+        {
+            mEntries[i] = new Entry();
+        }
+    }
+
+    /**
+     * Records an event, overwriting the oldest one when the ring is full.
+     *
+     * @param time wall clock time of the event.
+     * @param level one of the {@link android.util.Log} priorities.
+     * @param format text of the event. {@code %s} is replaced by the string arguments in order, {@code %d} by {@code number}.
+     * @param s0 first string argument. May be null.
+     * @param s1 second string argument. May be null.
+     * @param s2 third string argument. May be null.
+     * @param number numeric argument.
+     */
+    public synchronized void add(final long time, final int level, final String format, final String s0, final String s1, final String s2, final long number)
+    {
+        final Entry entry = mEntries[mNext];
+        entry.time = time;
+        entry.level = level;
+        entry.format = format;
+        entry.s0 = s0;
+        entry.s1 = s1;
+        entry.s2 = s2;
+        entry.number = number;
+
+        mNext = (mNext + 1) % mEntries.length;
+        mCount++;
+    }
+
+    /**
+     * @return total number of events recorded, including the ones already overwritten.
+     */
+    public synchronized long getCount()
+    {
+        return mCount;
+    }
+
+    /**
+     * Removes all events.
+     */
+    public synchronized void clear()
+    {
+        for (final Entry entry : mEntries)
+        {
+            entry.format = null;
+            entry.s0 = null;
+            entry.s1 = null;
+            entry.s2 = null;
+        }
+        mNext = 0;
+        mCount = 0;
+    }
+
+    /**
+     * Writes the events, oldest first, one per line.
+     *
+     * @param writer destination. Cannot be null.
+     */
+    public synchronized void dump(final PrintWriter writer)
+    {
+        final int size = (int) Math.min(mCount, mEntries.length);
+        final StringBuilder line = new StringBuilder(128);
+
+        writer.println("log events: " + size + " of " + mCount); //$NON-NLS-1$ //$NON-NLS-2$
+        for (int i = 0; i < size; i++)
+        {
+            final Entry entry = mEntries[(mNext - size + i + mEntries.length) % mEntries.length];
+            line.setLength(0);
+            line.append(android.text.format.DateFormat.format("MM-dd kk:mm:ss", entry.time)); //$NON-NLS-1$
+            line.append(' ');
+            line.append(entry.level >= 0 && entry.level < LEVELS.length ? LEVELS[entry.level] : '?');
+            line.append(' ');
+            format(line, entry.format, entry.s0, entry.s1, entry.s2, entry.number);
+            writer.println(line);
+        }
+    }
+
+    /**
+     * Expands a format as described in {@link #add(long, int, String, String, String, String, long)}.
+     *
+     * @param out destination. Cannot be null.
+     * @param format text of the event. Cannot be null.
+     * @param s0 first string argument. May be null.
+     * @param s1 second string argument. May be null.
+     * @param s2 third string argument. May be null.
+     * @param number numeric argument.
+     */
+    public static void format(final StringBuilder out, final String format, final String s0, final String s1, final String s2, final long number)
+    {
+        int arg = 0;
+        final int length = format.length();
+        for (int i = 0; i < length; i++)
+        {
+            final char c = format.charAt(i);
+            if ('%' == c && i + 1 < length)
+            {
+                final char spec = format.charAt(i + 1);
+                if ('s' == spec)
+                {
+                    out.append(0 == arg ? s0 : 1 == arg ? s1 : s2);
+                    arg++;
+                    i++;
+                    continue;
+                }
+                else if ('d' == spec)
+                {
+                    out.append(number);
+                    i++;
+                    continue;
+                }
+            }
+            out.append(c);
+        }
+    }
+
+    /**
+     * One pre-allocated slot of the ring.
+     */
+    private static final class Entry
+    {
+        long time;
+        int level;
+        String format;
+        String s0;
+        String s1;
+        String s2;
+        long number;
+
+        Entry()
+        {
+            // nothing to initialise
+        }
+    }
+}
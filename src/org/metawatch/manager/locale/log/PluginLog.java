@@ -0,0 +1,199 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.metawatch.manager.locale.log;
+
+import java.io.PrintWriter;
+
+import android.util.Log;
+
+import org.metawatch.manager.locale.BuildConfig;
+import org.metawatch.manager.locale.Constants;
+
+/**
+ * Logging facade for the hot paths of the plug-in.
+ * <p>
+ * Events are recorded into a {@link LogRingBuffer} that can be dumped on demand. They are only also written to logcat in debug
+ * builds. Events take a constant format plus a few string and numeric arguments, so recording one never builds a string. Call
+ * sites guard on the compile-time constants {@link #V} and {@link #D} so that levels below {@link #LEVEL} are removed by the
+ * compiler:
+ *
+ * <pre>
+ * if (PluginLog.D)
+ * {
+ *     PluginLog.d(&quot;widget %s sent&quot;, id);
+ * }
+ * </pre>
+ */
+public final class PluginLog
+{
+    /**
+     * Private constructor prevents instantiation
+     *
+     * @throws UnsupportedOperationException because this class cannot be instantiated.
+     */
+    private PluginLog()
+    {
+        throw new UnsupportedOperationException("This class is non-instantiable"); //$NON-NLS-1$
+    }
+
+    /**
+     * Lowest {@link Log} priority that is recorded.
+     */
+    public static final int LEVEL = BuildConfig.DEBUG ? Log.VERBOSE : Log.DEBUG;
+
+    /**
+     * Whether verbose events are recorded.
+     */
+    public static final boolean V = LEVEL <= Log.VERBOSE;
+
+    /**
+     * Whether debug events are recorded.
+     */
+    public static final boolean D = LEVEL <= Log.DEBUG;
+
+    /**
+     * Whether events are also written to logcat.
+     */
+    public static final boolean IS_LOGCAT_ENABLED = BuildConfig.DEBUG;
+
+    /**
+     * Number of events kept in memory.
+     */
+    private static final int RING_CAPACITY = 256;
+
+    private static final LogRingBuffer sRing = new LogRingBuffer(RING_CAPACITY);
+
+    /**
+     * Records a verbose event.
+     *
+     * @param format see {@link LogRingBuffer#add(long, int, String, String, String, String, long)}.
+     * @param s0 first string argument.
+     */
+    public static void v(final String format, final String s0)
+    {
+        log(Log.VERBOSE, format, s0, null, null, 0);
+    }
+
+    /**
+     * Records a debug event.
+     *
+     * @param format see {@link LogRingBuffer#add(long, int, String, String, String, String, long)}.
+     */
+    public static void d(final String format)
+    {
+        log(Log.DEBUG, format, null, null, null, 0);
+    }
+
+    /**
+     * Records a debug event.
+     *
+     * @param format see {@link LogRingBuffer#add(long, int, String, String, String, String, long)}.
+     * @param s0 first string argument.
+     */
+    public static void d(final String format, final String s0)
+    {
+        log(Log.DEBUG, format, s0, null, null, 0);
+    }
+
+    /**
+     * Records a debug event.
+     *
+     * @param format see {@link LogRingBuffer#add(long, int, String, String, String, String, long)}.
+     * @param number numeric argument.
+     */
+    public static void d(final String format, final long number)
+    {
+        log(Log.DEBUG, format, null, null, null, number);
+    }
+
+    /**
+     * Records a debug event.
+     *
+     * @param format see {@link LogRingBuffer#add(long, int, String, String, String, String, long)}.
+     * @param s0 first string argument.
+     * @param number numeric argument.
+     */
+    public static void d(final String format, final String s0, final long number)
+    {
+        log(Log.DEBUG, format, s0, null, null, number);
+    }
+
+    /**
+     * Records a debug event.
+     *
+     * @param format see {@link LogRingBuffer#add(long, int, String, String, String, String, long)}.
+     * @param s0 first string argument.
+     * @param s1 second string argument.
+     * @param s2 third string argument.
+     */
+    public static void d(final String format, final String s0, final String s1, final String s2)
+    {
+        log(Log.DEBUG, format, s0, s1, s2, 0);
+    }
+
+    /**
+     * Records a warning.
+     *
+     * @param format see {@link LogRingBuffer#add(long, int, String, String, String, String, long)}.
+     * @param s0 first string argument.
+     */
+    public static void w(final String format, final String s0)
+    {
+        log(Log.WARN, format, s0, null, null, 0);
+    }
+
+    /**
+     * Records an error.
+     *
+     * @param format see {@link LogRingBuffer#add(long, int, String, String, String, String, long)}.
+     * @param s0 first string argument.
+     */
+    public static void e(final String format, final String s0)
+    {
+        log(Log.ERROR, format, s0, null, null, 0);
+    }
+
+    /**
+     * Records an event at any priority.
+     *
+     * @param level one of the {@link Log} priorities.
+     * @param format see {@link LogRingBuffer#add(long, int, String, String, String, String, long)}.
+     * @param s0 first string argument. May be null.
+     * @param s1 second string argument. May be null.
+     * @param s2 third string argument. May be null.
+     * @param number numeric argument.
+     */
+    public static void log(final int level, final String format, final String s0, final String s1, final String s2, final long number)
+    {
+        if (level < LEVEL)
+        {
+            return;
+        }
+
+        sRing.add(System.currentTimeMillis(), level, format, s0, s1, s2, number);
+
+        if (IS_LOGCAT_ENABLED)
+        {
+            final StringBuilder line = new StringBuilder(format.length() + 32);
+            LogRingBuffer.format(line, format, s0, s1, s2, number);
+            Log.println(level, Constants.LOG_TAG, line.toString());
+        }
+    }
+
+    /**
+     * Writes the recent events, oldest first.
+     *
+     * @param writer destination. Cannot be null.
+     */
+    public static void dump(final PrintWriter writer)
+    {
+        sRing.dump(writer);
+    }
+}
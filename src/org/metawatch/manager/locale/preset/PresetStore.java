@@ -0,0 +1,351 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.metawatch.manager.locale.preset;
+
+import java.util.ArrayList;
+import java.util.Locale;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Bundle;
+
+import org.metawatch.manager.locale.bundle.PluginBundleManager;
+import org.metawatch.manager.locale.log.PluginLog;
+
+/**
+ * Named settings saved from {@link org.metawatch.manager.locale.ui.EditActivity}, so that a notification or widget is not
+ * retyped for every situation.
+ * <p>
+ * Presets are rows of a SQLite table with one column per field of the plug-in Bundle. The names are indexed by their lower case
+ * form, and a prefix search is a range scan of that index, so listing names never reads the fields and stays fast with
+ * hundreds of presets. The fields of a preset are only read by {@link #load(String)}.
+ * <p>
+ * Methods read or write the database, so they should not be called on the main thread.
+ */
+public final class PresetStore
+{
+    /**
+     * Name of the database.
+     */
+    public static final String DATABASE_NAME = "presets.db"; //$NON-NLS-1$
+
+    /**
+     * Version 2 added {@link #COLUMN_ALLOW_REPEAT}.
+     */
+    private static final int DATABASE_VERSION = 2;
+
+    private static final String TABLE = "presets"; //$NON-NLS-1$
+
+    private static final String COLUMN_NAME = "name"; //$NON-NLS-1$
+
+    /**
+     * Lower case name, the key of the prefix search.
+     */
+    private static final String COLUMN_NAME_KEY = "name_key"; //$NON-NLS-1$
+
+    private static final String COLUMN_TYPE = "type"; //$NON-NLS-1$
+
+    private static final String COLUMN_TITLE = "title"; //$NON-NLS-1$
+
+    private static final String COLUMN_MESSAGE = "message"; //$NON-NLS-1$
+
+    private static final String COLUMN_WIDGET_ID = "widget_id"; //$NON-NLS-1$
+
+    private static final String COLUMN_WIDGET_LABEL = "widget_label"; //$NON-NLS-1$
+
+    private static final String COLUMN_WIDGET_ICON = "widget_icon"; //$NON-NLS-1$
+
+    /**
+     * Null if the widget is only updated when fired.
+     */
+    private static final String COLUMN_WIDGET_UPDATE_MINUTES = "widget_update_minutes"; //$NON-NLS-1$
+
+    private static final String COLUMN_VIBRATE = "vibrate"; //$NON-NLS-1$
+
+    private static final String COLUMN_VIBRATE_ON = "vibrate_on"; //$NON-NLS-1$
+
+    private static final String COLUMN_VIBRATE_OFF = "vibrate_off"; //$NON-NLS-1$
+
+    private static final String COLUMN_VIBRATE_CYCLES = "vibrate_cycles"; //$NON-NLS-1$
+
+    private static final String COLUMN_ALLOW_REPEAT = "allow_repeat"; //$NON-NLS-1$
+
+    private static final String[] NAME_COLUMNS = new String[] { COLUMN_NAME };
+
+    private static final String[] FIELD_COLUMNS = new String[] { COLUMN_TYPE, COLUMN_TITLE, COLUMN_MESSAGE, COLUMN_WIDGET_ID, COLUMN_WIDGET_LABEL, COLUMN_WIDGET_ICON,
+            COLUMN_WIDGET_UPDATE_MINUTES, COLUMN_VIBRATE, COLUMN_VIBRATE_ON, COLUMN_VIBRATE_OFF, COLUMN_VIBRATE_CYCLES, COLUMN_ALLOW_REPEAT };
+
+    private static PresetStore sInstance = null;
+
+    private final DatabaseHelper mHelper;
+
+    /**
+     * @param context to open the database. Cannot be null.
+     * @return the store of this process.
+     */
+    public static synchronized PresetStore getInstance(final Context context)
+    {
+        if (null == sInstance)
+        {
+            sInstance = new PresetStore(context.getApplicationContext() != null ? context.getApplicationContext() : context);
+        }
+        return sInstance;
+    }
+
+    private PresetStore(final Context context)
+    {
+        mHelper = new DatabaseHelper(context);
+    }
+
+    /**
+     * Lists the names starting with a prefix, ignoring case.
+     *
+     * @param prefix start of the names. Empty to list all names.
+     * @param limit maximum number of names returned.
+     * @return the names, in alphabetical order ignoring case.
+     */
+    public ArrayList<String> getNames(final String prefix, final int limit)
+    {
+        final ArrayList<String> names = new ArrayList<String>();
+        final String key = getKey(prefix);
+        final String upperBound = getUpperBound(key);
+        final String selection;
+        final String[] selectionArgs;
+        if (null == upperBound)
+        {
+            selection = COLUMN_NAME_KEY + " >= ?"; //$NON-NLS-1$
+            selectionArgs = new String[] { key };
+        }
+        else
+        {
+            selection = COLUMN_NAME_KEY + " >= ? AND " + COLUMN_NAME_KEY + " < ?"; //$NON-NLS-1$ //$NON-NLS-2$
+            selectionArgs = new String[] { key, upperBound };
+        }
+
+        try
+        {
+            final Cursor cursor = mHelper.getReadableDatabase().query(TABLE, NAME_COLUMNS, selection, selectionArgs, null, null, COLUMN_NAME_KEY, String.valueOf(limit));
+            try
+            {
+                while (cursor.moveToNext())
+                {
+                    names.add(cursor.getString(0));
+                }
+            }
+            finally
+            {
+                cursor.close();
+            }
+        }
+        catch (final SQLiteException e)
+        {
+            PluginLog.w("could not list presets starting with %s", prefix); //$NON-NLS-1$
+        }
+        return names;
+    }
+
+    /**
+     * Reads a preset.
+     *
+     * @param name name of the preset, ignoring case.
+     * @return the fields of the preset, with the keys of {@link PluginBundleManager}, or null if there is no such preset.
+     */
+    public Bundle load(final String name)
+    {
+        try
+        {
+            final Cursor cursor = mHelper.getReadableDatabase().query(TABLE, FIELD_COLUMNS, COLUMN_NAME_KEY + " = ?", new String[] { getKey(name) }, null, null, null); //$NON-NLS-1$
+            try
+            {
+                if (!cursor.moveToFirst())
+                {
+                    return null;
+                }
+
+                final Bundle bundle = new Bundle();
+                bundle.putString(PluginBundleManager.BUNDLE_EXTRA_STRING_TYPE, cursor.getString(0));
+                bundle.putString(PluginBundleManager.BUNDLE_EXTRA_STRING_TITLE, cursor.getString(1));
+                bundle.putString(PluginBundleManager.BUNDLE_EXTRA_STRING_MESSAGE, cursor.getString(2));
+                bundle.putString(PluginBundleManager.BUNDLE_EXTRA_STRING_WIDGET_ID, cursor.getString(3));
+                bundle.putString(PluginBundleManager.BUNDLE_EXTRA_STRING_WIDGET_LABEL, cursor.getString(4));
+                bundle.putString(PluginBundleManager.BUNDLE_EXTRA_STRING_WIDGET_ICON, cursor.getString(5));
+                if (!cursor.isNull(6))
+                {
+                    bundle.putInt(PluginBundleManager.BUNDLE_EXTRA_INT_WIDGET_UPDATE_MINUTES, cursor.getInt(6));
+                }
+                bundle.putBoolean(PluginBundleManager.BUNDLE_EXTRA_BOOLEAN_VIBRATE, 0 != cursor.getInt(7));
+                bundle.putInt(PluginBundleManager.BUNDLE_EXTRA_INT_VIBRATE_ON, cursor.getInt(8));
+                bundle.putInt(PluginBundleManager.BUNDLE_EXTRA_INT_VIBRATE_OFF, cursor.getInt(9));
+                bundle.putInt(PluginBundleManager.BUNDLE_EXTRA_INT_VIBRATE_CYCLES, cursor.getInt(10));
+                bundle.putBoolean(PluginBundleManager.BUNDLE_EXTRA_BOOLEAN_ALLOW_REPEAT, 0 != cursor.getInt(11));
+                return bundle;
+            }
+            finally
+            {
+                cursor.close();
+            }
+        }
+        catch (final SQLiteException e)
+        {
+            PluginLog.w("could not load preset %s", name); //$NON-NLS-1$
+            return null;
+        }
+    }
+
+    /**
+     * Saves a preset, replacing the preset with the same name ignoring case.
+     *
+     * @param name name of the preset. Cannot be empty.
+     * @param bundle the fields, with the keys of {@link PluginBundleManager}. Other keys are ignored.
+     * @return true if the preset was saved.
+     */
+    public boolean save(final String name, final Bundle bundle)
+    {
+        final ContentValues values = new ContentValues();
+        values.put(COLUMN_NAME, name);
+        values.put(COLUMN_NAME_KEY, getKey(name));
+        values.put(COLUMN_TYPE, bundle.getString(PluginBundleManager.BUNDLE_EXTRA_STRING_TYPE));
+        values.put(COLUMN_TITLE, bundle.getString(PluginBundleManager.BUNDLE_EXTRA_STRING_TITLE));
+        values.put(COLUMN_MESSAGE, bundle.getString(PluginBundleManager.BUNDLE_EXTRA_STRING_MESSAGE));
+        values.put(COLUMN_WIDGET_ID, bundle.getString(PluginBundleManager.BUNDLE_EXTRA_STRING_WIDGET_ID));
+        values.put(COLUMN_WIDGET_LABEL, bundle.getString(PluginBundleManager.BUNDLE_EXTRA_STRING_WIDGET_LABEL));
+        values.put(COLUMN_WIDGET_ICON, bundle.getString(PluginBundleManager.BUNDLE_EXTRA_STRING_WIDGET_ICON));
+        if (bundle.containsKey(PluginBundleManager.BUNDLE_EXTRA_INT_WIDGET_UPDATE_MINUTES))
+        {
+            values.put(COLUMN_WIDGET_UPDATE_MINUTES, Integer.valueOf(bundle.getInt(PluginBundleManager.BUNDLE_EXTRA_INT_WIDGET_UPDATE_MINUTES)));
+        }
+        else
+        {
+            values.putNull(COLUMN_WIDGET_UPDATE_MINUTES);
+        }
+        values.put(COLUMN_VIBRATE, Integer.valueOf(bundle.getBoolean(PluginBundleManager.BUNDLE_EXTRA_BOOLEAN_VIBRATE) ? 1 : 0));
+        values.put(COLUMN_VIBRATE_ON, Integer.valueOf(bundle.getInt(PluginBundleManager.BUNDLE_EXTRA_INT_VIBRATE_ON)));
+        values.put(COLUMN_VIBRATE_OFF, Integer.valueOf(bundle.getInt(PluginBundleManager.BUNDLE_EXTRA_INT_VIBRATE_OFF)));
+        values.put(COLUMN_VIBRATE_CYCLES, Integer.valueOf(bundle.getInt(PluginBundleManager.BUNDLE_EXTRA_INT_VIBRATE_CYCLES)));
+        values.put(COLUMN_ALLOW_REPEAT, Integer.valueOf(bundle.getBoolean(PluginBundleManager.BUNDLE_EXTRA_BOOLEAN_ALLOW_REPEAT) ? 1 : 0));
+
+        try
+        {
+            /*
+             * The lower case name is unique, so this replaces a preset whose name only differs by case
+             */
+            return -1 != mHelper.getWritableDatabase().replace(TABLE, null, values);
+        }
+        catch (final SQLiteException e)
+        {
+            PluginLog.w("could not save preset %s", name); //$NON-NLS-1$
+            return false;
+        }
+    }
+
+    /**
+     * Deletes a preset.
+     *
+     * @param name name of the preset, ignoring case.
+     * @return true if the preset existed.
+     */
+    public boolean delete(final String name)
+    {
+        try
+        {
+            return mHelper.getWritableDatabase().delete(TABLE, COLUMN_NAME_KEY + " = ?", new String[] { getKey(name) }) > 0; //$NON-NLS-1$
+        }
+        catch (final SQLiteException e)
+        {
+            PluginLog.w("could not delete preset %s", name); //$NON-NLS-1$
+            return false;
+        }
+    }
+
+    /**
+     * @return the indexed form of a name.
+     */
+    private static String getKey(final String name)
+    {
+        return name.trim().toLowerCase(Locale.US);
+    }
+
+    /**
+     * Computes the exclusive upper bound of the keys starting with a prefix: the prefix with its last code point incremented.
+     * SQLite compares keys as UTF-8, i.e. by code point, so this also holds for characters outside of the Basic Multilingual
+     * Plane.
+     *
+     * @param key the prefix. Cannot be null.
+     * @return the upper bound, or null if there is none, e.g. for an empty prefix.
+     */
+    static String getUpperBound(final String key)
+    {
+        int end = key.length();
+        while (end > 0)
+        {
+            final int codePoint = key.codePointBefore(end);
+            end -= Character.charCount(codePoint);
+
+            int next = codePoint + 1;
+            if (next >= Character.MIN_SURROGATE && next <= Character.MAX_SURROGATE)
+            {
+                next = Character.MAX_SURROGATE + 1;
+            }
+            if (next <= Character.MAX_CODE_POINT)
+            {
+                return new StringBuilder(end + 2).append(key, 0, end).appendCodePoint(next).toString();
+            }
+        }
+        return null;
+    }
+
+    private static final class DatabaseHelper extends SQLiteOpenHelper
+    {
+        DatabaseHelper(final Context context)
+        {
+            super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        }
+
+        @Override
+        public void onCreate(final SQLiteDatabase db)
+        {
+            /*
+             * The UNIQUE constraint creates the index used by the prefix search. Text is compared by code point, which is the
+             * order of the range bounds.
+             */
+            db.execSQL("CREATE TABLE " + TABLE + " (" //$NON-NLS-1$ //$NON-NLS-2$
+                    + COLUMN_NAME_KEY + " TEXT NOT NULL UNIQUE, " //$NON-NLS-1$
+                    + COLUMN_NAME + " TEXT NOT NULL, " //$NON-NLS-1$
+                    + COLUMN_TYPE + " TEXT, " //$NON-NLS-1$
+                    + COLUMN_TITLE + " TEXT, " //$NON-NLS-1$
+                    + COLUMN_MESSAGE + " TEXT, " //$NON-NLS-1$
+                    + COLUMN_WIDGET_ID + " TEXT, " //$NON-NLS-1$
+                    + COLUMN_WIDGET_LABEL + " TEXT, " //$NON-NLS-1$
+                    + COLUMN_WIDGET_ICON + " TEXT, " //$NON-NLS-1$
+                    + COLUMN_WIDGET_UPDATE_MINUTES + " INTEGER, " //$NON-NLS-1$
+                    + COLUMN_VIBRATE + " INTEGER NOT NULL DEFAULT 0, " //$NON-NLS-1$
+                    + COLUMN_VIBRATE_ON + " INTEGER NOT NULL DEFAULT 0, " //$NON-NLS-1$
+                    + COLUMN_VIBRATE_OFF + " INTEGER NOT NULL DEFAULT 0, " //$NON-NLS-1$
+                    + COLUMN_VIBRATE_CYCLES + " INTEGER NOT NULL DEFAULT 0, " //$NON-NLS-1$
+                    + COLUMN_ALLOW_REPEAT + " INTEGER NOT NULL DEFAULT 0)"); //$NON-NLS-1$
+        }
+
+        @Override
+        public void onUpgrade(final SQLiteDatabase db, final int oldVersion, final int newVersion)
+        {
+            if (oldVersion < 2)
+            {
+                /*
+                 * Presets saved before the column existed did not allow repeats, which is the default
+                 */
+                db.execSQL("ALTER TABLE " + TABLE + " ADD COLUMN " + COLUMN_ALLOW_REPEAT + " INTEGER NOT NULL DEFAULT 0"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.metawatch.manager.locale.receiver;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.util.Log;
+
+import org.metawatch.manager.locale.Constants;
+import org.metawatch.manager.locale.broadcast.DeliveryTracker;
+import org.metawatch.manager.locale.broadcast.NotificationQueue;
+import org.metawatch.manager.locale.broadcast.VibrationArbiter;
+import org.metawatch.manager.locale.log.FireJournal;
+import org.metawatch.manager.locale.log.IntentTrace;
+import org.metawatch.manager.locale.log.PluginLog;
+
+/**
+ * Writes the recent events of {@link PluginLog}, the outgoing queue and delivery statistics, the fire latencies and the
+ * statistics of the {@link FireJournal} to logcat.
+ * <p>
+ * The statistics live in the background process, so they are written on request, even in release builds:
+ * {@code adb shell am broadcast -a org.metawatch.manager.locale.action.DUMP_LOG}. The receiver requires
+ * {@code android.permission.DUMP}, which the shell holds but other apps cannot, so apps cannot flood logcat with them.
+ */
+public final class DumpLogReceiver extends BroadcastReceiver
+{
+    /**
+     * Action that writes the statistics to logcat.
+     */
+    public static final String ACTION_DUMP_LOG = "org.metawatch.manager.locale.action.DUMP_LOG"; //$NON-NLS-1$
+
+    @Override
+    public void onReceive(final Context context, final Intent intent)
+    {
+        if (!ACTION_DUMP_LOG.equals(intent.getAction()))
+        {
+            return;
+        }
+
+        final StringWriter buffer = new StringWriter();
+        final PrintWriter writer = new PrintWriter(buffer);
+        PluginLog.dump(writer);
+        NotificationQueue.getInstance(context).dump(writer);
+        VibrationArbiter.getInstance(context).dump(writer);
+        DeliveryTracker.getInstance(context).dump(writer);
+        PreviewStream.getInstance(context).dump(writer);
+        RepeatFilter.getInstance().dump(writer);
+        FireReceiver.dumpLatencies(writer);
+        FireJournal.getInstance(context).dump(writer);
+        if (IntentTrace.isEnabled(context))
+        {
+            /*
+             * Getting the trace starts its writer thread, which is not needed when nothing is recorded
+             */
+            IntentTrace.getInstance(context).dump(writer);
+        }
+        writer.flush();
+        for (final String line : buffer.toString().split("\n")) //$NON-NLS-1$
+        {
+            Log.i(Constants.LOG_TAG, line);
+        }
+    }
+}
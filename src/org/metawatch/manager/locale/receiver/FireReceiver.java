@@ -9,29 +9,34 @@
 
 package org.metawatch.manager.locale.receiver;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.io.InputStream;
+import java.io.PrintWriter;
+import java.util.Arrays;
 
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.graphics.Canvas;
-import android.graphics.Color;
-import android.graphics.Typeface;
-import android.graphics.Paint.Align;
 import android.os.Bundle;
-import android.text.TextPaint;
-import android.util.Log;
+import android.os.SystemClock;
 
-import org.metawatch.manager.locale.Constants;
+import org.metawatch.manager.locale.PluginApplication;
+import org.metawatch.manager.locale.PluginPreferences;
+import org.metawatch.manager.locale.broadcast.DeliveryTracker;
+import org.metawatch.manager.locale.broadcast.ManagerCapabilities;
+import org.metawatch.manager.locale.broadcast.NotificationQueue;
+import org.metawatch.manager.locale.broadcast.VibrationArbiter;
 import org.metawatch.manager.locale.bundle.BundleScrubber;
 import org.metawatch.manager.locale.bundle.PluginBundleManager;
+import org.metawatch.manager.locale.cache.CachedWidget;
+import org.metawatch.manager.locale.cache.WidgetCache;
+import org.metawatch.manager.locale.log.FireJournal;
+import org.metawatch.manager.locale.log.IntentTrace;
+import org.metawatch.manager.locale.log.LatencyStats;
+import org.metawatch.manager.locale.log.PluginLog;
+import org.metawatch.manager.locale.render.MonoFrame;
+import org.metawatch.manager.locale.render.WidgetRenderer;
+import org.metawatch.manager.locale.render.WidgetSize;
+import org.metawatch.manager.locale.template.Template;
+import org.metawatch.manager.locale.template.TemplateEnvironment;
 import org.metawatch.manager.locale.ui.EditActivity;
 
 /**
@@ -39,8 +44,37 @@ import org.metawatch.manager.locale.ui.EditActivity;
  */
 public final class FireReceiver extends BroadcastReceiver {
 
-	static Typeface typeface = null; 
+	/**
+	 * Number of fire latencies kept for each mode.
+	 */
+	private static final int LATENCY_SAMPLES = 100;
+
+	/**
+	 * Fire latencies: direct cold and warm, then through {@link WorkerService} cold and warm.
+	 */
+	private static final LatencyStats[] sFireLatencies = new LatencyStats[] {
+		new LatencyStats("fire latency, receiver, cold", LATENCY_SAMPLES), //$NON-NLS-1$
+		new LatencyStats("fire latency, receiver, warm", LATENCY_SAMPLES), //$NON-NLS-1$
+		new LatencyStats("fire latency, service, cold", LATENCY_SAMPLES), //$NON-NLS-1$
+		new LatencyStats("fire latency, service, warm", LATENCY_SAMPLES) //$NON-NLS-1$
+	};
+
+	/**
+	 * Whether a fire was already handled in this process.
+	 */
+	private static boolean sIsWarm = false;
 	
+	/**
+	 * Buffers of the sends of each thread. Widgets are sent by fires, in the receiver or in {@link WorkerService}, and by
+	 * scheduled updates, so each thread gets its own.
+	 */
+	private static final ThreadLocal<Scratch> sScratch = new ThreadLocal<Scratch>() {
+		@Override
+		protected Scratch initialValue() {
+			return new Scratch();
+		}
+	};
+
 	/**
 	 * @param context
 	 *            {@inheritDoc}.
@@ -53,14 +87,44 @@ public final class FireReceiver extends BroadcastReceiver {
 	 */
 	@Override
 	public void onReceive(final Context context, final Intent intent)
+	{
+		final long receivedAt = SystemClock.elapsedRealtime();
+		
+		if (PluginLog.D)
+		{
+			PluginLog.d("FireReceiver.onReceive(): received intent, action='%s'", intent.getAction()); //$NON-NLS-1$
+		}
+		
+		if (IntentTrace.isEnabled(context))
+		{
+			IntentTrace.getInstance(context).record(intent, System.currentTimeMillis());
+		}
+
+		if (PluginPreferences.get(context).getBoolean(PluginPreferences.KEY_WARM_SERVICE, PluginPreferences.DEFAULT_WARM_SERVICE))
+		{
+			WorkerService.handOff(context, intent, receivedAt);
+		}
+		else
+		{
+			handleIntent(context, intent, receivedAt, false);
+		}
+	}
+	
+	/**
+	 * Handles an intent received by this receiver, either directly or in {@link WorkerService}.
+	 * 
+	 * @param context to send the broadcasts
+	 * @param intent the received intent
+	 * @param receivedAt {@link SystemClock#elapsedRealtime()} at which the intent was received
+	 * @param isService true if called by {@link WorkerService}, to record the latency of each mode apart
+	 */
+	static void handleIntent(final Context context, final Intent intent, final long receivedAt, final boolean isService)
 	{
 		/*
 		 * Always be sure to be strict on input parameters! A malicious third-party app could always send an empty or otherwise
 		 * malformed Intent. And since Locale applies settings in the background, the plug-in definitely shouldn't crash in the
 		 * background.
 		 */
-		
-		Log.d(Constants.LOG_TAG, "FireReceiver.onReceive(): received intent, action='"+intent.getAction()+"'");
 
 		/*
 		 * Locale guarantees that the Intent action will be ACTION_FIRE_SETTING
@@ -80,123 +144,205 @@ public final class FireReceiver extends BroadcastReceiver {
 			 */
 			if (PluginBundleManager.isBundleValid(bundle))
 			{
-				if (Constants.IS_LOGGABLE)
+				if (PluginLog.D)
 				{
-					Log.d(Constants.LOG_TAG, "sending notification"); //$NON-NLS-1$
+					PluginLog.d("sending notification"); //$NON-NLS-1$
 				}
+				DeliveryTracker.getInstance(context).resetLastSentAt();
 	
 				final String type = bundle.getString(PluginBundleManager.BUNDLE_EXTRA_STRING_TYPE);
+				final TemplateEnvironment environment = new TemplateEnvironment(context, System.currentTimeMillis());
 	
 				if (type.equals("notification")) 
 				{
-					Intent broadcast = new Intent("org.metawatch.manager.NOTIFICATION");
-					Bundle b = new Bundle();
-					b.putString("title", bundle.getString(PluginBundleManager.BUNDLE_EXTRA_STRING_TITLE));
-					b.putString("text", bundle.getString(PluginBundleManager.BUNDLE_EXTRA_STRING_MESSAGE));
+					/*
+					 * Notifications the user wants to feel are sent ahead of silent ones when several are waiting
+					 */
+					final int priority = bundle.getBoolean(PluginBundleManager.BUNDLE_EXTRA_BOOLEAN_VIBRATE) ? NotificationQueue.PRIORITY_HIGH : NotificationQueue.PRIORITY_NORMAL;
+					final String title = Template.expand(bundle, PluginBundleManager.BUNDLE_EXTRA_STRING_TITLE, PluginBundleManager.BUNDLE_EXTRA_STRING_ARRAY_TITLE_TEMPLATE, environment);
+					final String message = Template.expand(bundle, PluginBundleManager.BUNDLE_EXTRA_STRING_MESSAGE, PluginBundleManager.BUNDLE_EXTRA_STRING_ARRAY_MESSAGE_TEMPLATE, environment);
+					final boolean isRepeat = isRepeat(context, bundle, null, receivedAt, title, message);
+					final long preparedAt = SystemClock.elapsedRealtime();
 					
-	                if( bundle.containsKey(PluginBundleManager.BUNDLE_EXTRA_BOOLEAN_VIBRATE) )
-	                {
-	                	b.putInt("vibrate_on", bundle.getInt(PluginBundleManager.BUNDLE_EXTRA_INT_VIBRATE_ON));
-	                	b.putInt("vibrate_off",bundle.getInt(PluginBundleManager.BUNDLE_EXTRA_INT_VIBRATE_OFF));
-	                	b.putInt("vibrate_cycles", bundle.getInt(PluginBundleManager.BUNDLE_EXTRA_INT_VIBRATE_CYCLES));
-	                }
+					final boolean isQueued = !isRepeat && NotificationQueue.getInstance(context).enqueue(title,
+							message,
+							priority,
+							bundle.getBoolean(PluginBundleManager.BUNDLE_EXTRA_BOOLEAN_VIBRATE),
+							bundle.getInt(PluginBundleManager.BUNDLE_EXTRA_INT_VIBRATE_ON),
+							bundle.getInt(PluginBundleManager.BUNDLE_EXTRA_INT_VIBRATE_OFF),
+							bundle.getInt(PluginBundleManager.BUNDLE_EXTRA_INT_VIBRATE_CYCLES),
+							!bundle.getBoolean(PluginBundleManager.BUNDLE_EXTRA_BOOLEAN_ALLOW_REPEAT));
 					
-					broadcast.putExtras(b);
-	
-					context.sendBroadcast(broadcast);
+					final long now = SystemClock.elapsedRealtime();
+					FireJournal.getInstance(context).record(environment.getTime(), FireJournal.TYPE_NOTIFICATION, null,
+							isRepeat ? FireJournal.OUTCOME_REPEATED : (isQueued ? FireJournal.OUTCOME_QUEUED : FireJournal.OUTCOME_DROPPED),
+							preparedAt - receivedAt, now - preparedAt, 0, now - receivedAt);
 				}
 				else if (type.equals("widget")) {
 					final String icon = bundle.getString(PluginBundleManager.BUNDLE_EXTRA_STRING_WIDGET_ICON);
 					final String widgetId = bundle.getString(PluginBundleManager.BUNDLE_EXTRA_STRING_WIDGET_ID);
-					final String widgetLabel = bundle.getString(PluginBundleManager.BUNDLE_EXTRA_STRING_WIDGET_LABEL);
+					final String[] labelTemplate = Template.resolve(bundle, PluginBundleManager.BUNDLE_EXTRA_STRING_WIDGET_LABEL, PluginBundleManager.BUNDLE_EXTRA_STRING_ARRAY_WIDGET_LABEL_TEMPLATE);
+					
+					final CachedWidget widget = new CachedWidget(widgetId);
+					widget.icon = icon;
+					widget.label = null == labelTemplate ? bundle.getString(PluginBundleManager.BUNDLE_EXTRA_STRING_WIDGET_LABEL) : Template.evaluate(labelTemplate, environment);
+					widget.template = labelTemplate;
+					widget.firedAt = environment.getTime();
+					widget.updateMinutes = bundle.getInt(PluginBundleManager.BUNDLE_EXTRA_INT_WIDGET_UPDATE_MINUTES, 0);
+					if (widget.isDynamic())
+					{
+						widget.dueAt = WidgetScheduler.getNextDue(widget.firedAt, widget.updateMinutes);
+					}
 					
-					createAndSendWidget(context, icon, widgetId, widgetLabel);
-					cacheWidget(context, icon, widgetId, widgetLabel);
+					/*
+					 * The frames last sent for this id, so that only what changed is sent when the manager supports it
+					 */
+					final WidgetCache cache = WidgetCache.getInstance(context);
+					final CachedWidget previous = cache.get(widgetId);
 					
-	                if( bundle.containsKey(PluginBundleManager.BUNDLE_EXTRA_BOOLEAN_VIBRATE) )
-	                {
-						Intent broadcast = new Intent("org.metawatch.manager.VIBRATE");
-						Bundle b = new Bundle();
-						
-	                	b.putInt("vibrate_on", bundle.getInt(PluginBundleManager.BUNDLE_EXTRA_INT_VIBRATE_ON));
-	                	b.putInt("vibrate_off",bundle.getInt(PluginBundleManager.BUNDLE_EXTRA_INT_VIBRATE_OFF));
-	                	b.putInt("vibrate_cycles", bundle.getInt(PluginBundleManager.BUNDLE_EXTRA_INT_VIBRATE_CYCLES));
-	                	
-						broadcast.putExtras(b);						
-						context.sendBroadcast(broadcast);
-	                }
+					/*
+					 * A repeat is only skipped while the manager can still get the widget from the cache
+					 */
+					if (isRepeat(context, bundle, widgetId, receivedAt, widget.label) && null != previous) {
+						final long now = SystemClock.elapsedRealtime();
+						FireJournal.getInstance(context).record(environment.getTime(), FireJournal.TYPE_WIDGET, widgetId, FireJournal.OUTCOME_REPEATED,
+								now - receivedAt, 0, 0, now - receivedAt);
+					}
+					else {
+						if (null != previous) {
+							System.arraycopy(previous.frames, 0, widget.frames, 0, widget.frames.length);
+						}
+						final long preparedAt = SystemClock.elapsedRealtime();
+					
+						createAndSendWidget(context, widget, false);
+						final long deliveredAt = SystemClock.elapsedRealtime();
+					
+						cache.put(widget);
+						if (widget.isDynamic() || (null != previous && previous.isDynamic()))
+						{
+							WidgetScheduler.schedule(context, cache.getAll());
+						}
+					
+		                if( bundle.getBoolean(PluginBundleManager.BUNDLE_EXTRA_BOOLEAN_VIBRATE) )
+		                {
+		                	VibrationArbiter.getInstance(context).request(bundle.getInt(PluginBundleManager.BUNDLE_EXTRA_INT_VIBRATE_ON),
+		                			bundle.getInt(PluginBundleManager.BUNDLE_EXTRA_INT_VIBRATE_OFF),
+		                			bundle.getInt(PluginBundleManager.BUNDLE_EXTRA_INT_VIBRATE_CYCLES));
+		                }
+	                
+		                final long now = SystemClock.elapsedRealtime();
+		                FireJournal.getInstance(context).record(environment.getTime(), FireJournal.TYPE_WIDGET, widgetId, FireJournal.OUTCOME_SENT,
+		                		preparedAt - receivedAt, deliveredAt - preparedAt, now - deliveredAt, now - receivedAt);
+					}
 				}
 				
+				recordLatency(context, receivedAt, isService);
 			}
 			else
 			{
-				if (Constants.IS_LOGGABLE)
+				if (PluginLog.D)
 				{
-					Log.d(Constants.LOG_TAG, "bundle invalid"); //$NON-NLS-1$
+					PluginLog.d("bundle invalid"); //$NON-NLS-1$
 				}
+				FireJournal.getInstance(context).record(System.currentTimeMillis(), FireJournal.TYPE_INVALID, null, FireJournal.OUTCOME_REJECTED,
+						0, 0, 0, SystemClock.elapsedRealtime() - receivedAt);
 			}
 		
 		}
-		else if(intent.getAction().equals("org.metawatch.manager.REFRESH_WIDGET_REQUEST"))
+		else if("org.metawatch.manager.REFRESH_WIDGET_REQUEST".equals(intent.getAction()))
 		{
 			Bundle bundle = intent.getExtras();
-			boolean getPreviews = bundle.containsKey("org.metawatch.manager.get_previews");
+			boolean getPreviews = null != bundle && bundle.containsKey("org.metawatch.manager.get_previews");
 			if (getPreviews)
 			{
-				Log.d(Constants.LOG_TAG, "get widget previews");
-				
-				File cacheDir = context.getCacheDir();
-				
-				File[] files = cacheDir.listFiles();
-
-				for (File file : files) {
-					FileInputStream fis;
-					try {
-						fis = new FileInputStream(file);
-						StringBuffer fileContent = new StringBuffer("");
-
-						byte[] buffer = new byte[1024];
-						int length;
-						while ((length = fis.read(buffer)) != -1) {
-						    fileContent.append(new String(buffer));
-						}
-						
-						String data = fileContent.toString();
-						Log.d(Constants.LOG_TAG, "data: "+data);
-						
-						String[] sections = data.split("\\|");
-						if(sections.length == 3)
-						{
-							createAndSendWidget(context, sections[0], sections[1], sections[2]);
-						}
-					} 
-					catch (FileNotFoundException e)
-					{
-					} 
-					catch (IOException e) 
-					{
-					}
-
+				if (PluginLog.D)
+				{
+					PluginLog.d("get widget previews"); //$NON-NLS-1$
 				}
+				
+				ManagerCapabilities.getInstance(context).update(intent);
+				PreviewStream.getInstance(context).start();
 			}
 		}
+		else if(WidgetScheduler.ACTION_UPDATE_WIDGETS.equals(intent.getAction()))
+		{
+			updateDynamicWidgets(context);
+		}
+		else if(DeliveryTracker.ACTION_ACK.equals(intent.getAction()))
+		{
+			DeliveryTracker.getInstance(context).acknowledge(intent);
+		}
+	}
+	
+	/**
+	 * Checks with the {@link RepeatFilter} whether a fire repeats the last fire of its target within
+	 * {@link PluginPreferences#KEY_REPEAT_WINDOW}. A setting allowing repeats is never a repeat.
+	 * 
+	 * @param context to read the window
+	 * @param bundle the validated Bundle of the setting
+	 * @param target widget id, or null for a notification
+	 * @param receivedAt {@link SystemClock#elapsedRealtime()} at which the intent was received
+	 * @param texts the texts expanded from the templates of the Bundle
+	 * @return true if the fire can be skipped
+	 */
+	private static boolean isRepeat(final Context context, final Bundle bundle, final String target, final long receivedAt, final String... texts) {
+		final long windowMillis = bundle.getBoolean(PluginBundleManager.BUNDLE_EXTRA_BOOLEAN_ALLOW_REPEAT) ? 0 : 1000L * Math.max(0,
+				PluginPreferences.getInt(PluginPreferences.get(context), PluginPreferences.KEY_REPEAT_WINDOW, PluginPreferences.DEFAULT_REPEAT_WINDOW));
+		if (0 == windowMillis) {
+			return false;
+		}
+		
+		final boolean isRepeat = RepeatFilter.getInstance().isRepeat(target, RepeatFilter.hash(bundle, texts), receivedAt, windowMillis);
+		if (isRepeat && PluginLog.D)
+		{
+			PluginLog.d("repeated fire skipped"); //$NON-NLS-1$
+		}
+		return isRepeat;
+	}
+	
+	/**
+	 * Records the time taken by a fire, up to the last broadcast it sent through the {@link DeliveryTracker}. The first fire in a
+	 * process is measured from the start of the process, which includes loading the app, so it shows what the warm service saves.
+	 * The others are measured from the time the intent was received. A fire that sent nothing, e.g. a repeat or a notification
+	 * held by the {@link NotificationQueue}, is not recorded: waiting in the queue is rate limiting rather than latency.
+	 * 
+	 * @param context to find the tracker
+	 * @param receivedAt {@link SystemClock#elapsedRealtime()} at which the intent was received
+	 * @param isService true if the fire was handled by {@link WorkerService}
+	 */
+	private static void recordLatency(final Context context, final long receivedAt, final boolean isService) {
+		final boolean isCold = !sIsWarm;
+		sIsWarm = true;
+		
+		final long sentAt = DeliveryTracker.getInstance(context).getLastSentAt();
+		if (0 == sentAt) {
+			return;
+		}
+		
+		final int mode = isService ? 2 : 0;
+		if (isCold) {
+			sFireLatencies[mode].add(sentAt - PluginApplication.getStartedAt());
+		}
+		else {
+			sFireLatencies[mode + 1].add(sentAt - receivedAt);
+		}
 	}
 	
-	private static Bitmap loadBitmapFromAssets(Context context, String path) {
-		try {
-			InputStream inputStream = context.getAssets().open(path);
-	        Bitmap bitmap = BitmapFactory.decodeStream(inputStream);
-	        inputStream.close();
-	        //if (Preferences.logging) Log.d(MetaWatch.TAG, "ok");
-	        return bitmap;
-		} catch (IOException e) {
-			//if (Preferences.logging) Log.d(MetaWatch.TAG, e.toString());
-			return null;
+	/**
+	 * Writes the fire latencies of each mode.
+	 * 
+	 * @param writer destination
+	 */
+	static void dumpLatencies(final PrintWriter writer) {
+		for (final LatencyStats stats : sFireLatencies) {
+			stats.dump(writer);
 		}
 	}
 	
 	/**
-	 * @param bitmap Widget image to send
+	 * @param pixels Widget image to send, {@code width * height} pixels
+	 * @param width Width of the widget image
+	 * @param height Height of the widget image
 	 * @param id ID of this widget - should be unique, and sensibly identify
 	 *        the widget
 	 * @param description User friendly widget name (will be displayed in the
@@ -206,92 +352,210 @@ public final class FireReceiver extends BroadcastReceiver {
 	 *        more likely to be discarded.
 	 * @return Filled-in intent, ready for broadcast.
 	 */
-	private static Intent createUpdateIntent(Bitmap bitmap, String id, String description, int priority) {
-		int pixelArray[] = new int[bitmap.getWidth() * bitmap.getHeight()];
-		bitmap.getPixels(pixelArray, 0, bitmap.getWidth(), 0, 0, bitmap.getWidth(), bitmap.getHeight());
-
+	private static Intent createUpdateIntent(int[] pixels, int width, int height, String id, String description, int priority) {
 		Intent intent = new Intent("org.metawatch.manager.WIDGET_UPDATE");
-		Bundle b = new Bundle();
-		b.putString("id", id);
-		b.putString("desc", description);
-		b.putInt("width", bitmap.getWidth());
-		b.putInt("height", bitmap.getHeight());
-		b.putInt("priority", priority);
-		b.putIntArray("array", pixelArray);
-		intent.putExtras(b);
+		intent.putExtra("id", id);
+		intent.putExtra("desc", description);
+		intent.putExtra("width", width);
+		intent.putExtra("height", height);
+		intent.putExtra("priority", priority);
+		intent.putExtra("array", pixels);
 
 		return intent;
 	}
 	
-	private static void createAndSendWidget(Context context, String icon, String id, String label) {
+	/**
+	 * @param pixels Pixels of the changed rectangle, {@code rectWidth * rectHeight} pixels
+	 * @param size Size of the whole frame
+	 * @param x Left of the rectangle in the frame
+	 * @param y Top of the rectangle in the frame
+	 * @param rectWidth Width of the rectangle
+	 * @param rectHeight Height of the rectangle
+	 * @param id ID of this widget
+	 * @return Filled-in intent updating a part of the frame last sent, for a manager advertising
+	 *         {@link ManagerCapabilities#EXTRA_PARTIAL_UPDATES}.
+	 */
+	private static Intent createPartialUpdateIntent(int[] pixels, WidgetSize size, int x, int y, int rectWidth, int rectHeight, String id) {
+		final Intent intent = createUpdateIntent(pixels, size.width, size.height, id, size.description, 1);
+		intent.putExtra("x", x);
+		intent.putExtra("y", y);
+		intent.putExtra("rect_width", rectWidth);
+		intent.putExtra("rect_height", rectHeight);
 		
-		Log.d(Constants.LOG_TAG, "widget: icon:"+icon+" id:"+id+" label:"+label);
+		return intent;
+	}
+	
+	/**
+	 * Sends the pixels of a frame that changed since the frame last sent, or the whole frame when the manager does not
+	 * support partial updates, when the last frame is not known or when the manager may not have it yet.
+	 * 
+	 * @param context to send the broadcast
+	 * @param pixels the frame, which may be reused once this returns
+	 * @param size size of the frame
+	 * @param widgetId id of the widget
+	 * @param sent the packed frame last sent, or null
+	 * @param frame the packed frame
+	 */
+	private static void sendChanges(Context context, int[] pixels, WidgetSize size, String widgetId, byte[] sent, byte[] frame) {
+		final DeliveryTracker tracker = DeliveryTracker.getInstance(context);
+		final String id = "localeMWM_"+widgetId+size.idSuffix;
+		final int[] rect = sScratch.get().rect;
 		
-		if (typeface==null) {
-			typeface = Typeface.createFromAsset(context.getAssets(), "metawatch_8pt_5pxl_CAPS.ttf");
+		if (null == sent || !ManagerCapabilities.getInstance(context).isPartialUpdateSupported()
+				|| !MonoFrame.findChangedRect(sent, frame, size, rect) || rect[2] * rect[3] == size.width * size.height
+				|| tracker.isPending(id)) {
+			sendUpdate(context, pixels, size, widgetId);
+			return;
 		}
 		
-		TextPaint paintSmall = new TextPaint();
-		paintSmall.setColor(Color.BLACK);
-		paintSmall.setTextSize(8);
-		paintSmall.setTypeface(typeface);
-		paintSmall.setTextAlign(Align.CENTER);
+		final int[] changed = new int[rect[2] * rect[3]];
+		for (int row = 0; row < rect[3]; row++) {
+			System.arraycopy(pixels, (rect[1] + row) * size.width + rect[0], changed, row * rect[2], rect[2]);
+		}
+		tracker.send(createPartialUpdateIntent(changed, size, rect[0], rect[1], rect[2], rect[3], id), id);
+	}
+	
+	/**
+	 * Sends a frame of a widget through the {@link DeliveryTracker}.
+	 * 
+	 * @param context to send the broadcast
+	 * @param pixels the frame, which may be reused once this returns
+	 * @param size size of the frame
+	 * @param widgetId id of the widget
+	 */
+	static void sendUpdate(Context context, int[] pixels, WidgetSize size, String widgetId) {
+		final DeliveryTracker tracker = DeliveryTracker.getInstance(context);
+		final String id = "localeMWM_"+widgetId+size.idSuffix;
 		
-		// Create 16x16 widget
+		/*
+		 * The pixel buffer belongs to the renderer. This is safe because sendBroadcast() parcels the extras before it
+		 * returns, so the buffer can be reused by the next render. A tracked intent may be sent again later, so it gets
+		 * its own copy.
+		 */
+		final int[] frame = tracker.isEnabled() ? pixels.clone() : pixels;
+		tracker.send(createUpdateIntent(frame, size.width, size.height, id, size.description, 1), id);
+	}
+	
+	/**
+	 * Renders a widget and sends its frames.
+	 * 
+	 * @param context to send the broadcasts
+	 * @param widget the widget, whose stored frames are the ones last sent and are updated
+	 * @param onlyChanged if true, a frame identical to the stored one is not sent
+	 */
+	private static void createAndSendWidget(Context context, CachedWidget widget, boolean onlyChanged) {
+		
+		if (PluginLog.D)
 		{
-			Bitmap iconBmp = loadBitmapFromAssets(context, icon+"_10.bmp");
-			
-			Bitmap bitmap = Bitmap.createBitmap(16, 16, Bitmap.Config.RGB_565);
-			Canvas canvas = new Canvas(bitmap);
-			canvas.drawColor(Color.WHITE);
-			
-			int y = label.length()==0 ? 3 : 0;
+			PluginLog.d("widget: icon:%s id:%s label:%s", widget.icon, widget.id, widget.label); //$NON-NLS-1$
+		}
+		
+		final WidgetRenderer renderer = WidgetRenderer.forCurrentThread(context);
+		final Scratch scratch = sScratch.get();
+		
+		for (final WidgetSize size : WidgetSize.ALL) {
+			final int[] pixels = renderer.render(size, widget.icon, widget.label);
 			
-			canvas.drawBitmap(iconBmp, 2, y, null);					
-			canvas.drawText(label, 8, 16, paintSmall);
+			/*
+			 * The frame is packed into the scratch buffer and only copied when it differs from the stored one, which is never
+			 * changed and can be kept as is
+			 */
+			final byte[] packed = scratch.frames[size.index];
+			MonoFrame.pack(pixels, packed);
+			final byte[] sent = widget.frames[size.index];
+			final byte[] frame;
+			if (Arrays.equals(packed, sent)) {
+				if (onlyChanged) {
+					continue;
+				}
+				frame = sent;
+			}
+			else {
+				frame = packed.clone();
+			}
+			widget.frames[size.index] = frame;
 			
-			Intent i = createUpdateIntent(bitmap, "localeMWM_"+id+"_16_16", "Locale Plugin Widget (16x16)", 1);
-			context.sendBroadcast(i);
+			sendChanges(context, pixels, size, widget.id, sent, frame);
 		}
+	}
+	
+	/**
+	 * Re-renders the dynamic widgets that are due, sends the frames that changed and schedules the next update.
+	 * <p>
+	 * The stored widgets are shared with the preview threads and a fire may replace one meanwhile, so each update is made on a
+	 * copy that only replaces the stored widget if it is still the one the update started from.
+	 */
+	private static void updateDynamicWidgets(Context context) {
+		final long now = System.currentTimeMillis();
+		final WidgetCache cache = WidgetCache.getInstance(context);
 		
-		// Create 24x32 widget
-		{
-			Bitmap iconBmp = loadBitmapFromAssets(context, icon+".bmp");
-			
-			Bitmap bitmap = Bitmap.createBitmap(24, 32, Bitmap.Config.RGB_565);
-			Canvas canvas = new Canvas(bitmap);
-			canvas.drawColor(Color.WHITE);
+		for (final CachedWidget stored : cache.getAll()) {
+			if (!WidgetScheduler.isDue(stored, now)) {
+				continue;
+			}
+			final CachedWidget widget = stored.copy();
 			
-			int y = label.length()==0 ? 7 : 3;
+			/*
+			 * A widget batched into an earlier alarm shows the time it is due at, so that a clock does not lag by a minute
+			 */
+			final long time = Math.max(now, widget.dueAt);
+			widget.dueAt = WidgetScheduler.getNextDue(time, widget.updateMinutes);
 			
-			canvas.drawBitmap(iconBmp, 0, y, null);
-			canvas.drawText(label, 12, 30, paintSmall);
+			/*
+			 * Most updates don't change the text, e.g. a clock showing minutes, so those are not rendered at all
+			 */
+			final String label = Template.evaluate(widget.template, new TemplateEnvironment(context, time, widget.firedAt));
+			final boolean isChanged = !label.equals(widget.label);
+			if (isChanged) {
+				widget.label = label;
+				createAndSendWidget(context, widget, true);
+			}
 			
-			Intent i = createUpdateIntent(bitmap, "localeMWM_"+id+"_24_32", "Locale Plugin Widget (24x32)", 1);
-			context.sendBroadcast(i);
+			if (!cache.replace(stored, widget) && isChanged) {
+				/*
+				 * A fire replaced the widget while it was rendered, so its frames are sent again over the ones just sent
+				 */
+				final CachedWidget current = cache.get(widget.id);
+				if (null != current) {
+					sendStored(context, current);
+				}
+			}
 		}
+		
+		WidgetScheduler.schedule(context, cache.getAll());
 	}
 	
-	private static synchronized void cacheWidget(Context context, String icon, String id, String label) {
-		File file = new File(context.getCacheDir(), id);
-		FileOutputStream fos;
-		try {
-			fos = new FileOutputStream(file);
-			StringBuilder cachetext = new StringBuilder();
-			cachetext.append(icon);
-			cachetext.append("|");
-			cachetext.append(id);
-			cachetext.append("|");
-			cachetext.append(label);
-			fos.write(cachetext.toString().getBytes());
-			fos.close();
-		} 
-		catch (FileNotFoundException e) 
-		{
-		} 
-		catch (IOException e) 
-		{
+	/**
+	 * Sends the stored frames of a widget.
+	 */
+	private static void sendStored(Context context, CachedWidget widget) {
+		for (final WidgetSize size : WidgetSize.ALL) {
+			if (null != widget.frames[size.index]) {
+				final int[] pixels = new int[size.width * size.height];
+				MonoFrame.unpack(widget.frames[size.index], pixels);
+				sendUpdate(context, pixels, size, widget.id);
+			}
+		}
+	}
+	
+	/**
+	 * Buffers reused by the sends of one thread.
+	 */
+	private static final class Scratch {
+		/**
+		 * Changed rectangle of a frame: x, y, width and height.
+		 */
+		final int[] rect = new int[4];
+		
+		/**
+		 * Packed frame of each size, indexed by {@link WidgetSize#index}.
+		 */
+		final byte[][] frames = new byte[WidgetSize.ALL.length][];
+		
+		Scratch() {
+			for (final WidgetSize size : WidgetSize.ALL) {
+				frames[size.index] = new byte[MonoFrame.getPackedLength(size)];
+			}
 		}
-
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,286 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.metawatch.manager.locale.receiver;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+
+import org.metawatch.manager.locale.PluginPreferences;
+import org.metawatch.manager.locale.cache.CachedWidget;
+import org.metawatch.manager.locale.cache.WidgetCache;
+import org.metawatch.manager.locale.log.PluginLog;
+import org.metawatch.manager.locale.render.MonoFrame;
+import org.metawatch.manager.locale.render.ParallelRenderer;
+import org.metawatch.manager.locale.render.WidgetSize;
+
+/**
+ * Sends the previews of the cached widgets asked for by a {@code REFRESH_WIDGET_REQUEST}, a batch at a time.
+ * <p>
+ * Instead of a burst of broadcasts the manager has to process all at once, the most recently fired widgets are sent first, in
+ * batches of {@link PluginPreferences#KEY_PREVIEW_BATCH} widgets, with {@link PluginPreferences#KEY_PREVIEW_PACE} milliseconds
+ * between batches. The first batch is sent right away, the others from the main thread of the process. Widgets without stored
+ * frames are all queued to the {@link ParallelRenderer} when the refresh starts, so their frames are usually ready by the time
+ * their batch is sent; they are then stored so that the next refresh does not render them again.
+ * <p>
+ * A widget fired again while the stream runs is sent as it is in the cache when its batch goes out, never as it was when the
+ * stream started, and its frames rendered for the older state are discarded.
+ * <p>
+ * A new request restarts the stream from the most recent widget. The batches not sent yet are lost if the process is killed.
+ */
+final class PreviewStream
+{
+    /**
+     * Most recently fired first.
+     */
+    private static final Comparator<CachedWidget> RECENT_FIRST = new Comparator<CachedWidget>()
+    {
+        public int compare(final CachedWidget lhs, final CachedWidget rhs)
+        {
+            return lhs.firedAt > rhs.firedAt ? -1 : (lhs.firedAt == rhs.firedAt ? 0 : 1);
+        }
+    };
+
+    private static PreviewStream sInstance = null;
+
+    private final Context mContext;
+
+    private final Handler mHandler;
+
+    private final Runnable mSendBatch = new Runnable()
+    {
+        public void run()
+        {
+            sendBatch();
+        }
+    };
+
+    /**
+     * Widgets of the current refresh, and their pending renders or null if their frames are stored.
+     */
+    private final ArrayList<CachedWidget> mWidgets = new ArrayList<CachedWidget>();
+
+    private final ArrayList<Future<byte[][]>> mRenders = new ArrayList<Future<byte[][]>>();
+
+    /**
+     * Index of the next widget to send.
+     */
+    private int mNext = 0;
+
+    private int mBatchSize;
+
+    private long mPaceMillis;
+
+    /**
+     * Pixels of the frames being sent, indexed by {@link WidgetSize#index}.
+     */
+    private final int[][] mPixels = new int[WidgetSize.ALL.length][];
+
+    private long mRefreshCount = 0;
+    private long mRestartCount = 0;
+    private long mBatchCount = 0;
+    private long mRenderCount = 0;
+    private long mStaleCount = 0;
+
+    /**
+     * @param context to send the broadcasts. Cannot be null.
+     * @return the stream of this process.
+     */
+    static synchronized PreviewStream getInstance(final Context context)
+    {
+        if (null == sInstance)
+        {
+            sInstance = new PreviewStream(context.getApplicationContext() != null ? context.getApplicationContext() : context);
+        }
+        return sInstance;
+    }
+
+    private PreviewStream(final Context context)
+    {
+        this(context, new Handler(Looper.getMainLooper()));
+    }
+
+    /**
+     * @param context to send the broadcasts. Cannot be null.
+     * @param handler to post the batches after the first. Cannot be null.
+     */
+    PreviewStream(final Context context, final Handler handler)
+    {
+        mContext = context;
+        mHandler = handler;
+        for (final WidgetSize size : WidgetSize.ALL)
+        {
+            mPixels[size.index] = new int[size.width * size.height];
+        }
+    }
+
+    /**
+     * Starts sending the previews of all the cached widgets, and sends the first batch.
+     */
+    synchronized void start()
+    {
+        final SharedPreferences preferences = PluginPreferences.get(mContext);
+        mBatchSize = Math.max(1, PluginPreferences.getInt(preferences, PluginPreferences.KEY_PREVIEW_BATCH, PluginPreferences.DEFAULT_PREVIEW_BATCH));
+        mPaceMillis = Math.max(0, PluginPreferences.getInt(preferences, PluginPreferences.KEY_PREVIEW_PACE, PluginPreferences.DEFAULT_PREVIEW_PACE));
+
+        if (mNext < mWidgets.size())
+        {
+            mRestartCount++;
+            mHandler.removeCallbacks(mSendBatch);
+        }
+        mRefreshCount++;
+
+        mWidgets.clear();
+        mWidgets.addAll(WidgetCache.getInstance(mContext).getAll());
+        sortRecentFirst(mWidgets);
+
+        /*
+         * Renders queued for an interrupted refresh are not reused: they finish in the pool and are discarded
+         */
+        final ParallelRenderer renderer = ParallelRenderer.getInstance(mContext);
+        mRenders.clear();
+        for (final CachedWidget widget : mWidgets)
+        {
+            mRenders.add(hasAllFrames(widget) ? null : renderer.submit(widget.icon, widget.label));
+        }
+        mNext = 0;
+
+        sendBatch();
+    }
+
+    /**
+     * Sends the next batch, and schedules the one after if any.
+     */
+    synchronized void sendBatch()
+    {
+        final int end = Math.min(mWidgets.size(), mNext + mBatchSize);
+        if (mNext < end)
+        {
+            mBatchCount++;
+        }
+        for (; mNext < end; mNext++)
+        {
+            send(mWidgets.get(mNext), mRenders.get(mNext));
+        }
+
+        if (mNext < mWidgets.size())
+        {
+            mHandler.postDelayed(mSendBatch, mPaceMillis);
+        }
+        else
+        {
+            mWidgets.clear();
+            mRenders.clear();
+            mNext = 0;
+        }
+    }
+
+    private void send(final CachedWidget widget, final Future<byte[][]> render)
+    {
+        if (PluginLog.V)
+        {
+            PluginLog.v("cached widget %s", widget.id); //$NON-NLS-1$
+        }
+
+        final WidgetCache cache = WidgetCache.getInstance(mContext);
+        CachedWidget current = cache.get(widget.id);
+        if (null != render)
+        {
+            final byte[][] frames = ParallelRenderer.getInstance(mContext).get(render, widget.icon, widget.label);
+            mRenderCount++;
+
+            /*
+             * The frames are only stored if nothing changed the widget since the stream started
+             */
+            if (current == widget)
+            {
+                final CachedWidget rendered = widget.copy();
+                for (final WidgetSize size : WidgetSize.ALL)
+                {
+                    if (null == rendered.frames[size.index])
+                    {
+                        rendered.frames[size.index] = frames[size.index];
+                    }
+                }
+                if (cache.replace(widget, rendered))
+                {
+                    current = rendered;
+                }
+            }
+        }
+
+        /*
+         * A widget fired since the stream started is being sent by its fire, until its frames are stored
+         */
+        if (null == current || !hasAllFrames(current))
+        {
+            mStaleCount++;
+            return;
+        }
+
+        for (final WidgetSize size : WidgetSize.ALL)
+        {
+            MonoFrame.unpack(current.frames[size.index], mPixels[size.index]);
+            FireReceiver.sendUpdate(mContext, mPixels[size.index], size, current.id);
+        }
+    }
+
+    /**
+     * Sorts widgets most recently fired first.
+     *
+     * @param widgets the widgets. Cannot be null.
+     */
+    static void sortRecentFirst(final List<CachedWidget> widgets)
+    {
+        Collections.sort(widgets, RECENT_FIRST);
+    }
+
+    /**
+     * @return true if the frames of all sizes of the widget are stored.
+     */
+    static boolean hasAllFrames(final CachedWidget widget)
+    {
+        for (final byte[] frame : widget.frames)
+        {
+            if (null == frame)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of widgets of the current refresh not sent yet.
+     */
+    synchronized int getWaitingCount()
+    {
+        return mWidgets.size() - mNext;
+    }
+
+    /**
+     * Writes the counters of the stream.
+     *
+     * @param writer destination. Cannot be null.
+     */
+    synchronized void dump(final PrintWriter writer)
+    {
+        writer.println("preview stream: " + mRefreshCount + " refreshes, " + mRestartCount + " restarted, " + mBatchCount + " batches, " //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+                + mRenderCount + " widgets rendered, " + mStaleCount + " skipped as changed, " + getWaitingCount() + " waiting"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.metawatch.manager.locale.receiver;
+
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import android.os.Bundle;
+
+/**
+ * Recognizes a setting fired again with the same content shortly after it was applied, so that the fire can be skipped.
+ * <p>
+ * Locale fires its settings again each time a situation is re-evaluated, most often with nothing changed. The content of a fire is
+ * a 64 bit hash of the validated Bundle and of the texts expanded from its templates, so a setting whose variables changed is not
+ * a repeat. A repeat is remembered per target: a widget id, so that a widget changed by another setting in between is sent again,
+ * or the content itself for notifications. The window is given by the caller, a window of 0 lets every fire through.
+ * <p>
+ * Only the most recent {@link #MAX_ENTRIES} targets are remembered, in this process only, so a fire after the process was
+ * restarted is never a repeat.
+ */
+final class RepeatFilter
+{
+    /**
+     * Number of targets remembered.
+     */
+    static final int MAX_ENTRIES = 64;
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private static final RepeatFilter sInstance = new RepeatFilter();
+
+    /**
+     * Hash and time of the last fire of each target, least recently fired first.
+     */
+    private final LinkedHashMap<String, long[]> mLast = new LinkedHashMap<String, long[]>(MAX_ENTRIES, 0.75f, true)
+    {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, long[]> eldest)
+        {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    private long mRepeatCount = 0;
+    private long mPassCount = 0;
+
+    /**
+     * @return the filter of this process.
+     */
+    static RepeatFilter getInstance()
+    {
+        return sInstance;
+    }
+
+    /**
+     * Checks whether a target was last fired with the same content within the window, and records the fire otherwise.
+     *
+     * @param target widget id, or null for a notification.
+     * @param hash content of the fire, from {@link #hash(Bundle, String[])}.
+     * @param now time of the fire, in milliseconds.
+     * @param windowMillis how long a fire is remembered. 0 disables the filter.
+     * @return true if the fire repeats the last one and can be skipped.
+     */
+    synchronized boolean isRepeat(final String target, final long hash, final long now, final long windowMillis)
+    {
+        if (windowMillis <= 0)
+        {
+            mPassCount++;
+            return false;
+        }
+
+        final Iterator<long[]> iterator = mLast.values().iterator();
+        while (iterator.hasNext())
+        {
+            if (now - iterator.next()[1] >= windowMillis)
+            {
+                iterator.remove();
+            }
+        }
+
+        final String key = null == target ? Long.toHexString(hash) : target;
+        final long[] last = mLast.get(key);
+        if (null != last && hash == last[0])
+        {
+            mRepeatCount++;
+            return true;
+        }
+
+        mLast.put(key, new long[] { hash, now });
+        mPassCount++;
+        return false;
+    }
+
+    /**
+     * Writes the counters of the filter.
+     *
+     * @param writer destination. Cannot be null.
+     */
+    synchronized void dump(final PrintWriter writer)
+    {
+        writer.println("repeat filter: " + mRepeatCount + " repeats skipped, " + mPassCount + " fires passed, " + mLast.size() //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+                + " remembered"); //$NON-NLS-1$
+    }
+
+    /**
+     * Hashes the content of a fire with 64 bit FNV-1a. The keys are hashed in sorted order, so the order in which the Bundle was
+     * filled does not matter.
+     *
+     * @param bundle the validated plug-in Bundle. Cannot be null.
+     * @param texts the texts expanded from the templates of the Bundle. May contain null.
+     * @return the hash.
+     */
+    static long hash(final Bundle bundle, final String... texts)
+    {
+        final String[] keys = bundle.keySet().toArray(new String[bundle.keySet().size()]);
+        Arrays.sort(keys);
+
+        long hash = FNV_OFFSET_BASIS;
+        for (final String key : keys)
+        {
+            hash = hash(hash, key);
+            final Object value = bundle.get(key);
+            if (value instanceof String[])
+            {
+                for (final String element : (String[]) value)
+                {
+                    hash = hash(hash, element);
+                }
+            }
+            else
+            {
+                hash = hash(hash, String.valueOf(value));
+            }
+        }
+        for (final String text : texts)
+        {
+            hash = hash(hash, text);
+        }
+        return hash;
+    }
+
+    /**
+     * Adds a string and a terminator to a hash, so that "ab", "c" and "a", "bc" differ.
+     */
+    private static long hash(final long hash, final String value)
+    {
+        long result = hash;
+        if (null != value)
+        {
+            for (int i = 0; i < value.length(); i++)
+            {
+                final char c = value.charAt(i);
+                result = (result ^ (c & 0xff)) * FNV_PRIME;
+                result = (result ^ (c >>> 8)) * FNV_PRIME;
+            }
+        }
+        return (result ^ 0xff) * FNV_PRIME;
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.metawatch.manager.locale.receiver;
+
+import java.util.Collection;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+
+import org.metawatch.manager.locale.cache.CachedWidget;
+import org.metawatch.manager.locale.log.PluginLog;
+
+/**
+ * Schedules the re-rendering of dynamic widgets.
+ * <p>
+ * A single alarm is set for the earliest due widget, and all widgets due within {@link #BATCH_WINDOW_MILLIS} of it are updated
+ * in the same wakeup. Due times are aligned to multiples of the update interval on the wall clock, so widgets with compatible
+ * intervals fall due together and clocks change on the minute.
+ */
+public final class WidgetScheduler
+{
+    /**
+     * Private constructor prevents instantiation
+     *
+     * @throws UnsupportedOperationException because this class cannot be instantiated.
+     */
+    private WidgetScheduler()
+    {
+        throw new UnsupportedOperationException("This class is non-instantiable"); //$NON-NLS-1$
+    }
+
+    /**
+     * Action of the alarm, handled by {@link FireReceiver}.
+     */
+    public static final String ACTION_UPDATE_WIDGETS = "org.metawatch.manager.locale.action.UPDATE_WIDGETS"; //$NON-NLS-1$
+
+    /**
+     * Widgets due within this time after the alarm are updated by the same alarm.
+     */
+    public static final long BATCH_WINDOW_MILLIS = 5000;
+
+    /**
+     * @param now current wall clock time.
+     * @param updateMinutes update interval of the widget. Must be greater than 0.
+     * @return the first multiple of the interval after {@code now}.
+     */
+    public static long getNextDue(final long now, final int updateMinutes)
+    {
+        final long interval = updateMinutes * 60000L;
+        return (now / interval + 1) * interval;
+    }
+
+    /**
+     * @param widget a cached widget.
+     * @param now current wall clock time.
+     * @return true if the widget must be re-rendered by the alarm running at {@code now}.
+     */
+    public static boolean isDue(final CachedWidget widget, final long now)
+    {
+        return widget.isDynamic() && widget.dueAt <= now + BATCH_WINDOW_MILLIS;
+    }
+
+    /**
+     * Sets the alarm for the earliest due widget, or cancels it if no widget is dynamic.
+     *
+     * @param context to set the alarm. Cannot be null.
+     * @param widgets all cached widgets. Cannot be null.
+     */
+    public static void schedule(final Context context, final Collection<CachedWidget> widgets)
+    {
+        long earliest = Long.MAX_VALUE;
+        for (final CachedWidget widget : widgets)
+        {
+            if (widget.isDynamic())
+            {
+                earliest = Math.min(earliest, widget.dueAt);
+            }
+        }
+
+        final AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        final PendingIntent operation = PendingIntent.getBroadcast(context, 0, new Intent(ACTION_UPDATE_WIDGETS).setClass(context, FireReceiver.class), PendingIntent.FLAG_UPDATE_CURRENT);
+
+        if (Long.MAX_VALUE == earliest)
+        {
+            alarmManager.cancel(operation);
+            return;
+        }
+
+        if (PluginLog.D)
+        {
+            PluginLog.d("next widget update in %d ms", earliest - System.currentTimeMillis()); //$NON-NLS-1$
+        }
+
+        /*
+         * Dynamic widgets show the time, so they are updated while the phone sleeps as well
+         */
+        alarmManager.set(AlarmManager.RTC_WAKEUP, earliest, operation);
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.metawatch.manager.locale.receiver;
+
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import org.metawatch.manager.locale.PluginPreferences;
+import org.metawatch.manager.locale.log.PluginLog;
+
+/**
+ * Keeps the {@code :background} process warm between fires when {@link PluginPreferences#KEY_WARM_SERVICE} is set.
+ * <p>
+ * A started service gives the process service priority, so Android does not kill it as soon as {@link FireReceiver} returns and
+ * the next fire finds the renderer, the caches and the settings already loaded. While the service runs, the receiver hands intents
+ * to it with a plain method call. The service stops itself once no intent arrived for
+ * {@link PluginPreferences#KEY_WARM_SERVICE_IDLE_TIMEOUT} seconds, after which the process is an ordinary cached process again.
+ * <p>
+ * Everything runs on the main thread, like the receiver, so the handling code needs no locking.
+ */
+public final class WorkerService extends Service
+{
+    /**
+     * Type: {@code Intent}
+     * <p>
+     * Intent received by {@link FireReceiver}, handed to a service that was not running.
+     */
+    private static final String EXTRA_INTENT = "org.metawatch.manager.locale.extra.INTENT"; //$NON-NLS-1$
+
+    /**
+     * Type: {@code long}
+     * <p>
+     * {@link SystemClock#elapsedRealtime()} at which {@link FireReceiver} received {@link #EXTRA_INTENT}.
+     */
+    private static final String EXTRA_RECEIVED_AT = "org.metawatch.manager.locale.extra.RECEIVED_AT"; //$NON-NLS-1$
+
+    /**
+     * The running service, or null. Only accessed on the main thread.
+     */
+    private static WorkerService sInstance = null;
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    private final Runnable mStop = new Runnable()
+    {
+        public void run()
+        {
+            if (PluginLog.D)
+            {
+                PluginLog.d("worker service idle, stopping"); //$NON-NLS-1$
+            }
+            stopSelf();
+        }
+    };
+
+    /**
+     * Handles an intent received by {@link FireReceiver} in the service, starting the service if it is not running.
+     *
+     * @param context the receiver context. Cannot be null.
+     * @param intent the received intent. Cannot be null.
+     * @param receivedAt {@link SystemClock#elapsedRealtime()} at which the intent was received.
+     */
+    static void handOff(final Context context, final Intent intent, final long receivedAt)
+    {
+        if (null != sInstance)
+        {
+            sInstance.handle(intent, receivedAt);
+            return;
+        }
+
+        final Intent start = new Intent(context, WorkerService.class);
+        start.putExtra(EXTRA_INTENT, intent);
+        start.putExtra(EXTRA_RECEIVED_AT, receivedAt);
+        if (null == context.startService(start))
+        {
+            /*
+             * The service is disabled, so the intent is not lost
+             */
+            PluginLog.w("could not start worker service, handling %s directly", intent.getAction()); //$NON-NLS-1$
+            FireReceiver.handleIntent(context, intent, receivedAt, false);
+        }
+    }
+
+    @Override
+    public void onCreate()
+    {
+        super.onCreate();
+        sInstance = this;
+    }
+
+    @Override
+    public int onStartCommand(final Intent intent, final int flags, final int startId)
+    {
+        final Intent received = null == intent ? null : intent.<Intent> getParcelableExtra(EXTRA_INTENT);
+        if (null != received)
+        {
+            handle(received, intent.getLongExtra(EXTRA_RECEIVED_AT, SystemClock.elapsedRealtime()));
+        }
+        else
+        {
+            scheduleStop();
+        }
+
+        /*
+         * A fire that was lost with the process is not replayed later, when it could be stale
+         */
+        return START_NOT_STICKY;
+    }
+
+    private void handle(final Intent intent, final long receivedAt)
+    {
+        FireReceiver.handleIntent(this, intent, receivedAt, true);
+        scheduleStop();
+    }
+
+    /**
+     * Restarts the idle timeout.
+     */
+    private void scheduleStop()
+    {
+        final int timeout = PluginPreferences.getInt(PluginPreferences.get(this), PluginPreferences.KEY_WARM_SERVICE_IDLE_TIMEOUT, PluginPreferences.DEFAULT_WARM_SERVICE_IDLE_TIMEOUT);
+        mHandler.removeCallbacks(mStop);
+        mHandler.postDelayed(mStop, Math.max(timeout, 1) * 1000L);
+    }
+
+    @Override
+    public void onDestroy()
+    {
+        mHandler.removeCallbacks(mStop);
+        sInstance = null;
+        super.onDestroy();
+    }
+
+    @Override
+    public IBinder onBind(final Intent intent)
+    {
+        return null;
+    }
+}
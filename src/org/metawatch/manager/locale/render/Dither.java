@@ -0,0 +1,178 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.metawatch.manager.locale.render;
+
+/**
+ * Converts ARGB pixels of photos or colored images into the 1 bit per pixel form of {@link MonoFrame}.
+ * <p>
+ * The threshold mode uses the test of {@link MonoFrame#pack(int[], byte[])}, so that it gives the same bits. The other modes compute
+ * the luminance of each pixel with lookup tables of the Rec. 601 weights, then turn it black or white by an ordered 4x4 Bayer
+ * matrix or by Floyd-Steinberg error diffusion. Each conversion is a single pass over the
+ * pixels; error diffusion only keeps the errors of the current and the next row.
+ */
+public final class Dither
+{
+    /**
+     * Black where the sum of the channels is below mid gray, like {@link MonoFrame#pack(int[], byte[])}. Best for line art, such
+     * as the bundled icons.
+     */
+    public static final int MODE_THRESHOLD = 0;
+
+    /**
+     * Ordered dithering with a 4x4 Bayer matrix. Regular patterns, stable when the image changes slightly.
+     */
+    public static final int MODE_BAYER = 1;
+
+    /**
+     * Floyd-Steinberg error diffusion. Most detail for photos.
+     */
+    public static final int MODE_FLOYD_STEINBERG = 2;
+
+    /**
+     * Contribution of each channel value to the luminance, scaled by 256.
+     */
+    private static final int[] RED = new int[256];
+
+    private static final int[] GREEN = new int[256];
+
+    private static final int[] BLUE = new int[256];
+
+    /**
+     * Thresholds of the 4x4 Bayer matrix, in luminance units, indexed by {@code (y & 3) << 2 | (x & 3)}.
+     */
+    private static final int[] BAYER = new int[16];
+
+    static
+    {
+        for (int i = 0; i < 256; i++)
+        {
+            RED[i] = 77 * i;
+            GREEN[i] = 150 * i;
+            BLUE[i] = 29 * i;
+        }
+
+        final int[] matrix = new int[] { 0, 8, 2, 10, 12, 4, 14, 6, 3, 11, 1, 9, 15, 7, 13, 5 };
+        for (int i = 0; i < matrix.length; i++)
+        {
+            BAYER[i] = (matrix[i] * 2 + 1) * 256 / 32;
+        }
+    }
+
+    /**
+     * Private constructor prevents instantiation
+     *
+     * @throws UnsupportedOperationException because this class cannot be instantiated.
+     */
+    private Dither()
+    {
+        throw new UnsupportedOperationException("This class is non-instantiable"); //$NON-NLS-1$
+    }
+
+    /**
+     * @param pixel an ARGB pixel. The alpha is ignored.
+     * @return its luminance, from 0 for black to 255 for white.
+     */
+    public static int getLuminance(final int pixel)
+    {
+        return (RED[pixel >> 16 & 0xff] + GREEN[pixel >> 8 & 0xff] + BLUE[pixel & 0xff]) >> 8;
+    }
+
+    /**
+     * Converts pixels into a packed frame.
+     *
+     * @param pixels ARGB pixels, row by row. Not changed.
+     * @param width width of the image.
+     * @param height height of the image.
+     * @param mode one of the {@code MODE_} constants.
+     * @param out destination, at least {@code (width * height + 7) / 8} bytes. A set bit is a black pixel.
+     */
+    public static void pack(final int[] pixels, final int width, final int height, final int mode, final byte[] out)
+    {
+        final int bytes = (width * height + 7) / 8;
+        for (int i = 0; i < bytes; i++)
+        {
+            out[i] = 0;
+        }
+
+        if (MODE_FLOYD_STEINBERG == mode)
+        {
+            diffuse(pixels, width, height, out);
+            return;
+        }
+
+        if (MODE_BAYER != mode)
+        {
+            for (int i = 0; i < width * height; i++)
+            {
+                final int pixel = pixels[i];
+                if ((pixel >> 16 & 0xff) + (pixel >> 8 & 0xff) + (pixel & 0xff) < 384)
+                {
+                    out[i >> 3] |= 0x80 >>> (i & 7);
+                }
+            }
+            return;
+        }
+
+        for (int y = 0, i = 0; y < height; y++)
+        {
+            final int row = (y & 3) << 2;
+            for (int x = 0; x < width; x++, i++)
+            {
+                if (getLuminance(pixels[i]) < BAYER[row | (x & 3)])
+                {
+                    out[i >> 3] |= 0x80 >>> (i & 7);
+                }
+            }
+        }
+    }
+
+    /**
+     * Floyd-Steinberg: 7/16 of the error of a pixel goes right, 3/16 below left, 5/16 below and 1/16 below right.
+     */
+    private static void diffuse(final int[] pixels, final int width, final int height, final byte[] out)
+    {
+        /*
+         * Errors of the current and the next row, with a margin on each side so that the edges need no test
+         */
+        int[] current = new int[width + 2];
+        int[] next = new int[width + 2];
+
+        for (int y = 0, i = 0; y < height; y++)
+        {
+            for (int x = 0; x < width; x++, i++)
+            {
+                final int value = getLuminance(pixels[i]) + (current[x + 1] >> 4);
+                final int error;
+                if (value < 128)
+                {
+                    out[i >> 3] |= 0x80 >>> (i & 7);
+                    error = value;
+                }
+                else
+                {
+                    error = value - 255;
+                }
+
+                current[x + 2] += error * 7;
+                next[x] += error * 3;
+                next[x + 1] += error * 5;
+                next[x + 2] += error;
+            }
+
+            final int[] done = current;
+            current = next;
+            next = done;
+            for (int x = 0; x < next.length; x++)
+            {
+                next[x] = 0;
+            }
+        }
+    }
+}
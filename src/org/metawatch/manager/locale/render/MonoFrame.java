@@ -0,0 +1,127 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.metawatch.manager.locale.render;
+
+import android.graphics.Color;
+
+/**
+ * Converts rendered frames to and from the 1 bit per pixel form the watch displays, which is how frames are stored and compared.
+ * <p>
+ * Pixels are packed row by row, most significant bit first. A set bit is a black pixel.
+ */
+public final class MonoFrame
+{
+    /**
+     * Private constructor prevents instantiation
+     *
+     * @throws UnsupportedOperationException because this class cannot be instantiated.
+     */
+    private MonoFrame()
+    {
+        throw new UnsupportedOperationException("This class is non-instantiable"); //$NON-NLS-1$
+    }
+
+    /**
+     * @param size format of the frame.
+     * @return number of bytes of a packed frame of this size.
+     */
+    public static int getPackedLength(final WidgetSize size)
+    {
+        return (size.width * size.height + 7) / 8;
+    }
+
+    /**
+     * Packs rendered pixels. Pixels darker than mid gray become black.
+     *
+     * @param pixels ARGB pixels, as returned by {@link WidgetRenderer#render(WidgetSize, String, String)}.
+     * @param out destination, at least {@code (pixels.length + 7) / 8} bytes.
+     */
+    public static void pack(final int[] pixels, final byte[] out)
+    {
+        final int bytes = (pixels.length + 7) / 8;
+        for (int i = 0; i < bytes; i++)
+        {
+            out[i] = 0;
+        }
+
+        for (int i = 0; i < pixels.length; i++)
+        {
+            final int pixel = pixels[i];
+            if ((pixel >> 16 & 0xff) + (pixel >> 8 & 0xff) + (pixel & 0xff) < 384)
+            {
+                out[i >> 3] |= 0x80 >>> (i & 7);
+            }
+        }
+    }
+
+    /**
+     * Unpacks a frame into black and white ARGB pixels.
+     *
+     * @param packed packed frame.
+     * @param out destination. Its length is the number of pixels.
+     */
+    public static void unpack(final byte[] packed, final int[] out)
+    {
+        for (int i = 0; i < out.length; i++)
+        {
+            out[i] = 0 != (packed[i >> 3] & 0x80 >>> (i & 7)) ? Color.BLACK : Color.WHITE;
+        }
+    }
+
+    /**
+     * Finds the smallest rectangle containing all the pixels that differ between two packed frames of the same size.
+     *
+     * @param previous the frame sent before. Cannot be null.
+     * @param current the new frame. Cannot be null.
+     * @param size format of both frames.
+     * @param rect receives the left, top, width and height of the rectangle. At least 4 elements.
+     * @return false if the frames are identical, in which case {@code rect} is not changed.
+     */
+    public static boolean findChangedRect(final byte[] previous, final byte[] current, final WidgetSize size, final int[] rect)
+    {
+        final int pixels = size.width * size.height;
+        int left = size.width;
+        int top = size.height;
+        int right = -1;
+        int bottom = -1;
+
+        for (int i = 0; i < getPackedLength(size); i++)
+        {
+            final int changed = (previous[i] ^ current[i]) & 0xff;
+            if (0 == changed)
+            {
+                continue;
+            }
+            for (int bit = 0; bit < 8; bit++)
+            {
+                final int pixel = (i << 3) + bit;
+                if (pixel < pixels && 0 != (changed & 0x80 >>> bit))
+                {
+                    final int x = pixel % size.width;
+                    final int y = pixel / size.width;
+                    left = Math.min(left, x);
+                    right = Math.max(right, x);
+                    top = Math.min(top, y);
+                    bottom = Math.max(bottom, y);
+                }
+            }
+        }
+
+        if (right < 0)
+        {
+            return false;
+        }
+        rect[0] = left;
+        rect[1] = top;
+        rect[2] = right - left + 1;
+        rect[3] = bottom - top + 1;
+        return true;
+    }
+}
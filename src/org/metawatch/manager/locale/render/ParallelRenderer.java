@@ -0,0 +1,145 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.metawatch.manager.locale.render;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import android.content.Context;
+
+import org.metawatch.manager.locale.log.PluginLog;
+
+/**
+ * Renders widgets on a small pool of threads, one per core up to {@link #MAX_THREADS}, so that many widgets are rendered
+ * several times faster than one after another.
+ * <p>
+ * Each thread renders with its own {@link WidgetRenderer}, so the render buffers are never shared. The result of a render is a
+ * copy of the frames in the packed form of {@link MonoFrame}, which the caller may keep. Renders are submitted and collected
+ * in the same order, so the thread collecting them can broadcast the frames in a stable order while the pool renders the next
+ * widgets.
+ */
+public final class ParallelRenderer
+{
+    /**
+     * Upper bound of the pool, so that a phone with many cores does not keep many idle threads in the background process.
+     */
+    public static final int MAX_THREADS = 4;
+
+    private static ParallelRenderer sInstance = null;
+
+    private final Context mContext;
+
+    private final ExecutorService mExecutor;
+
+    /**
+     * @param context to read the assets. Cannot be null.
+     * @return the renderer of this process. The threads are started on demand.
+     */
+    public static synchronized ParallelRenderer getInstance(final Context context)
+    {
+        if (null == sInstance)
+        {
+            sInstance = new ParallelRenderer(context, getThreadCount());
+        }
+        return sInstance;
+    }
+
+    /**
+     * @return the size of the pool on this phone.
+     */
+    public static int getThreadCount()
+    {
+        return Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), MAX_THREADS));
+    }
+
+    /**
+     * @param context to read the assets. Cannot be null.
+     * @param threads size of the pool.
+     */
+    ParallelRenderer(final Context context, final int threads)
+    {
+        mContext = context.getApplicationContext() != null ? context.getApplicationContext() : context;
+        mExecutor = Executors.newFixedThreadPool(threads, new ThreadFactory()
+        {
+            private int mCount = 0;
+
+            public synchronized Thread newThread(final Runnable runnable)
+            {
+                return new Thread(runnable, "renderer " + ++mCount); //$NON-NLS-1$
+            }
+        });
+    }
+
+    /**
+     * Queues the render of a widget in all sizes.
+     *
+     * @param icon name of the icon.
+     * @param label text drawn below the icon. May be empty.
+     * @return the pending frames, indexed by {@link WidgetSize#index}.
+     */
+    public Future<byte[][]> submit(final String icon, final String label)
+    {
+        return mExecutor.submit(new Callable<byte[][]>()
+        {
+            public byte[][] call()
+            {
+                return render(WidgetRenderer.forCurrentThread(mContext), icon, label);
+            }
+        });
+    }
+
+    /**
+     * Waits for a render. If it failed, the widget is rendered on the calling thread instead.
+     *
+     * @param render a render returned by {@link #submit(String, String)}.
+     * @param icon name of the icon of the render.
+     * @param label label of the render.
+     * @return the frames, indexed by {@link WidgetSize#index}.
+     */
+    public byte[][] get(final Future<byte[][]> render, final String icon, final String label)
+    {
+        try
+        {
+            return render.get();
+        }
+        catch (final InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        catch (final ExecutionException e)
+        {
+            PluginLog.w("parallel render failed: %s", String.valueOf(e.getCause())); //$NON-NLS-1$
+        }
+        return render(WidgetRenderer.forCurrentThread(mContext), icon, label);
+    }
+
+    /**
+     * Renders a widget in all sizes.
+     *
+     * @param renderer renderer of the calling thread. Cannot be null.
+     * @param icon name of the icon.
+     * @param label text drawn below the icon. May be empty.
+     * @return the packed frames, indexed by {@link WidgetSize#index}.
+     */
+    public static byte[][] render(final WidgetRenderer renderer, final String icon, final String label)
+    {
+        final byte[][] frames = new byte[WidgetSize.ALL.length][];
+        for (final WidgetSize size : WidgetSize.ALL)
+        {
+            frames[size.index] = new byte[MonoFrame.getPackedLength(size)];
+            MonoFrame.pack(renderer.render(size, icon, label), frames[size.index]);
+        }
+        return frames;
+    }
+}
@@ -0,0 +1,326 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.metawatch.manager.locale.render;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Fits a label into the width and the number of lines of a {@link WidgetSize}.
+ * <p>
+ * A label that is too wide is word-wrapped, breaking words that are wider than a line. If a word had to be broken or the label
+ * still does not fit, its words are optionally abbreviated by dropping their inner vowels, and finally the last line is cut and
+ * ends with {@link #ELLIPSIS}.
+ * <p>
+ * Layouts are memoized per label and size, so firing the same setting again does not lay it out again. An instance is not thread
+ * safe, like the {@link WidgetRenderer} owning it.
+ */
+public final class TextLayout
+{
+    /**
+     * Distance between the baselines of two lines, in pixels.
+     */
+    public static final int LINE_HEIGHT = 6;
+
+    /**
+     * Marks a label that was cut. The pixel font has no ellipsis character, and three dots would take most of a small widget.
+     */
+    public static final String ELLIPSIS = ".."; //$NON-NLS-1$
+
+    /**
+     * Number of layouts kept per size.
+     */
+    private static final int CACHE_SIZE = 64;
+
+    private static final String[] NO_LINES = new String[0];
+
+    private static final String VOWELS = "AEIOUaeiou"; //$NON-NLS-1$
+
+    /**
+     * Measures text in the font of the labels.
+     */
+    public interface Metrics
+    {
+        /**
+         * @param text text on one line.
+         * @return width of the text in pixels.
+         */
+        int measureText(String text);
+    }
+
+    private final Metrics mMetrics;
+
+    private boolean mIsAbbreviating;
+
+    /**
+     * Memoized layouts, indexed by {@link WidgetSize#index}.
+     */
+    private final LayoutCache[] mCaches;
+
+    /**
+     * @param metrics measures the text. Cannot be null.
+     * @param isAbbreviating whether words are abbreviated before the label is cut.
+     */
+    public TextLayout(final Metrics metrics, final boolean isAbbreviating)
+    {
+        mMetrics = metrics;
+        mIsAbbreviating = isAbbreviating;
+
+        mCaches = new LayoutCache[WidgetSize.ALL.length];
+        for (final WidgetSize size : WidgetSize.ALL)
+        {
+            mCaches[size.index] = new LayoutCache();
+        }
+    }
+
+    /**
+     * Changes whether words are abbreviated, dropping the memoized layouts if it differs.
+     *
+     * @param isAbbreviating whether words are abbreviated before the label is cut.
+     */
+    public void setAbbreviating(final boolean isAbbreviating)
+    {
+        if (isAbbreviating == mIsAbbreviating)
+        {
+            return;
+        }
+
+        mIsAbbreviating = isAbbreviating;
+        for (final LayoutCache cache : mCaches)
+        {
+            cache.clear();
+        }
+    }
+
+    /**
+     * Lays out a label for a size, or returns the memoized layout.
+     *
+     * @param label the label. Cannot be null.
+     * @param size format of the widget.
+     * @return the lines of the label, at most {@link WidgetSize#maxLines}, none if the label is blank. The array must not be
+     *         modified.
+     */
+    public String[] layout(final String label, final WidgetSize size)
+    {
+        final LayoutCache cache = mCaches[size.index];
+        String[] lines = cache.get(label);
+        if (null == lines)
+        {
+            lines = layout(label, size.width, size.maxLines);
+            cache.put(label, lines);
+        }
+        return lines;
+    }
+
+    /**
+     * Lays out a label, without memoizing it.
+     *
+     * @param label the label. Cannot be null.
+     * @param width width of a line in pixels.
+     * @param maxLines maximum number of lines. Must be greater than 0.
+     * @return the lines of the label, none if the label is blank.
+     */
+    public String[] layout(final String label, final int width, final int maxLines)
+    {
+        final String text = normalize(label);
+        if (0 == text.length())
+        {
+            return NO_LINES;
+        }
+
+        if (mMetrics.measureText(text) <= width)
+        {
+            return new String[] { text };
+        }
+
+        final boolean[] isDegraded = new boolean[1];
+        final String[] lines = wrap(text, width, maxLines, isDegraded);
+        if (!isDegraded[0] || !mIsAbbreviating)
+        {
+            return lines;
+        }
+
+        return wrap(abbreviate(text), width, maxLines, isDegraded);
+    }
+
+    /**
+     * Trims a label and collapses its white space into single spaces.
+     */
+    private static String normalize(final String label)
+    {
+        final StringBuilder text = new StringBuilder(label.length());
+        boolean isSpace = false;
+        for (int i = 0; i < label.length(); i++)
+        {
+            final char c = label.charAt(i);
+            if (Character.isWhitespace(c))
+            {
+                isSpace = text.length() > 0;
+            }
+            else
+            {
+                if (isSpace)
+                {
+                    text.append(' ');
+                    isSpace = false;
+                }
+                text.append(c);
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * Greedily wraps text, cutting the last line if there is more text than lines.
+     *
+     * @param isDegraded set to true if a word was broken or the text was cut.
+     */
+    private String[] wrap(final String text, final int width, final int maxLines, final boolean[] isDegraded)
+    {
+        final ArrayList<String> lines = new ArrayList<String>(maxLines);
+        final int length = text.length();
+        int start = 0;
+        isDegraded[0] = false;
+
+        while (start < length)
+        {
+            if (lines.size() == maxLines - 1)
+            {
+                final String rest = text.substring(start);
+                if (mMetrics.measureText(rest) <= width)
+                {
+                    lines.add(rest);
+                }
+                else
+                {
+                    final String cut = ellipsize(rest, width);
+                    if (cut.length() > 0)
+                    {
+                        lines.add(cut);
+                    }
+                    isDegraded[0] = true;
+                }
+                break;
+            }
+
+            /*
+             * Longest run of whole words that fits
+             */
+            int end = -1;
+            for (int i = start + 1; i <= length; i++)
+            {
+                if (i == length || ' ' == text.charAt(i))
+                {
+                    if (mMetrics.measureText(text.substring(start, i)) > width)
+                    {
+                        break;
+                    }
+                    end = i;
+                }
+            }
+
+            /*
+             * The first word alone is too wide, so it is broken after the last character that fits
+             */
+            if (-1 == end)
+            {
+                end = start + 1;
+                while (end < length && ' ' != text.charAt(end) && mMetrics.measureText(text.substring(start, end + 1)) <= width)
+                {
+                    end++;
+                }
+                isDegraded[0] = true;
+            }
+
+            lines.add(text.substring(start, end));
+            start = end < length && ' ' == text.charAt(end) ? end + 1 : end;
+        }
+
+        return lines.toArray(new String[lines.size()]);
+    }
+
+    /**
+     * @return the longest prefix of {@code text} that fits with {@link #ELLIPSIS} appended, or an empty string.
+     */
+    private String ellipsize(final String text, final int width)
+    {
+        for (int end = text.length() - 1; end > 0; end--)
+        {
+            final String candidate = text.substring(0, end).trim() + ELLIPSIS;
+            if (mMetrics.measureText(candidate) <= width)
+            {
+                return candidate;
+            }
+        }
+        return mMetrics.measureText(ELLIPSIS) <= width ? ELLIPSIS : ""; //$NON-NLS-1$
+    }
+
+    /**
+     * Drops the vowels of each word except its first letter, e.g. "BEDROOM" becomes "BDRM". Words of up to 3 letters are kept.
+     *
+     * @param text the normalized label.
+     * @return the abbreviated label.
+     */
+    public static String abbreviate(final String text)
+    {
+        final StringBuilder abbreviated = new StringBuilder(text.length());
+        int wordStart = 0;
+        for (int i = 0; i <= text.length(); i++)
+        {
+            if (i == text.length() || ' ' == text.charAt(i))
+            {
+                final String word = text.substring(wordStart, i);
+                if (word.length() <= 3)
+                {
+                    abbreviated.append(word);
+                }
+                else
+                {
+                    abbreviated.append(word.charAt(0));
+                    for (int j = 1; j < word.length(); j++)
+                    {
+                        final char c = word.charAt(j);
+                        if (VOWELS.indexOf(c) < 0)
+                        {
+                            abbreviated.append(c);
+                        }
+                    }
+                }
+
+                if (i < text.length())
+                {
+                    abbreviated.append(' ');
+                }
+                wordStart = i + 1;
+            }
+        }
+        return abbreviated.toString();
+    }
+
+    /**
+     * Least recently used layouts of one size.
+     */
+    private static final class LayoutCache extends LinkedHashMap<String, String[]>
+    {
+        private static final long serialVersionUID = 1L;
+
+        LayoutCache()
+        {
+            super(CACHE_SIZE, 0.75f, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, String[]> eldest)
+        {
+            return size() > CACHE_SIZE;
+        }
+    }
+}
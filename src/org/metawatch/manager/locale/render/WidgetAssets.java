@@ -0,0 +1,328 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.metawatch.manager.locale.render;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+
+import android.content.Context;
+import android.graphics.Color;
+
+import org.metawatch.manager.locale.log.PluginLog;
+
+/**
+ * The built-in icons and the label font, pre-packed as 1 bit per pixel masks by the {@code compile-widget-assets} build step.
+ * <p>
+ * The asset is read with a single sequential read and indexed once per process. Drawing blits the masks straight into the pixel
+ * buffer of a frame, so widgets are rendered without decoding a bitmap or loading the TrueType font. The layout is documented in
+ * {@code tools/src/org/metawatch/manager/locale/tools/AssetCompiler.java}.
+ */
+public final class WidgetAssets implements TextLayout.Metrics
+{
+    /**
+     * Name of the asset.
+     */
+    public static final String ASSET_NAME = "widget_assets.bin"; //$NON-NLS-1$
+
+    /**
+     * First bytes of the asset, "LMWA".
+     */
+    private static final int MAGIC = 0x4c4d5741;
+
+    /**
+     * Must match the version written by the asset compiler.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Size of the glyph lookup table. Characters above are not in the font.
+     */
+    private static final int GLYPH_TABLE_SIZE = 256;
+
+    /**
+     * Whether the asset was read, successfully or not.
+     */
+    private static boolean sIsLoaded = false;
+
+    private static WidgetAssets sInstance = null;
+
+    private final byte[] mData;
+
+    /**
+     * Offset of the first mask of each icon, keyed by name.
+     */
+    private final HashMap<String, Integer> mIcons = new HashMap<String, Integer>();
+
+    /**
+     * Offset of the metrics of each glyph, indexed by character, or 0 if the font has no such glyph.
+     */
+    private final int[] mGlyphs = new int[GLYPH_TABLE_SIZE];
+
+    /**
+     * Gets the assets, reading them on first use.
+     *
+     * @param context to read the asset. Cannot be null.
+     * @return the assets, or null if the app was built without them, in which case widgets are drawn from the BMP and font
+     *         assets.
+     */
+    public static synchronized WidgetAssets get(final Context context)
+    {
+        if (!sIsLoaded)
+        {
+            sIsLoaded = true;
+            try
+            {
+                sInstance = new WidgetAssets(read(context));
+            }
+            catch (final IOException e)
+            {
+                PluginLog.w("no packed widget assets: %s", e.getMessage()); //$NON-NLS-1$
+            }
+        }
+        return sInstance;
+    }
+
+    private static byte[] read(final Context context) throws IOException
+    {
+        final InputStream in = context.getAssets().open(ASSET_NAME);
+        try
+        {
+            /*
+             * available() is the length of the asset, so this is normally one read
+             */
+            byte[] data = new byte[Math.max(in.available(), 1)];
+            int length = 0;
+            int count;
+            while ((count = in.read(data, length, data.length - length)) > 0)
+            {
+                length += count;
+                if (length == data.length)
+                {
+                    final byte[] larger = new byte[data.length * 2];
+                    System.arraycopy(data, 0, larger, 0, length);
+                    data = larger;
+                }
+            }
+
+            if (length == data.length)
+            {
+                return data;
+            }
+            final byte[] exact = new byte[length];
+            System.arraycopy(data, 0, exact, 0, length);
+            return exact;
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * Indexes compiled assets.
+     *
+     * @param data content of the asset. Cannot be null.
+     * @throws IOException if {@code data} is not a valid asset.
+     */
+    public WidgetAssets(final byte[] data) throws IOException
+    {
+        mData = data;
+
+        try
+        {
+            final ByteBuffer buffer = ByteBuffer.wrap(data);
+            if (MAGIC != buffer.getInt() || VERSION != buffer.getInt())
+            {
+                throw new IOException("unsupported widget assets"); //$NON-NLS-1$
+            }
+
+            if (WidgetSize.ALL.length != buffer.getInt())
+            {
+                throw new IOException("widget sizes do not match"); //$NON-NLS-1$
+            }
+            int iconLength = 0;
+            for (final WidgetSize size : WidgetSize.ALL)
+            {
+                if (size.iconWidth != buffer.getShort() || size.iconHeight != buffer.getShort())
+                {
+                    throw new IOException("icon dimensions do not match"); //$NON-NLS-1$
+                }
+                iconLength += getMaskLength(size.iconWidth, size.iconHeight);
+            }
+
+            final int iconCount = buffer.getInt();
+            for (int i = 0; i < iconCount; i++)
+            {
+                final int nameLength = buffer.get() & 0xff;
+                final String name = new String(data, buffer.position(), nameLength, "US-ASCII"); //$NON-NLS-1$
+                buffer.position(buffer.position() + nameLength);
+                mIcons.put(name, Integer.valueOf(buffer.position()));
+                buffer.position(buffer.position() + iconLength);
+            }
+
+            buffer.getShort();
+            final int glyphCount = buffer.getInt();
+            for (int i = 0; i < glyphCount; i++)
+            {
+                final char code = buffer.getChar();
+                final int metrics = buffer.position();
+                final int width = data[metrics + 3] & 0xff;
+                final int height = data[metrics + 4] & 0xff;
+                buffer.position(metrics + 5 + getMaskLength(width, height));
+                if (code < GLYPH_TABLE_SIZE)
+                {
+                    mGlyphs[code] = metrics;
+                }
+            }
+        }
+        catch (final RuntimeException e)
+        {
+            /*
+             * A truncated asset underflows the buffer or sets a position past its end
+             */
+            throw new IOException("truncated widget assets"); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * @param name name of an icon.
+     * @return true if the icon is one of the built-in icons.
+     */
+    public boolean hasIcon(final String name)
+    {
+        return mIcons.containsKey(name);
+    }
+
+    /**
+     * Draws a built-in icon in black.
+     *
+     * @param pixels frame to draw into, {@code size.width * size.height} pixels.
+     * @param size format of the frame.
+     * @param name name of the icon.
+     * @param x left of the icon.
+     * @param y top of the icon.
+     * @return false if there is no such icon.
+     */
+    public boolean drawIcon(final int[] pixels, final WidgetSize size, final String name, final int x, final int y)
+    {
+        final Integer icon = mIcons.get(name);
+        if (null == icon)
+        {
+            return false;
+        }
+
+        int offset = icon.intValue();
+        for (int i = 0; i < size.index; i++)
+        {
+            offset += getMaskLength(WidgetSize.ALL[i].iconWidth, WidgetSize.ALL[i].iconHeight);
+        }
+        blit(mData, offset, size.iconWidth, size.iconHeight, pixels, size.width, size.height, x, y);
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int measureText(final String text)
+    {
+        int width = 0;
+        final int length = text.length();
+        for (int i = 0; i < length; i++)
+        {
+            final int glyph = getGlyph(text.charAt(i));
+            if (0 != glyph)
+            {
+                width += mData[glyph];
+            }
+        }
+        return width;
+    }
+
+    /**
+     * Draws a label in black, horizontally centered.
+     *
+     * @param pixels frame to draw into, {@code size.width * size.height} pixels.
+     * @param size format of the frame.
+     * @param text the label.
+     * @param centerX horizontal center of the label.
+     * @param baseline baseline of the label.
+     */
+    public void drawText(final int[] pixels, final WidgetSize size, final String text, final int centerX, final int baseline)
+    {
+        int x = centerX - measureText(text) / 2;
+        final int length = text.length();
+        for (int i = 0; i < length; i++)
+        {
+            final int glyph = getGlyph(text.charAt(i));
+            if (0 == glyph)
+            {
+                continue;
+            }
+
+            final int width = mData[glyph + 3] & 0xff;
+            final int height = mData[glyph + 4] & 0xff;
+            blit(mData, glyph + 5, width, height, pixels, size.width, size.height, x + mData[glyph + 1], baseline + mData[glyph + 2]);
+            x += mData[glyph];
+        }
+    }
+
+    /**
+     * @return offset of the metrics of the glyph of {@code c}, or 0 if the font has none.
+     */
+    private int getGlyph(final char c)
+    {
+        return c < GLYPH_TABLE_SIZE ? mGlyphs[c] : 0;
+    }
+
+    /**
+     * @return number of bytes of a packed mask.
+     */
+    static int getMaskLength(final int width, final int height)
+    {
+        return (width * height + 7) / 8;
+    }
+
+    /**
+     * Draws the set bits of a packed mask in black, clipped to the frame.
+     *
+     * @param mask the packed mask.
+     * @param offset offset of the mask in {@code mask}.
+     * @param width width of the mask.
+     * @param height height of the mask.
+     * @param pixels frame to draw into.
+     * @param frameWidth width of the frame.
+     * @param frameHeight height of the frame.
+     * @param x left of the mask in the frame. May be negative.
+     * @param y top of the mask in the frame. May be negative.
+     */
+    static void blit(final byte[] mask, final int offset, final int width, final int height, final int[] pixels, final int frameWidth, final int frameHeight, final int x, final int y)
+    {
+        for (int row = 0; row < height; row++)
+        {
+            final int frameY = y + row;
+            if (frameY < 0 || frameY >= frameHeight)
+            {
+                continue;
+            }
+
+            for (int column = 0; column < width; column++)
+            {
+                final int frameX = x + column;
+                final int bit = row * width + column;
+                if (frameX >= 0 && frameX < frameWidth && 0 != (mask[offset + (bit >> 3)] & 0x80 >>> (bit & 7)))
+                {
+                    pixels[frameY * frameWidth + frameX] = Color.BLACK;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,399 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.metawatch.manager.locale.render;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint.Align;
+import android.graphics.Typeface;
+import android.os.SystemClock;
+import android.text.TextPaint;
+
+import org.metawatch.manager.locale.PluginPreferences;
+import org.metawatch.manager.locale.icon.IconPack;
+import org.metawatch.manager.locale.log.PluginLog;
+
+/**
+ * Renders the icon and the label of a widget into the frames sent to the MetaWatch manager.
+ * <p>
+ * When the app is built with the packed {@link WidgetAssets}, icons and glyphs are blitted straight into the pixel buffer.
+ * Otherwise the BMP icons and the TrueType font are drawn on a canvas.
+ * <p>
+ * The bitmaps, canvases, paint, pixel buffers and decoded icons are allocated once and reused for every render, so that repeated
+ * renders do not allocate. An instance is not thread safe: each worker thread owns its own renderer, obtained with
+ * {@link #forCurrentThread(Context)}.
+ */
+public final class WidgetRenderer
+{
+    /**
+     * Name of the pixel font asset.
+     */
+    private static final String FONT_ASSET = "metawatch_8pt_5pxl_CAPS.ttf"; //$NON-NLS-1$
+
+    /**
+     * How long an icon missing from the {@link IconPack} is not looked up again. Another process importing it is only noticed
+     * when the pack is opened again, so the lookup is repeated from time to time.
+     */
+    private static final long MISSING_ICON_RECHECK_MILLIS = 60 * 1000;
+
+    /**
+     * Renderer owned by each thread.
+     */
+    private static final ThreadLocal<WidgetRenderer> sRenderers = new ThreadLocal<WidgetRenderer>();
+
+    /**
+     * The font is immutable, so it is shared by the renderers of all threads.
+     */
+    private static Typeface sTypeface = null;
+
+    /**
+     * Application context, used to read the assets.
+     */
+    private final Context mContext;
+
+    /**
+     * Pre-packed icons and font, or null to draw on a canvas.
+     */
+    private final WidgetAssets mAssets;
+
+    /**
+     * Paint of the label, or null if {@link #mAssets} is used. Use {@link #getPaint()}, which sets the font.
+     */
+    private final TextPaint mPaint;
+
+    /**
+     * Whether the font was set on {@link #mPaint}. Loading the TrueType font is the slowest part of the first render, so it is
+     * only done once a label is measured or drawn, never for widgets without a label.
+     */
+    private boolean mHasTypeface = false;
+
+    /**
+     * Fits the labels into the frames.
+     */
+    private final TextLayout mLayout;
+
+    /**
+     * Render targets, indexed by {@link WidgetSize#index}.
+     */
+    private final RenderTarget[] mTargets;
+
+    /**
+     * Icons missing from the pack, and from the assets when drawing on a canvas, with the {@link SystemClock#elapsedRealtime()}
+     * of their lookup. Valid for {@link #mMissingIconsGeneration} of the pack.
+     */
+    private final HashMap<String, Long> mMissingIcons = new HashMap<String, Long>();
+
+    private int mMissingIconsGeneration = -1;
+
+    /**
+     * Unknown icons already reported, so that rendering one again does not flood the log.
+     */
+    private final HashSet<String> mUnknownIcons = new HashSet<String>();
+
+    /**
+     * Gets the renderer owned by the calling thread, creating it on first use.
+     *
+     * @param context to read the assets. Cannot be null.
+     * @return the renderer of the calling thread.
+     */
+    public static WidgetRenderer forCurrentThread(final Context context)
+    {
+        WidgetRenderer renderer = sRenderers.get();
+        if (null == renderer)
+        {
+            renderer = new WidgetRenderer(context);
+            sRenderers.set(renderer);
+        }
+        return renderer;
+    }
+
+    /**
+     * Creates a renderer with its own set of render targets.
+     *
+     * @param context to read the assets. Cannot be null.
+     */
+    public WidgetRenderer(final Context context)
+    {
+        mContext = context.getApplicationContext() != null ? context.getApplicationContext() : context;
+
+        mAssets = WidgetAssets.get(mContext);
+        if (null == mAssets)
+        {
+            mPaint = new TextPaint();
+            mPaint.setColor(Color.BLACK);
+            mPaint.setTextSize(8);
+            mPaint.setTextAlign(Align.CENTER);
+        }
+        else
+        {
+            mPaint = null;
+        }
+
+        final boolean isAbbreviating = isAbbreviating();
+        if (null == mAssets)
+        {
+            mLayout = new TextLayout(new TextLayout.Metrics()
+            {
+                public int measureText(final String text)
+                {
+                    return (int) Math.ceil(getPaint().measureText(text));
+                }
+            }, isAbbreviating);
+        }
+        else
+        {
+            mLayout = new TextLayout(mAssets, isAbbreviating);
+        }
+
+        mTargets = new RenderTarget[WidgetSize.ALL.length];
+        for (final WidgetSize size : WidgetSize.ALL)
+        {
+            mTargets[size.index] = new RenderTarget(size, null == mAssets);
+        }
+    }
+
+    /**
+     * Renders a widget.
+     * <p>
+     * The returned array is owned by this renderer and is overwritten by the next render of the same size. It must be consumed
+     * (e.g. broadcast, which copies it into a parcel) before that.
+     *
+     * @param size format of the widget.
+     * @param icon name of the icon, e.g. "home".
+     * @param label text drawn below the icon, wrapped or cut to fit. May be empty.
+     * @return the {@code size.width * size.height} pixels of the frame.
+     */
+    public int[] render(final WidgetSize size, final String icon, final String label)
+    {
+        final RenderTarget target = mTargets[size.index];
+        mLayout.setAbbreviating(isAbbreviating());
+        final String[] lines = mLayout.layout(label, size);
+        final int iconY = 0 == lines.length ? size.iconYNoLabel : Math.max(0, size.iconY - (lines.length - 1) * TextLayout.LINE_HEIGHT);
+        if (null != mAssets)
+        {
+            return renderMasks(target, icon, lines, iconY);
+        }
+
+        final Canvas canvas = target.canvas;
+
+        canvas.drawColor(Color.WHITE);
+
+        final Bitmap iconBmp = getIcon(target, icon);
+        if (null != iconBmp)
+        {
+            canvas.drawBitmap(iconBmp, size.iconX, iconY, null);
+        }
+        for (int i = 0; i < lines.length; i++)
+        {
+            canvas.drawText(lines[i], size.textX, getBaseline(size, lines, i), getPaint());
+        }
+
+        target.bitmap.getPixels(target.pixels, 0, size.width, 0, 0, size.width, size.height);
+        return target.pixels;
+    }
+
+    private int[] renderMasks(final RenderTarget target, final String icon, final String[] lines, final int iconY)
+    {
+        final WidgetSize size = target.size;
+        final int[] pixels = target.pixels;
+        Arrays.fill(pixels, Color.WHITE);
+
+        final byte[] mask = getImportedIcon(target, icon);
+        if (null != mask)
+        {
+            WidgetAssets.blit(mask, 0, size.iconWidth, size.iconHeight, pixels, size.width, size.height, size.iconX, iconY);
+        }
+        else if (!mAssets.drawIcon(pixels, size, icon, size.iconX, iconY) && mUnknownIcons.add(icon))
+        {
+            PluginLog.w("unknown icon: %s", icon); //$NON-NLS-1$
+        }
+        for (int i = 0; i < lines.length; i++)
+        {
+            mAssets.drawText(pixels, size, lines[i], size.textX, getBaseline(size, lines, i));
+        }
+
+        return pixels;
+    }
+
+    /**
+     * @return baseline of line {@code i}. The last line is on {@link WidgetSize#textY}.
+     */
+    private static int getBaseline(final WidgetSize size, final String[] lines, final int i)
+    {
+        return size.textY - (lines.length - 1 - i) * TextLayout.LINE_HEIGHT;
+    }
+
+    /**
+     * @return the mask of an icon imported by the user, or null if {@code icon} is built-in or unknown.
+     */
+    private byte[] getImportedIcon(final RenderTarget target, final String icon)
+    {
+        byte[] mask = target.masks.get(icon);
+        if (null == mask && !mAssets.hasIcon(icon) && !isMissingIcon(icon))
+        {
+            mask = IconPack.getInstance(mContext).getMask(icon, target.size);
+            if (null != mask)
+            {
+                target.masks.put(icon, mask);
+            }
+            else
+            {
+                mMissingIcons.put(icon, Long.valueOf(SystemClock.elapsedRealtime()));
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * @return true if the icon was recently looked up and not found, and the pack did not change since.
+     */
+    private boolean isMissingIcon(final String icon)
+    {
+        final int generation = IconPack.getGeneration();
+        if (generation != mMissingIconsGeneration)
+        {
+            mMissingIcons.clear();
+            mMissingIconsGeneration = generation;
+            return false;
+        }
+
+        final Long lookedUpAt = mMissingIcons.get(icon);
+        return null != lookedUpAt && SystemClock.elapsedRealtime() - lookedUpAt.longValue() < MISSING_ICON_RECHECK_MILLIS;
+    }
+
+    private Bitmap getIcon(final RenderTarget target, final String icon)
+    {
+        Bitmap bitmap = target.icons.get(icon);
+        if (null == bitmap && !isMissingIcon(icon))
+        {
+            /*
+             * Icons imported by the user take precedence over the assets
+             */
+            final IconPack pack = IconPack.getInstance(mContext);
+            if (pack.contains(icon))
+            {
+                final WidgetSize size = target.size;
+                final int[] pixels = new int[size.iconWidth * size.iconHeight];
+                if (pack.unpack(icon, size, pixels))
+                {
+                    bitmap = Bitmap.createBitmap(pixels, size.iconWidth, size.iconHeight, Bitmap.Config.RGB_565);
+                }
+            }
+            else
+            {
+                bitmap = loadBitmapFromAssets(mContext, icon + target.size.iconSuffix);
+            }
+
+            if (null != bitmap)
+            {
+                target.icons.put(icon, bitmap);
+            }
+            else
+            {
+                mMissingIcons.put(icon, Long.valueOf(SystemClock.elapsedRealtime()));
+            }
+        }
+        return bitmap;
+    }
+
+    /**
+     * @return true if words of the labels are abbreviated. Read on every render, so that a change of the setting applies to
+     *         renderers that already exist (e.g. the one of the UI preview).
+     */
+    private boolean isAbbreviating()
+    {
+        return PluginPreferences.get(mContext).getBoolean(PluginPreferences.KEY_LABEL_ABBREVIATE, PluginPreferences.DEFAULT_LABEL_ABBREVIATE);
+    }
+
+    /**
+     * @return {@link #mPaint}, with the font set.
+     */
+    private TextPaint getPaint()
+    {
+        if (!mHasTypeface)
+        {
+            mPaint.setTypeface(getTypeface(mContext));
+            mHasTypeface = true;
+        }
+        return mPaint;
+    }
+
+    private static synchronized Typeface getTypeface(final Context context)
+    {
+        if (null == sTypeface)
+        {
+            sTypeface = Typeface.createFromAsset(context.getAssets(), FONT_ASSET);
+        }
+        return sTypeface;
+    }
+
+    private static Bitmap loadBitmapFromAssets(final Context context, final String path)
+    {
+        try
+        {
+            final InputStream inputStream = context.getAssets().open(path);
+            try
+            {
+                return BitmapFactory.decodeStream(inputStream);
+            }
+            finally
+            {
+                inputStream.close();
+            }
+        }
+        catch (final IOException e)
+        {
+            PluginLog.w("icon asset not found: %s", path); //$NON-NLS-1$
+            return null;
+        }
+    }
+
+    /**
+     * Pre-allocated drawing surface for one {@link WidgetSize}.
+     */
+    private static final class RenderTarget
+    {
+        final WidgetSize size;
+        final Bitmap bitmap;
+        final Canvas canvas;
+        final int[] pixels;
+
+        /**
+         * Decoded icons for this size, keyed by icon name.
+         */
+        final HashMap<String, Bitmap> icons = new HashMap<String, Bitmap>();
+
+        /**
+         * Masks of the imported icons for this size, keyed by icon name.
+         */
+        final HashMap<String, byte[]> masks = new HashMap<String, byte[]>();
+
+        /**
+         * @param size format of the frames.
+         * @param hasCanvas whether frames are drawn on a canvas rather than blitted.
+         */
+        RenderTarget(final WidgetSize size, final boolean hasCanvas)
+        {
+            this.size = size;
+            bitmap = hasCanvas ? Bitmap.createBitmap(size.width, size.height, Bitmap.Config.RGB_565) : null;
+            canvas = hasCanvas ? new Canvas(bitmap) : null;
+            pixels = new int[size.width * size.height];
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.metawatch.manager.locale.render;
+
+/**
+ * Describes one of the widget formats sent to the MetaWatch manager, together with the layout of the icon and the label inside
+ * the frame.
+ */
+public final class WidgetSize
+{
+    /**
+     * The 16x16 widget, using the 10 pixel high icons.
+     */
+    public static final WidgetSize SMALL = new WidgetSize(0, 16, 16, "_10.bmp", 11, 10, 2, 0, 3, 8, 16, 1, "_16_16", "Locale Plugin Widget (16x16)"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+
+    /**
+     * The 24x32 widget, using the 18 pixel high icons.
+     */
+    public static final WidgetSize LARGE = new WidgetSize(1, 24, 32, ".bmp", 24, 18, 0, 3, 7, 12, 30, 2, "_24_32", "Locale Plugin Widget (24x32)"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+
+    /**
+     * All sizes, in the order they are sent to the manager. Iterating over an array does not allocate.
+     */
+    public static final WidgetSize[] ALL = new WidgetSize[] { SMALL, LARGE };
+
+    /**
+     * Position of this size in {@link #ALL}.
+     */
+    public final int index;
+
+    /**
+     * Width of the frame in pixels.
+     */
+    public final int width;
+
+    /**
+     * Height of the frame in pixels.
+     */
+    public final int height;
+
+    /**
+     * Suffix appended to the icon name to build the asset file name.
+     */
+    public final String iconSuffix;
+
+    /**
+     * Width of the icon in pixels.
+     */
+    public final int iconWidth;
+
+    /**
+     * Height of the icon in pixels.
+     */
+    public final int iconHeight;
+
+    /**
+     * Horizontal position of the icon.
+     */
+    public final int iconX;
+
+    /**
+     * Vertical position of the icon when a label is drawn below it.
+     */
+    public final int iconY;
+
+    /**
+     * Vertical position of the icon when there is no label.
+     */
+    public final int iconYNoLabel;
+
+    /**
+     * Horizontal center of the label.
+     */
+    public final int textX;
+
+    /**
+     * Baseline of the label, or of its last line.
+     */
+    public final int textY;
+
+    /**
+     * Number of lines the label may wrap to. The icon moves up by {@link TextLayout#LINE_HEIGHT} for each extra line.
+     */
+    public final int maxLines;
+
+    /**
+     * Suffix appended to the widget id to build the id sent to the manager.
+     */
+    public final String idSuffix;
+
+    /**
+     * User friendly name shown in the widget picker of the manager.
+     */
+    public final String description;
+
+    private WidgetSize(final int index, final int width, final int height, final String iconSuffix, final int iconWidth, final int iconHeight, final int iconX, final int iconY, final int iconYNoLabel, final int textX, final int textY, final int maxLines, final String idSuffix, final String description)
+    {
+        this.index = index;
+        this.width = width;
+        this.height = height;
+        this.iconSuffix = iconSuffix;
+        this.iconWidth = iconWidth;
+        this.iconHeight = iconHeight;
+        this.iconX = iconX;
+        this.iconY = iconY;
+        this.iconYNoLabel = iconYNoLabel;
+        this.textX = textX;
+        this.textY = textY;
+        this.maxLines = maxLines;
+        this.idSuffix = idSuffix;
+        this.description = description;
+    }
+}
@@ -0,0 +1,279 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.metawatch.manager.locale.template;
+
+import java.util.ArrayList;
+
+import android.os.Bundle;
+
+/**
+ * Small template language for the notification and widget texts.
+ * <p>
+ * A template is plain text with variables in braces, e.g. {@code "Home {time}"}:
+ * <ul>
+ * <li>{@code {time}}: current time, in the 12 or 24 hour format of the phone</li>
+ * <li>{@code {date}}: current date, e.g. "Oct 19"</li>
+ * <li>{@code {day}}: current day of the week, e.g. "Mon"</li>
+ * <li>{@code {battery}}: battery level of the phone in percent</li>
+ * <li>{@code {elapsed}}: hours and minutes since the setting fired, e.g. "1:05"</li>
+ * </ul>
+ * {@code {{} is a literal brace. Unknown variables are kept as text.
+ * <p>
+ * Templates are compiled once by {@link #compile(String)} when the setting is saved. The compiled form is a {@code String[]}, so
+ * it can be stored in the plug-in Bundle, where each element is either literal text or a variable reference. Evaluating it on
+ * every fire is a single pass over the elements without any parsing.
+ * <p>
+ * Tasker replaces its own {@code %variables} in the Bundle strings before the setting fires. Such a text can only be known at fire
+ * time, so its compiled form is a marker telling {@link #expand(Bundle, String, String, TemplateEnvironment)} to compile the
+ * replaced text then.
+ */
+public final class Template
+{
+    /**
+     * Private constructor prevents instantiation
+     *
+     * @throws UnsupportedOperationException because this class cannot be instantiated.
+     */
+    private Template()
+    {
+        throw new UnsupportedOperationException("This class is non-instantiable"); //$NON-NLS-1$
+    }
+
+    /**
+     * First character of an element that references a variable. The second character is the variable code.
+     */
+    static final char VARIABLE = '\u0000';
+
+    /**
+     * Only element of the compiled form of a text that must be compiled at fire time.
+     */
+    static final String RECOMPILE = "\u0001"; //$NON-NLS-1$
+
+    static final char CODE_TIME = 't';
+    static final char CODE_DATE = 'd';
+    static final char CODE_DAY = 'w';
+    static final char CODE_BATTERY = 'b';
+    static final char CODE_ELAPSED = 'e';
+
+    private static final String[] NAMES = new String[] { "time", "date", "day", "battery", "elapsed" }; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+    private static final char[] CODES = new char[] { CODE_TIME, CODE_DATE, CODE_DAY, CODE_BATTERY, CODE_ELAPSED };
+
+    /**
+     * Compiles a template.
+     *
+     * @param source text of the template. Cannot be null.
+     * @return the compiled template, or null if {@code source} has no variables nor escaped braces and can be used as is.
+     */
+    public static String[] compile(final String source)
+    {
+        if (hasTaskerVariable(source))
+        {
+            return new String[] { RECOMPILE };
+        }
+
+        return compileVariables(source);
+    }
+
+    /**
+     * Compiles a template to be evaluated right away, e.g. for a preview. Tasker variables are left as written, since only the
+     * host can replace them.
+     *
+     * @param source text of the template. Cannot be null.
+     * @return the compiled template, or null if {@code source} has no variables nor escaped braces of this template language.
+     */
+    public static String[] compileIgnoringTasker(final String source)
+    {
+        return compileVariables(source);
+    }
+
+    /**
+     * Compiles the variables of this template language, ignoring Tasker variables.
+     *
+     * @param source text of the template. Cannot be null.
+     * @return the compiled template, or null if {@code source} has no variables nor escaped braces.
+     */
+    private static String[] compileVariables(final String source)
+    {
+        final ArrayList<String> elements = new ArrayList<String>();
+        final StringBuilder literal = new StringBuilder();
+        boolean hasVariable = false;
+        boolean hasEscape = false;
+
+        final int length = source.length();
+        int i = 0;
+        while (i < length)
+        {
+            final char c = source.charAt(i);
+
+            if ('{' == c)
+            {
+                if (i + 1 < length && '{' == source.charAt(i + 1))
+                {
+                    literal.append('{');
+                    hasEscape = true;
+                    i += 2;
+                    continue;
+                }
+
+                final int end = source.indexOf('}', i + 1);
+                if (end > 0)
+                {
+                    final char code = lookup(source.substring(i + 1, end));
+                    if (0 != code)
+                    {
+                        if (literal.length() > 0)
+                        {
+                            elements.add(literal.toString());
+                            literal.setLength(0);
+                        }
+                        elements.add(new String(new char[] { VARIABLE, code }));
+                        hasVariable = true;
+                        i = end + 1;
+                        continue;
+                    }
+                }
+            }
+
+            /*
+             * Control characters would be mistaken for the markers of the compiled form
+             */
+            if (c >= ' ' || '\n' == c || '\t' == c)
+            {
+                literal.append(c);
+            }
+            i++;
+        }
+
+        if (!hasVariable && !hasEscape)
+        {
+            return null;
+        }
+
+        if (literal.length() > 0)
+        {
+            elements.add(literal.toString());
+        }
+        return elements.toArray(new String[elements.size()]);
+    }
+
+    /**
+     * Evaluates a compiled template.
+     *
+     * @param compiled result of {@link #compile(String)}. Cannot be null.
+     * @param environment values of the variables. Cannot be null.
+     * @return the text.
+     */
+    public static String evaluate(final String[] compiled, final TemplateEnvironment environment)
+    {
+        final StringBuilder out = environment.getBuffer();
+        for (final String element : compiled)
+        {
+            if (element.length() == 2 && VARIABLE == element.charAt(0))
+            {
+                environment.append(element.charAt(1), out);
+            }
+            else
+            {
+                out.append(element);
+            }
+        }
+        return out.toString();
+    }
+
+    /**
+     * Gets the text of a field of the plug-in Bundle, evaluating its compiled template if there is one.
+     *
+     * @param bundle the plug-in Bundle. Cannot be null.
+     * @param textKey key of the source text.
+     * @param templateKey key of the compiled template, which is optional.
+     * @param environment values of the variables. Cannot be null.
+     * @return the text to send.
+     */
+    public static String expand(final Bundle bundle, final String textKey, final String templateKey, final TemplateEnvironment environment)
+    {
+        final String[] compiled = resolve(bundle, textKey, templateKey);
+        return null == compiled ? bundle.getString(textKey) : evaluate(compiled, environment);
+    }
+
+    /**
+     * Gets the compiled template of a field of the plug-in Bundle, e.g. to evaluate it again later.
+     *
+     * @param bundle the plug-in Bundle. Cannot be null.
+     * @param textKey key of the source text.
+     * @param templateKey key of the compiled template, which is optional.
+     * @return the compiled template, or null if the text has no variables.
+     */
+    public static String[] resolve(final Bundle bundle, final String textKey, final String templateKey)
+    {
+        final String text = bundle.getString(textKey);
+        final String[] compiled = bundle.getStringArray(templateKey);
+
+        if (null == compiled || 0 == compiled.length || null == text)
+        {
+            return null;
+        }
+
+        if (1 == compiled.length && RECOMPILE.equals(compiled[0]))
+        {
+            /*
+             * The text was rewritten by the host, so the template is only known now
+             */
+            return compileVariables(text);
+        }
+
+        return compiled;
+    }
+
+    /**
+     * @param compiled result of {@link #compile(String)}. Cannot be null.
+     * @return true if the text can change between evaluations, i.e. it has a variable or is compiled at fire time. False if it
+     *         was only compiled to unescape braces.
+     */
+    public static boolean isDynamic(final String[] compiled)
+    {
+        for (final String element : compiled)
+        {
+            if (RECOMPILE.equals(element) || VARIABLE == element.charAt(0))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param source text of a template. Cannot be null.
+     * @return true if the text references a Tasker variable, e.g. {@code %BATT}, that the host replaces before firing.
+     */
+    public static boolean hasTaskerVariable(final String source)
+    {
+        final int length = source.length();
+        for (int i = 0; i + 1 < length; i++)
+        {
+            if ('%' == source.charAt(i) && Character.isLetter(source.charAt(i + 1)))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static char lookup(final String name)
+    {
+        for (int i = 0; i < NAMES.length; i++)
+        {
+            if (NAMES[i].equals(name))
+            {
+                return CODES[i];
+            }
+        }
+        return 0;
+    }
+}
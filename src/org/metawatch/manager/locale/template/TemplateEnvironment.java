@@ -0,0 +1,132 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.metawatch.manager.locale.template;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+
+/**
+ * Values of the {@link Template} variables for one fire.
+ * <p>
+ * The values are looked up lazily, so a fire only pays for the variables its templates use, and at most once per environment. An
+ * environment is not thread safe and should not outlive the fire it was created for.
+ */
+public final class TemplateEnvironment
+{
+    private final Context mContext;
+
+    private final long mTime;
+
+    private final long mSince;
+
+    private final StringBuilder mBuffer = new StringBuilder(64);
+
+    private int mBatteryLevel = -1;
+
+    /**
+     * @param context to read the time format and the battery level. Cannot be null.
+     * @param time wall clock time the variables are evaluated at, which is also the time the setting fired.
+     */
+    public TemplateEnvironment(final Context context, final long time)
+    {
+        this(context, time, time);
+    }
+
+    /**
+     * @param context to read the time format and the battery level. Cannot be null.
+     * @param time wall clock time the variables are evaluated at.
+     * @param since wall clock time the setting fired, used by {@code {elapsed}}.
+     */
+    public TemplateEnvironment(final Context context, final long time, final long since)
+    {
+        mContext = context;
+        mTime = time;
+        mSince = since;
+    }
+
+    /**
+     * @return the wall clock time the variables are evaluated at.
+     */
+    public long getTime()
+    {
+        return mTime;
+    }
+
+    /**
+     * @return the buffer templates are evaluated into, emptied.
+     */
+    StringBuilder getBuffer()
+    {
+        mBuffer.setLength(0);
+        return mBuffer;
+    }
+
+    /**
+     * Appends the value of a variable.
+     *
+     * @param code variable code, see {@link Template}.
+     * @param out destination. Cannot be null.
+     */
+    void append(final char code, final StringBuilder out)
+    {
+        switch (code)
+        {
+            case Template.CODE_TIME:
+                out.append(android.text.format.DateFormat.format(android.text.format.DateFormat.is24HourFormat(mContext) ? "kk:mm" : "h:mm", mTime)); //$NON-NLS-1$ //$NON-NLS-2$
+                break;
+            case Template.CODE_DATE:
+                out.append(android.text.format.DateFormat.format("MMM d", mTime)); //$NON-NLS-1$
+                break;
+            case Template.CODE_DAY:
+                out.append(android.text.format.DateFormat.format("EEE", mTime)); //$NON-NLS-1$
+                break;
+            case Template.CODE_BATTERY:
+                out.append(getBatteryLevel());
+                out.append('%');
+                break;
+            case Template.CODE_ELAPSED:
+                final long minutes = Math.max(0, mTime - mSince) / 60000;
+                out.append(minutes / 60);
+                out.append(':');
+                if (minutes % 60 < 10)
+                {
+                    out.append('0');
+                }
+                out.append(minutes % 60);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private int getBatteryLevel()
+    {
+        if (mBatteryLevel < 0)
+        {
+            /*
+             * Reading the sticky broadcast with a null receiver is allowed from a BroadcastReceiver
+             */
+            final Intent battery = mContext.getApplicationContext().registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+            if (null != battery)
+            {
+                final int level = battery.getIntExtra(BatteryManager.EXTRA_LEVEL, 0);
+                final int scale = battery.getIntExtra(BatteryManager.EXTRA_SCALE, 100);
+                mBatteryLevel = scale > 0 ? level * 100 / scale : 0;
+            }
+            else
+            {
+                mBatteryLevel = 0;
+            }
+        }
+        return mBatteryLevel;
+    }
+}
@@ -9,31 +9,48 @@
 
 package org.metawatch.manager.locale.ui;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
 import android.app.Activity;
 import android.content.Intent;
 import android.content.pm.PackageManager.NameNotFoundException;
 import android.content.res.Resources.NotFoundException;
 import android.net.Uri;
+import android.os.AsyncTask;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
 import android.widget.AdapterView;
-import android.widget.ArrayAdapter;
+import android.widget.AutoCompleteTextView;
+import android.widget.Button;
 import android.widget.CheckBox;
 import android.widget.EditText;
+import android.widget.ImageView;
 import android.widget.RadioButton;
 import android.widget.Spinner;
+import android.widget.SpinnerAdapter;
 import android.widget.Toast;
 import android.widget.AdapterView.OnItemSelectedListener;
 
 import com.twofortyfouram.locale.BreadCrumber;
 import org.metawatch.manager.locale.Constants;
+import org.metawatch.manager.locale.PluginApplication;
 import org.metawatch.manager.locale.R;
 import org.metawatch.manager.locale.bundle.BundleScrubber;
 import org.metawatch.manager.locale.bundle.PluginBundleManager;
+import org.metawatch.manager.locale.icon.IconImporter;
+import org.metawatch.manager.locale.icon.IconPack;
+import org.metawatch.manager.locale.preset.PresetStore;
+import org.metawatch.manager.locale.template.Template;
 
 /**
  * This is the "Edit" activity for a Locale Plug-in.
@@ -47,6 +64,21 @@ public final class EditActivity extends Activity
     // TODO: Place a real help URL here
     private static final String HELP_URL = "http://www.yourcompany.com/yourhelp.html"; //$NON-NLS-1$
 
+    /**
+     * Id of the menu item opening {@link SettingsActivity}.
+     */
+    private static final int MENU_SETTINGS = Menu.FIRST;
+
+    /**
+     * Id of the menu item importing a custom icon.
+     */
+    private static final int MENU_IMPORT_ICON = Menu.FIRST + 1;
+
+    /**
+     * Request code of the image picker started by {@link #MENU_IMPORT_ICON}.
+     */
+    private static final int REQUEST_IMPORT_ICON = 1;
+
     /**
      * Flag boolean that can only be set to true via the "Don't Save"
      * {@link org.metawatch.manager.locale.R.id#twofortyfouram_locale_menu_dontsave} menu item in
@@ -61,6 +93,16 @@ public final class EditActivity extends Activity
      */
     private boolean mIsCancelled = false;
 
+    /**
+     * Background thread rendering the preview and the icon thumbnails.
+     */
+    private HandlerThread mRenderThread = null;
+
+    /**
+     * Renders the widget being edited.
+     */
+    private WidgetPreview mPreview = null;
+
     /**
      * {@inheritDoc}
      */
@@ -69,6 +111,8 @@ public final class EditActivity extends Activity
     {
         super.onCreate(savedInstanceState);
 
+        PluginApplication.enableUiDebugging(this);
+
         /*
          * A hack to prevent a private serializable classloader attack
          */
@@ -105,16 +149,19 @@ public final class EditActivity extends Activity
          * Initialise widget icon spinner
          */
         
+        mRenderThread = new HandlerThread("widget renderer", Process.THREAD_PRIORITY_BACKGROUND); //$NON-NLS-1$
+        mRenderThread.start();
+        
         Spinner s1 = (Spinner) findViewById(R.id.spinner1);
-        ArrayAdapter<CharSequence> adapter = ArrayAdapter.createFromResource(
-                this, R.array.icons, android.R.layout.simple_spinner_item);
-        adapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
-        s1.setAdapter(adapter);
+        loadIcons(s1);
+        
+        mPreview = new WidgetPreview(this, new ImageView[] { (ImageView) findViewById(R.id.preview_small), (ImageView) findViewById(R.id.preview_large) }, mRenderThread.getLooper());
+        
         s1.setOnItemSelectedListener(
                 new OnItemSelectedListener() {
                     public void onItemSelected(
                             AdapterView<?> parent, View view, int position, long id) {
-                        //showToast("Spinner1: position=" + position + " id=" + id);
+                        updatePreview(0);
                     }
 
                     public void onNothingSelected(AdapterView<?> parent) {
@@ -122,6 +169,48 @@ public final class EditActivity extends Activity
                     }
                 });
 
+        ((EditText) findViewById(R.id.text4)).addTextChangedListener(new TextWatcher()
+        {
+            public void beforeTextChanged(final CharSequence s, final int start, final int count, final int after)
+            {
+                // nothing to do
+            }
+
+            public void onTextChanged(final CharSequence s, final int start, final int before, final int count)
+            {
+                // nothing to do
+            }
+
+            public void afterTextChanged(final Editable s)
+            {
+                updatePreview(WidgetPreview.TYPING_DELAY_MILLIS);
+            }
+        });
+
+        /*
+         * Presets: only the names matching the text typed are read, a preset is loaded when it is picked
+         */
+        final AutoCompleteTextView presetName = (AutoCompleteTextView) findViewById(R.id.preset_name);
+        presetName.setAdapter(new PresetAdapter(this));
+        presetName.setOnItemClickListener(new AdapterView.OnItemClickListener()
+        {
+            public void onItemClick(final AdapterView<?> parent, final View view, final int position, final long id)
+            {
+                new LoadPresetTask().execute((String) parent.getItemAtPosition(position));
+            }
+        });
+        ((Button) findViewById(R.id.preset_save)).setOnClickListener(new View.OnClickListener()
+        {
+            public void onClick(final View v)
+            {
+                final String name = presetName.getText().toString().trim();
+                if (name.length() > 0)
+                {
+                    new SavePresetTask(name, createBundle()).execute();
+                }
+            }
+        });
+
         /*
          * if savedInstanceState is null, then then this is a new Activity instance and a check for EXTRA_BUNDLE is needed
          */
@@ -131,38 +220,7 @@ public final class EditActivity extends Activity
 
             if (PluginBundleManager.isBundleValid(forwardedBundle))
             {
-                ((EditText) findViewById(R.id.text1)).setText(forwardedBundle.getString(PluginBundleManager.BUNDLE_EXTRA_STRING_MESSAGE));
-                ((EditText) findViewById(R.id.text2)).setText(forwardedBundle.getString(PluginBundleManager.BUNDLE_EXTRA_STRING_TITLE));
-                ((EditText) findViewById(R.id.text3)).setText(forwardedBundle.getString(PluginBundleManager.BUNDLE_EXTRA_STRING_WIDGET_ID));
-                ((EditText) findViewById(R.id.text4)).setText(forwardedBundle.getString(PluginBundleManager.BUNDLE_EXTRA_STRING_WIDGET_LABEL));
-                
-          
-            	((CheckBox) findViewById(R.id.checkBox1)).setChecked(forwardedBundle.getBoolean(PluginBundleManager.BUNDLE_EXTRA_BOOLEAN_VIBRATE));
-            	((EditText) findViewById(R.id.edit_vib_on)).setText(String.valueOf(forwardedBundle.getInt(PluginBundleManager.BUNDLE_EXTRA_INT_VIBRATE_ON)));
-                ((EditText) findViewById(R.id.edit_vib_off)).setText(String.valueOf(forwardedBundle.getInt(PluginBundleManager.BUNDLE_EXTRA_INT_VIBRATE_OFF)));
-                ((EditText) findViewById(R.id.edit_vib_cycles)).setText(String.valueOf(forwardedBundle.getInt(PluginBundleManager.BUNDLE_EXTRA_INT_VIBRATE_CYCLES)));
-                
-                String type = forwardedBundle.getString(PluginBundleManager.BUNDLE_EXTRA_STRING_TYPE);
-                
-                if(type.equals("notification")) {
-                	((RadioButton) findViewById(R.id.radioButton1)).setChecked(true);
-                	((RadioButton) findViewById(R.id.radioButton2)).setChecked(false);
-                }
-                else {
-                	((RadioButton) findViewById(R.id.radioButton1)).setChecked(false);
-                	((RadioButton) findViewById(R.id.radioButton2)).setChecked(true);
-                }
-                
-                String[] iconNames = getResources().getStringArray(R.array.icons);
-                String icon = forwardedBundle.getString(PluginBundleManager.BUNDLE_EXTRA_STRING_WIDGET_ICON);
-                
-                for(int i=0; i<iconNames.length; ++i) {
-                	if(icon.equals(iconNames[i])) {
-                		s1.setSelection(i);
-                		break;
-                	}
-                }
-                
+                showSetting(forwardedBundle);
             }
         }
         /*
@@ -171,6 +229,66 @@ public final class EditActivity extends Activity
          */
     }
 
+    /**
+     * Fills the fields with a setting.
+     *
+     * @param bundle the plug-in Bundle of the setting, or a preset.
+     */
+    private void showSetting(final Bundle bundle)
+    {
+        ((EditText) findViewById(R.id.text1)).setText(bundle.getString(PluginBundleManager.BUNDLE_EXTRA_STRING_MESSAGE));
+        ((EditText) findViewById(R.id.text2)).setText(bundle.getString(PluginBundleManager.BUNDLE_EXTRA_STRING_TITLE));
+        ((EditText) findViewById(R.id.text3)).setText(bundle.getString(PluginBundleManager.BUNDLE_EXTRA_STRING_WIDGET_ID));
+        ((EditText) findViewById(R.id.text4)).setText(bundle.getString(PluginBundleManager.BUNDLE_EXTRA_STRING_WIDGET_LABEL));
+        if (bundle.containsKey(PluginBundleManager.BUNDLE_EXTRA_INT_WIDGET_UPDATE_MINUTES))
+        {
+            ((EditText) findViewById(R.id.edit_update_minutes)).setText(String.valueOf(bundle.getInt(PluginBundleManager.BUNDLE_EXTRA_INT_WIDGET_UPDATE_MINUTES)));
+        }
+        else
+        {
+            ((EditText) findViewById(R.id.edit_update_minutes)).setText(""); //$NON-NLS-1$
+        }
+
+        ((CheckBox) findViewById(R.id.checkBox1)).setChecked(bundle.getBoolean(PluginBundleManager.BUNDLE_EXTRA_BOOLEAN_VIBRATE));
+        ((EditText) findViewById(R.id.edit_vib_on)).setText(String.valueOf(bundle.getInt(PluginBundleManager.BUNDLE_EXTRA_INT_VIBRATE_ON)));
+        ((EditText) findViewById(R.id.edit_vib_off)).setText(String.valueOf(bundle.getInt(PluginBundleManager.BUNDLE_EXTRA_INT_VIBRATE_OFF)));
+        ((EditText) findViewById(R.id.edit_vib_cycles)).setText(String.valueOf(bundle.getInt(PluginBundleManager.BUNDLE_EXTRA_INT_VIBRATE_CYCLES)));
+        ((CheckBox) findViewById(R.id.check_allow_repeat)).setChecked(bundle.getBoolean(PluginBundleManager.BUNDLE_EXTRA_BOOLEAN_ALLOW_REPEAT));
+
+        final boolean isNotification = "notification".equals(bundle.getString(PluginBundleManager.BUNDLE_EXTRA_STRING_TYPE)); //$NON-NLS-1$
+        ((RadioButton) findViewById(R.id.radioButton1)).setChecked(isNotification);
+        ((RadioButton) findViewById(R.id.radioButton2)).setChecked(!isNotification);
+
+        selectIcon((Spinner) findViewById(R.id.spinner1), bundle.getString(PluginBundleManager.BUNDLE_EXTRA_STRING_WIDGET_ICON));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void onDestroy()
+    {
+        mPreview.release();
+        ((IconAdapter) ((Spinner) findViewById(R.id.spinner1)).getAdapter()).release();
+        mRenderThread.quit();
+
+        super.onDestroy();
+    }
+
+    /**
+     * Renders the selected icon and the label into the preview.
+     *
+     * @param delayMillis delay before rendering.
+     */
+    private void updatePreview(final long delayMillis)
+    {
+        final Object icon = ((Spinner) findViewById(R.id.spinner1)).getSelectedItem();
+        if (null != icon)
+        {
+            mPreview.update(icon.toString(), ((EditText) findViewById(R.id.text4)).getText().toString(), delayMillis);
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -186,48 +304,18 @@ public final class EditActivity extends Activity
             final String message = ((EditText) findViewById(R.id.text1)).getText().toString();
             final String title = ((EditText) findViewById(R.id.text2)).getText().toString();
             
-            final String widgetId = ((EditText) findViewById(R.id.text3)).getText().toString();
             final String widgetLabel = ((EditText) findViewById(R.id.text4)).getText().toString();
 
             final String widgetIcon = ((Spinner) findViewById(R.id.spinner1)).getSelectedItem().toString();
             
             final String type = ((RadioButton) findViewById(R.id.radioButton1)).isChecked() ? "notification" : "widget";
             
-            
-            final Boolean vibrate = ((CheckBox) findViewById(R.id.checkBox1)).isChecked();
-            final Integer vibrateOn = tryGetValue(R.id.edit_vib_on);
-            final Integer vibrateOff = tryGetValue(R.id.edit_vib_off);
-            final Integer vibrateRepeat = tryGetValue(R.id.edit_vib_cycles);
-           
             /*
              * This is the result Intent to Locale
              */
             final Intent resultIntent = new Intent();
 
-            /*
-             * This extra is the data to ourselves: either for the Activity or the BroadcastReceiver. Note that anything
-             * placed in this Bundle must be available to Locale's class loader. So storing String, int, and other standard
-             * objects will work just fine. However Parcelable objects must also be Serializable. And Serializable objects
-             * must be standard Java objects (e.g. a private subclass to this plug-in cannot be stored in the Bundle, as
-             * Locale's classloader will not recognize it).
-             */
-            final Bundle resultBundle = new Bundle();
-            resultBundle.putInt(PluginBundleManager.BUNDLE_EXTRA_INT_VERSION_CODE, Constants.getVersionCode(this));
-            
-            resultBundle.putString(PluginBundleManager.BUNDLE_EXTRA_STRING_TYPE, type);
-            
-            resultBundle.putString(PluginBundleManager.BUNDLE_EXTRA_STRING_MESSAGE, message);
-            resultBundle.putString(PluginBundleManager.BUNDLE_EXTRA_STRING_TITLE, title);
-            
-            resultBundle.putString(PluginBundleManager.BUNDLE_EXTRA_STRING_WIDGET_ID, widgetId);
-            resultBundle.putString(PluginBundleManager.BUNDLE_EXTRA_STRING_WIDGET_LABEL, widgetLabel);
-            resultBundle.putString(PluginBundleManager.BUNDLE_EXTRA_STRING_WIDGET_ICON, widgetIcon);
-            
-            resultBundle.putBoolean(PluginBundleManager.BUNDLE_EXTRA_BOOLEAN_VIBRATE, vibrate);
-            resultBundle.putInt(PluginBundleManager.BUNDLE_EXTRA_INT_VIBRATE_ON, vibrateOn);
-            resultBundle.putInt(PluginBundleManager.BUNDLE_EXTRA_INT_VIBRATE_OFF, vibrateOff);
-            resultBundle.putInt(PluginBundleManager.BUNDLE_EXTRA_INT_VIBRATE_CYCLES, vibrateRepeat);
-
+            final Bundle resultBundle = createBundle();
             resultIntent.putExtra(com.twofortyfouram.locale.Intent.EXTRA_BUNDLE, resultBundle);
 
             /*
@@ -282,6 +370,277 @@ public final class EditActivity extends Activity
         super.finish();
     }
     
+    /**
+     * Creates the plug-in Bundle of the setting being edited.
+     *
+     * @return the Bundle, with the compiled templates.
+     */
+    private Bundle createBundle()
+    {
+        final String message = ((EditText) findViewById(R.id.text1)).getText().toString();
+        final String title = ((EditText) findViewById(R.id.text2)).getText().toString();
+        
+        final String widgetId = ((EditText) findViewById(R.id.text3)).getText().toString();
+        final String widgetLabel = ((EditText) findViewById(R.id.text4)).getText().toString();
+
+        final String widgetIcon = ((Spinner) findViewById(R.id.spinner1)).getSelectedItem().toString();
+        
+        final String type = ((RadioButton) findViewById(R.id.radioButton1)).isChecked() ? "notification" : "widget";
+        
+        final Boolean vibrate = ((CheckBox) findViewById(R.id.checkBox1)).isChecked();
+        final Integer vibrateOn = tryGetValue(R.id.edit_vib_on);
+        final Integer vibrateOff = tryGetValue(R.id.edit_vib_off);
+        final Integer vibrateRepeat = tryGetValue(R.id.edit_vib_cycles);
+        final int updateMinutes = tryGetValue(R.id.edit_update_minutes);
+        final boolean allowRepeat = ((CheckBox) findViewById(R.id.check_allow_repeat)).isChecked();
+       
+        /*
+         * This extra is the data to ourselves: either for the Activity or the BroadcastReceiver. Note that anything
+         * placed in this Bundle must be available to Locale's class loader. So storing String, int, and other standard
+         * objects will work just fine. However Parcelable objects must also be Serializable. And Serializable objects
+         * must be standard Java objects (e.g. a private subclass to this plug-in cannot be stored in the Bundle, as
+         * Locale's classloader will not recognize it).
+         */
+        final Bundle resultBundle = new Bundle();
+        resultBundle.putInt(PluginBundleManager.BUNDLE_EXTRA_INT_VERSION_CODE, Constants.getVersionCode(this));
+        
+        resultBundle.putString(PluginBundleManager.BUNDLE_EXTRA_STRING_TYPE, type);
+        
+        resultBundle.putString(PluginBundleManager.BUNDLE_EXTRA_STRING_MESSAGE, message);
+        resultBundle.putString(PluginBundleManager.BUNDLE_EXTRA_STRING_TITLE, title);
+        
+        resultBundle.putString(PluginBundleManager.BUNDLE_EXTRA_STRING_WIDGET_ID, widgetId);
+        resultBundle.putString(PluginBundleManager.BUNDLE_EXTRA_STRING_WIDGET_LABEL, widgetLabel);
+        resultBundle.putString(PluginBundleManager.BUNDLE_EXTRA_STRING_WIDGET_ICON, widgetIcon);
+        
+        resultBundle.putBoolean(PluginBundleManager.BUNDLE_EXTRA_BOOLEAN_VIBRATE, vibrate);
+        resultBundle.putInt(PluginBundleManager.BUNDLE_EXTRA_INT_VIBRATE_ON, vibrateOn);
+        resultBundle.putInt(PluginBundleManager.BUNDLE_EXTRA_INT_VIBRATE_OFF, vibrateOff);
+        resultBundle.putInt(PluginBundleManager.BUNDLE_EXTRA_INT_VIBRATE_CYCLES, vibrateRepeat);
+
+        /*
+         * Templates are compiled once here, so that firing the setting only evaluates them
+         */
+        final StringBuilder taskerKeys = new StringBuilder();
+        putTemplate(resultBundle, PluginBundleManager.BUNDLE_EXTRA_STRING_TITLE, PluginBundleManager.BUNDLE_EXTRA_STRING_ARRAY_TITLE_TEMPLATE, title, taskerKeys);
+        putTemplate(resultBundle, PluginBundleManager.BUNDLE_EXTRA_STRING_MESSAGE, PluginBundleManager.BUNDLE_EXTRA_STRING_ARRAY_MESSAGE_TEMPLATE, message, taskerKeys);
+        putTemplate(resultBundle, PluginBundleManager.BUNDLE_EXTRA_STRING_WIDGET_LABEL, PluginBundleManager.BUNDLE_EXTRA_STRING_ARRAY_WIDGET_LABEL_TEMPLATE, widgetLabel, taskerKeys);
+        if (taskerKeys.length() > 0)
+        {
+            resultBundle.putString(PluginBundleManager.BUNDLE_EXTRA_STRING_TASKER_VARIABLE_REPLACE_KEYS, taskerKeys.toString());
+        }
+
+        /*
+         * Only a label with variables can change between fires
+         */
+        final String[] labelTemplate = resultBundle.getStringArray(PluginBundleManager.BUNDLE_EXTRA_STRING_ARRAY_WIDGET_LABEL_TEMPLATE);
+        if (updateMinutes > 0 && null != labelTemplate && Template.isDynamic(labelTemplate))
+        {
+            resultBundle.putInt(PluginBundleManager.BUNDLE_EXTRA_INT_WIDGET_UPDATE_MINUTES, updateMinutes);
+        }
+
+        if (allowRepeat)
+        {
+            resultBundle.putBoolean(PluginBundleManager.BUNDLE_EXTRA_BOOLEAN_ALLOW_REPEAT, true);
+        }
+
+        return resultBundle;
+    }
+
+    /**
+     * Stores the compiled template of a text, if the text has variables.
+     *
+     * @param bundle the plug-in Bundle.
+     * @param textKey key of the text in {@code bundle}.
+     * @param templateKey key to store the compiled template under.
+     * @param text the text.
+     * @param taskerKeys space separated list of the keys Tasker must replace variables in. {@code textKey} is appended if the
+     *            text has Tasker variables.
+     */
+    private static void putTemplate(final Bundle bundle, final String textKey, final String templateKey, final String text, final StringBuilder taskerKeys)
+    {
+        final String[] compiled = Template.compile(text);
+        if (null != compiled)
+        {
+            bundle.putStringArray(templateKey, compiled);
+        }
+
+        if (Template.hasTaskerVariable(text))
+        {
+            if (taskerKeys.length() > 0)
+            {
+                taskerKeys.append(' ');
+            }
+            taskerKeys.append(textKey);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void onActivityResult(final int requestCode, final int resultCode, final Intent data)
+    {
+        super.onActivityResult(requestCode, resultCode, data);
+
+        if (REQUEST_IMPORT_ICON == requestCode && RESULT_OK == resultCode && null != data && null != data.getData())
+        {
+            new ImportIconTask().execute(data.getData());
+        }
+    }
+
+    /**
+     * Fills the icon spinner with the built-in icons followed by the imported ones, with their thumbnails.
+     */
+    private void loadIcons(final Spinner spinner)
+    {
+        final ArrayList<CharSequence> names = new ArrayList<CharSequence>(Arrays.asList(getResources().getStringArray(R.array.icons)));
+        names.addAll(IconPack.getInstance(this).getNames());
+
+        if (spinner.getAdapter() instanceof IconAdapter)
+        {
+            ((IconAdapter) spinner.getAdapter()).release();
+        }
+        spinner.setAdapter(new IconAdapter(this, names, mRenderThread.getLooper()));
+    }
+
+    private static void selectIcon(final Spinner spinner, final String icon)
+    {
+        final SpinnerAdapter adapter = spinner.getAdapter();
+        for (int i = 0; i < adapter.getCount(); i++)
+        {
+            if (adapter.getItem(i).toString().equals(icon))
+            {
+                spinner.setSelection(i);
+                break;
+            }
+        }
+    }
+
+    /**
+     * Converts the picked image off the UI thread, then selects the new icon.
+     */
+    private final class ImportIconTask extends AsyncTask<Uri, Void, String>
+    {
+        ImportIconTask()
+        {
+            super();
+        }
+
+        @Override
+        protected String doInBackground(final Uri... params)
+        {
+            try
+            {
+                return IconImporter.importIcon(getApplicationContext(), params[0]);
+            }
+            catch (final IOException e)
+            {
+                return fail(e);
+            }
+            catch (final SecurityException e)
+            {
+                /*
+                 * The permission to read the image was revoked
+                 */
+                return fail(e);
+            }
+            catch (final IllegalArgumentException e)
+            {
+                /*
+                 * Another icon with the same name was added meanwhile
+                 */
+                return fail(e);
+            }
+        }
+
+        private String fail(final Exception e)
+        {
+            if (Constants.IS_LOGGABLE)
+            {
+                Log.w(Constants.LOG_TAG, "could not import icon", e); //$NON-NLS-1$
+            }
+            return null;
+        }
+
+        @Override
+        protected void onPostExecute(final String name)
+        {
+            /*
+             * The render thread of the icons is gone once the Activity is destroyed
+             */
+            if (isFinishing())
+            {
+                return;
+            }
+
+            if (null == name)
+            {
+                Toast.makeText(getApplicationContext(), R.string.import_icon_failed, Toast.LENGTH_LONG).show();
+                return;
+            }
+
+            final Spinner spinner = (Spinner) findViewById(R.id.spinner1);
+            loadIcons(spinner);
+            selectIcon(spinner, name);
+        }
+    }
+
+    /**
+     * Loads a preset off the UI thread, then fills the fields with it.
+     */
+    private final class LoadPresetTask extends AsyncTask<String, Void, Bundle>
+    {
+        LoadPresetTask()
+        {
+            super();
+        }
+
+        @Override
+        protected Bundle doInBackground(final String... params)
+        {
+            return PresetStore.getInstance(getApplicationContext()).load(params[0]);
+        }
+
+        @Override
+        protected void onPostExecute(final Bundle preset)
+        {
+            if (null != preset && !isFinishing())
+            {
+                showSetting(preset);
+            }
+        }
+    }
+
+    /**
+     * Saves a preset off the UI thread.
+     */
+    private final class SavePresetTask extends AsyncTask<Void, Void, Boolean>
+    {
+        private final String mName;
+
+        private final Bundle mPreset;
+
+        SavePresetTask(final String name, final Bundle preset)
+        {
+            super();
+            mName = name;
+            mPreset = preset;
+        }
+
+        @Override
+        protected Boolean doInBackground(final Void... params)
+        {
+            return Boolean.valueOf(PresetStore.getInstance(getApplicationContext()).save(mName, mPreset));
+        }
+
+        @Override
+        protected void onPostExecute(final Boolean isSaved)
+        {
+            Toast.makeText(getApplicationContext(), isSaved.booleanValue() ? R.string.preset_saved : R.string.preset_save_failed, Toast.LENGTH_SHORT).show();
+        }
+    }
+
     private int tryGetValue(int resId)
     {
     	try 
@@ -307,6 +666,12 @@ public final class EditActivity extends Activity
          */
         getMenuInflater().inflate(org.metawatch.manager.locale.R.menu.twofortyfouram_locale_help_save_dontsave, menu);
 
+        /*
+         * The global settings are reached from the plug-in's menu, since the plug-in has no launcher Activity
+         */
+        menu.add(Menu.NONE, MENU_SETTINGS, Menu.NONE, R.string.settings_label);
+        menu.add(Menu.NONE, MENU_IMPORT_ICON, Menu.NONE, R.string.import_icon_label);
+
         /*
          * Set up the breadcrumbs for the ActionBar
          */
@@ -387,6 +752,23 @@ public final class EditActivity extends Activity
             finish();
             return true;
         }
+        else if (id == MENU_SETTINGS)
+        {
+            startActivity(new Intent(this, SettingsActivity.class));
+            return true;
+        }
+        else if (id == MENU_IMPORT_ICON)
+        {
+            try
+            {
+                startActivityForResult(new Intent(Intent.ACTION_GET_CONTENT).setType("image/*").addCategory(Intent.CATEGORY_OPENABLE), REQUEST_IMPORT_ICON); //$NON-NLS-1$
+            }
+            catch (final Exception e)
+            {
+                Toast.makeText(getApplicationContext(), org.metawatch.manager.locale.R.string.twofortyfouram_locale_application_not_available, Toast.LENGTH_LONG).show();
+            }
+            return true;
+        }
 
         return super.onOptionsItemSelected(item);
     }
@@ -0,0 +1,229 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.metawatch.manager.locale.ui;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.graphics.drawable.BitmapDrawable;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ArrayAdapter;
+import android.widget.TextView;
+
+import org.metawatch.manager.locale.render.WidgetRenderer;
+import org.metawatch.manager.locale.render.WidgetSize;
+
+/**
+ * Lists icon names with a thumbnail of each icon as the watch draws it.
+ * <p>
+ * Thumbnails are rendered on a background thread by {@link WidgetRenderer}, so built-in and imported icons look exactly like on
+ * the watch. Each icon is rendered once per process and kept in a memory cache; a row whose thumbnail is not ready yet shows a
+ * blank placeholder of the same size, so the list does not jump when it arrives.
+ * <p>
+ * Must be used on the main thread.
+ */
+final class IconAdapter extends ArrayAdapter<CharSequence>
+{
+    /**
+     * Size the thumbnails are rendered at.
+     */
+    private static final WidgetSize THUMBNAIL_SIZE = WidgetSize.LARGE;
+
+    /**
+     * Thumbnails are scaled up by this factor, in density independent pixels.
+     */
+    private static final int THUMBNAIL_SCALE = 2;
+
+    /**
+     * Number of thumbnails kept. They are a few hundred bytes each.
+     */
+    private static final int CACHE_SIZE = 128;
+
+    /**
+     * Thumbnails by icon name, shared by all adapters. Built-in icons never change and imported icons cannot be replaced, so a
+     * thumbnail never goes stale. Only accessed on the main thread.
+     */
+    private static final LinkedHashMap<String, Bitmap> sThumbnails = new LinkedHashMap<String, Bitmap>(CACHE_SIZE, 0.75f, true)
+    {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, Bitmap> eldest)
+        {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    private final Context mContext;
+
+    private final Handler mWorker;
+
+    private final Handler mMain = new Handler(Looper.getMainLooper());
+
+    /**
+     * Names of the icons being rendered.
+     */
+    private final HashSet<String> mPending = new HashSet<String>();
+
+    /**
+     * Bounds of the thumbnails, in pixels.
+     */
+    private final int mThumbnailWidth;
+
+    private final int mThumbnailHeight;
+
+    private final BitmapDrawable mPlaceholder;
+
+    /**
+     * Whether {@link #mRefresh} is posted.
+     */
+    private boolean mIsRefreshPosted = false;
+
+    private boolean mIsReleased = false;
+
+    private final Runnable mRefresh = new Runnable()
+    {
+        public void run()
+        {
+            mIsRefreshPosted = false;
+            notifyDataSetChanged();
+        }
+    };
+
+    /**
+     * @param context the activity. Cannot be null.
+     * @param names names of the icons. Cannot be null.
+     * @param renderLooper looper of the background thread rendering the thumbnails. Cannot be null.
+     */
+    IconAdapter(final Context context, final List<CharSequence> names, final Looper renderLooper)
+    {
+        super(context, android.R.layout.simple_spinner_item, names);
+        setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+
+        mContext = context.getApplicationContext() != null ? context.getApplicationContext() : context;
+        mWorker = new Handler(renderLooper);
+
+        final float scale = THUMBNAIL_SCALE * context.getResources().getDisplayMetrics().density;
+        mThumbnailWidth = Math.round(THUMBNAIL_SIZE.iconWidth * scale);
+        mThumbnailHeight = Math.round(THUMBNAIL_SIZE.iconHeight * scale);
+
+        final Bitmap blank = Bitmap.createBitmap(THUMBNAIL_SIZE.iconWidth, THUMBNAIL_SIZE.iconHeight, Bitmap.Config.RGB_565);
+        blank.eraseColor(Color.WHITE);
+        mPlaceholder = createDrawable(blank);
+    }
+
+    @Override
+    public View getView(final int position, final View convertView, final ViewGroup parent)
+    {
+        return bind(position, super.getView(position, convertView, parent));
+    }
+
+    @Override
+    public View getDropDownView(final int position, final View convertView, final ViewGroup parent)
+    {
+        return bind(position, super.getDropDownView(position, convertView, parent));
+    }
+
+    /**
+     * Sets the thumbnail of an icon on its row, or the placeholder while it is rendered.
+     */
+    private View bind(final int position, final View view)
+    {
+        final String name = getItem(position).toString();
+        final Bitmap thumbnail = sThumbnails.get(name);
+        final BitmapDrawable drawable;
+        if (null == thumbnail)
+        {
+            drawable = mPlaceholder;
+            load(name);
+        }
+        else
+        {
+            drawable = createDrawable(thumbnail);
+        }
+
+        if (view instanceof TextView)
+        {
+            ((TextView) view).setCompoundDrawables(drawable, null, null, null);
+            ((TextView) view).setCompoundDrawablePadding(mThumbnailWidth / 4);
+        }
+        return view;
+    }
+
+    private BitmapDrawable createDrawable(final Bitmap bitmap)
+    {
+        /*
+         * Scaled up without filtering to keep the pixels sharp
+         */
+        final BitmapDrawable drawable = new BitmapDrawable(mContext.getResources(), bitmap);
+        drawable.setFilterBitmap(false);
+        drawable.setBounds(0, 0, mThumbnailWidth, mThumbnailHeight);
+        return drawable;
+    }
+
+    /**
+     * Renders the thumbnail of an icon on the render thread, unless it is already being rendered.
+     */
+    private void load(final String name)
+    {
+        if (!mPending.add(name))
+        {
+            return;
+        }
+
+        mWorker.post(new Runnable()
+        {
+            public void run()
+            {
+                /*
+                 * The icon is rendered alone in a frame, then cut out of it
+                 */
+                final WidgetSize size = THUMBNAIL_SIZE;
+                final int[] pixels = WidgetRenderer.forCurrentThread(mContext).render(size, name, ""); //$NON-NLS-1$
+                final Bitmap thumbnail = Bitmap.createBitmap(pixels, size.iconYNoLabel * size.width + size.iconX, size.width, size.iconWidth, size.iconHeight, Bitmap.Config.RGB_565);
+
+                mMain.post(new Runnable()
+                {
+                    public void run()
+                    {
+                        mPending.remove(name);
+                        sThumbnails.put(name, thumbnail);
+
+                        /*
+                         * Thumbnails rendered back to back refresh the list once
+                         */
+                        if (!mIsRefreshPosted && !mIsReleased)
+                        {
+                            mIsRefreshPosted = true;
+                            mMain.post(mRefresh);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Cancels the refresh of the list. Thumbnails still being rendered are cached for the next adapter.
+     */
+    void release()
+    {
+        mIsReleased = true;
+        mMain.removeCallbacks(mRefresh);
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.metawatch.manager.locale.ui;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import android.content.Context;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.Filter;
+import android.widget.Filterable;
+import android.widget.TextView;
+
+import org.metawatch.manager.locale.preset.PresetStore;
+
+/**
+ * Suggests the names of the presets starting with the text typed.
+ * <p>
+ * Each lookup is a prefix search of the names in {@link PresetStore}, run on the filter thread, so only the names matching the
+ * text are read and the fields of the presets are not read at all.
+ */
+final class PresetAdapter extends BaseAdapter implements Filterable
+{
+    /**
+     * Maximum number of suggestions.
+     */
+    private static final int MAX_SUGGESTIONS = 50;
+
+    private final LayoutInflater mInflater;
+
+    private final PresetStore mStore;
+
+    private List<String> mNames = new ArrayList<String>();
+
+    private final Filter mFilter = new Filter()
+    {
+        @Override
+        protected FilterResults performFiltering(final CharSequence constraint)
+        {
+            final ArrayList<String> names = mStore.getNames(null == constraint ? "" : constraint.toString(), MAX_SUGGESTIONS); //$NON-NLS-1$
+            final FilterResults results = new FilterResults();
+            results.values = names;
+            results.count = names.size();
+            return results;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        protected void publishResults(final CharSequence constraint, final FilterResults results)
+        {
+            mNames = (List<String>) results.values;
+            if (results.count > 0)
+            {
+                notifyDataSetChanged();
+            }
+            else
+            {
+                notifyDataSetInvalidated();
+            }
+        }
+    };
+
+    /**
+     * @param context the activity. Cannot be null.
+     */
+    PresetAdapter(final Context context)
+    {
+        super();
+        mInflater = LayoutInflater.from(context);
+        mStore = PresetStore.getInstance(context);
+    }
+
+    public int getCount()
+    {
+        return mNames.size();
+    }
+
+    public String getItem(final int position)
+    {
+        return mNames.get(position);
+    }
+
+    public long getItemId(final int position)
+    {
+        return position;
+    }
+
+    public View getView(final int position, final View convertView, final ViewGroup parent)
+    {
+        final TextView view = (TextView) (null == convertView ? mInflater.inflate(android.R.layout.simple_dropdown_item_1line, parent, false) : convertView);
+        view.setText(getItem(position));
+        return view;
+    }
+
+    public Filter getFilter()
+    {
+        return mFilter;
+    }
+}
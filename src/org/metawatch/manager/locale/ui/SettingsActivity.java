@@ -0,0 +1,39 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.metawatch.manager.locale.ui;
+
+import android.os.Bundle;
+import android.preference.PreferenceActivity;
+
+import org.metawatch.manager.locale.PluginApplication;
+import org.metawatch.manager.locale.R;
+
+/**
+ * Edits the global settings of the plug-in, see {@link org.metawatch.manager.locale.PluginPreferences}.
+ */
+public final class SettingsActivity extends PreferenceActivity
+{
+    /**
+     * {@inheritDoc}
+     */
+    @SuppressWarnings("deprecation")
+    @Override
+    protected void onCreate(final Bundle savedInstanceState)
+    {
+        super.onCreate(savedInstanceState);
+
+        PluginApplication.enableUiDebugging(this);
+
+        /*
+         * PreferenceFragment requires API 11, so the deprecated method is used to support API 8
+         */
+        addPreferencesFromResource(R.xml.preferences);
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.metawatch.manager.locale.ui;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+import android.os.Handler;
+import android.os.Looper;
+import android.widget.ImageView;
+
+import org.metawatch.manager.locale.render.WidgetRenderer;
+import org.metawatch.manager.locale.render.WidgetSize;
+import org.metawatch.manager.locale.template.Template;
+import org.metawatch.manager.locale.template.TemplateEnvironment;
+
+/**
+ * Shows the frames of a widget while its setting is edited.
+ * <p>
+ * Frames are rendered on a background thread, by the same {@link WidgetRenderer} and {@link Template} code as
+ * {@link org.metawatch.manager.locale.receiver.FireReceiver}, so the preview is exactly what the watch will show. Requests made
+ * while the user types are debounced, and the frames of recent icon and label pairs are cached, so going back to an icon that was
+ * already shown is instant.
+ * <p>
+ * All methods must be called on the main thread.
+ */
+final class WidgetPreview
+{
+    /**
+     * Delay before rendering a label being typed, so that a burst of keystrokes renders once.
+     */
+    static final long TYPING_DELAY_MILLIS = 250;
+
+    /**
+     * Number of icon and label pairs whose frames are kept.
+     */
+    private static final int CACHE_SIZE = 32;
+
+    private final Context mContext;
+
+    /**
+     * Views showing the frames, indexed by {@link WidgetSize#index}.
+     */
+    private final ImageView[] mViews;
+
+    private final Handler mWorker;
+
+    private final Handler mMain = new Handler(Looper.getMainLooper());
+
+    private final FrameCache mCache = new FrameCache();
+
+    /**
+     * Incremented by each request, so that the frames of a request that was overtaken are dropped.
+     */
+    private int mGeneration = 0;
+
+    /**
+     * Request waiting for its delay, or null.
+     */
+    private RenderRequest mPending = null;
+
+    private final Runnable mSubmit = new Runnable()
+    {
+        public void run()
+        {
+            final RenderRequest request = mPending;
+            mPending = null;
+            if (null != request)
+            {
+                mWorker.post(request);
+            }
+        }
+    };
+
+    /**
+     * @param context to read the assets and evaluate the variables. Cannot be null.
+     * @param views views showing the frames, indexed by {@link WidgetSize#index}. Cannot be null.
+     * @param renderLooper looper of the background thread rendering the frames. Cannot be null.
+     */
+    WidgetPreview(final Context context, final ImageView[] views, final Looper renderLooper)
+    {
+        mContext = context.getApplicationContext() != null ? context.getApplicationContext() : context;
+        mViews = views;
+        mWorker = new Handler(renderLooper);
+    }
+
+    /**
+     * Shows the frames of a widget, rendering them if they are not cached.
+     *
+     * @param icon name of the icon.
+     * @param label label of the widget, possibly with variables.
+     * @param delayMillis delay before rendering, to debounce typing. Cached frames are shown without delay.
+     */
+    void update(final String icon, final String label, final long delayMillis)
+    {
+        mGeneration++;
+        mMain.removeCallbacks(mSubmit);
+        mPending = null;
+
+        /*
+         * A label with variables must be evaluated first, which reads the clock and the battery, so only plain labels are looked
+         * up here. Tasker variables are only replaced when the setting fires, so they are previewed as written.
+         */
+        final String[] template = Template.compileIgnoringTasker(label);
+        if (null == template)
+        {
+            final Bitmap[] frames = mCache.get(getKey(icon, label));
+            if (null != frames)
+            {
+                show(frames);
+                return;
+            }
+        }
+
+        mPending = new RenderRequest(mGeneration, icon, label, template);
+        mMain.postDelayed(mSubmit, delayMillis);
+    }
+
+    /**
+     * Cancels the pending render and drops the results still to come.
+     */
+    void release()
+    {
+        mMain.removeCallbacks(mSubmit);
+        mPending = null;
+        mGeneration++;
+    }
+
+    private void show(final Bitmap[] frames)
+    {
+        for (final WidgetSize size : WidgetSize.ALL)
+        {
+            /*
+             * The frames are a few pixels wide, so they are scaled up without filtering to keep the pixels sharp
+             */
+            final BitmapDrawable drawable = new BitmapDrawable(mContext.getResources(), frames[size.index]);
+            drawable.setFilterBitmap(false);
+            mViews[size.index].setImageDrawable(drawable);
+        }
+    }
+
+    private static String getKey(final String icon, final String label)
+    {
+        return icon + '\n' + label;
+    }
+
+    /**
+     * Renders the frames of one request on the render thread.
+     */
+    private final class RenderRequest implements Runnable
+    {
+        private final int mRequestGeneration;
+
+        private final String mIcon;
+
+        private final String mLabel;
+
+        private final String[] mTemplate;
+
+        RenderRequest(final int generation, final String icon, final String label, final String[] template)
+        {
+            mRequestGeneration = generation;
+            mIcon = icon;
+            mLabel = label;
+            mTemplate = template;
+        }
+
+        public void run()
+        {
+            final String label = null == mTemplate ? mLabel : Template.evaluate(mTemplate, new TemplateEnvironment(mContext, System.currentTimeMillis()));
+            final String key = getKey(mIcon, label);
+
+            Bitmap[] frames = mCache.get(key);
+            if (null == frames)
+            {
+                final WidgetRenderer renderer = WidgetRenderer.forCurrentThread(mContext);
+                frames = new Bitmap[WidgetSize.ALL.length];
+                for (final WidgetSize size : WidgetSize.ALL)
+                {
+                    frames[size.index] = Bitmap.createBitmap(renderer.render(size, mIcon, label), size.width, size.height, Bitmap.Config.RGB_565);
+                }
+                mCache.put(key, frames);
+            }
+
+            final Bitmap[] result = frames;
+            mMain.post(new Runnable()
+            {
+                public void run()
+                {
+                    if (mRequestGeneration == mGeneration)
+                    {
+                        show(result);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Least recently used frames, keyed by icon and evaluated label. Accessed by both threads.
+     */
+    private static final class FrameCache
+    {
+        private final LinkedHashMap<String, Bitmap[]> mFrames = new LinkedHashMap<String, Bitmap[]>(CACHE_SIZE, 0.75f, true)
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Bitmap[]> eldest)
+            {
+                return size() > CACHE_SIZE;
+            }
+        };
+
+        FrameCache()
+        {
+            super();
+        }
+
+        synchronized Bitmap[] get(final String key)
+        {
+            return mFrames.get(key);
+        }
+
+        synchronized void put(final String key, final Bitmap[] frames)
+        {
+            mFrames.put(key, frames);
+        }
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.metawatch.manager.locale.broadcast;
+
+import android.content.Intent;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import junit.framework.TestCase;
+
+import org.metawatch.manager.locale.test.ManualClock;
+import org.metawatch.manager.locale.test.ManualHandler;
+import org.metawatch.manager.locale.test.RecordingContext;
+
+/**
+ * Tests {@link DeliveryTracker}.
+ */
+public final class DeliveryTrackerTest extends TestCase
+{
+    /**
+     * Tests that the delay before a retry doubles with each attempt.
+     */
+    @SmallTest
+    public static void testRetryDelay()
+    {
+        assertEquals(DeliveryTracker.FIRST_RETRY_DELAY_MILLIS, DeliveryTracker.getRetryDelay(1));
+        assertEquals(2 * DeliveryTracker.FIRST_RETRY_DELAY_MILLIS, DeliveryTracker.getRetryDelay(2));
+        assertEquals(4 * DeliveryTracker.FIRST_RETRY_DELAY_MILLIS, DeliveryTracker.getRetryDelay(3));
+    }
+
+    /**
+     * Tests that a broadcast is given up within a bounded time.
+     */
+    @SmallTest
+    public static void testBoundedRetries()
+    {
+        long total = 0;
+        for (int attempts = 1; attempts < DeliveryTracker.MAX_ATTEMPTS; attempts++)
+        {
+            total += DeliveryTracker.getRetryDelay(attempts);
+        }
+        assertTrue(total <= 10 * DeliveryTracker.FIRST_RETRY_DELAY_MILLIS);
+    }
+
+    /**
+     * Tests that an acknowledged broadcast is no longer pending, and that the first acknowledgment starts the retries of the
+     * others.
+     */
+    @SmallTest
+    public static void testAcknowledge()
+    {
+        final ManualClock clock = new ManualClock();
+        final ManualHandler handler = new ManualHandler();
+        final DeliveryTracker tracker = new DeliveryTracker(new RecordingContext(null), clock, handler);
+
+        final long first = tracker.track(new Intent("first"), null); //$NON-NLS-1$
+        tracker.track(new Intent("second"), null); //$NON-NLS-1$
+        assertEquals(2, tracker.getPendingCount());
+        assertEquals(0, handler.getPostCount());
+
+        clock.advance(200);
+        tracker.acknowledge(first);
+        assertEquals(1, tracker.getPendingCount());
+        assertEquals(1, handler.getPostCount());
+        assertTrue(handler.getLastDelay() <= DeliveryTracker.FIRST_RETRY_DELAY_MILLIS - 200);
+
+        tracker.acknowledge(first);
+        assertEquals(1, tracker.getPendingCount());
+    }
+
+    /**
+     * Tests that an acknowledgment is only accepted with the token of the tracker.
+     */
+    @SmallTest
+    public static void testAckToken()
+    {
+        final DeliveryTracker tracker = new DeliveryTracker(new RecordingContext(null), new ManualClock(), new ManualHandler());
+        final long sequence = tracker.track(new Intent("update"), null); //$NON-NLS-1$
+
+        final Intent forged = new Intent(DeliveryTracker.ACTION_ACK);
+        forged.putExtra(DeliveryTracker.EXTRA_SEQUENCE, sequence);
+        tracker.acknowledge(forged);
+        forged.putExtra(DeliveryTracker.EXTRA_ACK_TOKEN, tracker.getAckToken() + 1);
+        tracker.acknowledge(forged);
+        assertEquals(1, tracker.getPendingCount());
+
+        final Intent ack = new Intent(DeliveryTracker.ACTION_ACK);
+        ack.putExtra(DeliveryTracker.EXTRA_SEQUENCE, sequence);
+        ack.putExtra(DeliveryTracker.EXTRA_ACK_TOKEN, tracker.getAckToken());
+        tracker.acknowledge(ack);
+        assertEquals(0, tracker.getPendingCount());
+    }
+
+    /**
+     * Tests that a broadcast replaces the pending one with the same key only.
+     */
+    @SmallTest
+    public static void testSupersede()
+    {
+        final DeliveryTracker tracker = new DeliveryTracker(new RecordingContext(null), new ManualClock(), new ManualHandler());
+
+        final long replaced = tracker.track(new Intent("frame"), "widget_1"); //$NON-NLS-1$ //$NON-NLS-2$
+        final long current = tracker.track(new Intent("frame"), "widget_1"); //$NON-NLS-1$ //$NON-NLS-2$
+        tracker.track(new Intent("frame"), "widget_2"); //$NON-NLS-1$ //$NON-NLS-2$
+        assertEquals(2, tracker.getPendingCount());
+        assertTrue(tracker.isPending("widget_1")); //$NON-NLS-1$
+
+        tracker.acknowledge(replaced);
+        assertEquals(2, tracker.getPendingCount());
+
+        tracker.acknowledge(current);
+        assertEquals(1, tracker.getPendingCount());
+        assertFalse(tracker.isPending("widget_1")); //$NON-NLS-1$
+        assertTrue(tracker.isPending("widget_2")); //$NON-NLS-1$
+    }
+
+    /**
+     * Tests that a broadcast is sent again when due, and given up after {@link DeliveryTracker#MAX_ATTEMPTS} attempts.
+     */
+    @SmallTest
+    public static void testGiveUp()
+    {
+        final RecordingContext context = new RecordingContext(null);
+        final ManualClock clock = new ManualClock();
+        final DeliveryTracker tracker = new DeliveryTracker(context, clock, new ManualHandler());
+
+        tracker.track(new Intent("update"), null); //$NON-NLS-1$
+
+        clock.advance(DeliveryTracker.FIRST_RETRY_DELAY_MILLIS - 1);
+        tracker.retry();
+        assertEquals(0, context.getBroadcasts().size());
+
+        clock.advance(1);
+        for (int attempts = 1; attempts < DeliveryTracker.MAX_ATTEMPTS; attempts++)
+        {
+            tracker.retry();
+            assertEquals(attempts, context.getBroadcasts().size());
+            assertEquals(1, tracker.getPendingCount());
+            clock.advance(DeliveryTracker.getRetryDelay(attempts + 1));
+        }
+
+        tracker.retry();
+        assertEquals(DeliveryTracker.MAX_ATTEMPTS - 1, context.getBroadcasts().size());
+        assertEquals(0, tracker.getPendingCount());
+    }
+
+    /**
+     * Tests that a broadcast whose retry is late by more than the backoff is given up rather than sent again.
+     */
+    @SmallTest
+    public static void testStaleRetry()
+    {
+        final RecordingContext context = new RecordingContext(null);
+        final ManualClock clock = new ManualClock();
+        final DeliveryTracker tracker = new DeliveryTracker(context, clock, new ManualHandler());
+
+        tracker.track(new Intent("late by the backoff"), null); //$NON-NLS-1$
+        tracker.track(new Intent("also late by the backoff"), null); //$NON-NLS-1$
+        clock.advance(DeliveryTracker.FIRST_RETRY_DELAY_MILLIS + DeliveryTracker.getRetryDelay(1));
+        tracker.retry();
+        assertEquals(2, context.getBroadcasts().size());
+
+        final DeliveryTracker staleTracker = new DeliveryTracker(context, clock, new ManualHandler());
+        staleTracker.track(new Intent("stale"), null); //$NON-NLS-1$
+        clock.advance(DeliveryTracker.FIRST_RETRY_DELAY_MILLIS + DeliveryTracker.getRetryDelay(1) + 1);
+        staleTracker.retry();
+        assertEquals(2, context.getBroadcasts().size());
+        assertEquals(0, staleTracker.getPendingCount());
+    }
+
+    /**
+     * Tests that the oldest broadcast is given up when {@link DeliveryTracker#MAX_PENDING} are pending.
+     */
+    @SmallTest
+    public static void testMaxPending()
+    {
+        final DeliveryTracker tracker = new DeliveryTracker(new RecordingContext(null), new ManualClock(), new ManualHandler());
+
+        final long oldest = tracker.track(new Intent("oldest"), null); //$NON-NLS-1$
+        final long second = tracker.track(new Intent("second"), null); //$NON-NLS-1$
+        for (int i = 2; i < DeliveryTracker.MAX_PENDING; i++)
+        {
+            tracker.track(new Intent("filler"), null); //$NON-NLS-1$
+        }
+        assertEquals(DeliveryTracker.MAX_PENDING, tracker.getPendingCount());
+
+        final long newest = tracker.track(new Intent("newest"), null); //$NON-NLS-1$
+        assertEquals(DeliveryTracker.MAX_PENDING, tracker.getPendingCount());
+
+        tracker.acknowledge(oldest);
+        assertEquals(DeliveryTracker.MAX_PENDING, tracker.getPendingCount());
+        tracker.acknowledge(second);
+        tracker.acknowledge(newest);
+        assertEquals(DeliveryTracker.MAX_PENDING - 2, tracker.getPendingCount());
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.metawatch.manager.locale.broadcast;
+
+import java.util.ArrayList;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests {@link NotificationDigest}.
+ */
+public final class NotificationDigestTest extends TestCase
+{
+    /**
+     * Tests the title and the bulleted text of a digest.
+     */
+    @SmallTest
+    public static void testMerge()
+    {
+        final ArrayList<QueuedNotification> notifications = new ArrayList<QueuedNotification>();
+        notifications.add(new QueuedNotification("Mail", "3 new", NotificationQueue.PRIORITY_NORMAL, 5, 1000)); //$NON-NLS-1$ //$NON-NLS-2$
+        notifications.add(new QueuedNotification("Home", "arrived", NotificationQueue.PRIORITY_LOW, 6, 2000)); //$NON-NLS-1$ //$NON-NLS-2$
+        notifications.add(new QueuedNotification("Mail", "4 new", NotificationQueue.PRIORITY_NORMAL, 7, 3000)); //$NON-NLS-1$ //$NON-NLS-2$
+        notifications.add(new QueuedNotification("", "untitled", NotificationQueue.PRIORITY_LOW, 8, 4000)); //$NON-NLS-1$ //$NON-NLS-2$
+
+        final QueuedNotification digest = NotificationDigest.merge(notifications, 100);
+
+        assertEquals("Mail, Home", digest.title); //$NON-NLS-1$
+        assertEquals("- Mail: 3 new\n- Home: arrived\n- Mail: 4 new\n- untitled", digest.text); //$NON-NLS-1$
+        assertEquals(NotificationQueue.PRIORITY_NORMAL, digest.priority);
+        assertEquals(5, digest.sequence);
+        assertEquals(1000, digest.queuedAt);
+        assertFalse(digest.hasVibration);
+    }
+
+    /**
+     * Tests that the title and the text are cut to the maximum length.
+     */
+    @SmallTest
+    public static void testMaxLength()
+    {
+        final ArrayList<QueuedNotification> notifications = new ArrayList<QueuedNotification>();
+        for (int i = 0; i < 10; i++)
+        {
+            notifications.add(new QueuedNotification("Title " + i, "Text " + i, NotificationQueue.PRIORITY_NORMAL, i, i)); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+
+        final QueuedNotification digest = NotificationDigest.merge(notifications, 20);
+
+        assertEquals(20, digest.title.length());
+        assertEquals("Title 0, Title 1, ..", digest.title); //$NON-NLS-1$
+        assertEquals(20, digest.text.length());
+        assertEquals("- Title 0: Text 0\n..", digest.text); //$NON-NLS-1$
+
+        assertEquals("..", NotificationDigest.merge(notifications, 2).text); //$NON-NLS-1$
+        assertEquals(".", NotificationDigest.merge(notifications, 1).text); //$NON-NLS-1$
+    }
+
+    /**
+     * Tests that the digest vibrates with the strongest pattern of its notifications.
+     */
+    @SmallTest
+    public static void testVibration()
+    {
+        final ArrayList<QueuedNotification> notifications = new ArrayList<QueuedNotification>();
+        notifications.add(createVibrating(100, 300, 1));
+        notifications.add(new QueuedNotification("silent", "", NotificationQueue.PRIORITY_LOW, 1, 0)); //$NON-NLS-1$ //$NON-NLS-2$
+        notifications.add(createVibrating(200, 100, 3));
+
+        final QueuedNotification digest = NotificationDigest.merge(notifications, 100);
+
+        assertTrue(digest.hasVibration);
+        assertEquals(200, digest.vibrateOn);
+        assertEquals(300, digest.vibrateOff);
+        assertEquals(3, digest.vibrateCycles);
+        assertEquals(NotificationQueue.PRIORITY_HIGH, digest.priority);
+    }
+
+    private static QueuedNotification createVibrating(final int on, final int off, final int cycles)
+    {
+        final QueuedNotification notification = new QueuedNotification("buzz", "", NotificationQueue.PRIORITY_HIGH, 0, 0); //$NON-NLS-1$ //$NON-NLS-2$
+        notification.hasVibration = true;
+        notification.vibrateOn = on;
+        notification.vibrateOff = off;
+        notification.vibrateCycles = cycles;
+        return notification;
+    }
+}
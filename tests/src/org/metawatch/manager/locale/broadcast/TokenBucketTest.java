@@ -0,0 +1,105 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.metawatch.manager.locale.broadcast;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests {@link TokenBucket}.
+ */
+public final class TokenBucketTest extends TestCase
+{
+    /**
+     * Tests that a full bucket allows a burst, then one event per interval.
+     */
+    @SmallTest
+    public static void testBurstThenRate()
+    {
+        final TokenBucket bucket = new TokenBucket(2, 1000, 0);
+
+        assertTrue(bucket.tryAcquire(0));
+        assertTrue(bucket.tryAcquire(0));
+        assertFalse(bucket.tryAcquire(0));
+        assertEquals(1000, bucket.millisUntilNextToken(0));
+        assertEquals(600, bucket.millisUntilNextToken(400));
+
+        assertFalse(bucket.tryAcquire(999));
+        assertTrue(bucket.tryAcquire(1000));
+        assertFalse(bucket.tryAcquire(1500));
+        assertTrue(bucket.tryAcquire(2000));
+    }
+
+    /**
+     * Tests that an idle bucket never holds more than its capacity.
+     */
+    @SmallTest
+    public static void testCapacityLimit()
+    {
+        final TokenBucket bucket = new TokenBucket(2, 1000, 0);
+        assertTrue(bucket.tryAcquire(0));
+
+        assertTrue(bucket.tryAcquire(100000));
+        assertTrue(bucket.tryAcquire(100000));
+        assertFalse(bucket.tryAcquire(100000));
+    }
+
+    /**
+     * Tests that a resized bucket keeps the tokens left, up to its new capacity.
+     */
+    @SmallTest
+    public static void testResize()
+    {
+        final TokenBucket bucket = new TokenBucket(3, 1000, 0);
+        assertTrue(bucket.tryAcquire(0));
+        assertTrue(bucket.tryAcquire(0));
+
+        final TokenBucket larger = bucket.resize(5, 1000, 500);
+        assertEquals(5, larger.getCapacity());
+        assertTrue(larger.tryAcquire(500));
+        assertFalse(larger.tryAcquire(500));
+        assertTrue(larger.tryAcquire(1000));
+
+        final TokenBucket full = new TokenBucket(5, 1000, 0);
+        final TokenBucket smaller = full.resize(2, 2000, 0);
+        assertTrue(smaller.tryAcquire(0));
+        assertTrue(smaller.tryAcquire(0));
+        assertFalse(smaller.tryAcquire(0));
+        assertEquals(2000, smaller.millisUntilNextToken(0));
+    }
+
+    /**
+     * Tests the parameter checks.
+     */
+    @SmallTest
+    public static void testInvalidParameters()
+    {
+        try
+        {
+            new TokenBucket(0, 1000, 0);
+            fail();
+        }
+        catch (final IllegalArgumentException e)
+        {
+            // expected exception
+        }
+
+        try
+        {
+            new TokenBucket(1, 0, 0);
+            fail();
+        }
+        catch (final IllegalArgumentException e)
+        {
+            // expected exception
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.metawatch.manager.locale.broadcast;
+
+import java.util.ArrayList;
+
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import org.metawatch.manager.locale.PluginPreferences;
+import org.metawatch.manager.locale.test.ManualClock;
+import org.metawatch.manager.locale.test.ManualHandler;
+import org.metawatch.manager.locale.test.RecordingContext;
+
+/**
+ * Tests {@link VibrationArbiter}.
+ */
+public final class VibrationArbiterTest extends AndroidTestCase
+{
+    private static final int COALESCE_WINDOW_MILLIS = 500;
+
+    private static final int REPEAT_WINDOW_SECONDS = 10;
+
+    private static final String[] KEYS = new String[] { PluginPreferences.KEY_VIBRATION_COALESCE_WINDOW, PluginPreferences.KEY_VIBRATION_REPEAT_WINDOW };
+
+    /**
+     * Settings of the user, restored after each test.
+     */
+    private final String[] mSavedValues = new String[KEYS.length];
+
+    private RecordingContext mContext;
+
+    private ManualClock mClock;
+
+    private ManualHandler mHandler;
+
+    private VibrationArbiter mArbiter;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+
+        final SharedPreferences preferences = PluginPreferences.get(getContext());
+        for (int i = 0; i < KEYS.length; i++)
+        {
+            mSavedValues[i] = preferences.contains(KEYS[i]) ? String.valueOf(PluginPreferences.getInt(preferences, KEYS[i], 0)) : null;
+        }
+        setWindows(COALESCE_WINDOW_MILLIS, REPEAT_WINDOW_SECONDS);
+
+        mContext = new RecordingContext(getContext());
+        mClock = new ManualClock();
+        mHandler = new ManualHandler();
+        mArbiter = new VibrationArbiter(mContext, mClock, mHandler);
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        final SharedPreferences.Editor editor = PluginPreferences.get(getContext()).edit();
+        for (int i = 0; i < KEYS.length; i++)
+        {
+            if (null == mSavedValues[i])
+            {
+                editor.remove(KEYS[i]);
+            }
+            else
+            {
+                editor.putString(KEYS[i], mSavedValues[i]);
+            }
+        }
+        editor.commit();
+
+        super.tearDown();
+    }
+
+    /**
+     * Tests that requests within the coalesce window are merged into one buzz with the strongest pattern.
+     */
+    @SmallTest
+    public void testMerge()
+    {
+        mArbiter.request(100, 50, 1);
+        mArbiter.request(200, 20, 3);
+        assertEquals(0, mContext.getBroadcasts().size());
+        assertEquals(1, mHandler.getPostCount());
+        assertTrue(mHandler.getLastDelay() <= COALESCE_WINDOW_MILLIS);
+
+        mHandler.runLast();
+        final ArrayList<Intent> broadcasts = mContext.getBroadcasts();
+        assertEquals(1, broadcasts.size());
+        assertEquals(200, broadcasts.get(0).getIntExtra("vibrate_on", 0)); //$NON-NLS-1$
+        assertEquals(50, broadcasts.get(0).getIntExtra("vibrate_off", 0)); //$NON-NLS-1$
+        assertEquals(3, broadcasts.get(0).getIntExtra("vibrate_cycles", 0)); //$NON-NLS-1$
+    }
+
+    /**
+     * Tests that a request is sent at once without a coalesce window.
+     */
+    @SmallTest
+    public void testNoCoalesceWindow()
+    {
+        setWindows(0, REPEAT_WINDOW_SECONDS);
+
+        mArbiter.request(100, 50, 1);
+        assertEquals(1, mContext.getBroadcasts().size());
+        assertEquals(0, mHandler.getPostCount());
+    }
+
+    /**
+     * Tests that a buzz repeating a recent one is suppressed, unless it is stronger or the repeat window is over.
+     */
+    @SmallTest
+    public void testRepeatWindow()
+    {
+        mArbiter.request(100, 50, 1);
+        mArbiter.flush();
+        assertEquals(1, mContext.getBroadcasts().size());
+
+        mClock.advance(REPEAT_WINDOW_SECONDS * 1000L - 1);
+        mArbiter.request(100, 50, 1);
+        mArbiter.flush();
+        assertEquals(1, mContext.getBroadcasts().size());
+
+        mArbiter.request(100, 50, 2);
+        mArbiter.flush();
+        assertEquals(2, mContext.getBroadcasts().size());
+
+        mClock.advance(REPEAT_WINDOW_SECONDS * 1000L);
+        mArbiter.request(100, 50, 2);
+        mArbiter.flush();
+        assertEquals(3, mContext.getBroadcasts().size());
+    }
+
+    /**
+     * Tests that a waiting request is merged into a notification with vibration, which then buzzes alone.
+     */
+    @SmallTest
+    public void testClaimForNotification()
+    {
+        mArbiter.request(300, 50, 2);
+
+        final QueuedNotification notification = new QueuedNotification("title", "text", 0, 0, mClock.now()); //$NON-NLS-1$ //$NON-NLS-2$
+        notification.hasVibration = true;
+        notification.vibrateOn = 100;
+        notification.vibrateOff = 100;
+        notification.vibrateCycles = 1;
+        assertTrue(mArbiter.claimForNotification(notification));
+        assertEquals(300, notification.vibrateOn);
+        assertEquals(100, notification.vibrateOff);
+        assertEquals(2, notification.vibrateCycles);
+
+        mHandler.runLast();
+        assertEquals(0, mContext.getBroadcasts().size());
+
+        assertFalse(mArbiter.claimForNotification(notification));
+    }
+
+    /**
+     * @param coalesceWindowMillis value of {@link PluginPreferences#KEY_VIBRATION_COALESCE_WINDOW}.
+     * @param repeatWindowSeconds value of {@link PluginPreferences#KEY_VIBRATION_REPEAT_WINDOW}.
+     */
+    private void setWindows(final int coalesceWindowMillis, final int repeatWindowSeconds)
+    {
+        final SharedPreferences.Editor editor = PluginPreferences.get(getContext()).edit();
+        editor.putString(PluginPreferences.KEY_VIBRATION_COALESCE_WINDOW, String.valueOf(coalesceWindowMillis));
+        editor.putString(PluginPreferences.KEY_VIBRATION_REPEAT_WINDOW, String.valueOf(repeatWindowSeconds));
+        editor.commit();
+    }
+}
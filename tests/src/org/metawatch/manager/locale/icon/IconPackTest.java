@@ -0,0 +1,143 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.metawatch.manager.locale.icon;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import android.graphics.Color;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import junit.framework.TestCase;
+
+import org.metawatch.manager.locale.render.WidgetSize;
+
+/**
+ * Tests {@link IconPack} and the naming of {@link IconImporter}.
+ */
+public final class IconPackTest extends TestCase
+{
+    private File mFile;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        mFile = File.createTempFile("icons", ".pack"); //$NON-NLS-1$ //$NON-NLS-2$
+        mFile.delete();
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        mFile.delete();
+        super.tearDown();
+    }
+
+    /**
+     * Tests that a missing file is an empty pack.
+     */
+    @SmallTest
+    public void testMissingFile()
+    {
+        final IconPack pack = new IconPack(mFile);
+
+        assertTrue(pack.getNames().isEmpty());
+        assertFalse(pack.contains("cat")); //$NON-NLS-1$
+        assertNull(pack.getMask("cat", WidgetSize.SMALL)); //$NON-NLS-1$
+    }
+
+    /**
+     * Tests that icons added to a pack are read back in order and bit for bit.
+     */
+    @SmallTest
+    public void testAddAndRead() throws IOException
+    {
+        final byte[][] cat = createMasks((byte) 0x81);
+        final byte[][] dog = createMasks((byte) 0x3c);
+
+        IconPack.add(mFile, "cat", cat); //$NON-NLS-1$
+        IconPack.add(mFile, "dog", dog); //$NON-NLS-1$
+
+        final IconPack pack = new IconPack(mFile);
+        assertEquals(Arrays.asList("cat", "dog"), pack.getNames()); //$NON-NLS-1$ //$NON-NLS-2$
+        for (final WidgetSize size : WidgetSize.ALL)
+        {
+            assertTrue(Arrays.equals(cat[size.index], pack.getMask("cat", size))); //$NON-NLS-1$
+            assertTrue(Arrays.equals(dog[size.index], pack.getMask("dog", size))); //$NON-NLS-1$
+        }
+
+        final int[] pixels = new int[WidgetSize.SMALL.iconWidth * WidgetSize.SMALL.iconHeight];
+        assertTrue(pack.unpack("cat", WidgetSize.SMALL, pixels)); //$NON-NLS-1$
+        assertEquals(Color.BLACK, pixels[0]);
+        assertEquals(Color.WHITE, pixels[1]);
+        assertEquals(Color.BLACK, pixels[7]);
+    }
+
+    /**
+     * Tests that a name cannot be added twice.
+     */
+    @SmallTest
+    public void testDuplicateName() throws IOException
+    {
+        IconPack.add(mFile, "cat", createMasks((byte) 0)); //$NON-NLS-1$
+        try
+        {
+            IconPack.add(mFile, "cat", createMasks((byte) 0)); //$NON-NLS-1$
+            fail();
+        }
+        catch (final IllegalArgumentException e)
+        {
+            // expected exception
+        }
+    }
+
+    /**
+     * Tests that a file that is not a pack is an empty pack.
+     */
+    @SmallTest
+    public void testCorruptFile() throws IOException
+    {
+        final FileOutputStream out = new FileOutputStream(mFile);
+        out.write(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17 });
+        out.close();
+
+        assertTrue(new IconPack(mFile).getNames().isEmpty());
+    }
+
+    /**
+     * Tests the names derived from image file names.
+     */
+    @SmallTest
+    public static void testUniqueName()
+    {
+        final List<String> taken = Arrays.asList("home", "cat", "cat2"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+
+        assertEquals("my_dog", IconImporter.getUniqueName("My Dog!.png", taken)); //$NON-NLS-1$ //$NON-NLS-2$
+        assertEquals("cat3", IconImporter.getUniqueName("CAT.jpg", taken)); //$NON-NLS-1$ //$NON-NLS-2$
+        assertEquals("home2", IconImporter.getUniqueName("home", taken)); //$NON-NLS-1$ //$NON-NLS-2$
+        assertEquals("icon", IconImporter.getUniqueName(null, taken)); //$NON-NLS-1$
+        assertEquals("icon", IconImporter.getUniqueName("...", taken)); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    private static byte[][] createMasks(final byte fill)
+    {
+        final byte[][] masks = new byte[WidgetSize.ALL.length][];
+        for (final WidgetSize size : WidgetSize.ALL)
+        {
+            masks[size.index] = new byte[IconPack.getMaskLength(size)];
+            Arrays.fill(masks[size.index], fill);
+        }
+        return masks;
+    }
+}
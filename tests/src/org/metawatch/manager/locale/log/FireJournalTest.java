@@ -0,0 +1,178 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.metawatch.manager.locale.log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import android.os.Looper;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests {@link FireJournal}.
+ */
+public final class FireJournalTest extends TestCase
+{
+    private File mFile;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        mFile = File.createTempFile("journal", null); //$NON-NLS-1$
+        mFile.delete();
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        mFile.delete();
+        super.tearDown();
+    }
+
+    private FireJournal createJournal(final int capacity)
+    {
+        return new FireJournal(mFile, capacity, Looper.getMainLooper());
+    }
+
+    /**
+     * Tests that the entries are read back as they were recorded, from a new journal on the same file.
+     */
+    @SmallTest
+    public void testRecordQuery()
+    {
+        final FireJournal journal = createJournal(8);
+        journal.record(1000, FireJournal.TYPE_WIDGET, "clock", FireJournal.OUTCOME_SENT, 1, 2, 3, 7); //$NON-NLS-1$
+        journal.record(2000, FireJournal.TYPE_NOTIFICATION, null, FireJournal.OUTCOME_QUEUED, 4, 5, 0, 10);
+        journal.flush();
+
+        final List<FireJournal.Entry> entries = createJournal(8).query(0, Long.MAX_VALUE);
+        assertEquals(2, entries.size());
+
+        final FireJournal.Entry widget = entries.get(0);
+        assertEquals(1000, widget.time);
+        assertEquals(FireJournal.TYPE_WIDGET, widget.type);
+        assertEquals("clock", widget.widgetId); //$NON-NLS-1$
+        assertEquals(FireJournal.OUTCOME_SENT, widget.outcome);
+        assertEquals(1, widget.prepareMillis);
+        assertEquals(2, widget.deliverMillis);
+        assertEquals(3, widget.storeMillis);
+        assertEquals(7, widget.totalMillis);
+
+        final FireJournal.Entry notification = entries.get(1);
+        assertEquals(FireJournal.TYPE_NOTIFICATION, notification.type);
+        assertNull(notification.widgetId);
+        assertEquals(10, notification.totalMillis);
+    }
+
+    /**
+     * Tests that only the most recent entries are kept, and that the file does not grow.
+     */
+    @SmallTest
+    public void testWrapAround()
+    {
+        final FireJournal journal = createJournal(2);
+        journal.record(1, FireJournal.TYPE_WIDGET, "a", FireJournal.OUTCOME_SENT, 0, 0, 0, 0); //$NON-NLS-1$
+        journal.flush();
+        final long length = mFile.length();
+
+        journal.record(2, FireJournal.TYPE_WIDGET, "b", FireJournal.OUTCOME_SENT, 0, 0, 0, 0); //$NON-NLS-1$
+        journal.record(3, FireJournal.TYPE_WIDGET, "c", FireJournal.OUTCOME_SENT, 0, 0, 0, 0); //$NON-NLS-1$
+        journal.record(4, FireJournal.TYPE_WIDGET, "d", FireJournal.OUTCOME_SENT, 0, 0, 0, 0); //$NON-NLS-1$
+
+        final List<FireJournal.Entry> entries = journal.query(0, Long.MAX_VALUE);
+        assertEquals(2, entries.size());
+        assertEquals("c", entries.get(0).widgetId); //$NON-NLS-1$
+        assertEquals("d", entries.get(1).widgetId); //$NON-NLS-1$
+        assertTrue(mFile.length() <= length * 2);
+    }
+
+    /**
+     * Tests the time range of the queries.
+     */
+    @SmallTest
+    public void testTimeRange()
+    {
+        final FireJournal journal = createJournal(8);
+        for (int i = 1; i <= 5; i++)
+        {
+            journal.record(i * 100, FireJournal.TYPE_WIDGET, null, FireJournal.OUTCOME_SENT, 0, 0, 0, 0);
+        }
+
+        final List<FireJournal.Entry> entries = journal.query(200, 400);
+        assertEquals(2, entries.size());
+        assertEquals(200, entries.get(0).time);
+        assertEquals(300, entries.get(1).time);
+    }
+
+    /**
+     * Tests that long ids are cut on a character boundary.
+     */
+    @SmallTest
+    public void testLongId()
+    {
+        final StringBuilder id = new StringBuilder();
+        for (int i = 0; i < 30; i++)
+        {
+            id.append('\u00e9');
+        }
+
+        final FireJournal journal = createJournal(8);
+        journal.record(0, FireJournal.TYPE_WIDGET, id.toString(), FireJournal.OUTCOME_SENT, 0, 0, 0, 0);
+        assertEquals(id.substring(0, 18), journal.query(0, Long.MAX_VALUE).get(0).widgetId);
+    }
+
+    /**
+     * Tests that a file written with another layout is started over.
+     *
+     * @throws IOException if the file cannot be written.
+     */
+    @SmallTest
+    public void testCorruptFile() throws IOException
+    {
+        final RandomAccessFile file = new RandomAccessFile(mFile, "rw"); //$NON-NLS-1$
+        file.writeInt(42);
+        file.close();
+
+        final FireJournal journal = createJournal(8);
+        assertTrue(journal.query(0, Long.MAX_VALUE).isEmpty());
+
+        journal.record(5, FireJournal.TYPE_WIDGET, null, FireJournal.OUTCOME_SENT, 0, 0, 0, 0);
+        assertEquals(1, journal.query(0, Long.MAX_VALUE).size());
+    }
+
+    /**
+     * Tests the aggregate statistics.
+     */
+    @SmallTest
+    public void testStats()
+    {
+        final FireJournal journal = createJournal(8);
+        journal.record(1, FireJournal.TYPE_WIDGET, null, FireJournal.OUTCOME_SENT, 0, 0, 0, 10);
+        journal.record(2, FireJournal.TYPE_WIDGET, null, FireJournal.OUTCOME_SENT, 0, 0, 0, 30);
+        journal.record(3, FireJournal.TYPE_NOTIFICATION, null, FireJournal.OUTCOME_DROPPED, 0, 0, 0, 20);
+        journal.record(4, FireJournal.TYPE_INVALID, null, FireJournal.OUTCOME_REJECTED, 0, 0, 0, 1000);
+
+        final FireJournal.Stats stats = new FireJournal.Stats(journal.query(0, Long.MAX_VALUE));
+        assertEquals(2, stats.types[FireJournal.TYPE_WIDGET]);
+        assertEquals(1, stats.types[FireJournal.TYPE_NOTIFICATION]);
+        assertEquals(1, stats.types[FireJournal.TYPE_INVALID]);
+        assertEquals(2, stats.outcomes[FireJournal.OUTCOME_SENT]);
+        assertEquals(1, stats.outcomes[FireJournal.OUTCOME_DROPPED]);
+        assertEquals(1, stats.outcomes[FireJournal.OUTCOME_REJECTED]);
+        assertEquals(3, stats.total.getCount());
+        assertEquals(20, stats.total.getPercentile(50));
+        assertEquals(30, stats.total.getPercentile(100));
+    }
+}
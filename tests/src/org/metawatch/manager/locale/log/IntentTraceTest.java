@@ -0,0 +1,202 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.metawatch.manager.locale.log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.List;
+
+import android.os.Bundle;
+import android.os.Looper;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import junit.framework.TestCase;
+
+import org.metawatch.manager.locale.bundle.PluginBundleManager;
+
+/**
+ * Tests {@link IntentTrace}.
+ */
+public final class IntentTraceTest extends TestCase
+{
+    private File mFile;
+
+    private File mOldFile;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        mFile = File.createTempFile("trace", null); //$NON-NLS-1$
+        mFile.delete();
+        mOldFile = new File(mFile.getPath() + ".old"); //$NON-NLS-1$
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        mFile.delete();
+        mOldFile.delete();
+        super.tearDown();
+    }
+
+    private IntentTrace createTrace()
+    {
+        return new IntentTrace(mFile, mOldFile, Looper.getMainLooper());
+    }
+
+    /**
+     * Tests that the entries are read back with their delays and Bundles, from a new trace on the same file.
+     *
+     * @throws IOException if the trace cannot be read.
+     */
+    @SmallTest
+    public void testWriteRead() throws IOException
+    {
+        final Bundle widget = new Bundle();
+        widget.putString(PluginBundleManager.BUNDLE_EXTRA_STRING_TYPE, "widget"); //$NON-NLS-1$
+        widget.putString(PluginBundleManager.BUNDLE_EXTRA_STRING_WIDGET_ID, "clock"); //$NON-NLS-1$
+        widget.putStringArray(PluginBundleManager.BUNDLE_EXTRA_STRING_ARRAY_WIDGET_LABEL_TEMPLATE, new String[] { "", "%TIME" }); //$NON-NLS-1$ //$NON-NLS-2$
+        widget.putInt(PluginBundleManager.BUNDLE_EXTRA_INT_WIDGET_UPDATE_MINUTES, 5);
+        widget.putBoolean(PluginBundleManager.BUNDLE_EXTRA_BOOLEAN_VIBRATE, true);
+
+        createTrace().write(IntentTrace.KIND_FIRE, widget, 10000);
+        createTrace().write(IntentTrace.KIND_REFRESH, null, 12500);
+
+        final List<IntentTrace.Entry> entries = IntentTrace.read(mFile);
+        assertEquals(2, entries.size());
+
+        final IntentTrace.Entry fire = entries.get(0);
+        assertEquals(IntentTrace.KIND_FIRE, fire.kind);
+        assertEquals(0, fire.delayMillis);
+        assertEquals(5, fire.bundle.keySet().size());
+        assertEquals("clock", fire.bundle.getString(PluginBundleManager.BUNDLE_EXTRA_STRING_WIDGET_ID)); //$NON-NLS-1$
+        assertTrue(Arrays.equals(new String[] { "", "%TIME" }, fire.bundle.getStringArray(PluginBundleManager.BUNDLE_EXTRA_STRING_ARRAY_WIDGET_LABEL_TEMPLATE))); //$NON-NLS-1$ //$NON-NLS-2$
+        assertEquals(5, fire.bundle.getInt(PluginBundleManager.BUNDLE_EXTRA_INT_WIDGET_UPDATE_MINUTES));
+        assertTrue(fire.bundle.getBoolean(PluginBundleManager.BUNDLE_EXTRA_BOOLEAN_VIBRATE));
+
+        final IntentTrace.Entry refresh = entries.get(1);
+        assertEquals(IntentTrace.KIND_REFRESH, refresh.kind);
+        assertEquals(2500, refresh.delayMillis);
+        assertNull(refresh.bundle);
+    }
+
+    /**
+     * Tests that the allow repeat flag, which was added after the first keys, is read back and stored as its index.
+     *
+     * @throws IOException if the trace cannot be read.
+     */
+    @SmallTest
+    public void testAllowRepeat() throws IOException
+    {
+        final Bundle bundle = new Bundle();
+        bundle.putBoolean(PluginBundleManager.BUNDLE_EXTRA_BOOLEAN_ALLOW_REPEAT, true);
+
+        createTrace().write(IntentTrace.KIND_FIRE, bundle, 1000);
+
+        final Bundle read = IntentTrace.read(mFile).get(0).bundle;
+        assertEquals(1, read.keySet().size());
+        assertTrue(read.getBoolean(PluginBundleManager.BUNDLE_EXTRA_BOOLEAN_ALLOW_REPEAT));
+
+        final byte[] bytes = new byte[(int) mFile.length()];
+        final RandomAccessFile file = new RandomAccessFile(mFile, "r"); //$NON-NLS-1$
+        try
+        {
+            file.readFully(bytes);
+        }
+        finally
+        {
+            file.close();
+        }
+        assertEquals(-1, new String(bytes, "ISO-8859-1").indexOf(PluginBundleManager.BUNDLE_EXTRA_BOOLEAN_ALLOW_REPEAT)); //$NON-NLS-1$
+    }
+
+    /**
+     * Tests that unknown keys are kept and values of other types are left out.
+     *
+     * @throws IOException if the trace cannot be read.
+     */
+    @SmallTest
+    public void testUnknownKeysAndTypes() throws IOException
+    {
+        final Bundle bundle = new Bundle();
+        bundle.putString("unknown", "kept"); //$NON-NLS-1$ //$NON-NLS-2$
+        bundle.putLong("long", 1); //$NON-NLS-1$
+
+        createTrace().write(IntentTrace.KIND_FIRE, bundle, 1000);
+
+        final Bundle read = IntentTrace.read(mFile).get(0).bundle;
+        assertEquals(1, read.keySet().size());
+        assertEquals("kept", read.getString("unknown")); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    /**
+     * Tests that a full trace becomes the old trace.
+     *
+     * @throws IOException if the trace cannot be read or written.
+     */
+    @SmallTest
+    public void testRollOver() throws IOException
+    {
+        final IntentTrace trace = createTrace();
+        trace.write(IntentTrace.KIND_REFRESH, null, 1000);
+
+        /*
+         * Grow the file past the limit, as if many entries had been written
+         */
+        final RandomAccessFile file = new RandomAccessFile(mFile, "rw"); //$NON-NLS-1$
+        try
+        {
+            file.setLength(IntentTrace.MAX_SIZE);
+        }
+        finally
+        {
+            file.close();
+        }
+
+        trace.write(IntentTrace.KIND_REFRESH, null, 2000);
+        assertEquals(IntentTrace.MAX_SIZE, mOldFile.length());
+
+        final List<IntentTrace.Entry> entries = IntentTrace.read(mFile);
+        assertEquals(1, entries.size());
+        assertEquals(0, entries.get(0).delayMillis);
+    }
+
+    /**
+     * Tests that a file that is not a trace is rejected.
+     *
+     * @throws IOException if the file cannot be written.
+     */
+    @SmallTest
+    public void testReadInvalid() throws IOException
+    {
+        final RandomAccessFile file = new RandomAccessFile(mFile, "rw"); //$NON-NLS-1$
+        try
+        {
+            file.writeInt(0);
+        }
+        finally
+        {
+            file.close();
+        }
+
+        try
+        {
+            IntentTrace.read(mFile);
+            fail();
+        }
+        catch (final IOException e)
+        {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.metawatch.manager.locale.log;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests {@link LatencyStats}.
+ */
+public final class LatencyStatsTest extends TestCase
+{
+    /**
+     * Tests the percentiles of samples recorded out of order.
+     */
+    @SmallTest
+    public static void testPercentiles()
+    {
+        final LatencyStats stats = new LatencyStats("test", 100); //$NON-NLS-1$
+        assertEquals(0, stats.getPercentile(50));
+
+        for (int i = 100; i >= 1; i--)
+        {
+            stats.add(i);
+        }
+        assertEquals(100, stats.getCount());
+        assertEquals(50, stats.getPercentile(50));
+        assertEquals(90, stats.getPercentile(90));
+        assertEquals(99, stats.getPercentile(99));
+        assertEquals(100, stats.getPercentile(100));
+        assertEquals(1, stats.getPercentile(0));
+    }
+
+    /**
+     * Tests that only the most recent samples are used, while the maximum is kept.
+     */
+    @SmallTest
+    public static void testWrapAround()
+    {
+        final LatencyStats stats = new LatencyStats("fire", 2); //$NON-NLS-1$
+        stats.add(1000);
+        stats.add(10);
+        stats.add(20);
+        assertEquals(3, stats.getCount());
+        assertEquals(20, stats.getPercentile(100));
+
+        final StringWriter writer = new StringWriter();
+        stats.dump(new PrintWriter(writer));
+        assertEquals("fire: n=3 p50=10 p90=20 p99=20 max=1000 ms", writer.toString().trim()); //$NON-NLS-1$
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.metawatch.manager.locale.log;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import android.test.suitebuilder.annotation.SmallTest;
+import android.util.Log;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests {@link LogRingBuffer}.
+ */
+public final class LogRingBufferTest extends TestCase
+{
+    /**
+     * Tests the expansion of the string and numeric arguments.
+     */
+    @SmallTest
+    public static void testFormat()
+    {
+        final StringBuilder out = new StringBuilder();
+        LogRingBuffer.format(out, "a=%s b=%s n=%d c=%s %x", "1", "2", "3", 42); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+        assertEquals("a=1 b=2 n=42 c=3 %x", out.toString()); //$NON-NLS-1$
+    }
+
+    /**
+     * Tests that only the most recent events are kept.
+     */
+    @SmallTest
+    public static void testWrapAround()
+    {
+        final LogRingBuffer ring = new LogRingBuffer(2);
+        ring.add(0, Log.DEBUG, "first", null, null, null, 0); //$NON-NLS-1$
+        ring.add(0, Log.DEBUG, "second", null, null, null, 0); //$NON-NLS-1$
+        ring.add(0, Log.DEBUG, "third", null, null, null, 0); //$NON-NLS-1$
+        assertEquals(3, ring.getCount());
+
+        final StringWriter writer = new StringWriter();
+        ring.dump(new PrintWriter(writer));
+        final String dump = writer.toString();
+        assertFalse(dump.contains("first")); //$NON-NLS-1$
+        assertTrue(dump.indexOf("second") < dump.indexOf("third")); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    /**
+     * Tests that a ring must hold at least one event.
+     */
+    @SmallTest
+    public static void testZeroCapacity()
+    {
+        try
+        {
+            new LogRingBuffer(0);
+            fail();
+        }
+        catch (final IllegalArgumentException e)
+        {
+            // expected exception
+        }
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.metawatch.manager.locale.preset;
+
+import java.util.Arrays;
+
+import android.os.Bundle;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.MediumTest;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import org.metawatch.manager.locale.bundle.PluginBundleManager;
+
+/**
+ * Tests {@link PresetStore}.
+ */
+public final class PresetStoreTest extends AndroidTestCase
+{
+    /**
+     * Prefix of the presets created by the tests, so that the presets of the user are left alone.
+     */
+    private static final String PREFIX = "PresetStoreTest-"; //$NON-NLS-1$
+
+    private PresetStore mStore;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        mStore = PresetStore.getInstance(getContext());
+        deleteTestPresets();
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        deleteTestPresets();
+        super.tearDown();
+    }
+
+    private void deleteTestPresets()
+    {
+        for (final String name : mStore.getNames(PREFIX, Integer.MAX_VALUE))
+        {
+            mStore.delete(name);
+        }
+    }
+
+    /**
+     * Tests that a preset is loaded as it was saved.
+     */
+    @MediumTest
+    public void testSaveLoad()
+    {
+        final Bundle bundle = createPreset("widget"); //$NON-NLS-1$
+        bundle.putInt(PluginBundleManager.BUNDLE_EXTRA_INT_WIDGET_UPDATE_MINUTES, 15);
+        assertTrue(mStore.save(PREFIX + "Home", bundle)); //$NON-NLS-1$
+
+        final Bundle loaded = mStore.load(PREFIX + "HOME"); //$NON-NLS-1$
+        assertNotNull(loaded);
+        assertEquals("widget", loaded.getString(PluginBundleManager.BUNDLE_EXTRA_STRING_TYPE)); //$NON-NLS-1$
+        assertEquals("label", loaded.getString(PluginBundleManager.BUNDLE_EXTRA_STRING_WIDGET_LABEL)); //$NON-NLS-1$
+        assertEquals("home", loaded.getString(PluginBundleManager.BUNDLE_EXTRA_STRING_WIDGET_ICON)); //$NON-NLS-1$
+        assertTrue(loaded.getBoolean(PluginBundleManager.BUNDLE_EXTRA_BOOLEAN_VIBRATE));
+        assertEquals(500, loaded.getInt(PluginBundleManager.BUNDLE_EXTRA_INT_VIBRATE_ON));
+        assertEquals(250, loaded.getInt(PluginBundleManager.BUNDLE_EXTRA_INT_VIBRATE_OFF));
+        assertEquals(3, loaded.getInt(PluginBundleManager.BUNDLE_EXTRA_INT_VIBRATE_CYCLES));
+        assertEquals(15, loaded.getInt(PluginBundleManager.BUNDLE_EXTRA_INT_WIDGET_UPDATE_MINUTES));
+        assertFalse(loaded.getBoolean(PluginBundleManager.BUNDLE_EXTRA_BOOLEAN_ALLOW_REPEAT));
+    }
+
+    /**
+     * Tests that a preset allowing repeats is loaded with it.
+     */
+    @MediumTest
+    public void testAllowRepeat()
+    {
+        final Bundle bundle = createPreset("notification"); //$NON-NLS-1$
+        bundle.putBoolean(PluginBundleManager.BUNDLE_EXTRA_BOOLEAN_ALLOW_REPEAT, true);
+        assertTrue(mStore.save(PREFIX + "repeat", bundle)); //$NON-NLS-1$
+
+        assertTrue(mStore.load(PREFIX + "repeat").getBoolean(PluginBundleManager.BUNDLE_EXTRA_BOOLEAN_ALLOW_REPEAT)); //$NON-NLS-1$
+    }
+
+    /**
+     * Tests that a preset without update interval is loaded without it.
+     */
+    @MediumTest
+    public void testNoUpdateMinutes()
+    {
+        assertTrue(mStore.save(PREFIX + "notification", createPreset("notification"))); //$NON-NLS-1$ //$NON-NLS-2$
+        assertFalse(mStore.load(PREFIX + "notification").containsKey(PluginBundleManager.BUNDLE_EXTRA_INT_WIDGET_UPDATE_MINUTES)); //$NON-NLS-1$
+    }
+
+    /**
+     * Tests that saving a name differing only by case replaces the preset.
+     */
+    @MediumTest
+    public void testReplace()
+    {
+        assertTrue(mStore.save(PREFIX + "work", createPreset("widget"))); //$NON-NLS-1$ //$NON-NLS-2$
+        assertTrue(mStore.save(PREFIX + "Work", createPreset("notification"))); //$NON-NLS-1$ //$NON-NLS-2$
+
+        assertEquals(Arrays.asList(PREFIX + "Work"), mStore.getNames(PREFIX, 10)); //$NON-NLS-1$
+        assertEquals("notification", mStore.load(PREFIX + "work").getString(PluginBundleManager.BUNDLE_EXTRA_STRING_TYPE)); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    /**
+     * Tests the prefix search.
+     */
+    @MediumTest
+    public void testGetNames()
+    {
+        for (final String name : new String[] { "beta", "Alpha", "alphabet", "gamma" }) //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+        {
+            assertTrue(mStore.save(PREFIX + name, createPreset("widget"))); //$NON-NLS-1$
+        }
+
+        assertEquals(Arrays.asList(PREFIX + "Alpha", PREFIX + "alphabet"), mStore.getNames(PREFIX + "ALP", 10)); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        assertEquals(Arrays.asList(PREFIX + "Alpha", PREFIX + "alphabet", PREFIX + "beta"), mStore.getNames(PREFIX, 3)); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        assertTrue(mStore.getNames(PREFIX + "delta", 10).isEmpty()); //$NON-NLS-1$
+    }
+
+    /**
+     * Tests the prefix search with characters outside of the Basic Multilingual Plane, which are greater than U+FFFF.
+     */
+    @MediumTest
+    public void testGetNamesSupplementary()
+    {
+        final String smiley = "\ud83d\ude00"; //$NON-NLS-1$
+        for (final String name : new String[] { "a" + smiley, smiley + "b", "b" }) //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        {
+            assertTrue(mStore.save(PREFIX + name, createPreset("widget"))); //$NON-NLS-1$
+        }
+
+        assertEquals(Arrays.asList(PREFIX + "a" + smiley), mStore.getNames(PREFIX + "a", 10)); //$NON-NLS-1$ //$NON-NLS-2$
+        assertEquals(Arrays.asList(PREFIX + smiley + "b"), mStore.getNames(PREFIX + smiley, 10)); //$NON-NLS-1$
+        assertEquals(3, mStore.getNames(PREFIX, 10).size());
+    }
+
+    /**
+     * Tests the upper bound of a prefix range.
+     */
+    @SmallTest
+    public static void testGetUpperBound()
+    {
+        assertEquals("ac", PresetStore.getUpperBound("ab")); //$NON-NLS-1$ //$NON-NLS-2$
+        assertEquals("a\ud83d\ude01", PresetStore.getUpperBound("a\ud83d\ude00")); //$NON-NLS-1$ //$NON-NLS-2$
+        assertEquals("a\ud800\udc00", PresetStore.getUpperBound("a\uffff")); //$NON-NLS-1$ //$NON-NLS-2$
+        assertEquals("a\ue000", PresetStore.getUpperBound("a\ud7ff")); //$NON-NLS-1$ //$NON-NLS-2$
+        assertEquals("b", PresetStore.getUpperBound("a\udbff\udfff")); //$NON-NLS-1$ //$NON-NLS-2$
+        assertNull(PresetStore.getUpperBound("")); //$NON-NLS-1$
+    }
+
+    /**
+     * Tests deleting and loading a missing preset.
+     */
+    @MediumTest
+    public void testDelete()
+    {
+        assertTrue(mStore.save(PREFIX + "gone", createPreset("widget"))); //$NON-NLS-1$ //$NON-NLS-2$
+        assertTrue(mStore.delete(PREFIX + "GONE")); //$NON-NLS-1$
+        assertFalse(mStore.delete(PREFIX + "gone")); //$NON-NLS-1$
+        assertNull(mStore.load(PREFIX + "gone")); //$NON-NLS-1$
+    }
+
+    private static Bundle createPreset(final String type)
+    {
+        final Bundle bundle = new Bundle();
+        bundle.putString(PluginBundleManager.BUNDLE_EXTRA_STRING_TYPE, type);
+        bundle.putString(PluginBundleManager.BUNDLE_EXTRA_STRING_TITLE, "title"); //$NON-NLS-1$
+        bundle.putString(PluginBundleManager.BUNDLE_EXTRA_STRING_MESSAGE, "message"); //$NON-NLS-1$
+        bundle.putString(PluginBundleManager.BUNDLE_EXTRA_STRING_WIDGET_ID, "id"); //$NON-NLS-1$
+        bundle.putString(PluginBundleManager.BUNDLE_EXTRA_STRING_WIDGET_LABEL, "label"); //$NON-NLS-1$
+        bundle.putString(PluginBundleManager.BUNDLE_EXTRA_STRING_WIDGET_ICON, "home"); //$NON-NLS-1$
+        bundle.putBoolean(PluginBundleManager.BUNDLE_EXTRA_BOOLEAN_VIBRATE, true);
+        bundle.putInt(PluginBundleManager.BUNDLE_EXTRA_INT_VIBRATE_ON, 500);
+        bundle.putInt(PluginBundleManager.BUNDLE_EXTRA_INT_VIBRATE_OFF, 250);
+        bundle.putInt(PluginBundleManager.BUNDLE_EXTRA_INT_VIBRATE_CYCLES, 3);
+        return bundle;
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.metawatch.manager.locale.receiver;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import android.app.ActivityManager;
+import android.app.ActivityManager.RunningAppProcessInfo;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Process;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.util.Log;
+
+import org.metawatch.manager.locale.Constants;
+import org.metawatch.manager.locale.log.LatencyStats;
+import org.metawatch.manager.locale.render.WidgetSize;
+import org.metawatch.manager.locale.test.FireIntents;
+
+/**
+ * Measures the time from a Locale fire to the first {@code WIDGET_UPDATE} broadcast, with the background process started for the
+ * fire and with the process already running.
+ * <p>
+ * The fire is sent to {@link FireReceiver} like Locale does, and the update is received like the MetaWatch manager does, so the
+ * measure includes the process start, the application object, the settings, the renderer and both broadcasts. The results are
+ * written to logcat:
+ * {@code adb shell am instrument -w -e class org.metawatch.manager.locale.receiver.ColdStartBenchmarkTest org.metawatch.manager.locale.test/android.test.InstrumentationTestRunner}
+ */
+public final class ColdStartBenchmarkTest extends AndroidTestCase
+{
+    /**
+     * Process of {@link FireReceiver}, see the manifest of the app.
+     */
+    private static final String BACKGROUND_PROCESS = "org.metawatch.manager.locale:background"; //$NON-NLS-1$
+
+    private static final String WIDGET_UPDATE = "org.metawatch.manager.WIDGET_UPDATE"; //$NON-NLS-1$
+
+    /**
+     * Id of the widget fired by the benchmark. The same id is reused, so that the benchmark leaves a single widget in the cache.
+     */
+    private static final String WIDGET_ID = "benchmark"; //$NON-NLS-1$
+
+    private static final int RUNS = 10;
+
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    /**
+     * Measures fires that start the background process.
+     *
+     * @throws InterruptedException if the test is interrupted.
+     */
+    @LargeTest
+    public void testColdFire() throws InterruptedException
+    {
+        final LatencyStats stats = new LatencyStats("cold fire to WIDGET_UPDATE", RUNS); //$NON-NLS-1$
+        for (int i = 0; i < RUNS; i++)
+        {
+            killBackgroundProcess();
+            stats.add(fire(i));
+        }
+        report(stats);
+    }
+
+    /**
+     * Measures fires handled by a running background process.
+     *
+     * @throws InterruptedException if the test is interrupted.
+     */
+    @LargeTest
+    public void testWarmFire() throws InterruptedException
+    {
+        final LatencyStats stats = new LatencyStats("warm fire to WIDGET_UPDATE", RUNS); //$NON-NLS-1$
+        fire(-1);
+        for (int i = 0; i < RUNS; i++)
+        {
+            stats.add(fire(i));
+        }
+        report(stats);
+    }
+
+    /**
+     * Fires a widget setting and waits for all its frames.
+     *
+     * @param run number of the run, which makes each label different.
+     * @return milliseconds from the fire to the first frame.
+     */
+    private long fire(final int run) throws InterruptedException
+    {
+        final String frameId = "localeMWM_" + WIDGET_ID; //$NON-NLS-1$
+        final CountDownLatch frames = new CountDownLatch(WidgetSize.ALL.length);
+        final long[] firstFrameAt = new long[1];
+        final BroadcastReceiver receiver = new BroadcastReceiver()
+        {
+            @Override
+            public void onReceive(final Context context, final Intent intent)
+            {
+                final String id = intent.getStringExtra("id"); //$NON-NLS-1$
+                if (null != id && id.startsWith(frameId))
+                {
+                    if (0 == firstFrameAt[0])
+                    {
+                        firstFrameAt[0] = SystemClock.elapsedRealtime();
+                    }
+                    frames.countDown();
+                }
+            }
+        };
+        getContext().registerReceiver(receiver, new IntentFilter(WIDGET_UPDATE));
+        try
+        {
+            final long firedAt = SystemClock.elapsedRealtime();
+            getContext().sendBroadcast(FireIntents.createWidget(getContext(), WIDGET_ID, "home", "RUN " + run)); //$NON-NLS-1$ //$NON-NLS-2$
+            assertTrue("no WIDGET_UPDATE received", frames.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)); //$NON-NLS-1$
+            return firstFrameAt[0] - firedAt;
+        }
+        finally
+        {
+            getContext().unregisterReceiver(receiver);
+        }
+    }
+
+    /**
+     * Kills the background process if it is running, and waits until it is gone.
+     */
+    private void killBackgroundProcess() throws InterruptedException
+    {
+        final ActivityManager activityManager = (ActivityManager) getContext().getSystemService(Context.ACTIVITY_SERVICE);
+        final long deadline = SystemClock.elapsedRealtime() + TIMEOUT_MILLIS;
+        while (SystemClock.elapsedRealtime() < deadline)
+        {
+            final int pid = getBackgroundPid(activityManager);
+            if (0 == pid)
+            {
+                return;
+            }
+            Process.killProcess(pid);
+            Thread.sleep(50);
+        }
+        fail("could not kill " + BACKGROUND_PROCESS); //$NON-NLS-1$
+    }
+
+    /**
+     * @return the pid of the background process, or 0 if it is not running.
+     */
+    private static int getBackgroundPid(final ActivityManager activityManager)
+    {
+        final List<RunningAppProcessInfo> processes = activityManager.getRunningAppProcesses();
+        if (null != processes)
+        {
+            for (final RunningAppProcessInfo process : processes)
+            {
+                if (BACKGROUND_PROCESS.equals(process.processName))
+                {
+                    return process.pid;
+                }
+            }
+        }
+        return 0;
+    }
+
+    private static void report(final LatencyStats stats)
+    {
+        final StringWriter buffer = new StringWriter();
+        stats.dump(new PrintWriter(buffer));
+        Log.i(Constants.LOG_TAG, buffer.toString().trim());
+    }
+}
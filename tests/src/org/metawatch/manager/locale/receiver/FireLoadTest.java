@@ -0,0 +1,98 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.metawatch.manager.locale.receiver;
+
+import android.test.InstrumentationTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.util.Log;
+
+import org.metawatch.manager.locale.Constants;
+import org.metawatch.manager.locale.receiver.LoadHarness.Profile;
+import org.metawatch.manager.locale.receiver.LoadHarness.Report;
+
+/**
+ * Runs {@link LoadHarness} with a few typical loads. The reports are written to logcat:
+ * {@code adb shell am instrument -w -e class org.metawatch.manager.locale.receiver.FireLoadTest org.metawatch.manager.locale.test/android.test.InstrumentationTestRunner}
+ */
+public final class FireLoadTest extends InstrumentationTestCase
+{
+    private LoadHarness mHarness;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        mHarness = new LoadHarness(getInstrumentation().getTargetContext());
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        mHarness.deleteCachedWidgets();
+        super.tearDown();
+    }
+
+    /**
+     * A few widgets updated over and over, the common case.
+     *
+     * @throws InterruptedException if the test is interrupted.
+     */
+    @LargeTest
+    public void testFewWidgets() throws InterruptedException
+    {
+        final Profile profile = new Profile();
+        profile.name = "few widgets"; //$NON-NLS-1$
+        profile.notificationPercent = 0;
+        profile.widgetIds = 3;
+        run(profile);
+    }
+
+    /**
+     * Widgets and notifications in bursts, like a profile of Locale changing state.
+     *
+     * @throws InterruptedException if the test is interrupted.
+     */
+    @LargeTest
+    public void testMixedBursts() throws InterruptedException
+    {
+        final Profile profile = new Profile();
+        profile.name = "mixed bursts"; //$NON-NLS-1$
+        profile.notificationPercent = 30;
+        profile.burstSize = 20;
+        profile.burstPauseMillis = 200;
+        run(profile);
+    }
+
+    /**
+     * Many widgets and the manager asking for all of them, the worst case of the cache.
+     *
+     * @throws InterruptedException if the test is interrupted.
+     */
+    @LargeTest
+    public void testManyWidgetsWithRefresh() throws InterruptedException
+    {
+        final Profile profile = new Profile();
+        profile.name = "many widgets with refresh"; //$NON-NLS-1$
+        profile.intents = 500;
+        profile.notificationPercent = 10;
+        profile.refreshPercent = 5;
+        profile.widgetIds = 200;
+        run(profile);
+    }
+
+    private void run(final Profile profile) throws InterruptedException
+    {
+        final Report report = mHarness.run(profile);
+        Log.i(Constants.LOG_TAG, report.toString());
+
+        assertEquals(profile.intents, report.intents);
+        assertEquals(profile.intents, report.latencies.getCount());
+    }
+}
@@ -0,0 +1,333 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.metawatch.manager.locale.receiver;
+
+import java.io.File;
+import java.util.List;
+import java.util.Random;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Debug;
+import android.os.SystemClock;
+
+import org.metawatch.manager.locale.cache.CachedWidget;
+import org.metawatch.manager.locale.cache.WidgetCache;
+import org.metawatch.manager.locale.log.IntentTrace;
+import org.metawatch.manager.locale.log.LatencyStats;
+import org.metawatch.manager.locale.test.FireIntents;
+import org.metawatch.manager.locale.test.StandInManager;
+
+/**
+ * Drives {@link FireReceiver#onReceive(Context, Intent)} with bursts of synthetic intents, or with a recorded
+ * {@link IntentTrace}, and measures how it copes.
+ * <p>
+ * Intents are handled synchronously on the calling thread, the way the main thread of the background process handles them, so
+ * the latency of each call is the time the receiver blocks its process. The mix of synthetic intents is drawn from a seeded
+ * random generator, so that two builds can be compared on the same load. Their widgets ids are prefixed with
+ * {@link #WIDGET_ID_PREFIX}. The broadcasts are counted by a {@link StandInManager}, which receives them on the main thread.
+ */
+final class LoadHarness
+{
+    /**
+     * Prefix of the ids of the widgets fired by the harness.
+     */
+    static final String WIDGET_ID_PREFIX = "load_"; //$NON-NLS-1$
+
+    /**
+     * Time given to the last broadcasts to arrive once all the intents are handled.
+     */
+    private static final long SETTLE_MILLIS = 1000;
+
+    /**
+     * Composition and pace of a load.
+     */
+    static final class Profile
+    {
+        /**
+         * Name shown in the report.
+         */
+        String name = "load"; //$NON-NLS-1$
+
+        /**
+         * Total number of intents.
+         */
+        int intents = 1000;
+
+        /**
+         * Number of intents sent back to back.
+         */
+        int burstSize = 100;
+
+        /**
+         * Pause between bursts, in milliseconds.
+         */
+        long burstPauseMillis = 0;
+
+        /**
+         * Percentage of notification fires. The others are widget fires or refresh requests.
+         */
+        int notificationPercent = 20;
+
+        /**
+         * Percentage of {@code REFRESH_WIDGET_REQUEST} intents.
+         */
+        int refreshPercent = 0;
+
+        /**
+         * Number of distinct widget ids.
+         */
+        int widgetIds = 10;
+
+        /**
+         * Seed of the generator drawing the intents.
+         */
+        long seed = 1;
+
+        Profile()
+        {
+            // all fields have defaults
+        }
+    }
+
+    /**
+     * Results of a load.
+     */
+    static final class Report
+    {
+        final String name;
+        int intents;
+        long elapsedMillis;
+
+        /**
+         * Time each intent blocked the receiver, in microseconds.
+         */
+        final LatencyStats latencies;
+
+        long allocations;
+        long allocatedBytes;
+        long cacheBytesBefore;
+        long cacheBytesAfter;
+        int cacheFilesBefore;
+        int cacheFilesAfter;
+
+        /**
+         * Broadcasts received by the stand-in manager, including the ones still arriving {@link #SETTLE_MILLIS} after the last
+         * intent. Notifications are rate limited, so a part of them only arrive later.
+         */
+        long widgetUpdates;
+        long notifications;
+        long vibrations;
+
+        Report(final String name, final int intents)
+        {
+            this.name = name;
+            latencies = new LatencyStats(name, Math.max(1, intents));
+        }
+
+        /**
+         * @return intents handled per second.
+         */
+        long getThroughput()
+        {
+            return intents * 1000L / Math.max(1, elapsedMillis);
+        }
+
+        @Override
+        public String toString()
+        {
+            return name + ": " + intents + " intents in " + elapsedMillis + " ms, " + getThroughput() + "/s" //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+                    + ", p50=" + latencies.getPercentile(50) + " p99=" + latencies.getPercentile(99) + " us" //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+                    + ", " + (allocatedBytes / Math.max(1, intents)) + " bytes and " + (allocations / Math.max(1, intents)) + " objects allocated per intent" //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+                    + ", cache " + cacheFilesBefore + " -> " + cacheFilesAfter + " files, " + cacheBytesBefore + " -> " + cacheBytesAfter + " bytes" //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+                    + ", broadcasts: " + widgetUpdates + " updates, " + notifications + " notifications, " + vibrations + " vibrations"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+        }
+    }
+
+    private final Context mContext;
+
+    private final FireReceiver mReceiver = new FireReceiver();
+
+    /**
+     * @param context the target context. Cannot be null.
+     */
+    LoadHarness(final Context context)
+    {
+        mContext = context;
+    }
+
+    /**
+     * Runs a synthetic load.
+     *
+     * @param profile the load. Cannot be null.
+     * @return the results.
+     * @throws InterruptedException if interrupted between bursts.
+     */
+    Report run(final Profile profile) throws InterruptedException
+    {
+        final Intent[] intents = createIntents(profile);
+        final long[] delays = new long[intents.length];
+        for (int i = profile.burstSize; i < delays.length; i += Math.max(1, profile.burstSize))
+        {
+            delays[i] = profile.burstPauseMillis;
+        }
+        return drive(profile.name, intents, delays);
+    }
+
+    /**
+     * Replays a recorded trace.
+     *
+     * @param name name shown in the report.
+     * @param trace the entries of the trace. Cannot be null.
+     * @param speedup how many times faster than recorded the trace is replayed, 1 for the original speed.
+     * @param maxDelayMillis longest pause between two intents, so that the hours the phone was idle are skipped.
+     * @return the results.
+     * @throws InterruptedException if interrupted between intents.
+     */
+    Report replay(final String name, final List<IntentTrace.Entry> trace, final int speedup, final long maxDelayMillis) throws InterruptedException
+    {
+        final Intent[] intents = new Intent[trace.size()];
+        final long[] delays = new long[intents.length];
+        for (int i = 0; i < intents.length; i++)
+        {
+            final IntentTrace.Entry entry = trace.get(i);
+            intents[i] = entry.toIntent();
+            intents[i].setComponent(new ComponentName(mContext, FireReceiver.class));
+            delays[i] = 0 == i ? 0 : Math.min(maxDelayMillis, entry.delayMillis / Math.max(1, speedup));
+        }
+        return drive(name, intents, delays);
+    }
+
+    /**
+     * Hands the intents to the receiver one by one.
+     *
+     * @param delays milliseconds to wait before each intent.
+     */
+    private Report drive(final String name, final Intent[] intents, final long[] delays) throws InterruptedException
+    {
+        final Report report = new Report(name, intents.length);
+
+        final File cacheDir = mContext.getCacheDir();
+        report.cacheFilesBefore = countFiles(cacheDir);
+        report.cacheBytesBefore = sumLengths(cacheDir);
+
+        final StandInManager manager = new StandInManager(mContext);
+        manager.register();
+        try
+        {
+            Debug.startAllocCounting();
+            try
+            {
+                final long startedAt = SystemClock.elapsedRealtime();
+                for (int i = 0; i < intents.length; i++)
+                {
+                    if (delays[i] > 0)
+                    {
+                        Thread.sleep(delays[i]);
+                    }
+
+                    Debug.resetThreadAllocCount();
+                    Debug.resetThreadAllocSize();
+                    final long receivedAt = System.nanoTime();
+                    mReceiver.onReceive(mContext, intents[i]);
+                    report.latencies.add((System.nanoTime() - receivedAt) / 1000);
+                    report.allocations += Debug.getThreadAllocCount();
+                    report.allocatedBytes += Debug.getThreadAllocSize();
+                }
+                report.elapsedMillis = SystemClock.elapsedRealtime() - startedAt;
+                report.intents = intents.length;
+            }
+            finally
+            {
+                Debug.stopAllocCounting();
+            }
+
+            Thread.sleep(SETTLE_MILLIS);
+            report.widgetUpdates = manager.getCount(StandInManager.ACTION_WIDGET_UPDATE);
+            report.notifications = manager.getCount(StandInManager.ACTION_NOTIFICATION);
+            report.vibrations = manager.getCount(StandInManager.ACTION_VIBRATE);
+        }
+        finally
+        {
+            manager.unregister();
+        }
+
+        report.cacheFilesAfter = countFiles(cacheDir);
+        report.cacheBytesAfter = sumLengths(cacheDir);
+        return report;
+    }
+
+    /**
+     * Draws the intents of a load, before it runs so that building them is not measured.
+     */
+    private Intent[] createIntents(final Profile profile)
+    {
+        final Random random = new Random(profile.seed);
+        final Intent[] intents = new Intent[profile.intents];
+        for (int i = 0; i < intents.length; i++)
+        {
+            final int draw = random.nextInt(100);
+            if (draw < profile.notificationPercent)
+            {
+                /*
+                 * Unique texts, so that the queue does not collapse them as duplicates
+                 */
+                intents[i] = FireIntents.createNotification(mContext, "LOAD " + profile.seed, "NOTIFICATION " + i, random.nextBoolean()); //$NON-NLS-1$ //$NON-NLS-2$
+            }
+            else if (draw < profile.notificationPercent + profile.refreshPercent)
+            {
+                intents[i] = FireIntents.createRefresh(mContext);
+            }
+            else
+            {
+                final int id = random.nextInt(Math.max(1, profile.widgetIds));
+                intents[i] = FireIntents.createWidget(mContext, WIDGET_ID_PREFIX + id, "home", "W" + id + " " + i); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+            }
+        }
+        return intents;
+    }
+
+    /**
+     * Removes the widgets fired by the harness from the cache, and deletes their files. Cache files are named after the widget
+     * id, so only the ids that start with {@link #WIDGET_ID_PREFIX} are removed.
+     */
+    void deleteCachedWidgets()
+    {
+        final WidgetCache cache = WidgetCache.getInstance(mContext);
+        for (final CachedWidget widget : cache.getAll())
+        {
+            if (widget.id.startsWith(WIDGET_ID_PREFIX))
+            {
+                cache.remove(widget.id);
+            }
+        }
+    }
+
+    private static int countFiles(final File directory)
+    {
+        final File[] files = directory.listFiles();
+        return null == files ? 0 : files.length;
+    }
+
+    private static long sumLengths(final File directory)
+    {
+        long total = 0;
+        final File[] files = directory.listFiles();
+        if (null != files)
+        {
+            for (final File file : files)
+            {
+                total += file.length();
+            }
+        }
+        return total;
+    }
+}
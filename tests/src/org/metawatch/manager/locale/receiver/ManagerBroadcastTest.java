@@ -0,0 +1,140 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.metawatch.manager.locale.receiver;
+
+import java.io.IOException;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.SystemClock;
+import android.test.InstrumentationTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.util.Log;
+
+import org.metawatch.manager.locale.Constants;
+import org.metawatch.manager.locale.bundle.PluginBundleManager;
+import org.metawatch.manager.locale.render.WidgetSize;
+import org.metawatch.manager.locale.test.FireIntents;
+import org.metawatch.manager.locale.test.GoldenImage;
+import org.metawatch.manager.locale.test.StandInManager;
+import org.metawatch.manager.locale.test.StandInManager.Frame;
+import org.metawatch.manager.locale.test.StandInManager.Notification;
+
+/**
+ * Fires settings through {@link FireReceiver} and checks the broadcasts received by a {@link StandInManager}, without the
+ * MetaWatch manager or a watch.
+ */
+public final class ManagerBroadcastTest extends InstrumentationTestCase
+{
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    /**
+     * Number of fires of the throughput benchmark.
+     */
+    private static final int BENCHMARK_FIRES = 100;
+
+    private Context mContext;
+
+    private StandInManager mManager;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        mContext = getInstrumentation().getTargetContext();
+        mManager = new StandInManager(mContext);
+        mManager.register();
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        mManager.unregister();
+        super.tearDown();
+    }
+
+    /**
+     * Tests the frames of a widget without label against the golden images.
+     *
+     * @throws InterruptedException if the test is interrupted.
+     * @throws IOException if a golden image cannot be read.
+     */
+    @LargeTest
+    public void testGoldenFrames() throws InterruptedException, IOException
+    {
+        /*
+         * The same setting may have fired within the repeat window in an earlier run
+         */
+        final Intent intent = FireIntents.createWidget(mContext, "golden", "home", ""); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        intent.getBundleExtra(com.twofortyfouram.locale.Intent.EXTRA_BUNDLE).putBoolean(PluginBundleManager.BUNDLE_EXTRA_BOOLEAN_ALLOW_REPEAT, true);
+        mContext.sendBroadcast(intent);
+        assertTrue(mManager.await(StandInManager.ACTION_WIDGET_UPDATE, WidgetSize.ALL.length, TIMEOUT_MILLIS));
+
+        for (final WidgetSize size : WidgetSize.ALL)
+        {
+            final Frame frame = mManager.getLastFrame("localeMWM_golden" + size.idSuffix); //$NON-NLS-1$
+            assertNotNull(frame);
+            assertEquals(size.width, frame.width);
+            assertEquals(size.height, frame.height);
+            assertEquals(size.description, frame.description);
+
+            final GoldenImage golden = GoldenImage.read(getInstrumentation().getContext().getAssets(), "golden/home" + size.idSuffix + ".pbm"); //$NON-NLS-1$ //$NON-NLS-2$
+            assertEquals("frame differs from the golden image, got:\n" + GoldenImage.toPbm(frame.pixels, frame.width, frame.height), //$NON-NLS-1$
+                    0, golden.countDifferences(frame.pixels, frame.width, frame.height));
+        }
+    }
+
+    /**
+     * Tests the payload of a notification.
+     *
+     * @throws InterruptedException if the test is interrupted.
+     */
+    @LargeTest
+    public void testNotification() throws InterruptedException
+    {
+        /*
+         * A unique title, so that the notification is not collapsed with the one of an earlier run
+         */
+        final String title = "TEST " + SystemClock.elapsedRealtime(); //$NON-NLS-1$
+        mContext.sendBroadcast(FireIntents.createNotification(mContext, title, "MESSAGE", true)); //$NON-NLS-1$
+        assertTrue(mManager.await(StandInManager.ACTION_NOTIFICATION, 1, TIMEOUT_MILLIS));
+
+        final Notification notification = mManager.getNotifications().get(0);
+        assertEquals(title, notification.title);
+        assertEquals("MESSAGE", notification.text); //$NON-NLS-1$
+        assertNotNull(notification.vibration);
+        assertEquals(100, notification.vibration.on);
+        assertEquals(100, notification.vibration.off);
+        assertEquals(1, notification.vibration.cycles);
+    }
+
+    /**
+     * Measures the rate and the size of the frames of widgets fired back to back. The results are written to logcat.
+     *
+     * @throws InterruptedException if the test is interrupted.
+     */
+    @LargeTest
+    public void testWidgetThroughput() throws InterruptedException
+    {
+        final long firedAt = SystemClock.elapsedRealtime();
+        for (int i = 0; i < BENCHMARK_FIRES; i++)
+        {
+            mContext.sendBroadcast(FireIntents.createWidget(mContext, "throughput", "home", "RUN " + i)); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        }
+
+        final int frames = BENCHMARK_FIRES * WidgetSize.ALL.length;
+        assertTrue(mManager.await(StandInManager.ACTION_WIDGET_UPDATE, frames, BENCHMARK_FIRES * TIMEOUT_MILLIS / 10));
+        final long elapsed = Math.max(1, SystemClock.elapsedRealtime() - firedAt);
+        final long bytes = mManager.getBytes(StandInManager.ACTION_WIDGET_UPDATE);
+
+        Log.i(Constants.LOG_TAG, "widget throughput: " + BENCHMARK_FIRES + " fires, " + frames + " frames in " + elapsed + " ms, " //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+                + (frames * 1000L / elapsed) + " frames/s, " + (bytes * 1000L / elapsed / 1024) + " KiB/s, " + (bytes / frames) + " bytes/frame"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+    }
+}
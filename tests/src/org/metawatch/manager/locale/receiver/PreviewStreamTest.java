@@ -0,0 +1,236 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.metawatch.manager.locale.receiver;
+
+import java.util.ArrayList;
+
+import android.content.SharedPreferences;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.MediumTest;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import org.metawatch.manager.locale.PluginPreferences;
+import org.metawatch.manager.locale.cache.CachedWidget;
+import org.metawatch.manager.locale.cache.WidgetCache;
+import org.metawatch.manager.locale.render.MonoFrame;
+import org.metawatch.manager.locale.render.WidgetSize;
+import org.metawatch.manager.locale.test.ManualHandler;
+import org.metawatch.manager.locale.test.StandInManager;
+
+/**
+ * Tests {@link PreviewStream}.
+ */
+public final class PreviewStreamTest extends AndroidTestCase
+{
+    /**
+     * Prefix of the widgets cached by the tests, so that the widgets of the user are left alone.
+     */
+    private static final String PREFIX = "PreviewStreamTest-"; //$NON-NLS-1$
+
+    private static final int WIDGET_COUNT = 5;
+
+    private static final int BATCH = 2;
+
+    private static final int PACE_MILLIS = 300;
+
+    private static final String[] KEYS = new String[] { PluginPreferences.KEY_PREVIEW_BATCH, PluginPreferences.KEY_PREVIEW_PACE };
+
+    /**
+     * Settings of the user, restored after each test.
+     */
+    private final String[] mSavedValues = new String[KEYS.length];
+
+    private StandInManager mManager;
+
+    private ManualHandler mHandler;
+
+    private PreviewStream mStream;
+
+    /**
+     * Number of cached widgets, including the ones of the user.
+     */
+    private int mTotal;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+
+        final SharedPreferences preferences = PluginPreferences.get(getContext());
+        for (int i = 0; i < KEYS.length; i++)
+        {
+            mSavedValues[i] = preferences.contains(KEYS[i]) ? String.valueOf(PluginPreferences.getInt(preferences, KEYS[i], 0)) : null;
+        }
+        final SharedPreferences.Editor editor = preferences.edit();
+        editor.putString(PluginPreferences.KEY_PREVIEW_BATCH, String.valueOf(BATCH));
+        editor.putString(PluginPreferences.KEY_PREVIEW_PACE, String.valueOf(PACE_MILLIS));
+        editor.commit();
+
+        /*
+         * Fired in the future, so that they come before the widgets of the user. Their frames are stored, so they are not rendered
+         */
+        final WidgetCache cache = WidgetCache.getInstance(getContext());
+        for (int i = 0; i < WIDGET_COUNT; i++)
+        {
+            final CachedWidget widget = createWidget(PREFIX + i, Long.MAX_VALUE - i);
+            widget.icon = "home"; //$NON-NLS-1$
+            widget.label = String.valueOf(i);
+            for (final WidgetSize size : WidgetSize.ALL)
+            {
+                widget.frames[size.index] = new byte[MonoFrame.getPackedLength(size)];
+            }
+            cache.put(widget);
+        }
+        mTotal = cache.getAll().size();
+
+        mManager = new StandInManager(getContext());
+        mManager.register();
+        mHandler = new ManualHandler();
+        mStream = new PreviewStream(getContext(), mHandler);
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        mManager.unregister();
+
+        final WidgetCache cache = WidgetCache.getInstance(getContext());
+        for (int i = 0; i < WIDGET_COUNT; i++)
+        {
+            cache.remove(PREFIX + i);
+        }
+
+        final SharedPreferences.Editor editor = PluginPreferences.get(getContext()).edit();
+        for (int i = 0; i < KEYS.length; i++)
+        {
+            if (null == mSavedValues[i])
+            {
+                editor.remove(KEYS[i]);
+            }
+            else
+            {
+                editor.putString(KEYS[i], mSavedValues[i]);
+            }
+        }
+        editor.commit();
+
+        super.tearDown();
+    }
+
+    /**
+     * Tests that the first batch is sent at once, most recently fired first, and the others one per pace.
+     *
+     * @throws InterruptedException if the test is interrupted.
+     */
+    @MediumTest
+    public void testBatches() throws InterruptedException
+    {
+        mStream.start();
+        assertEquals(mTotal - BATCH, mStream.getWaitingCount());
+        assertEquals(1, mHandler.getPostCount());
+        assertTrue(mHandler.getLastDelay() <= PACE_MILLIS);
+
+        assertTrue(mManager.await(StandInManager.ACTION_WIDGET_UPDATE, BATCH * WidgetSize.ALL.length, 5000));
+        assertNotNull(mManager.getLastFrame(getFrameId(0)));
+        assertNotNull(mManager.getLastFrame(getFrameId(1)));
+        assertNull(mManager.getLastFrame(getFrameId(2)));
+
+        mHandler.runLast();
+        assertEquals(mTotal - 2 * BATCH, mStream.getWaitingCount());
+        assertEquals(2, mHandler.getPostCount());
+        assertTrue(mManager.await(StandInManager.ACTION_WIDGET_UPDATE, 2 * BATCH * WidgetSize.ALL.length, 5000));
+        assertNotNull(mManager.getLastFrame(getFrameId(3)));
+
+        while (mStream.getWaitingCount() > 0)
+        {
+            mHandler.runLast();
+        }
+        assertEquals((mTotal + BATCH - 1) / BATCH - 1, mHandler.getPostCount());
+    }
+
+    /**
+     * Tests that a new request restarts the stream from the most recent widget.
+     *
+     * @throws InterruptedException if the test is interrupted.
+     */
+    @MediumTest
+    public void testRestart() throws InterruptedException
+    {
+        mStream.start();
+        mHandler.runLast();
+        assertEquals(mTotal - 2 * BATCH, mStream.getWaitingCount());
+
+        mStream.start();
+        assertEquals(mTotal - BATCH, mStream.getWaitingCount());
+
+        assertTrue(mManager.await(StandInManager.ACTION_WIDGET_UPDATE, 3 * BATCH * WidgetSize.ALL.length, 5000));
+        int count = 0;
+        for (final StandInManager.Frame frame : mManager.getFrames())
+        {
+            if (frame.id.equals(getFrameId(0)))
+            {
+                count++;
+            }
+        }
+        assertEquals(2, count);
+    }
+
+    /**
+     * Tests that the most recently fired widgets come first.
+     */
+    @SmallTest
+    public static void testSortRecentFirst()
+    {
+        final ArrayList<CachedWidget> widgets = new ArrayList<CachedWidget>();
+        widgets.add(createWidget("old", 1000)); //$NON-NLS-1$
+        widgets.add(createWidget("new", 3000)); //$NON-NLS-1$
+        widgets.add(createWidget("middle", 2000)); //$NON-NLS-1$
+
+        PreviewStream.sortRecentFirst(widgets);
+
+        assertEquals("new", widgets.get(0).id); //$NON-NLS-1$
+        assertEquals("middle", widgets.get(1).id); //$NON-NLS-1$
+        assertEquals("old", widgets.get(2).id); //$NON-NLS-1$
+    }
+
+    /**
+     * Tests that a widget missing the frame of one size is rendered again.
+     */
+    @SmallTest
+    public static void testHasAllFrames()
+    {
+        final CachedWidget widget = createWidget("widget", 0); //$NON-NLS-1$
+        assertFalse(PreviewStream.hasAllFrames(widget));
+
+        for (final WidgetSize size : WidgetSize.ALL)
+        {
+            widget.frames[size.index] = new byte[0];
+        }
+        assertTrue(PreviewStream.hasAllFrames(widget));
+
+        widget.frames[WidgetSize.ALL.length - 1] = null;
+        assertFalse(PreviewStream.hasAllFrames(widget));
+    }
+
+    /**
+     * @return the id of the frame of the first size of a test widget.
+     */
+    private static String getFrameId(final int index)
+    {
+        return "localeMWM_" + PREFIX + index + WidgetSize.ALL[0].idSuffix; //$NON-NLS-1$
+    }
+
+    private static CachedWidget createWidget(final String id, final long firedAt)
+    {
+        final CachedWidget widget = new CachedWidget(id);
+        widget.firedAt = firedAt;
+        return widget;
+    }
+}
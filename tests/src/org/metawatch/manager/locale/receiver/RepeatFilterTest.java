@@ -0,0 +1,110 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.metawatch.manager.locale.receiver;
+
+import android.os.Bundle;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import junit.framework.TestCase;
+
+import org.metawatch.manager.locale.bundle.PluginBundleManager;
+
+/**
+ * Tests {@link RepeatFilter}.
+ */
+public final class RepeatFilterTest extends TestCase
+{
+    private static final long WINDOW = 10000;
+
+    /**
+     * Tests that the hash depends on the content of the Bundle and on the expanded texts, but not on the order of the keys.
+     */
+    @SmallTest
+    public static void testHash()
+    {
+        final Bundle bundle = createBundle("clock", "12:00"); //$NON-NLS-1$ //$NON-NLS-2$
+        final long hash = RepeatFilter.hash(bundle, "12:00"); //$NON-NLS-1$
+
+        assertEquals(hash, RepeatFilter.hash(createBundle("clock", "12:00"), "12:00")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        assertFalse(hash == RepeatFilter.hash(createBundle("clock", "12:01"), "12:00")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        assertFalse(hash == RepeatFilter.hash(bundle, "12:01")); //$NON-NLS-1$
+        assertFalse(RepeatFilter.hash(bundle, "ab", "c") == RepeatFilter.hash(bundle, "a", "bc")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+
+        final Bundle reversed = new Bundle();
+        reversed.putString(PluginBundleManager.BUNDLE_EXTRA_STRING_WIDGET_LABEL, "12:00"); //$NON-NLS-1$
+        reversed.putString(PluginBundleManager.BUNDLE_EXTRA_STRING_WIDGET_ID, "clock"); //$NON-NLS-1$
+        reversed.putBoolean(PluginBundleManager.BUNDLE_EXTRA_BOOLEAN_VIBRATE, false);
+        assertEquals(hash, RepeatFilter.hash(reversed, "12:00")); //$NON-NLS-1$
+
+        bundle.putBoolean(PluginBundleManager.BUNDLE_EXTRA_BOOLEAN_VIBRATE, true);
+        assertFalse(hash == RepeatFilter.hash(bundle, "12:00")); //$NON-NLS-1$
+    }
+
+    /**
+     * Tests that the same content is a repeat within the window only.
+     */
+    @SmallTest
+    public static void testWindow()
+    {
+        final RepeatFilter filter = new RepeatFilter();
+
+        assertFalse(filter.isRepeat("clock", 1, 0, WINDOW)); //$NON-NLS-1$
+        assertTrue(filter.isRepeat("clock", 1, WINDOW - 1, WINDOW)); //$NON-NLS-1$
+        assertFalse(filter.isRepeat("clock", 1, WINDOW, WINDOW)); //$NON-NLS-1$
+        assertTrue(filter.isRepeat("clock", 1, WINDOW + 1, WINDOW)); //$NON-NLS-1$
+
+        assertFalse(filter.isRepeat("other", 1, 0, 0)); //$NON-NLS-1$
+        assertFalse(filter.isRepeat("other", 1, 0, 0)); //$NON-NLS-1$
+    }
+
+    /**
+     * Tests that a widget changed by another fire in between is sent again, while notifications are independent.
+     */
+    @SmallTest
+    public static void testTargets()
+    {
+        final RepeatFilter filter = new RepeatFilter();
+
+        assertFalse(filter.isRepeat("clock", 1, 0, WINDOW)); //$NON-NLS-1$
+        assertFalse(filter.isRepeat("clock", 2, 1, WINDOW)); //$NON-NLS-1$
+        assertFalse(filter.isRepeat("clock", 1, 2, WINDOW)); //$NON-NLS-1$
+
+        assertFalse(filter.isRepeat(null, 1, 0, WINDOW));
+        assertFalse(filter.isRepeat(null, 2, 1, WINDOW));
+        assertTrue(filter.isRepeat(null, 1, 2, WINDOW));
+        assertTrue(filter.isRepeat(null, 2, 3, WINDOW));
+    }
+
+    /**
+     * Tests that only the most recent targets are remembered.
+     */
+    @SmallTest
+    public static void testCapacity()
+    {
+        final RepeatFilter filter = new RepeatFilter();
+
+        for (int i = 0; i <= RepeatFilter.MAX_ENTRIES; i++)
+        {
+            assertFalse(filter.isRepeat("widget" + i, i, 0, WINDOW)); //$NON-NLS-1$
+        }
+
+        assertFalse(filter.isRepeat("widget0", 0, 1, WINDOW)); //$NON-NLS-1$
+        assertTrue(filter.isRepeat("widget" + RepeatFilter.MAX_ENTRIES, RepeatFilter.MAX_ENTRIES, 1, WINDOW)); //$NON-NLS-1$
+    }
+
+    private static Bundle createBundle(final String widgetId, final String label)
+    {
+        final Bundle bundle = new Bundle();
+        bundle.putBoolean(PluginBundleManager.BUNDLE_EXTRA_BOOLEAN_VIBRATE, false);
+        bundle.putString(PluginBundleManager.BUNDLE_EXTRA_STRING_WIDGET_ID, widgetId);
+        bundle.putString(PluginBundleManager.BUNDLE_EXTRA_STRING_WIDGET_LABEL, label);
+        return bundle;
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.metawatch.manager.locale.receiver;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import android.content.Context;
+import android.test.InstrumentationTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.util.Log;
+
+import org.metawatch.manager.locale.Constants;
+import org.metawatch.manager.locale.log.IntentTrace;
+import org.metawatch.manager.locale.receiver.LoadHarness.Report;
+
+/**
+ * Replays the intent traces recorded on the device with the "Record trace" setting, so that two builds can be compared on the
+ * same traffic. The reports are written to logcat:
+ * {@code adb shell am instrument -w -e class org.metawatch.manager.locale.receiver.TraceReplayTest org.metawatch.manager.locale.test/android.test.InstrumentationTestRunner}
+ * <p>
+ * A trace recorded on another device can be copied to the files directory of the plug-in first. Replaying a trace fires its
+ * settings for real, so the widgets of the trace replace the ones in the cache.
+ */
+public final class TraceReplayTest extends InstrumentationTestCase
+{
+    /**
+     * How many times faster than recorded the traces are replayed.
+     */
+    private static final int SPEEDUP = 10;
+
+    /**
+     * Longest pause between two intents of the replay.
+     */
+    private static final long MAX_DELAY_MILLIS = 5000;
+
+    /**
+     * Replays the previous trace, which is full.
+     *
+     * @throws InterruptedException if the test is interrupted.
+     * @throws IOException if the trace cannot be read.
+     */
+    @LargeTest
+    public void testReplayOldTrace() throws InterruptedException, IOException
+    {
+        final Context context = getInstrumentation().getTargetContext();
+        replay(context, IntentTrace.getInstance(context).getOldFile());
+    }
+
+    /**
+     * Replays the current trace.
+     *
+     * @throws InterruptedException if the test is interrupted.
+     * @throws IOException if the trace cannot be read.
+     */
+    @LargeTest
+    public void testReplayTrace() throws InterruptedException, IOException
+    {
+        final Context context = getInstrumentation().getTargetContext();
+        replay(context, IntentTrace.getInstance(context).getFile());
+    }
+
+    private static void replay(final Context context, final File file) throws InterruptedException, IOException
+    {
+        if (!file.exists())
+        {
+            Log.i(Constants.LOG_TAG, "no trace in " + file); //$NON-NLS-1$
+            return;
+        }
+
+        final List<IntentTrace.Entry> trace = IntentTrace.read(file);
+        final Report report = new LoadHarness(context).replay(file.getName() + " x" + SPEEDUP, trace, SPEEDUP, MAX_DELAY_MILLIS); //$NON-NLS-1$
+        Log.i(Constants.LOG_TAG, report.toString());
+
+        assertEquals(trace.size(), report.intents);
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.metawatch.manager.locale.receiver;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+import junit.framework.TestCase;
+
+import org.metawatch.manager.locale.cache.CachedWidget;
+
+/**
+ * Tests {@link WidgetScheduler}.
+ */
+public final class WidgetSchedulerTest extends TestCase
+{
+    /**
+     * Tests that due times are aligned to the interval and always in the future.
+     */
+    @SmallTest
+    public static void testNextDueAligned()
+    {
+        assertEquals(60000, WidgetScheduler.getNextDue(0, 1));
+        assertEquals(120000, WidgetScheduler.getNextDue(60000, 1));
+        assertEquals(300000, WidgetScheduler.getNextDue(123456, 5));
+    }
+
+    /**
+     * Tests that widgets due shortly after the alarm are batched into it, and that static widgets are never due.
+     */
+    @SmallTest
+    public static void testIsDue()
+    {
+        final CachedWidget widget = new CachedWidget("clock"); //$NON-NLS-1$
+        widget.template = new String[] { "\u0000t" }; //$NON-NLS-1$
+        widget.updateMinutes = 1;
+        widget.dueAt = 60000;
+
+        assertTrue(WidgetScheduler.isDue(widget, 60000));
+        assertTrue(WidgetScheduler.isDue(widget, 60000 - WidgetScheduler.BATCH_WINDOW_MILLIS));
+        assertFalse(WidgetScheduler.isDue(widget, 60000 - WidgetScheduler.BATCH_WINDOW_MILLIS - 1));
+
+        widget.updateMinutes = 0;
+        assertFalse(WidgetScheduler.isDue(widget, 60000));
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.metawatch.manager.locale.render;
+
+import java.util.Arrays;
+
+import android.graphics.Color;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests {@link Dither}.
+ */
+public final class DitherTest extends TestCase
+{
+    private static final int[] MODES = new int[] { Dither.MODE_THRESHOLD, Dither.MODE_BAYER, Dither.MODE_FLOYD_STEINBERG };
+
+    /**
+     * Tests the luminance of black, white and the primary colors.
+     */
+    @SmallTest
+    public static void testLuminance()
+    {
+        assertEquals(0, Dither.getLuminance(Color.BLACK));
+        assertEquals(255, Dither.getLuminance(Color.WHITE));
+        assertEquals(76, Dither.getLuminance(Color.RED));
+        assertEquals(149, Dither.getLuminance(Color.GREEN));
+        assertEquals(28, Dither.getLuminance(Color.BLUE));
+        assertEquals(Dither.getLuminance(Color.GRAY), Dither.getLuminance(Color.GRAY & 0x00ffffff));
+    }
+
+    /**
+     * Tests that black and white images stay black and white in every mode.
+     */
+    @SmallTest
+    public static void testBlackAndWhite()
+    {
+        final int[] pixels = new int[16 * 16];
+        final byte[] out = new byte[pixels.length / 8];
+        for (final int mode : MODES)
+        {
+            Arrays.fill(pixels, Color.WHITE);
+            Arrays.fill(out, (byte) 0x55);
+            Dither.pack(pixels, 16, 16, mode, out);
+            assertEquals(0, countBlack(out));
+
+            Arrays.fill(pixels, Color.BLACK);
+            Dither.pack(pixels, 16, 16, mode, out);
+            assertEquals(pixels.length, countBlack(out));
+        }
+    }
+
+    /**
+     * Tests that the threshold keeps the bits of {@link MonoFrame#pack(int[], byte[])}.
+     */
+    @SmallTest
+    public static void testThreshold()
+    {
+        final int[] pixels = new int[] { Color.BLACK, Color.WHITE, Color.DKGRAY, Color.LTGRAY, Color.WHITE, Color.WHITE, Color.WHITE,
+                Color.WHITE, Color.BLACK };
+        final byte[] expected = new byte[2];
+        final byte[] actual = new byte[2];
+
+        MonoFrame.pack(pixels, expected);
+        Dither.pack(pixels, 3, 3, Dither.MODE_THRESHOLD, actual);
+
+        assertTrue(Arrays.equals(expected, actual));
+    }
+
+    /**
+     * Tests that the threshold keeps the bits of {@link MonoFrame#pack(int[], byte[])} for saturated colors, whose luminance
+     * differs from the sum of their channels.
+     */
+    @SmallTest
+    public static void testThresholdColors()
+    {
+        final int[] pixels = new int[] { Color.rgb(255, 0, 0), Color.rgb(0, 255, 0), Color.rgb(0, 0, 255), Color.rgb(255, 255, 0),
+                Color.rgb(0, 255, 255), Color.rgb(255, 0, 255), Color.rgb(0, 200, 200), Color.rgb(128, 128, 128), Color.rgb(127, 128, 128) };
+        final byte[] expected = new byte[2];
+        final byte[] actual = new byte[2];
+
+        MonoFrame.pack(pixels, expected);
+        Dither.pack(pixels, 3, 3, Dither.MODE_THRESHOLD, actual);
+
+        assertTrue(Arrays.equals(expected, actual));
+        assertEquals(4, countBlack(actual));
+    }
+
+    /**
+     * Tests that mid gray turns half of the pixels black, in a regular pattern for the Bayer matrix.
+     */
+    @SmallTest
+    public static void testMidGray()
+    {
+        final int[] pixels = new int[16 * 16];
+        Arrays.fill(pixels, Color.rgb(128, 128, 128));
+        final byte[] out = new byte[pixels.length / 8];
+
+        Dither.pack(pixels, 16, 16, Dither.MODE_BAYER, out);
+        assertEquals(pixels.length / 2, countBlack(out));
+        for (int y = 0; y < 16; y++)
+        {
+            assertEquals(8, countBlack(out, y * 2, 2));
+        }
+
+        Dither.pack(pixels, 16, 16, Dither.MODE_FLOYD_STEINBERG, out);
+        assertTrue(Math.abs(pixels.length / 2 - countBlack(out)) <= 8);
+    }
+
+    /**
+     * Tests that the share of black pixels follows the darkness of a gray.
+     */
+    @SmallTest
+    public static void testDarkGray()
+    {
+        final int[] pixels = new int[16 * 16];
+        Arrays.fill(pixels, Color.rgb(64, 64, 64));
+        final byte[] out = new byte[pixels.length / 8];
+
+        Dither.pack(pixels, 16, 16, Dither.MODE_BAYER, out);
+        assertEquals(pixels.length * 3 / 4, countBlack(out));
+
+        Dither.pack(pixels, 16, 16, Dither.MODE_FLOYD_STEINBERG, out);
+        assertTrue(Math.abs(pixels.length * 3 / 4 - countBlack(out)) <= 8);
+    }
+
+    private static int countBlack(final byte[] packed)
+    {
+        return countBlack(packed, 0, packed.length);
+    }
+
+    private static int countBlack(final byte[] packed, final int offset, final int length)
+    {
+        int count = 0;
+        for (int i = offset; i < offset + length; i++)
+        {
+            count += Integer.bitCount(packed[i] & 0xff);
+        }
+        return count;
+    }
+}
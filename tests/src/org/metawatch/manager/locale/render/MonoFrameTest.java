@@ -0,0 +1,107 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.metawatch.manager.locale.render;
+
+import java.util.Arrays;
+
+import android.graphics.Color;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests {@link MonoFrame}.
+ */
+public final class MonoFrameTest extends TestCase
+{
+    /**
+     * Tests the packed length of the sizes.
+     */
+    @SmallTest
+    public static void testPackedLength()
+    {
+        assertEquals(32, MonoFrame.getPackedLength(WidgetSize.SMALL));
+        assertEquals(96, MonoFrame.getPackedLength(WidgetSize.LARGE));
+    }
+
+    /**
+     * Tests that the bits are packed most significant first, and that gray is thresholded.
+     */
+    @SmallTest
+    public static void testPack()
+    {
+        final int[] pixels = new int[] { Color.BLACK, Color.WHITE, Color.DKGRAY, Color.LTGRAY, Color.WHITE, Color.WHITE, Color.WHITE,
+                Color.WHITE, Color.BLACK };
+        final byte[] packed = new byte[2];
+        packed[1] = 0x7f;
+
+        MonoFrame.pack(pixels, packed);
+
+        assertEquals((byte) 0xa0, packed[0]);
+        assertEquals((byte) 0x80, packed[1]);
+    }
+
+    /**
+     * Tests that unpacking a packed frame yields the same frame.
+     */
+    @SmallTest
+    public static void testRoundTrip()
+    {
+        final int[] pixels = new int[WidgetSize.SMALL.width * WidgetSize.SMALL.height];
+        for (int i = 0; i < pixels.length; i++)
+        {
+            pixels[i] = 0 == i % 3 ? Color.BLACK : Color.WHITE;
+        }
+
+        final byte[] packed = new byte[MonoFrame.getPackedLength(WidgetSize.SMALL)];
+        MonoFrame.pack(pixels, packed);
+        final int[] unpacked = new int[pixels.length];
+        MonoFrame.unpack(packed, unpacked);
+
+        assertTrue(Arrays.equals(pixels, unpacked));
+    }
+
+    /**
+     * Tests the rectangle of the changed pixels, and that identical frames have none.
+     */
+    @SmallTest
+    public static void testFindChangedRect()
+    {
+        final WidgetSize size = WidgetSize.LARGE;
+        final byte[] previous = new byte[MonoFrame.getPackedLength(size)];
+        final byte[] current = previous.clone();
+        final int[] rect = new int[] { -1, -1, -1, -1 };
+
+        assertFalse(MonoFrame.findChangedRect(previous, current, size, rect));
+        assertEquals(-1, rect[0]);
+
+        setBlack(current, size, 3, 20);
+        setBlack(current, size, 10, 28);
+        setBlack(current, size, 5, 24);
+        assertTrue(MonoFrame.findChangedRect(previous, current, size, rect));
+        assertTrue(Arrays.equals(new int[] { 3, 20, 8, 9 }, rect));
+
+        /*
+         * A change in the last pixel of a row and the first of the next, which share a byte on the SMALL size
+         */
+        final byte[] small = new byte[MonoFrame.getPackedLength(WidgetSize.SMALL)];
+        final byte[] changed = small.clone();
+        setBlack(changed, WidgetSize.SMALL, 15, 0);
+        setBlack(changed, WidgetSize.SMALL, 0, 1);
+        assertTrue(MonoFrame.findChangedRect(small, changed, WidgetSize.SMALL, rect));
+        assertTrue(Arrays.equals(new int[] { 0, 0, 16, 2 }, rect));
+    }
+
+    private static void setBlack(final byte[] packed, final WidgetSize size, final int x, final int y)
+    {
+        final int i = y * size.width + x;
+        packed[i >> 3] |= 0x80 >>> (i & 7);
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.metawatch.manager.locale.render;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Future;
+
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.test.suitebuilder.annotation.MediumTest;
+import android.util.Log;
+
+import org.metawatch.manager.locale.Constants;
+
+/**
+ * Tests {@link ParallelRenderer}.
+ */
+public final class ParallelRendererTest extends AndroidTestCase
+{
+    private static final String[] ICONS = new String[] { "home", "car", "bed", "does_not_exist" }; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+
+    /**
+     * Number of widgets of the benchmark, a large cache.
+     */
+    private static final int BENCHMARK_WIDGETS = 200;
+
+    /**
+     * Tests that the renders of the pool, collected in order, match the renders of a single renderer.
+     */
+    @MediumTest
+    public void testSameFramesInOrder()
+    {
+        final ParallelRenderer pool = new ParallelRenderer(getContext(), 3);
+        final ArrayList<Future<byte[][]>> renders = new ArrayList<Future<byte[][]>>();
+        for (int i = 0; i < 40; i++)
+        {
+            renders.add(pool.submit(ICONS[i % ICONS.length], getLabel(i)));
+        }
+
+        final WidgetRenderer renderer = new WidgetRenderer(getContext());
+        for (int i = 0; i < renders.size(); i++)
+        {
+            final byte[][] expected = ParallelRenderer.render(renderer, ICONS[i % ICONS.length], getLabel(i));
+            final byte[][] actual = pool.get(renders.get(i), ICONS[i % ICONS.length], getLabel(i));
+            for (final WidgetSize size : WidgetSize.ALL)
+            {
+                assertTrue("widget " + i + ", size " + size.index, Arrays.equals(expected[size.index], actual[size.index])); //$NON-NLS-1$ //$NON-NLS-2$
+            }
+        }
+    }
+
+    /**
+     * Measures the pool against a single thread on a large cache. The results are written to logcat.
+     */
+    @LargeTest
+    public void testSpeedup()
+    {
+        final WidgetRenderer renderer = new WidgetRenderer(getContext());
+        final long sequentialAt = SystemClock.elapsedRealtime();
+        for (int i = 0; i < BENCHMARK_WIDGETS; i++)
+        {
+            ParallelRenderer.render(renderer, ICONS[i % ICONS.length], getLabel(i));
+        }
+        final long sequential = SystemClock.elapsedRealtime() - sequentialAt;
+
+        final ParallelRenderer pool = new ParallelRenderer(getContext(), ParallelRenderer.getThreadCount());
+        final long parallelAt = SystemClock.elapsedRealtime();
+        final ArrayList<Future<byte[][]>> renders = new ArrayList<Future<byte[][]>>(BENCHMARK_WIDGETS);
+        for (int i = 0; i < BENCHMARK_WIDGETS; i++)
+        {
+            renders.add(pool.submit(ICONS[i % ICONS.length], getLabel(i)));
+        }
+        for (int i = 0; i < BENCHMARK_WIDGETS; i++)
+        {
+            assertNotNull(pool.get(renders.get(i), ICONS[i % ICONS.length], getLabel(i)));
+        }
+        final long parallel = SystemClock.elapsedRealtime() - parallelAt;
+
+        Log.i(Constants.LOG_TAG, BENCHMARK_WIDGETS + " widgets rendered in " + sequential + " ms on one thread, " + parallel + " ms on " //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+                + ParallelRenderer.getThreadCount() + " threads"); //$NON-NLS-1$
+    }
+
+    private static String getLabel(final int i)
+    {
+        return "WIDGET " + i; //$NON-NLS-1$
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.metawatch.manager.locale.render;
+
+import java.util.Arrays;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests {@link TextLayout} with the advances of the pixel font: 6 pixels per letter, 2 per dot or space.
+ */
+public final class TextLayoutTest extends TestCase
+{
+    private static final TextLayout.Metrics METRICS = new TextLayout.Metrics()
+    {
+        public int measureText(final String text)
+        {
+            int width = 0;
+            for (int i = 0; i < text.length(); i++)
+            {
+                width += '.' == text.charAt(i) || ' ' == text.charAt(i) ? 2 : 6;
+            }
+            return width;
+        }
+    };
+
+    /**
+     * Tests that a label that fits is kept as is, and that blank labels have no lines.
+     */
+    @SmallTest
+    public static void testFits()
+    {
+        final TextLayout layout = new TextLayout(METRICS, false);
+
+        assertLines(layout.layout("HOME", 24, 2), "HOME"); //$NON-NLS-1$ //$NON-NLS-2$
+        assertLines(layout.layout("  A \t B ", 24, 1), "A B"); //$NON-NLS-1$ //$NON-NLS-2$
+        assertLines(layout.layout("   ", 24, 2)); //$NON-NLS-1$
+    }
+
+    /**
+     * Tests word wrapping, and breaking of words wider than a line.
+     */
+    @SmallTest
+    public static void testWrap()
+    {
+        final TextLayout layout = new TextLayout(METRICS, false);
+
+        assertLines(layout.layout("AT HOME", 24, 2), "AT", "HOME"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        assertLines(layout.layout("OUTSIDE", 24, 2), "OUTS", "IDE"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+    }
+
+    /**
+     * Tests that the last line is cut when the label has more lines than allowed.
+     */
+    @SmallTest
+    public static void testEllipsize()
+    {
+        final TextLayout layout = new TextLayout(METRICS, false);
+
+        assertLines(layout.layout("OFFICE", 16, 1), "OF.."); //$NON-NLS-1$ //$NON-NLS-2$
+        assertLines(layout.layout("AT THE OFFICE", 24, 2), "AT", "THE.."); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        assertLines(layout.layout("OFFICE", 3, 1)); //$NON-NLS-1$
+    }
+
+    /**
+     * Tests that words are abbreviated before the label is cut, only when it is enabled.
+     */
+    @SmallTest
+    public static void testAbbreviate()
+    {
+        assertEquals("BDRM IS HR", TextLayout.abbreviate("BEDROOM IS HERE")); //$NON-NLS-1$ //$NON-NLS-2$
+
+        final TextLayout layout = new TextLayout(METRICS, true);
+        assertLines(layout.layout("BEDROOM", 24, 1), "BDRM"); //$NON-NLS-1$ //$NON-NLS-2$
+        assertLines(layout.layout("AT HOME", 24, 2), "AT", "HOME"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+    }
+
+    /**
+     * Tests that layouts are memoized per label and size.
+     */
+    @SmallTest
+    public static void testMemoized()
+    {
+        final TextLayout layout = new TextLayout(METRICS, true);
+
+        final String[] small = layout.layout("BEDROOM", WidgetSize.SMALL); //$NON-NLS-1$
+        final String[] large = layout.layout("BEDROOM", WidgetSize.LARGE); //$NON-NLS-1$
+        assertSame(small, layout.layout("BEDROOM", WidgetSize.SMALL)); //$NON-NLS-1$
+        assertSame(large, layout.layout("BEDROOM", WidgetSize.LARGE)); //$NON-NLS-1$
+        assertLines(small, "BD.."); //$NON-NLS-1$
+        assertLines(large, "BDRM"); //$NON-NLS-1$
+    }
+
+    /**
+     * Tests that changing the abbreviation drops the memoized layouts.
+     */
+    @SmallTest
+    public static void testSetAbbreviating()
+    {
+        final TextLayout layout = new TextLayout(METRICS, true);
+        assertLines(layout.layout("BEDROOM", WidgetSize.LARGE), "BDRM"); //$NON-NLS-1$ //$NON-NLS-2$
+
+        layout.setAbbreviating(false);
+        assertLines(layout.layout("BEDROOM", WidgetSize.LARGE), "BEDR", "OOM"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+
+        layout.setAbbreviating(true);
+        assertLines(layout.layout("BEDROOM", WidgetSize.LARGE), "BDRM"); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    private static void assertLines(final String[] actual, final String... expected)
+    {
+        assertEquals(Arrays.asList(expected), Arrays.asList(actual));
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.metawatch.manager.locale.render;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import android.graphics.Color;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests {@link WidgetAssets} with a hand-built asset.
+ */
+public final class WidgetAssetsTest extends TestCase
+{
+    /**
+     * Tests that a built-in icon is drawn at its position, mask bit for mask bit.
+     */
+    @SmallTest
+    public static void testDrawIcon() throws IOException
+    {
+        final WidgetAssets assets = new WidgetAssets(createAsset());
+        final WidgetSize size = WidgetSize.SMALL;
+        final int[] pixels = new int[size.width * size.height];
+        Arrays.fill(pixels, Color.WHITE);
+
+        assertTrue(assets.hasIcon("dot")); //$NON-NLS-1$
+        assertTrue(assets.drawIcon(pixels, size, "dot", 3, 2)); //$NON-NLS-1$
+        assertFalse(assets.drawIcon(pixels, size, "missing", 3, 2)); //$NON-NLS-1$
+
+        assertEquals(Color.BLACK, pixels[2 * size.width + 3]);
+        assertEquals(1, count(pixels, Color.BLACK));
+    }
+
+    /**
+     * Tests that labels are measured by glyph advance, centered and clipped to the frame.
+     */
+    @SmallTest
+    public static void testDrawText() throws IOException
+    {
+        final WidgetAssets assets = new WidgetAssets(createAsset());
+        final WidgetSize size = WidgetSize.SMALL;
+        final int[] pixels = new int[size.width * size.height];
+        Arrays.fill(pixels, Color.WHITE);
+
+        assertEquals(8, assets.measureText("II")); //$NON-NLS-1$
+        assertEquals(8, assets.measureText("I\u4e00I")); //$NON-NLS-1$
+
+        assets.drawText(pixels, size, "II", 8, 15); //$NON-NLS-1$
+        assertEquals(Color.BLACK, pixels[14 * size.width + 4]);
+        assertEquals(Color.BLACK, pixels[14 * size.width + 8]);
+        assertEquals(Color.BLACK, pixels[15 * size.width + 4]);
+        assertEquals(4, count(pixels, Color.BLACK));
+
+        /*
+         * Glyphs reach 2 pixels below the baseline, which is outside the frame here
+         */
+        Arrays.fill(pixels, Color.WHITE);
+        assets.drawText(pixels, size, "I", 8, 16); //$NON-NLS-1$
+        assertEquals(1, count(pixels, Color.BLACK));
+    }
+
+    /**
+     * Tests that a truncated asset is rejected.
+     */
+    @SmallTest
+    public static void testTruncated()
+    {
+        final byte[] asset = createAsset();
+        final byte[] truncated = new byte[asset.length - 1];
+        System.arraycopy(asset, 0, truncated, 0, truncated.length);
+        try
+        {
+            new WidgetAssets(truncated);
+            fail();
+        }
+        catch (final IOException e)
+        {
+            // expected exception
+        }
+    }
+
+    private static int count(final int[] pixels, final int color)
+    {
+        int count = 0;
+        for (final int pixel : pixels)
+        {
+            if (pixel == color)
+            {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return an asset with one icon, "dot", whose top left pixel is set, and one glyph, "I", a 1x2 bar sitting on the pixel
+     *         above the baseline.
+     */
+    private static byte[] createAsset()
+    {
+        try
+        {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0x4c4d5741);
+            out.writeInt(1);
+
+            out.writeInt(WidgetSize.ALL.length);
+            for (final WidgetSize size : WidgetSize.ALL)
+            {
+                out.writeShort(size.iconWidth);
+                out.writeShort(size.iconHeight);
+            }
+
+            out.writeInt(1);
+            out.writeByte(3);
+            out.writeBytes("dot"); //$NON-NLS-1$
+            for (final WidgetSize size : WidgetSize.ALL)
+            {
+                final byte[] mask = new byte[(size.iconWidth * size.iconHeight + 7) / 8];
+                mask[0] = (byte) 0x80;
+                out.write(mask);
+            }
+
+            out.writeShort(8);
+            out.writeInt(1);
+            out.writeChar('I');
+            out.writeByte(4);
+            out.writeByte(0);
+            out.writeByte(-1);
+            out.writeByte(1);
+            out.writeByte(2);
+            out.writeByte(0xc0);
+            out.close();
+
+            return bytes.toByteArray();
+        }
+        catch (final IOException e)
+        {
+            throw new AssertionError(e);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.metawatch.manager.locale.render;
+
+import android.os.Debug;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.MediumTest;
+import android.test.suitebuilder.annotation.SmallTest;
+
+/**
+ * Tests {@link WidgetRenderer}.
+ */
+public final class WidgetRendererTest extends AndroidTestCase
+{
+    /**
+     * Tests that every size renders a frame of the expected dimensions.
+     */
+    @SmallTest
+    public void testFrameSize()
+    {
+        final WidgetRenderer renderer = new WidgetRenderer(getContext());
+
+        for (final WidgetSize size : WidgetSize.ALL)
+        {
+            assertEquals(size.width * size.height, renderer.render(size, "home", "HOME").length); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+    }
+
+    /**
+     * Tests that the pixel buffer of a size is reused between renders.
+     */
+    @SmallTest
+    public void testPixelBufferReused()
+    {
+        final WidgetRenderer renderer = new WidgetRenderer(getContext());
+
+        final int[] first = renderer.render(WidgetSize.SMALL, "car", "CAR"); //$NON-NLS-1$ //$NON-NLS-2$
+        final int[] second = renderer.render(WidgetSize.SMALL, "bed", ""); //$NON-NLS-1$ //$NON-NLS-2$
+        assertSame(first, second);
+        assertNotSame(first, renderer.render(WidgetSize.LARGE, "bed", "")); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    /**
+     * Tests that an unknown icon renders the label only instead of crashing.
+     */
+    @SmallTest
+    public void testUnknownIcon()
+    {
+        final WidgetRenderer renderer = new WidgetRenderer(getContext());
+
+        assertNotNull(renderer.render(WidgetSize.LARGE, "does_not_exist", "X")); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    /**
+     * Tests that each thread owns its own renderer.
+     */
+    @SmallTest
+    public void testForCurrentThread() throws InterruptedException
+    {
+        final WidgetRenderer mine = WidgetRenderer.forCurrentThread(getContext());
+        assertSame(mine, WidgetRenderer.forCurrentThread(getContext()));
+
+        final WidgetRenderer[] other = new WidgetRenderer[1];
+        final Thread thread = new Thread(new Runnable()
+        {
+            public void run()
+            {
+                other[0] = WidgetRenderer.forCurrentThread(getContext());
+            }
+        });
+        thread.start();
+        thread.join();
+
+        assertNotNull(other[0]);
+        assertNotSame(mine, other[0]);
+    }
+
+    /**
+     * Tests that once the icons are decoded, rendering does not allocate on the heap.
+     */
+    @MediumTest
+    public void testSteadyStateDoesNotAllocate()
+    {
+        final WidgetRenderer renderer = new WidgetRenderer(getContext());
+        final String icon = "office"; //$NON-NLS-1$
+        final String label = "WORK"; //$NON-NLS-1$
+
+        /*
+         * Warm up: decodes the icons and lets the runtime resolve everything on the path
+         */
+        for (int i = 0; i < 10; i++)
+        {
+            for (final WidgetSize size : WidgetSize.ALL)
+            {
+                renderer.render(size, icon, label);
+            }
+        }
+
+        Debug.startAllocCounting();
+        Debug.resetThreadAllocCount();
+        try
+        {
+            for (int i = 0; i < 100; i++)
+            {
+                for (final WidgetSize size : WidgetSize.ALL)
+                {
+                    renderer.render(size, icon, label);
+                }
+            }
+
+            assertEquals(0, Debug.getThreadAllocCount());
+        }
+        finally
+        {
+            Debug.stopAllocCounting();
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.metawatch.manager.locale.template;
+
+import java.util.Arrays;
+
+import android.os.Bundle;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+import android.text.format.DateFormat;
+
+/**
+ * Tests {@link Template}.
+ */
+public final class TemplateTest extends AndroidTestCase
+{
+    /**
+     * Tests that a text without variables does not need a compiled form.
+     */
+    @SmallTest
+    public static void testLiteral()
+    {
+        assertNull(Template.compile("")); //$NON-NLS-1$
+        assertNull(Template.compile("Home")); //$NON-NLS-1$
+        assertNull(Template.compile("{unknown} {time")); //$NON-NLS-1$
+    }
+
+    /**
+     * Tests that an escaped brace is a literal brace, with or without variables in the text.
+     */
+    @SmallTest
+    public static void testEscape()
+    {
+        assertTrue(Arrays.equals(new String[] { "{unknown} {time}" }, Template.compile("{unknown} {{time}"))); //$NON-NLS-1$ //$NON-NLS-2$
+
+        final String[] compiled = Template.compile("{{x} {time}"); //$NON-NLS-1$
+        assertEquals(2, compiled.length);
+        assertEquals("{x} ", compiled[0]); //$NON-NLS-1$
+        assertTrue(Template.isDynamic(compiled));
+
+        assertFalse(Template.isDynamic(Template.compile("{{time}"))); //$NON-NLS-1$
+    }
+
+    /**
+     * Tests compiling text around a variable.
+     */
+    @SmallTest
+    public static void testCompile()
+    {
+        final String[] compiled = Template.compile("at {time}!"); //$NON-NLS-1$
+        assertNotNull(compiled);
+        assertEquals(3, compiled.length);
+        assertEquals("at ", compiled[0]); //$NON-NLS-1$
+        assertEquals("!", compiled[2]); //$NON-NLS-1$
+    }
+
+    /**
+     * Tests that texts with Tasker variables are compiled at fire time.
+     */
+    @SmallTest
+    public static void testTaskerVariable()
+    {
+        assertTrue(Template.hasTaskerVariable("%BATT left")); //$NON-NLS-1$
+        assertFalse(Template.hasTaskerVariable("100% done")); //$NON-NLS-1$
+
+        final String[] compiled = Template.compile("%BATT {day}"); //$NON-NLS-1$
+        assertNotNull(compiled);
+        assertEquals(1, compiled.length);
+
+        assertNull(Template.compileIgnoringTasker("%BATT left")); //$NON-NLS-1$
+        final String[] preview = Template.compileIgnoringTasker("%BATT {day}"); //$NON-NLS-1$
+        assertNotNull(preview);
+        assertEquals(2, preview.length);
+        assertEquals("%BATT ", preview[0]); //$NON-NLS-1$
+    }
+
+    /**
+     * Tests evaluating a compiled template.
+     */
+    public void testEvaluate()
+    {
+        final long time = 1000000000000L;
+        final TemplateEnvironment environment = new TemplateEnvironment(getContext(), time);
+
+        assertEquals("{x} " + DateFormat.format("EEE", time), Template.evaluate(Template.compile("{{x} {day}"), environment)); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        assertTrue(Template.evaluate(Template.compile("{battery}"), environment).endsWith("%")); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    /**
+     * Tests reading a field of the plug-in Bundle, with and without a compiled template.
+     */
+    public void testExpand()
+    {
+        final TemplateEnvironment environment = new TemplateEnvironment(getContext(), 0);
+        final Bundle bundle = new Bundle();
+        bundle.putString("text", "plain"); //$NON-NLS-1$ //$NON-NLS-2$
+        assertEquals("plain", Template.expand(bundle, "text", "template", environment)); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+
+        bundle.putString("text", "{{ {day}"); //$NON-NLS-1$ //$NON-NLS-2$
+        bundle.putStringArray("template", Template.compile("{{ {day}")); //$NON-NLS-1$ //$NON-NLS-2$
+        assertEquals("{ " + DateFormat.format("EEE", 0), Template.expand(bundle, "text", "template", environment)); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+    }
+}
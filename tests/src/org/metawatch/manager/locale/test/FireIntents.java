@@ -0,0 +1,103 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.metawatch.manager.locale.test;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Bundle;
+
+import org.metawatch.manager.locale.Constants;
+import org.metawatch.manager.locale.bundle.PluginBundleManager;
+import org.metawatch.manager.locale.receiver.FireReceiver;
+
+/**
+ * Builds the intents Locale sends to {@link FireReceiver}.
+ */
+public final class FireIntents
+{
+    /**
+     * Private constructor prevents instantiation
+     *
+     * @throws UnsupportedOperationException because this class cannot be instantiated.
+     */
+    private FireIntents()
+    {
+        throw new UnsupportedOperationException("This class is non-instantiable"); //$NON-NLS-1$
+    }
+
+    /**
+     * @param context the target context. Cannot be null.
+     * @param widgetId id of the widget.
+     * @param icon name of the icon.
+     * @param label label of the widget, without variables.
+     * @return the fire intent of a widget setting.
+     */
+    public static Intent createWidget(final Context context, final String widgetId, final String icon, final String label)
+    {
+        final Bundle bundle = createBundle(context, "widget", false); //$NON-NLS-1$
+        bundle.putString(PluginBundleManager.BUNDLE_EXTRA_STRING_TITLE, ""); //$NON-NLS-1$
+        bundle.putString(PluginBundleManager.BUNDLE_EXTRA_STRING_MESSAGE, ""); //$NON-NLS-1$
+        bundle.putString(PluginBundleManager.BUNDLE_EXTRA_STRING_WIDGET_ID, widgetId);
+        bundle.putString(PluginBundleManager.BUNDLE_EXTRA_STRING_WIDGET_ICON, icon);
+        bundle.putString(PluginBundleManager.BUNDLE_EXTRA_STRING_WIDGET_LABEL, label);
+        return createFire(context, bundle);
+    }
+
+    /**
+     * @param context the target context. Cannot be null.
+     * @param title title of the notification, without variables.
+     * @param message text of the notification, without variables.
+     * @param isVibrating whether the notification vibrates 100 ms on, 100 ms off, once.
+     * @return the fire intent of a notification setting.
+     */
+    public static Intent createNotification(final Context context, final String title, final String message, final boolean isVibrating)
+    {
+        final Bundle bundle = createBundle(context, "notification", isVibrating); //$NON-NLS-1$
+        bundle.putString(PluginBundleManager.BUNDLE_EXTRA_STRING_TITLE, title);
+        bundle.putString(PluginBundleManager.BUNDLE_EXTRA_STRING_MESSAGE, message);
+        bundle.putString(PluginBundleManager.BUNDLE_EXTRA_STRING_WIDGET_ID, ""); //$NON-NLS-1$
+        bundle.putString(PluginBundleManager.BUNDLE_EXTRA_STRING_WIDGET_ICON, ""); //$NON-NLS-1$
+        bundle.putString(PluginBundleManager.BUNDLE_EXTRA_STRING_WIDGET_LABEL, ""); //$NON-NLS-1$
+        return createFire(context, bundle);
+    }
+
+    /**
+     * @param context the target context. Cannot be null.
+     * @return the intent the MetaWatch manager sends to get the frames of all the cached widgets.
+     */
+    public static Intent createRefresh(final Context context)
+    {
+        final Intent intent = new Intent("org.metawatch.manager.REFRESH_WIDGET_REQUEST"); //$NON-NLS-1$
+        intent.setComponent(new ComponentName(context, FireReceiver.class));
+        intent.putExtra("org.metawatch.manager.get_previews", true); //$NON-NLS-1$
+        return intent;
+    }
+
+    private static Bundle createBundle(final Context context, final String type, final boolean isVibrating)
+    {
+        final Bundle bundle = new Bundle();
+        bundle.putString(PluginBundleManager.BUNDLE_EXTRA_STRING_TYPE, type);
+        bundle.putBoolean(PluginBundleManager.BUNDLE_EXTRA_BOOLEAN_VIBRATE, isVibrating);
+        bundle.putInt(PluginBundleManager.BUNDLE_EXTRA_INT_VIBRATE_ON, isVibrating ? 100 : 0);
+        bundle.putInt(PluginBundleManager.BUNDLE_EXTRA_INT_VIBRATE_OFF, isVibrating ? 100 : 0);
+        bundle.putInt(PluginBundleManager.BUNDLE_EXTRA_INT_VIBRATE_CYCLES, isVibrating ? 1 : 0);
+        bundle.putInt(PluginBundleManager.BUNDLE_EXTRA_INT_VERSION_CODE, Constants.getVersionCode(context));
+        return bundle;
+    }
+
+    private static Intent createFire(final Context context, final Bundle bundle)
+    {
+        final Intent intent = new Intent(com.twofortyfouram.locale.Intent.ACTION_FIRE_SETTING);
+        intent.setComponent(new ComponentName(context, FireReceiver.class));
+        intent.putExtra(com.twofortyfouram.locale.Intent.EXTRA_BUNDLE, bundle);
+        return intent;
+    }
+}
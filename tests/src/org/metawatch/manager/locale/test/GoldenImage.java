@@ -0,0 +1,151 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.metawatch.manager.locale.test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StreamTokenizer;
+
+import android.content.res.AssetManager;
+
+/**
+ * Expected black and white frame, stored as a plain PBM ({@code P1}) file in the assets of the test project, so that it can be
+ * read and edited as text.
+ * <p>
+ * Frames are compared after thresholding like {@link org.metawatch.manager.locale.render.MonoFrame}, which is what the watch
+ * displays.
+ */
+public final class GoldenImage
+{
+    public final int width;
+
+    public final int height;
+
+    /**
+     * Whether each pixel is black, row by row.
+     */
+    private final boolean[] mBlack;
+
+    private GoldenImage(final int width, final int height, final boolean[] black)
+    {
+        this.width = width;
+        this.height = height;
+        mBlack = black;
+    }
+
+    /**
+     * @param assets assets of the test project. Cannot be null.
+     * @param name path of the image in the assets.
+     * @return the image.
+     * @throws IOException if the image cannot be read or is not a plain PBM file.
+     */
+    public static GoldenImage read(final AssetManager assets, final String name) throws IOException
+    {
+        final InputStream in = assets.open(name);
+        try
+        {
+            final StreamTokenizer tokens = new StreamTokenizer(new BufferedReader(new InputStreamReader(in, "US-ASCII"))); //$NON-NLS-1$
+            tokens.resetSyntax();
+            tokens.wordChars('0', '9');
+            tokens.wordChars('P', 'P');
+            tokens.whitespaceChars(0, ' ');
+            tokens.commentChar('#');
+
+            if (StreamTokenizer.TT_WORD != tokens.nextToken() || !"P1".equals(tokens.sval)) //$NON-NLS-1$
+            {
+                throw new IOException(name + " is not a plain PBM file"); //$NON-NLS-1$
+            }
+            final int width = nextInt(tokens, name);
+            final int height = nextInt(tokens, name);
+            final boolean[] black = new boolean[width * height];
+            for (int i = 0; i < black.length; i++)
+            {
+                black[i] = 1 == nextInt(tokens, name);
+            }
+            return new GoldenImage(width, height, black);
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    private static int nextInt(final StreamTokenizer tokens, final String name) throws IOException
+    {
+        if (StreamTokenizer.TT_WORD != tokens.nextToken())
+        {
+            throw new IOException(name + " is truncated"); //$NON-NLS-1$
+        }
+        try
+        {
+            return Integer.parseInt(tokens.sval);
+        }
+        catch (final NumberFormatException e)
+        {
+            throw new IOException(name + " has a malformed number: " + tokens.sval); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * @param pixels ARGB pixels of a frame, row by row.
+     * @param frameWidth width of the frame.
+     * @param frameHeight height of the frame.
+     * @return the number of pixels that differ from this image, or -1 if the frame does not have the size of this image.
+     */
+    public int countDifferences(final int[] pixels, final int frameWidth, final int frameHeight)
+    {
+        if (frameWidth != width || frameHeight != height || null == pixels || pixels.length != mBlack.length)
+        {
+            return -1;
+        }
+
+        int differences = 0;
+        for (int i = 0; i < pixels.length; i++)
+        {
+            if (isBlack(pixels[i]) != mBlack[i])
+            {
+                differences++;
+            }
+        }
+        return differences;
+    }
+
+    /**
+     * @param pixels ARGB pixels of a frame, row by row.
+     * @param frameWidth width of the frame.
+     * @param frameHeight height of the frame.
+     * @return the frame as a plain PBM file, to update a golden image or show a failure.
+     */
+    public static String toPbm(final int[] pixels, final int frameWidth, final int frameHeight)
+    {
+        final StringBuilder pbm = new StringBuilder(16 + pixels.length * 2);
+        pbm.append("P1\n").append(frameWidth).append(' ').append(frameHeight).append('\n'); //$NON-NLS-1$
+        for (int y = 0; y < frameHeight; y++)
+        {
+            for (int x = 0; x < frameWidth; x++)
+            {
+                if (x > 0)
+                {
+                    pbm.append(' ');
+                }
+                pbm.append(isBlack(pixels[y * frameWidth + x]) ? '1' : '0');
+            }
+            pbm.append('\n');
+        }
+        return pbm.toString();
+    }
+
+    private static boolean isBlack(final int pixel)
+    {
+        return (pixel >> 16 & 0xff) + (pixel >> 8 & 0xff) + (pixel & 0xff) < 384;
+    }
+}
@@ -0,0 +1,32 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.metawatch.manager.locale.test;
+
+import org.metawatch.manager.locale.broadcast.Clock;
+
+/**
+ * A {@link Clock} that only moves when a test advances it.
+ */
+public final class ManualClock implements Clock
+{
+    private long mNow = 0;
+
+    public synchronized long now()
+    {
+        return mNow;
+    }
+
+    /**
+     * @param millis time to move forward by.
+     */
+    public synchronized void advance(final long millis)
+    {
+        mNow += millis;
+    }
+}
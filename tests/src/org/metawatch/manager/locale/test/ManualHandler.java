@@ -0,0 +1,80 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.metawatch.manager.locale.test;
+
+import java.util.ArrayList;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Message;
+import android.os.SystemClock;
+
+/**
+ * A {@link Handler} that keeps the runnables posted to it instead of running them, so that tests run them when they choose.
+ * <p>
+ * {@link Handler#removeCallbacks(Runnable)} cannot be overridden, so a removed runnable is still kept here. Tests should look at
+ * the last post.
+ */
+public final class ManualHandler extends Handler
+{
+    private final ArrayList<Runnable> mPosts = new ArrayList<Runnable>();
+
+    private final ArrayList<Long> mDelays = new ArrayList<Long>();
+
+    public ManualHandler()
+    {
+        super(Looper.getMainLooper());
+    }
+
+    @Override
+    public boolean sendMessageAtTime(final Message msg, final long uptimeMillis)
+    {
+        synchronized (mPosts)
+        {
+            mPosts.add(msg.getCallback());
+            mDelays.add(Long.valueOf(Math.max(0, uptimeMillis - SystemClock.uptimeMillis())));
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of runnables posted so far.
+     */
+    public int getPostCount()
+    {
+        synchronized (mPosts)
+        {
+            return mPosts.size();
+        }
+    }
+
+    /**
+     * @return the delay of the last post. It may be a little short, since it is measured after the post.
+     */
+    public long getLastDelay()
+    {
+        synchronized (mPosts)
+        {
+            return mDelays.get(mDelays.size() - 1).longValue();
+        }
+    }
+
+    /**
+     * Runs the last runnable posted, on the calling thread.
+     */
+    public void runLast()
+    {
+        final Runnable runnable;
+        synchronized (mPosts)
+        {
+            runnable = mPosts.get(mPosts.size() - 1);
+        }
+        runnable.run();
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.metawatch.manager.locale.test;
+
+import java.util.ArrayList;
+
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.content.Intent;
+
+/**
+ * A {@link Context} that keeps the broadcasts sent through it instead of sending them. Anything else is passed to the base
+ * context, which may be null if the code under test only sends broadcasts.
+ */
+public final class RecordingContext extends ContextWrapper
+{
+    private final ArrayList<Intent> mBroadcasts = new ArrayList<Intent>();
+
+    /**
+     * @param base context for everything but broadcasts. May be null.
+     */
+    public RecordingContext(final Context base)
+    {
+        super(base);
+    }
+
+    @Override
+    public void sendBroadcast(final Intent intent)
+    {
+        synchronized (mBroadcasts)
+        {
+            mBroadcasts.add(intent);
+        }
+    }
+
+    /**
+     * @return the broadcasts sent so far, oldest first.
+     */
+    public ArrayList<Intent> getBroadcasts()
+    {
+        synchronized (mBroadcasts)
+        {
+            return new ArrayList<Intent>(mBroadcasts);
+        }
+    }
+}
@@ -0,0 +1,367 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.metawatch.manager.locale.test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.SystemClock;
+
+import org.metawatch.manager.locale.broadcast.DeliveryTracker;
+
+/**
+ * Stands in for the MetaWatch manager: receives the broadcasts of the plug-in, decodes and keeps them, and measures their rate
+ * and size, so tests and benchmarks run without the manager app or a watch.
+ * <p>
+ * The broadcasts are sent by the background process of the plug-in and received here on the main thread of the test process.
+ * If {@link #setAcknowledging(boolean)} is set, broadcasts carrying a sequence number are acknowledged like a manager supporting
+ * the {@link DeliveryTracker} protocol does.
+ */
+public final class StandInManager extends BroadcastReceiver
+{
+    public static final String ACTION_WIDGET_UPDATE = "org.metawatch.manager.WIDGET_UPDATE"; //$NON-NLS-1$
+
+    public static final String ACTION_NOTIFICATION = "org.metawatch.manager.NOTIFICATION"; //$NON-NLS-1$
+
+    public static final String ACTION_VIBRATE = "org.metawatch.manager.VIBRATE"; //$NON-NLS-1$
+
+    private static final String[] ACTIONS = new String[] { ACTION_WIDGET_UPDATE, ACTION_NOTIFICATION, ACTION_VIBRATE };
+
+    private final Context mContext;
+
+    private final ArrayList<Frame> mFrames = new ArrayList<Frame>();
+
+    private final ArrayList<Notification> mNotifications = new ArrayList<Notification>();
+
+    private final ArrayList<Vibration> mVibrations = new ArrayList<Vibration>();
+
+    /**
+     * Number of broadcasts and their total payload in bytes, indexed like {@link #ACTIONS}.
+     */
+    private final long[] mCounts = new long[ACTIONS.length];
+
+    private final long[] mBytes = new long[ACTIONS.length];
+
+    private long mFirstArrivalAt = 0;
+
+    private long mLastArrivalAt = 0;
+
+    private boolean mIsAcknowledging = false;
+
+    private boolean mIsRegistered = false;
+
+    /**
+     * @param context the context receiving the broadcasts. Cannot be null.
+     */
+    public StandInManager(final Context context)
+    {
+        super();
+        mContext = context;
+    }
+
+    /**
+     * Starts receiving the broadcasts.
+     */
+    public void register()
+    {
+        final IntentFilter filter = new IntentFilter();
+        for (final String action : ACTIONS)
+        {
+            filter.addAction(action);
+        }
+        mContext.registerReceiver(this, filter);
+        mIsRegistered = true;
+    }
+
+    /**
+     * Stops receiving the broadcasts. Does nothing if not registered.
+     */
+    public void unregister()
+    {
+        if (mIsRegistered)
+        {
+            mContext.unregisterReceiver(this);
+            mIsRegistered = false;
+        }
+    }
+
+    /**
+     * @param isAcknowledging whether the broadcasts carrying a sequence number are acknowledged.
+     */
+    public synchronized void setAcknowledging(final boolean isAcknowledging)
+    {
+        mIsAcknowledging = isAcknowledging;
+    }
+
+    @Override
+    public void onReceive(final Context context, final Intent intent)
+    {
+        final long now = SystemClock.elapsedRealtime();
+        final String action = intent.getAction();
+        int bytes = 0;
+
+        synchronized (this)
+        {
+            if (ACTION_WIDGET_UPDATE.equals(action))
+            {
+                final Frame frame = new Frame(intent, now);
+                mFrames.add(frame);
+                bytes = 4 * (null == frame.pixels ? 0 : frame.pixels.length) + 2 * (length(frame.id) + length(frame.description)) + 3 * 4;
+            }
+            else if (ACTION_NOTIFICATION.equals(action))
+            {
+                final Notification notification = new Notification(intent, now);
+                mNotifications.add(notification);
+                bytes = 2 * (length(notification.title) + length(notification.text)) + (null == notification.vibration ? 0 : 3 * 4);
+            }
+            else if (ACTION_VIBRATE.equals(action))
+            {
+                mVibrations.add(new Vibration(intent, now));
+                bytes = 3 * 4;
+            }
+            else
+            {
+                return;
+            }
+
+            for (int i = 0; i < ACTIONS.length; i++)
+            {
+                if (ACTIONS[i].equals(action))
+                {
+                    mCounts[i]++;
+                    mBytes[i] += bytes;
+                }
+            }
+            if (0 == mFirstArrivalAt)
+            {
+                mFirstArrivalAt = now;
+            }
+            mLastArrivalAt = now;
+            notifyAll();
+
+            if (!mIsAcknowledging)
+            {
+                return;
+            }
+        }
+
+        final long sequence = intent.getLongExtra(DeliveryTracker.EXTRA_SEQUENCE, -1);
+        final String ackAction = intent.getStringExtra(DeliveryTracker.EXTRA_ACK_ACTION);
+        if (-1 != sequence && null != ackAction)
+        {
+            final Intent ack = new Intent(ackAction);
+            ack.putExtra(DeliveryTracker.EXTRA_SEQUENCE, sequence);
+            ack.putExtra(DeliveryTracker.EXTRA_ACK_TOKEN, intent.getLongExtra(DeliveryTracker.EXTRA_ACK_TOKEN, 0));
+            context.sendBroadcast(ack);
+        }
+    }
+
+    private static int length(final String text)
+    {
+        return null == text ? 0 : text.length();
+    }
+
+    /**
+     * Waits until a number of broadcasts of an action were received since the last {@link #clear()}.
+     *
+     * @param action one of the {@code ACTION_} constants.
+     * @param count number of broadcasts.
+     * @param timeoutMillis maximum time to wait.
+     * @return true if the broadcasts were received in time.
+     * @throws InterruptedException if the thread is interrupted.
+     */
+    public synchronized boolean await(final String action, final int count, final long timeoutMillis) throws InterruptedException
+    {
+        final long deadline = SystemClock.elapsedRealtime() + timeoutMillis;
+        while (getCount(action) < count)
+        {
+            final long remaining = deadline - SystemClock.elapsedRealtime();
+            if (remaining <= 0)
+            {
+                return false;
+            }
+            wait(remaining);
+        }
+        return true;
+    }
+
+    /**
+     * @param action one of the {@code ACTION_} constants.
+     * @return number of broadcasts of the action received.
+     */
+    public synchronized long getCount(final String action)
+    {
+        for (int i = 0; i < ACTIONS.length; i++)
+        {
+            if (ACTIONS[i].equals(action))
+            {
+                return mCounts[i];
+            }
+        }
+        throw new IllegalArgumentException(action);
+    }
+
+    /**
+     * @param action one of the {@code ACTION_} constants.
+     * @return total payload of the broadcasts of the action received, in bytes: 4 per pixel, 2 per character and 4 per number.
+     */
+    public synchronized long getBytes(final String action)
+    {
+        for (int i = 0; i < ACTIONS.length; i++)
+        {
+            if (ACTIONS[i].equals(action))
+            {
+                return mBytes[i];
+            }
+        }
+        throw new IllegalArgumentException(action);
+    }
+
+    /**
+     * @return milliseconds between the first and the last broadcast received.
+     */
+    public synchronized long getSpanMillis()
+    {
+        return mLastArrivalAt - mFirstArrivalAt;
+    }
+
+    /**
+     * @return the frames received, in order of arrival.
+     */
+    public synchronized List<Frame> getFrames()
+    {
+        return new ArrayList<Frame>(mFrames);
+    }
+
+    /**
+     * @param id the id of the frame, including the size suffix.
+     * @return the last frame received with this id, or null.
+     */
+    public synchronized Frame getLastFrame(final String id)
+    {
+        for (int i = mFrames.size() - 1; i >= 0; i--)
+        {
+            if (mFrames.get(i).id.equals(id))
+            {
+                return mFrames.get(i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the notifications received, in order of arrival.
+     */
+    public synchronized List<Notification> getNotifications()
+    {
+        return new ArrayList<Notification>(mNotifications);
+    }
+
+    /**
+     * @return the vibrations received, in order of arrival.
+     */
+    public synchronized List<Vibration> getVibrations()
+    {
+        return new ArrayList<Vibration>(mVibrations);
+    }
+
+    /**
+     * Forgets the broadcasts received and resets the counters.
+     */
+    public synchronized void clear()
+    {
+        mFrames.clear();
+        mNotifications.clear();
+        mVibrations.clear();
+        for (int i = 0; i < ACTIONS.length; i++)
+        {
+            mCounts[i] = 0;
+            mBytes[i] = 0;
+        }
+        mFirstArrivalAt = 0;
+        mLastArrivalAt = 0;
+    }
+
+    /**
+     * A decoded {@code WIDGET_UPDATE} broadcast.
+     */
+    public static final class Frame
+    {
+        public final String id;
+        public final String description;
+        public final int width;
+        public final int height;
+        public final int priority;
+        public final int[] pixels;
+
+        /**
+         * {@link SystemClock#elapsedRealtime()} at which the frame was received.
+         */
+        public final long receivedAt;
+
+        Frame(final Intent intent, final long receivedAt)
+        {
+            this.id = intent.getStringExtra("id"); //$NON-NLS-1$
+            this.description = intent.getStringExtra("desc"); //$NON-NLS-1$
+            this.width = intent.getIntExtra("width", 0); //$NON-NLS-1$
+            this.height = intent.getIntExtra("height", 0); //$NON-NLS-1$
+            this.priority = intent.getIntExtra("priority", 0); //$NON-NLS-1$
+            this.pixels = intent.getIntArrayExtra("array"); //$NON-NLS-1$
+            this.receivedAt = receivedAt;
+        }
+    }
+
+    /**
+     * A decoded {@code NOTIFICATION} broadcast.
+     */
+    public static final class Notification
+    {
+        public final String title;
+        public final String text;
+
+        /**
+         * The vibration of the notification, or null if it does not vibrate.
+         */
+        public final Vibration vibration;
+
+        public final long receivedAt;
+
+        Notification(final Intent intent, final long receivedAt)
+        {
+            this.title = intent.getStringExtra("title"); //$NON-NLS-1$
+            this.text = intent.getStringExtra("text"); //$NON-NLS-1$
+            this.vibration = intent.hasExtra("vibrate_on") ? new Vibration(intent, receivedAt) : null; //$NON-NLS-1$
+            this.receivedAt = receivedAt;
+        }
+    }
+
+    /**
+     * A decoded {@code VIBRATE} broadcast, or the vibration of a notification.
+     */
+    public static final class Vibration
+    {
+        public final int on;
+        public final int off;
+        public final int cycles;
+        public final long receivedAt;
+
+        Vibration(final Intent intent, final long receivedAt)
+        {
+            this.on = intent.getIntExtra("vibrate_on", 0); //$NON-NLS-1$
+            this.off = intent.getIntExtra("vibrate_off", 0); //$NON-NLS-1$
+            this.cycles = intent.getIntExtra("vibrate_cycles", 0); //$NON-NLS-1$
+            this.receivedAt = receivedAt;
+        }
+    }
+}
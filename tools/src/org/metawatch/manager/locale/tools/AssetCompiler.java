@@ -0,0 +1,288 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.metawatch.manager.locale.tools;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+
+import javax.imageio.ImageIO;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+/**
+ * Build step compiling the widget icons and the pixel font into one binary asset, read at runtime by
+ * {@code org.metawatch.manager.locale.render.WidgetAssets}.
+ * <p>
+ * Icons are thresholded and glyphs are rasterized once, here, so that the app never decodes a BMP or loads the TrueType font to
+ * draw a widget. Layout, big endian:
+ *
+ * <pre>
+ * int magic, int version
+ * int sizeCount, sizeCount times: short iconWidth, short iconHeight
+ * int iconCount, iconCount times: byte nameLength, ASCII name, sizeCount times packed mask
+ * short textSize, int glyphCount
+ * glyphCount times: char code, byte advance, byte left, byte top, byte width, byte height, packed mask
+ * </pre>
+ *
+ * Masks are packed row by row, 1 bit per pixel, most significant bit first, a set bit being black. {@code left} and {@code top}
+ * place the mask relative to the pen position on the baseline.
+ * <p>
+ * Usage: {@code AssetCompiler <assets dir> <arrays.xml> <font file> <output file>}
+ */
+public final class AssetCompiler
+{
+    /**
+     * Private constructor prevents instantiation
+     *
+     * @throws UnsupportedOperationException because this class cannot be instantiated.
+     */
+    private AssetCompiler()
+    {
+        throw new UnsupportedOperationException("This class is non-instantiable"); //$NON-NLS-1$
+    }
+
+    /**
+     * First bytes of the asset, "LMWA".
+     */
+    private static final int MAGIC = 0x4c4d5741;
+
+    /**
+     * Must match {@code WidgetAssets.VERSION}.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Icon file suffixes, in the order of {@code WidgetSize.ALL}.
+     */
+    private static final String[] ICON_SUFFIXES = new String[] { "_10.bmp", ".bmp" }; //$NON-NLS-1$ //$NON-NLS-2$
+
+    /**
+     * Icon dimensions, in the order of {@code WidgetSize.ALL}.
+     */
+    private static final int[][] ICON_DIMENSIONS = new int[][] { { 11, 10 }, { 24, 18 } };
+
+    /**
+     * Text size of the labels in pixels, the size set on the paint of {@code WidgetRenderer}.
+     */
+    private static final int TEXT_SIZE = 8;
+
+    /**
+     * Characters rasterized from the font.
+     */
+    private static final char FIRST_CHAR = 0x20;
+
+    private static final char LAST_CHAR = 0xff;
+
+    /**
+     * @param args see the class documentation.
+     * @throws Exception if an input cannot be read or the output cannot be written.
+     */
+    public static void main(final String[] args) throws Exception
+    {
+        if (4 != args.length)
+        {
+            System.err.println("usage: AssetCompiler <assets dir> <arrays.xml> <font file> <output file>"); //$NON-NLS-1$
+            System.exit(1);
+        }
+
+        final File assets = new File(args[0]);
+        final ArrayList<String> icons = readIconNames(new File(args[1]));
+        final Font font = Font.createFont(Font.TRUETYPE_FONT, new File(args[2])).deriveFont((float) TEXT_SIZE);
+        final File output = new File(args[3]);
+
+        final File temporary = new File(output.getPath() + ".tmp"); //$NON-NLS-1$
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)));
+        try
+        {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+
+            out.writeInt(ICON_SUFFIXES.length);
+            for (final int[] dimensions : ICON_DIMENSIONS)
+            {
+                out.writeShort(dimensions[0]);
+                out.writeShort(dimensions[1]);
+            }
+
+            out.writeInt(icons.size());
+            for (final String icon : icons)
+            {
+                out.writeByte(icon.length());
+                out.writeBytes(icon);
+                for (int i = 0; i < ICON_SUFFIXES.length; i++)
+                {
+                    out.write(readIcon(new File(assets, icon + ICON_SUFFIXES[i]), ICON_DIMENSIONS[i][0], ICON_DIMENSIONS[i][1]));
+                }
+            }
+
+            writeGlyphs(out, font);
+        }
+        finally
+        {
+            out.close();
+        }
+
+        if (output.exists() && !output.delete() || !temporary.renameTo(output))
+        {
+            throw new IOException("could not write " + output); //$NON-NLS-1$
+        }
+        System.out.println("compiled " + icons.size() + " icons and " + font.getFontName() + " into " + output); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+    }
+
+    private static ArrayList<String> readIconNames(final File arrays) throws Exception
+    {
+        final NodeList arrayNodes = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(arrays).getElementsByTagName("string-array"); //$NON-NLS-1$
+        for (int i = 0; i < arrayNodes.getLength(); i++)
+        {
+            final Element array = (Element) arrayNodes.item(i);
+            if ("icons".equals(array.getAttribute("name"))) //$NON-NLS-1$ //$NON-NLS-2$
+            {
+                final ArrayList<String> names = new ArrayList<String>();
+                final NodeList items = array.getElementsByTagName("item"); //$NON-NLS-1$
+                for (int j = 0; j < items.getLength(); j++)
+                {
+                    names.add(items.item(j).getTextContent().trim());
+                }
+                return names;
+            }
+        }
+        throw new IOException("no icons array in " + arrays); //$NON-NLS-1$
+    }
+
+    /**
+     * Reads an icon, placed in the top left corner of a white box of the given dimensions, and packs it.
+     */
+    private static byte[] readIcon(final File file, final int width, final int height) throws IOException
+    {
+        final BufferedImage image = ImageIO.read(file);
+        if (null == image)
+        {
+            throw new IOException("unreadable icon " + file); //$NON-NLS-1$
+        }
+
+        final boolean[] black = new boolean[width * height];
+        for (int y = 0; y < Math.min(height, image.getHeight()); y++)
+        {
+            for (int x = 0; x < Math.min(width, image.getWidth()); x++)
+            {
+                black[y * width + x] = isBlack(image.getRGB(x, y));
+            }
+        }
+        return pack(black);
+    }
+
+    private static void writeGlyphs(final DataOutputStream out, final Font font) throws IOException
+    {
+        /*
+         * Each glyph is drawn alone, without anti-aliasing and at integer metrics, which is how the pixel font renders on the
+         * device at this size
+         */
+        final int box = TEXT_SIZE * 4;
+        final int originX = TEXT_SIZE;
+        final int baseline = TEXT_SIZE * 2;
+        final BufferedImage image = new BufferedImage(box, box, BufferedImage.TYPE_INT_RGB);
+        final Graphics2D graphics = image.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_OFF);
+        graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+        graphics.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_OFF);
+        graphics.setFont(font);
+        final FontMetrics metrics = graphics.getFontMetrics();
+
+        final ArrayList<char[]> codes = new ArrayList<char[]>();
+        for (char c = FIRST_CHAR; c <= LAST_CHAR; c++)
+        {
+            if (font.canDisplay(c))
+            {
+                codes.add(new char[] { c });
+            }
+        }
+
+        out.writeShort(TEXT_SIZE);
+        out.writeInt(codes.size());
+        for (final char[] code : codes)
+        {
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, box, box);
+            graphics.setColor(Color.BLACK);
+            graphics.drawChars(code, 0, 1, originX, baseline);
+
+            int left = box;
+            int top = box;
+            int right = -1;
+            int bottom = -1;
+            for (int y = 0; y < box; y++)
+            {
+                for (int x = 0; x < box; x++)
+                {
+                    if (isBlack(image.getRGB(x, y)))
+                    {
+                        left = Math.min(left, x);
+                        top = Math.min(top, y);
+                        right = Math.max(right, x);
+                        bottom = Math.max(bottom, y);
+                    }
+                }
+            }
+
+            final int width = right < 0 ? 0 : right - left + 1;
+            final int height = bottom < 0 ? 0 : bottom - top + 1;
+            final boolean[] black = new boolean[width * height];
+            for (int y = 0; y < height; y++)
+            {
+                for (int x = 0; x < width; x++)
+                {
+                    black[y * width + x] = isBlack(image.getRGB(left + x, top + y));
+                }
+            }
+
+            out.writeChar(code[0]);
+            out.writeByte(metrics.charWidth(code[0]));
+            out.writeByte(right < 0 ? 0 : left - originX);
+            out.writeByte(bottom < 0 ? 0 : top - baseline);
+            out.writeByte(width);
+            out.writeByte(height);
+            out.write(pack(black));
+        }
+        graphics.dispose();
+    }
+
+    /**
+     * Same threshold as {@code MonoFrame}.
+     */
+    private static boolean isBlack(final int rgb)
+    {
+        return (rgb >> 16 & 0xff) + (rgb >> 8 & 0xff) + (rgb & 0xff) < 384;
+    }
+
+    private static byte[] pack(final boolean[] black)
+    {
+        final byte[] packed = new byte[(black.length + 7) / 8];
+        for (int i = 0; i < black.length; i++)
+        {
+            if (black[i])
+            {
+                packed[i >> 3] |= 0x80 >>> (i & 7);
+            }
+        }
+        return packed;
+    }
+}